@@ -0,0 +1,131 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the detection throughput for every combination of interpreter pool size and threads
+ * per interpreter. Every pool interpreter is driven by its own thread and slot, like the inference
+ * workers of the analysis pipeline.
+ *
+ * <p>The model is not part of the apk, push it to the device first and pass its config:
+ * <pre>
+ * adb push model-converter/models_CONVERTED/ssd_mobv1_300_coco_q.tflite /data/local/tmp/
+ * ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=at.tuwien.ict.eml.odd.detection.InterpreterPoolBenchmark \
+ *     -Pandroid.testInstrumentationRunnerArguments.modelPath=/data/local/tmp/ssd_mobv1_300_coco_q.tflite \
+ *     -Pandroid.testInstrumentationRunnerArguments.inputSize=300 \
+ *     -Pandroid.testInstrumentationRunnerArguments.quantized=true
+ * </pre>
+ * The FPS table is written to logcat with the tag InterpreterPoolBenchmark.
+ */
+public class InterpreterPoolBenchmark {
+    private static final String TAG = "InterpreterPoolBenchmark";
+    private static final int[] POOL_SIZES = {1, 2, 3, 4};
+    private static final int[] THREADS_PER_INTERPRETER = {1, 2, 4};
+    private static final int WARMUP_FRAMES = 5;
+    private static final long MEASURE_MILLIS = 5000;
+    private static final int LABELS = 100;
+
+    @Test
+    public void fpsByPoolSizeAndThreads() throws Exception {
+        final Bundle args = InstrumentationRegistry.getArguments();
+        final File model = new File(args.getString("modelPath", "/data/local/tmp/ssd_mobv1_300_coco_q.tflite"));
+        Assume.assumeTrue("model not found: " + model, model.exists());
+        final int inputSize = Integer.parseInt(args.getString("inputSize", "300"));
+        final boolean quantized = Boolean.parseBoolean(args.getString("quantized", "true"));
+
+        final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        final ArrayList<String> labels = new ArrayList<>();
+        for (int i = 0; i < LABELS; i++) {
+            labels.add("label" + i);
+        }
+        final TFLiteObjectDetection detector = TFLiteObjectDetection.create(context, model, labels, inputSize, quantized);
+        detector.setUseNNAPI(false);
+
+        final StringBuilder table = new StringBuilder("pool\\threads");
+        for (final int threads : THREADS_PER_INTERPRETER) {
+            table.append(String.format(Locale.ENGLISH, "\t%d", threads));
+        }
+        try {
+            for (final int poolSize : POOL_SIZES) {
+                table.append(String.format(Locale.ENGLISH, "\n%d", poolSize));
+                for (final int threads : THREADS_PER_INTERPRETER) {
+                    detector.setNumThreads(threads);
+                    detector.setInterpreterPoolSize(poolSize);
+                    detector.awaitInterpreterConfig();
+                    final double fps = measureFps(detector, poolSize);
+                    Log.i(TAG, String.format(Locale.ENGLISH, "pool %d, threads %d: %.1f FPS", poolSize, threads, fps));
+                    table.append(String.format(Locale.ENGLISH, "\t%.1f", fps));
+                }
+            }
+        } finally {
+            detector.close();
+        }
+        Log.i(TAG, "FPS\n" + table);
+    }
+
+    private static double measureFps(final TFLiteObjectDetection detector, final int workers)
+            throws InterruptedException {
+        final AtomicLong frames = new AtomicLong();
+        final CountDownLatch warm = new CountDownLatch(workers);
+        final CountDownLatch start = new CountDownLatch(1);
+        final long[] deadline = new long[1];
+        final Thread[] threads = new Thread[workers];
+        for (int i = 0; i < workers; i++) {
+            // the input of a new slot is zeroed, the inference time does not depend on the content
+            final DetectionSlot slot = detector.newSlot();
+            threads[i] = new Thread(() -> {
+                for (int f = 0; f < WARMUP_FRAMES; f++) {
+                    detector.infer(slot);
+                }
+                warm.countDown();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (System.nanoTime() < deadline[0]) {
+                    detector.infer(slot);
+                    frames.incrementAndGet();
+                }
+            }, TAG + "-" + i);
+            threads[i].start();
+        }
+        warm.await();
+        final long begin = System.nanoTime();
+        deadline[0] = begin + MEASURE_MILLIS * 1_000_000L;
+        start.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        return frames.get() / ((System.nanoTime() - begin) / 1e9);
+    }
+}
@@ -0,0 +1,188 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Bundle;
+import android.os.Debug;
+import android.util.Log;
+import android.view.WindowManager;
+import android.widget.TextView;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import at.tuwien.ict.eml.odd.benchmark.CorpusBenchmark;
+import at.tuwien.ict.eml.odd.benchmark.FrameCorpus;
+import at.tuwien.ict.eml.odd.detection.InterpreterConfig;
+import at.tuwien.ict.eml.odd.detection.TFLiteObjectDetection;
+import at.tuwien.ict.eml.odd.tracking.Tracker;
+
+/**
+ * Headless benchmark which replays a recorded frame corpus through the detection path, without
+ * camera and model download. Started with adb, all extras but the model and labels are optional:
+ * <pre>
+ * adb shell am start -n at.tuwien.ict.eml.odd/.BenchmarkActivity \
+ *     --es model /sdcard/Android/data/at.tuwien.ict.eml.odd/files/benchmark/model.tflite \
+ *     --es labels /sdcard/Android/data/at.tuwien.ict.eml.odd/files/benchmark/labels.txt \
+ *     --ei inputSize 320 --ez quantized false --es corpus .../benchmark/corpus \
+ *     --ei warmUpPasses 2 --ei passes 5 --es threads 1,2,4 --es delegates cpu,xnnpack,nnapi
+ * </pre>
+ * The reports are written as CSV and JSON to the benchmark directory of the external files.
+ */
+public class BenchmarkActivity extends AppCompatActivity {
+    private static final String TAG = "TF_OD_BENCHMARK_LOG";
+    private static final String BENCHMARK_DIR = "benchmark";
+
+    private TextView statusView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        statusView = new TextView(this);
+        setContentView(statusView);
+        // the benchmark runs for minutes, keep the device from sleeping meanwhile
+        getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+
+        final Intent intent = getIntent();
+        final Thread thread = new Thread(() -> runBenchmark(intent), "BenchmarkActivity");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void status(final String message) {
+        Log.i(TAG, message);
+        runOnUiThread(() -> statusView.setText(message));
+    }
+
+    private void runBenchmark(final Intent intent) {
+        final File benchmarkDir = getExternalFilesDir(BENCHMARK_DIR);
+        final String modelPath = intent.getStringExtra("model");
+        final String labelsPath = intent.getStringExtra("labels");
+        if (benchmarkDir == null || modelPath == null || labelsPath == null) {
+            status("Missing the model or labels extra, or no external storage");
+            return;
+        }
+        final String corpusPath = intent.getStringExtra("corpus");
+        final File corpusDir = corpusPath != null ? new File(corpusPath) : new File(benchmarkDir, "corpus");
+        final String threads = intent.getStringExtra("threads");
+        final String delegates = intent.getStringExtra("delegates");
+
+        TFLiteObjectDetection detector = null;
+        try {
+            final ArrayList<String> labels = readLabels(new File(labelsPath));
+            final int inputSize = intent.getIntExtra("inputSize", 300);
+
+            status("Loading corpus " + corpusDir);
+            final FrameCorpus corpus = FrameCorpus.load(corpusDir, BenchmarkActivity::decodeImage);
+
+            status("Loading model " + modelPath);
+            detector = TFLiteObjectDetection.create(getApplicationContext(), new File(modelPath), labels,
+                    inputSize, intent.getBooleanExtra("quantized", false));
+            final TFLiteObjectDetection configured = detector;
+            final CorpusBenchmark benchmark = new CorpusBenchmark(
+                    detector,
+                    detector.getMetrics(),
+                    new Tracker(getApplicationContext(), labels.size()),
+                    config -> {
+                        configured.setInterpreterConfig(config);
+                        configured.awaitInterpreterConfig();
+                        if (!config.equals(configured.getInterpreterConfig())) {
+                            throw new IllegalStateException("Config not supported: " + config);
+                        }
+                    },
+                    inputSize,
+                    intent.getFloatExtra("confidence", 0.5f),
+                    intent.getIntExtra("warmUpPasses", 2),
+                    intent.getIntExtra("passes", 5))
+                    .setNativeHeapBytes(Debug::getNativeHeapAllocatedSize);
+
+            final List<InterpreterConfig> configs = CorpusBenchmark.configMatrix(
+                    parseInts(threads != null ? threads : "1,2,4"),
+                    (delegates != null ? delegates : "cpu,xnnpack").split(","));
+            status("Running " + corpus.size() + " frames with " + configs.size() + " configs");
+            final List<CorpusBenchmark.Result> results = benchmark.run(corpus, configs);
+
+            final String name = "report_" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.ENGLISH).format(new Date());
+            final String csv = CorpusBenchmark.toCsv(results);
+            write(new File(benchmarkDir, name + ".csv"), csv);
+            write(new File(benchmarkDir, name + ".json"), CorpusBenchmark.toJson(results));
+            status("Wrote " + new File(benchmarkDir, name) + ".csv and .json\n\n" + csv);
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Benchmark failed", e);
+            status("Benchmark failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (detector != null) {
+                detector.close();
+            }
+        }
+    }
+
+    private static FrameCorpus.Frame decodeImage(final File file) {
+        final Bitmap bitmap = BitmapFactory.decodeFile(file.getPath());
+        if (bitmap == null) {
+            return null;
+        }
+        final int[] argb = new int[bitmap.getWidth() * bitmap.getHeight()];
+        bitmap.getPixels(argb, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+        final FrameCorpus.Frame frame = FrameCorpus.fromArgb(file.getName(), argb, bitmap.getWidth(), bitmap.getHeight());
+        bitmap.recycle();
+        return frame;
+    }
+
+    private static ArrayList<String> readLabels(final File file) throws IOException {
+        final ArrayList<String> labels = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                labels.add(line.trim());
+            }
+        }
+        return labels;
+    }
+
+    private static int[] parseInts(final String values) {
+        final String[] parts = values.split(",");
+        final int[] ints = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            ints[i] = Integer.parseInt(parts[i].trim());
+        }
+        return ints;
+    }
+
+    private static void write(final File file, final String content) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(content);
+        }
+    }
+}
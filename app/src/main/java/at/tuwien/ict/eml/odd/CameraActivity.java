@@ -48,14 +48,15 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Matrix;
 import android.graphics.Paint;
-import android.graphics.RectF;
 import android.media.MediaScannerConnection;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.PowerManager;
 import android.os.SystemClock;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
+import android.util.Log;
 import android.util.Size;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -85,10 +86,19 @@ import java.util.concurrent.Executor;
 import at.tuwien.ict.eml.odd.customView.OverlayView;
 import at.tuwien.ict.eml.odd.env.Boxplot;
 import at.tuwien.ict.eml.odd.env.ImageUtils;
+import at.tuwien.ict.eml.odd.detection.DetectionSlot;
 import at.tuwien.ict.eml.odd.detection.Detector;
 import at.tuwien.ict.eml.odd.detection.FirebaseML;
+import at.tuwien.ict.eml.odd.detection.InterpreterConfigStore;
 import at.tuwien.ict.eml.odd.detection.TFLiteObjectDetection;
-import at.tuwien.ict.eml.odd.env.YuvToRgbConverter;
+import at.tuwien.ict.eml.odd.detection.TiledDetector;
+import at.tuwien.ict.eml.odd.env.YuvPlanes;
+import at.tuwien.ict.eml.odd.pipeline.AnalysisPipeline;
+import at.tuwien.ict.eml.odd.pipeline.DetectionScheduler;
+import at.tuwien.ict.eml.odd.pipeline.FrameRateGovernor;
+import at.tuwien.ict.eml.odd.stats.P2Quantile;
+import at.tuwien.ict.eml.odd.stats.SlidingQuantiles;
+import at.tuwien.ict.eml.odd.stats.StageMetrics;
 import at.tuwien.ict.eml.odd.tracking.Tracker;
 
 import static java.util.concurrent.Executors.newSingleThreadExecutor;
@@ -96,7 +106,7 @@ import static java.util.concurrent.Executors.newSingleThreadExecutor;
 public class CameraActivity extends AppCompatActivity {
     // region VARIABLES
 
-    // private static final String TAG = "TF_OD_CAMERA_ACT_LOG";
+    private static final String TAG = "TF_OD_CAMERA_ACT_LOG";
 
     // properties from cloud - model specific
     private String remoteConfChosenModelLabel;
@@ -109,11 +119,32 @@ public class CameraActivity extends AppCompatActivity {
     private boolean prefCropModeContain;
     private int prefBoxplotValueSize;
     private boolean prefOneshotMode;
+    private boolean prefTiledCapture;
 
     private boolean analysisRunning;
 
     private final DetectorMode MODE = DetectorMode.TF_OD_API;
 
+    // frames in flight in the analysis pipeline besides the ones in the inference stage,
+    // one being preprocessed and one waiting for the postprocessing
+    private static final int ANALYSIS_PIPELINE_EXTRA_SLOTS = 2;
+
+    // tiles of the tiled capture detection, neighbours share 20% so objects on a seam are found completely in one of them
+    private static final int TILED_CAPTURE_TILES_PER_SHORT_SIDE = 3;
+    private static final float TILED_CAPTURE_OVERLAP = 0.2f;
+
+    // mean luma change out of 255 since the last inferred frame which triggers an inference in the adaptive mode
+    private static final float ADAPTIVE_DETECTION_MOTION_THRESHOLD = 8.0f;
+
+    // decisions of the frame rate governor are logged as csv lines with this tag
+    private static final String GOVERNOR_TAG = "FrameRateGovernor";
+    private static final int GOVERNOR_MAX_DETECTION_INTERVAL = 10;
+    private static final int GOVERNOR_WINDOW = 30;
+    // analysis resolution per governor tier, relative to the model input size
+    private static final float[] ANALYSIS_RESOLUTION_SCALES = {2.0f, 1.5f, 1.0f};
+    // inference times above are plotted as this value
+    private static final int BOXPLOT_MAX_LATENCY_MS = 10000;
+
     private enum DetectorMode {
         TF_OD_API
     }
@@ -125,6 +156,8 @@ public class CameraActivity extends AppCompatActivity {
     private int PERMISSIONS_REQUEST;
 
     private Detector detector;
+    private TFLiteObjectDetection tfLiteDetector;
+    private TiledDetector tiledDetector;
     private Tracker tracker;
 
     private long currentInferenceTimestamp;
@@ -132,15 +165,27 @@ public class CameraActivity extends AppCompatActivity {
     private boolean prefShowConfidence;
     private String prefBoundingBoxColorMode;
 
-    private Bitmap rgb_bitmap_analyze;
-    private Bitmap rgb_bitmap_analyze_crop;
+    private final YuvPlanes yuv_frame_analyze = new YuvPlanes();
+    private AnalysisPipeline<DetectionSlot> analysisPipeline;
+    private int analysisPipelineWorkers;
+    // first frame of the pipeline submitted after the warm-up of the detector, -1 while warming up
+    private volatile long firstSteadyStateFrameNumber = -1;
+    // decides which frames are inferred, the tracker predicts the others
+    private volatile DetectionScheduler detectionScheduler = new DetectionScheduler(1, 0);
+    private boolean prefAdaptiveDetection;
+    // threads and delegate come from the autotuner instead of the preferences and the governor
+    private boolean prefAutotune;
+    // logs the stage latencies, queue depths and frame counters of the analysis pipeline every second
+    private boolean prefStatLogging;
+    // adapts the detection interval, analysis resolution and threads, null if disabled
+    private volatile FrameRateGovernor frameRateGovernor;
+    private PowerManager.OnThermalStatusChangedListener thermalStatusListener;
+    private int analysisResolutionTier;
+    private int governorThreads;
     private Matrix screenFrameToCrop;
     private Matrix cropToScreenFrame = new Matrix();
 
-    private YuvToRgbConverter ytrConverter;
-
     private long[] inferencePSInterval = {0};
-    private long lastProcessingTimeMs;
     private long[] lastInferenceTimestamp;
 
     private Executor executorAnalyze;
@@ -165,7 +210,10 @@ public class CameraActivity extends AppCompatActivity {
     private ImageButton captureButton;
 
     private Boxplot boxPlot;
-    private ArrayList<Integer> boxPlotValues = new ArrayList<>();
+    // inference times of the last frames, only touched on the UI thread
+    private SlidingQuantiles boxPlotValues = new SlidingQuantiles(50, BOXPLOT_MAX_LATENCY_MS);
+    // p50, p90 and p99 of all inference times of the session, only touched on the UI thread
+    private final P2Quantile[] sessionQuantiles = {new P2Quantile(0.5), new P2Quantile(0.9), new P2Quantile(0.99)};
 
     //endregion
 
@@ -228,8 +276,6 @@ public class CameraActivity extends AppCompatActivity {
         cropPreviewBoxes.setStyle(Paint.Style.STROKE);
         cropPreviewBoxes.setStrokeWidth(2.0f);
 
-        ytrConverter = new YuvToRgbConverter(getApplicationContext());
-
         // set random permission int
         Random rand = new Random();
         PERMISSIONS_REQUEST = rand.nextInt(100);
@@ -289,13 +335,16 @@ public class CameraActivity extends AppCompatActivity {
 
         // config of the detector - only one time needed
         try {
-            detector = TFLiteObjectDetection.create(
+            tfLiteDetector = TFLiteObjectDetection.create(
                     getApplicationContext(),
                     modelFile,
                     remoteConfLabelMapList,
                     remoteConfModelInputSize,
                     remoteConfModelIsQuantized
             );
+            detector = tfLiteDetector;
+            tiledDetector = new TiledDetector(
+                    tfLiteDetector, remoteConfModelInputSize, TILED_CAPTURE_TILES_PER_SHORT_SIDE, TILED_CAPTURE_OVERLAP);
         } catch (IOException e) {
             finish();
             e.printStackTrace();
@@ -306,6 +355,28 @@ public class CameraActivity extends AppCompatActivity {
         textViewCropSize.setText(String.format("%d x %d", remoteConfModelInputSize, remoteConfModelInputSize));
     }
 
+    /**
+     * (re)create the analysis pipeline with one inference worker per interpreter of the detector
+     * @param workers number of frames inferred in parallel
+     */
+    private void setupAnalysisPipeline(int workers) {
+        if (analysisPipeline != null) {
+            if (analysisPipelineWorkers == workers) {
+                return;
+            }
+            analysisPipeline.close();
+        }
+        // always analyze the newest camera frame, older ones waiting for the inference are skipped
+        analysisPipeline = new AnalysisPipeline<>(
+                tfLiteDetector,
+                workers + ANALYSIS_PIPELINE_EXTRA_SLOTS,
+                workers,
+                AnalysisPipeline.DropPolicy.DROP_OLDEST,
+                analysisResults);
+        analysisPipelineWorkers = workers;
+        firstSteadyStateFrameNumber = -1;
+    }
+
     /**
      * setup a Tracker instance and register the custom drawCallback
      */
@@ -315,7 +386,9 @@ public class CameraActivity extends AppCompatActivity {
         trackingOverlay.addCallback(new OverlayView.DrawCallback() {
             @Override
             public void drawCallback(Canvas canvas) {
+                final long start = System.nanoTime();
                 tracker.draw(canvas);
+                recordStage(StageMetrics.Stage.DRAW, start);
             }
         });
     }
@@ -341,7 +414,44 @@ public class CameraActivity extends AppCompatActivity {
         });
         //plotOverlay.postInvalidate();
         // set text label
-        textViewBoxplotDesc.setText(String.format("Inference Boxplot (n = %s)", prefBoxplotValueSize));
+        updateBoxplotDescription();
+    }
+
+    /**
+     * Records the time since start for the stage in the metrics of the detector, if there is one
+     */
+    private void recordStage(final StageMetrics.Stage stage, final long start) {
+        final TFLiteObjectDetection detector = tfLiteDetector;
+        if (detector != null) {
+            detector.getMetrics().record(stage, System.nanoTime() - start);
+        }
+    }
+
+    private void countFrame(final StageMetrics.Counter counter) {
+        final TFLiteObjectDetection detector = tfLiteDetector;
+        if (detector != null) {
+            detector.getMetrics().increment(counter);
+        }
+    }
+
+    /**
+     * Sets the boxplot label, with the tail latencies once the window of the boxplot is full and
+     * the quantiles of the whole session below
+     */
+    private void updateBoxplotDescription() {
+        String description;
+        if (boxPlotValues.isFull()) {
+            description = String.format(Locale.ENGLISH, "Inference Boxplot (n = %d, p90 %d ms, p99 %d ms)",
+                    prefBoxplotValueSize, boxPlotValues.quantile(0.9), boxPlotValues.quantile(0.99));
+        } else {
+            description = String.format(Locale.ENGLISH, "Inference Boxplot (n = %d)", prefBoxplotValueSize);
+        }
+        if (sessionQuantiles[0].getCount() > 0) {
+            description += String.format(Locale.ENGLISH, "\nSession (n = %d, p50 %.0f ms, p90 %.0f ms, p99 %.0f ms)",
+                    sessionQuantiles[0].getCount(), sessionQuantiles[0].getQuantile(),
+                    sessionQuantiles[1].getQuantile(), sessionQuantiles[2].getQuantile());
+        }
+        textViewBoxplotDesc.setText(description);
     }
 
     /**
@@ -380,11 +490,12 @@ public class CameraActivity extends AppCompatActivity {
                 .build();
 
         // create image analysis for the further processing of the preview pictures
-        // set the minimum preview size
+        // set the minimum preview size, lowered by the frame rate governor under thermal pressure
+        int analysisResolution = (int) (ANALYSIS_RESOLUTION_SCALES[analysisResolutionTier] * remoteConfModelInputSize);
         // TODO try different target sizes to see which resolutions
         ImageAnalysis analyzer = new ImageAnalysis.Builder()
                 .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
-                .setTargetResolution(new Size(2 * remoteConfModelInputSize, 2 * remoteConfModelInputSize))
+                .setTargetResolution(new Size(analysisResolution, analysisResolution))
                 .build();
 
         // sets up an image analyzer to receive a data stream from the camera
@@ -461,57 +572,97 @@ public class CameraActivity extends AppCompatActivity {
                 return;
             }
 
-            // convert the image from the camera feed to the rgb format
-            if (rgb_bitmap_analyze == null) {
-                rgb_bitmap_analyze = Bitmap.createBitmap(imageWidth, imageHeight, Bitmap.Config.ARGB_8888);
+            // wrap the yuv planes of the camera feed, the pipeline samples the largest crop with the
+            // given aspect ratio directly out of them, without an intermediate rgb bitmap.
+            // Inference and tracking run on the pipeline threads, so the image can be closed as
+            // soon as it is preprocessed.
+            yuv_frame_analyze.set(image.getImage());
+            countFrame(StageMetrics.Counter.FRAMES);
+            FrameRateGovernor governor = frameRateGovernor;
+            if (governor != null) {
+                governor.onFrame(SystemClock.uptimeMillis());
             }
-            ytrConverter.yuvToRgb(image.getImage(), rgb_bitmap_analyze);
-
-            // crop original camera image with respect of the largest crop with the given aspect ratio
-            // creates a frame out of the analyzer image with the highest possible resolution
-            rgb_bitmap_analyze_crop = ImageUtils.ConvertPreviewBitmapToModelInput(
-                    rgb_bitmap_analyze,
+            if (!detectionScheduler.shouldDetect(yuv_frame_analyze)) {
+                // frame without inference, the tracker moves the boxes along their motion. While
+                // earlier frames are in the pipeline, the step runs after their detections are applied
+                if (analysisPipeline.skip()) {
+                    final long trackStart = System.nanoTime();
+                    tracker.predictFrame();
+                    recordStage(StageMetrics.Stage.TRACK, trackStart);
+                }
+                countFrame(StageMetrics.Counter.SKIPPED);
+                image.close();
+                return;
+            }
+            if (firstSteadyStateFrameNumber < 0 && tfLiteDetector.isWarmedUp()) {
+                firstSteadyStateFrameNumber = analysisPipeline.getSubmittedFrames();
+            }
+            final boolean submitted = analysisPipeline.submit(
+                    yuv_frame_analyze,
                     trackerFrameSize.getWidth(),
                     trackerFrameSize.getHeight(),
                     imageRotDegreesTemp,
-                    remoteConfModelInputSize,
-                    true,
-                    prefCropModeContain
-            );
+                    prefCropModeContain,
+                    SystemClock.uptimeMillis());
+            if (!submitted) {
+                countFrame(StageMetrics.Counter.DROPPED);
+            }
+            //close to continue to next frame and recycle variables
+            image.close();
+        }
+    };
+
+    /**
+     * gets called on the postprocess thread of the analysis pipeline when the detection of a frame is done
+     */
+    private final AnalysisPipeline.ResultListener analysisResults = new AnalysisPipeline.ResultListener() {
+        // only used on the postprocess thread, reused for every frame
+        private final List<Detector.Recognition> mappedRecognitions = new ArrayList<>();
 
+        @Override
+        public void onResults(AnalysisPipeline.Job job, List<Detector.Recognition> results) {
             // configure a transformation matrix for mapping the crop image back to the visible frame
             screenFrameToCrop = ImageUtils.getTransformationMatrix(
-                    trackerFrameSize.getWidth(),
-                    trackerFrameSize.getHeight(),
+                    job.aspectDstWidth,
+                    job.aspectDstHeight,
                     remoteConfModelInputSize,
                     remoteConfModelInputSize,
                     0,
-                    prefCropModeContain);
+                    job.cropModeContain);
             screenFrameToCrop.invert(cropToScreenFrame);
 
-            // measure the inference time
-            // ********************************************************
-            final long startTime = SystemClock.uptimeMillis();
-            final List<Detector.Recognition> results =
-                    detector.recognizeImage(rgb_bitmap_analyze_crop);
-            lastProcessingTimeMs = SystemClock.uptimeMillis() - startTime;
-            // ********************************************************
+            // the inference time of a frame is its preprocessing and inference stage
+            // a local, the stats runnable reads it on the UI thread while the next frame is processed
+            final long processingTimeMs = (job.preprocessNanos + job.inferenceNanos) / 1000000;
+            // frames submitted during the warm-up of the detector are outliers, keep them out of the boxplot
+            final boolean steadyState = firstSteadyStateFrameNumber >= 0 && job.frameNumber >= firstSteadyStateFrameNumber;
+
+            FrameRateGovernor governor = frameRateGovernor;
+            if (governor != null && steadyState) {
+                final FrameRateGovernor.Decision decision = governor.onInference(processingTimeMs);
+                if (decision != null) {
+                    runOnUiThread(() -> applyGovernorDecision(governor, decision));
+                }
+            }
 
             // calculate and post boxplot and stats async
             runOnUiThread(
                     new Runnable() {
                         @Override
                         public void run() {
-                            // add inference time to dataset
-                            boxPlotValues.add((int) lastProcessingTimeMs);
                             // set the inference in the stat panel
-                            textViewInference.setText(String.format("%d ms", (int) lastProcessingTimeMs));
+                            textViewInference.setText(String.format("%d ms", (int) processingTimeMs));
 
-                            if (boxPlotValues.size() >= prefBoxplotValueSize) {
-                                // when dataset is big enough, LIFO
-                                boxPlot.setBoxplotData((ArrayList<Integer>) boxPlotValues.clone());
-                                // remove first element
-                                boxPlotValues.remove(0);
+                            if (steadyState) {
+                                // add inference time to dataset
+                                boxPlotValues.add((int) processingTimeMs);
+                                for (final P2Quantile quantile : sessionQuantiles) {
+                                    quantile.add(processingTimeMs);
+                                }
+                                if (boxPlotValues.isFull()) {
+                                    // when dataset is big enough, the window drops the oldest value
+                                    boxPlot.setBoxplotData(boxPlotValues);
+                                }
                             }
 
                             // increase inference counter
@@ -521,10 +672,15 @@ public class CameraActivity extends AppCompatActivity {
                             if (currentInferenceTimestamp - lastInferenceTimestamp[0] >= 1000) {
                                 //update Boxplot
                                 plotOverlay.postInvalidate();
+                                updateBoxplotDescription();
                                 float fps = 1000.0f * (float) (inferencePSInterval[0]) / (float) (currentInferenceTimestamp - lastInferenceTimestamp[0]);
                                 // set inference textView in UI
                                 textViewInferencePS.setText(String.format("%.2f", fps));
                                 //Log.d(TAG, "Detection Pipeline Performance: " + fps + " FPS");
+                                final AnalysisPipeline<DetectionSlot> pipeline = analysisPipeline;
+                                if (prefStatLogging && pipeline != null) {
+                                    Log.i(TAG, pipeline.getStatString());
+                                }
                                 // reset
                                 inferencePSInterval[0] = 0;
                                 lastInferenceTimestamp[0] = currentInferenceTimestamp;
@@ -532,7 +688,6 @@ public class CameraActivity extends AppCompatActivity {
                         }
                     });
 
-            //final Canvas canvas = new Canvas(rgb_bitmap_analyze_crop);
             float minimumConfidence;
             switch (MODE) {
                 case TF_OD_API:
@@ -542,23 +697,25 @@ public class CameraActivity extends AppCompatActivity {
                     throw new IllegalStateException("Unexpected value: " + MODE);
             }
 
-            final List<Detector.Recognition> mappedRecognitions = new ArrayList<>();
-
-            for (final Detector.Recognition result : results) {
-                final RectF location = result.getLocation();
-                if (location != null && result.getConfidence() >= minimumConfidence) {
-                    //canvas.drawRect(location, cropPreviewBoxes);
-                    cropToScreenFrame.mapRect(location);
-                    result.setLocation(location);
-                    mappedRecognitions.add(result);
-                }
-            }
+            final long filterStart = System.nanoTime();
+            Detector.Recognition.mapConfident(
+                    results, minimumConfidence, cropToScreenFrame, mappedRecognitions);
+            recordStage(StageMetrics.Stage.FILTER, filterStart);
 
-            tracker.trackResults(mappedRecognitions, startTime);
+            final long trackStart = System.nanoTime();
+            tracker.trackResults(mappedRecognitions, job.timestamp);
+            recordStage(StageMetrics.Stage.TRACK, trackStart);
             trackingOverlay.postInvalidate();
-            //Log.d(TAG+"_time", "Inference time: " + lastProcessingTimeMs + "ms");
-            //close to continue to next frame and recycle variables
-            image.close();
+        }
+
+        @Override
+        public void onSkippedFrames(int frames) {
+            // frames without inference which came after the frame of the last results
+            final long trackStart = System.nanoTime();
+            for (int i = 0; i < frames; i++) {
+                tracker.predictFrame();
+            }
+            recordStage(StageMetrics.Stage.TRACK, trackStart);
         }
     };
 
@@ -659,17 +816,6 @@ public class CameraActivity extends AppCompatActivity {
                             prefCropModeContain);
                     screenFrameToCropCapture.invert(cropCaptureToScreenFrame);
 
-                    // measure the inference time
-                    // ********************************************************
-                    final long startTime = SystemClock.uptimeMillis();
-                    final List<Detector.Recognition> results =
-                            detector.recognizeImage(rgb_bitmap_capture_crop);
-                    lastProcessingTimeMs = SystemClock.uptimeMillis() - startTime;
-                    // ********************************************************
-
-                    // creates a canvas on the cropped image
-                    final Canvas canvas = new Canvas(rgb_bitmap_capture_crop);
-
                     // set the minimum confidence according to the chosen mode
                     float minimumConfidence;
                     switch (MODE) {
@@ -683,17 +829,54 @@ public class CameraActivity extends AppCompatActivity {
                     // declares a list for the recognitions
                     final List<Detector.Recognition> mappedRecognitions = new ArrayList<>();
 
-                    // computes all results from the inference
-                    for (final Detector.Recognition result : results) {
-                        final RectF location = result.getLocation();
-                        if (location != null && result.getConfidence() >= minimumConfidence) {
-                            // draws the recognized object onto cropped bitmap
-                            canvas.drawRect(location, cropPreviewBoxes);
-                            // maps the recognized object onto frame
-                            // and add it to the mapped recognitions
-                            cropCaptureToScreenFrame.mapRect(location);
-                            result.setLocation(location);
-                            mappedRecognitions.add(result);
+                    final long startTime = SystemClock.uptimeMillis();
+                    // own timing of the capture, the analysis pipeline keeps running meanwhile
+                    final long captureTimeMs;
+                    if (prefTiledCapture) {
+                        // detect on overlapping model sized tiles of the full resolution visible frame,
+                        // the results are already in the coordinates of the visible frame
+                        int regionWidth = rgb_bitmap_capture_result.getWidth();
+                        int regionHeight = rgb_bitmap_capture_result.getHeight();
+                        if (prefCropModeContain) {
+                            regionWidth = regionHeight = Math.min(regionWidth, regionHeight);
+                        }
+                        final List<Detector.Recognition> results = tiledDetector.recognizeRegion(
+                                rgb_bitmap_capture_result,
+                                (rgb_bitmap_capture_result.getWidth() - regionWidth) / 2,
+                                (rgb_bitmap_capture_result.getHeight() - regionHeight) / 2,
+                                regionWidth,
+                                regionHeight);
+                        captureTimeMs = SystemClock.uptimeMillis() - startTime;
+                        Log.i(TAG, String.format("Tiled capture detection: %.1f tiles/s, %d ms",
+                                tiledDetector.getLastTilesPerSecond(), captureTimeMs));
+
+                        for (final Detector.Recognition result : results) {
+                            if (result.getConfidence() >= minimumConfidence) {
+                                mappedRecognitions.add(result);
+                            }
+                        }
+                    } else {
+                        // measure the inference time
+                        // ********************************************************
+                        final List<Detector.Recognition> results =
+                                detector.recognizeImage(rgb_bitmap_capture_crop);
+                        captureTimeMs = SystemClock.uptimeMillis() - startTime;
+                        // ********************************************************
+
+                        // creates a canvas on the cropped image
+                        final Canvas canvas = new Canvas(rgb_bitmap_capture_crop);
+
+                        // computes all results from the inference
+                        for (final Detector.Recognition result : results) {
+                            if (result.hasLocation() && result.getConfidence() >= minimumConfidence) {
+                                // draws the recognized object onto cropped bitmap
+                                canvas.drawRect(result.getLeft(), result.getTop(),
+                                        result.getRight(), result.getBottom(), cropPreviewBoxes);
+                                // maps the recognized object onto frame in place
+                                // and add it to the mapped recognitions
+                                result.mapLocation(cropCaptureToScreenFrame);
+                                mappedRecognitions.add(result);
+                            }
                         }
                     }
                     // creates a canvas onto the result frame
@@ -715,7 +898,7 @@ public class CameraActivity extends AppCompatActivity {
                     trackerCapture.trackResults(mappedRecognitions, startTime);
                     trackerCapture.draw(captureCanvas);
 
-                    //Log.d(TAG+"_time", "Inference time: " + lastProcessingTimeMs + "ms");
+                    //Log.d(TAG+"_time", "Inference time: " + captureTimeMs + "ms");
                     //close to continue to next frame and recycle variables
 
                     // save the visible frame with the tracking layer to memory
@@ -829,11 +1012,21 @@ public class CameraActivity extends AppCompatActivity {
 
         prefDetectionConfidenceThreshold = pref.getInt("confidence_threshold", 50) / 100.0f;
         prefBoxplotValueSize = pref.getInt("boxplot_number_samples", 50);
+        // log the per stage latencies and frame counters of the detector and the pipeline periodically
+        prefStatLogging = pref.getBoolean("stat_logging_enable", false);
+        tfLiteDetector.enableStatLogging(prefStatLogging);
+        if (boxPlotValues.window() != prefBoxplotValueSize) {
+            boxPlotValues = new SlidingQuantiles(prefBoxplotValueSize, BOXPLOT_MAX_LATENCY_MS);
+        }
         prefBoundingBoxColorMode = pref.getString("boundingBoxColorMode", "classes");
         prefShowConfidence = pref.getBoolean("show_confidence", false);
 
         // set visibility of the capture button, bottomsheet and tracker
         prefOneshotMode = pref.getBoolean("oneshot_enable", false);
+        prefTiledCapture = pref.getBoolean("tiled_capture_enable", false);
+        // infer every n-th frame only, or earlier on motion in the adaptive mode
+        prefAdaptiveDetection = pref.getBoolean("adaptive_detection_enable", false);
+        setupDetectionScheduler(pref.getInt("detection_interval", 1));
         tracker.setTrackingVisible(!prefOneshotMode);
         if (prefOneshotMode) {
             captureButton.setVisibility(View.VISIBLE);
@@ -846,12 +1039,24 @@ public class CameraActivity extends AppCompatActivity {
         }
 
         // set boxplot label
-        textViewBoxplotDesc.setText(String.format("Inference Boxplot (n = %d)", prefBoxplotValueSize));
+        updateBoxplotDescription();
+
+        prefAutotune = pref.getBoolean("autotune_enable", false);
+        if (prefAutotune) {
+            // threads and delegate are measured once per model and device and then loaded
+            tfLiteDetector.autotune(new InterpreterConfigStore(getApplicationContext()));
+        } else {
+            // set nnapi usage
+            detector.setUseNNAPI(pref.getBoolean("nnapi_enable", true));
+            // det number of used threads for the detection
+            detector.setNumThreads(pref.getInt("number_threads", 4));
+        }
+        // number of interpreters running frames in parallel, each with the threads above
+        int interpreterPoolSize = pref.getInt("interpreter_pool_size", 1);
+        tfLiteDetector.setInterpreterPoolSize(interpreterPoolSize);
+        setupAnalysisPipeline(interpreterPoolSize);
 
-        // set nnapi usage
-        detector.setUseNNAPI(pref.getBoolean("nnapi_enable", true));
-        // det number of used threads for the detection
-        detector.setNumThreads(pref.getInt("number_threads", 4));
+        setupFrameRateGovernor(pref);
 
         // create camera again after destroying it on pause
         if (allPermissionsGranted(REQUIRED_PERMISSIONS)) {
@@ -859,8 +1064,88 @@ public class CameraActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * (re)create the detection scheduler with the given interval and the adaptive mode of the preferences
+     * @param interval every interval-th frame is inferred
+     */
+    private void setupDetectionScheduler(int interval) {
+        detectionScheduler = new DetectionScheduler(
+                interval,
+                prefAdaptiveDetection ? ADAPTIVE_DETECTION_MOTION_THRESHOLD : 0);
+    }
+
+    /**
+     * create the frame rate governor if enabled and follow the thermal status of the device
+     * @param pref app preferences
+     */
+    private void setupFrameRateGovernor(SharedPreferences pref) {
+        removeThermalStatusListener();
+        analysisResolutionTier = 0;
+        governorThreads = pref.getInt("number_threads", 4);
+        if (!pref.getBoolean("governor_enable", false)) {
+            frameRateGovernor = null;
+            return;
+        }
+        final FrameRateGovernor governor = new FrameRateGovernor(
+                1000.0f / pref.getInt("governor_target_fps", 15),
+                GOVERNOR_MAX_DETECTION_INTERVAL,
+                governorThreads,
+                ANALYSIS_RESOLUTION_SCALES.length,
+                GOVERNOR_WINDOW);
+        frameRateGovernor = governor;
+        Log.i(GOVERNOR_TAG, FrameRateGovernor.Decision.CSV_HEADER);
+        Log.i(GOVERNOR_TAG, governor.getDecision().toString());
+
+        // the thermal status is only available from Android 10 on
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+            thermalStatusListener = status -> {
+                final FrameRateGovernor.Decision decision = governor.onThermalStatus(status);
+                if (decision != null) {
+                    applyGovernorDecision(governor, decision);
+                }
+            };
+            // calls the listener with the current status right away, on the main thread
+            powerManager.addThermalStatusListener(thermalStatusListener);
+        }
+    }
+
+    private void removeThermalStatusListener() {
+        if (thermalStatusListener != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+            powerManager.removeThermalStatusListener(thermalStatusListener);
+        }
+        thermalStatusListener = null;
+    }
+
+    /**
+     * apply and log a decision of the frame rate governor, runs on the main thread
+     * @param governor the governor which made the decision, ignored if it got replaced meanwhile
+     * @param decision the new workload setting
+     */
+    private void applyGovernorDecision(FrameRateGovernor governor, FrameRateGovernor.Decision decision) {
+        if (governor != frameRateGovernor) {
+            return;
+        }
+        Log.i(GOVERNOR_TAG, decision.toString());
+        setupDetectionScheduler(decision.detectionInterval);
+        // the autotuned threads are kept, the governor only adapts the interval and resolution then
+        if (!prefAutotune && decision.numThreads != governorThreads) {
+            governorThreads = decision.numThreads;
+            detector.setNumThreads(governorThreads);
+        }
+        if (decision.resolutionTier != analysisResolutionTier) {
+            analysisResolutionTier = decision.resolutionTier;
+            // rebind the analyzer with the new target resolution
+            if (cameraProvider != null && !prefOneshotMode) {
+                bindCamera(cameraProvider);
+            }
+        }
+    }
+
     @Override
     public synchronized void onPause() {
+        removeThermalStatusListener();
         // unbind from camera destroys analyze que in executor
         if (cameraProvider != null) {
             cameraProvider.unbindAll();
@@ -870,6 +1155,9 @@ public class CameraActivity extends AppCompatActivity {
 
     @Override
     public synchronized void onDestroy() {
+        if (analysisPipeline != null) {
+            analysisPipeline.close();
+        }
         super.onDestroy();
     }
 
@@ -0,0 +1,326 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.benchmark;
+
+import android.graphics.Matrix;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.LongSupplier;
+
+import at.tuwien.ict.eml.odd.detection.Detector;
+import at.tuwien.ict.eml.odd.detection.Detector.Recognition;
+import at.tuwien.ict.eml.odd.detection.InterpreterConfig;
+import at.tuwien.ict.eml.odd.env.ImageUtils;
+import at.tuwien.ict.eml.odd.env.YuvPlanes;
+import at.tuwien.ict.eml.odd.stats.LatencyHistogram;
+import at.tuwien.ict.eml.odd.stats.StageMetrics;
+import at.tuwien.ict.eml.odd.stats.StageMetrics.Stage;
+import at.tuwien.ict.eml.odd.tracking.Tracker;
+
+/**
+ * Replays a {@link FrameCorpus} through the detection path of the camera, wrapping the frame into
+ * YUV planes, the detection on them, the confidence filter and the tracker, once per interpreter
+ * config of a matrix. Every config gets a number of warm-up passes over the corpus which are not
+ * measured and a number of measured passes, and ends up as one {@link Result} with the stage
+ * latencies, the frame rate and the memory peaks, or with the reason it could not be applied.
+ */
+public class CorpusBenchmark {
+    private static final String TAG = "CorpusBenchmark";
+    private static final String[] CSV_STAGE_COLUMNS = {"mean_ms", "p50_ms", "p90_ms", "p99_ms"};
+
+    /**
+     * Switches the interpreters of the detector, implemented by the caller.
+     */
+    public interface ConfigSwitch {
+        /**
+         * Blocks until the detector runs with the config.
+         * @throws RuntimeException If the config can not be used, the config is reported as failed
+         */
+        void apply(InterpreterConfig config) throws InterruptedException;
+    }
+
+    /**
+     * Measurements of one interpreter config, or the reason it failed.
+     */
+    public static final class Result {
+        public final InterpreterConfig config;
+        public final int frames;
+        public final double seconds;
+        public final long javaHeapPeakBytes;
+        public final long nativeHeapPeakBytes;
+        // why the config could not be applied, null if it was measured
+        public final String failure;
+        // mean, p50, p90 and p99 in ms per stage, indexed by Stage.ordinal()
+        final double[][] stageMs;
+        final String metricsJson;
+
+        Result(final InterpreterConfig config, final int frames, final double seconds, final StageMetrics metrics,
+               final long javaHeapPeakBytes, final long nativeHeapPeakBytes) {
+            this.config = config;
+            this.frames = frames;
+            this.seconds = seconds;
+            this.javaHeapPeakBytes = javaHeapPeakBytes;
+            this.nativeHeapPeakBytes = nativeHeapPeakBytes;
+            this.failure = null;
+            this.stageMs = new double[Stage.values().length][];
+            for (final Stage stage : Stage.values()) {
+                final LatencyHistogram histogram = metrics.getHistogram(stage);
+                stageMs[stage.ordinal()] = new double[]{histogram.getMeanMs(), histogram.getQuantileMs(0.5),
+                        histogram.getQuantileMs(0.9), histogram.getQuantileMs(0.99)};
+            }
+            this.metricsJson = metrics.toJson();
+        }
+
+        Result(final InterpreterConfig config, final String failure) {
+            this.config = config;
+            this.frames = 0;
+            this.seconds = 0;
+            this.javaHeapPeakBytes = 0;
+            this.nativeHeapPeakBytes = 0;
+            this.failure = failure;
+            this.stageMs = new double[Stage.values().length][CSV_STAGE_COLUMNS.length];
+            this.metricsJson = null;
+        }
+
+        public boolean isFailed() {
+            return failure != null;
+        }
+
+        public double getFps() {
+            return seconds > 0 ? frames / seconds : 0;
+        }
+
+        /**
+         * @return Mean latency of the stage in ms, 0 if it was not measured
+         */
+        public double getMeanMs(final Stage stage) {
+            return stageMs[stage.ordinal()][0];
+        }
+    }
+
+    private final Detector detector;
+    private final StageMetrics metrics;
+    private final Tracker tracker;
+    private final ConfigSwitch configSwitch;
+    private final int modelInputSize;
+    private final float minimumConfidence;
+    private final int warmUpPasses;
+    private final int measuredPasses;
+    private LongSupplier nativeHeapBytes = () -> 0;
+
+    private final YuvPlanes planes = new YuvPlanes();
+    private final Matrix cropToFrame = new Matrix();
+    private final List<Recognition> mapped = new ArrayList<>();
+    private long frameNumber;
+
+    /**
+     * @param detector Detector running the frames, it records its stages into the metrics
+     * @param metrics Metrics of the detector, reset for every config
+     * @param tracker Tracker getting the filtered recognitions
+     * @param configSwitch Switches the interpreters of the detector
+     * @param modelInputSize Input size of the model, to map the recognitions back to the frame
+     * @param minimumConfidence Recognitions below are filtered like on the camera path
+     * @param warmUpPasses Passes over the corpus per config before the measurement
+     * @param measuredPasses Measured passes over the corpus per config
+     */
+    public CorpusBenchmark(
+            final Detector detector,
+            final StageMetrics metrics,
+            final Tracker tracker,
+            final ConfigSwitch configSwitch,
+            final int modelInputSize,
+            final float minimumConfidence,
+            final int warmUpPasses,
+            final int measuredPasses) {
+        if (warmUpPasses < 0 || measuredPasses < 1) {
+            throw new IllegalArgumentException("At least one measured pass needed");
+        }
+        this.detector = detector;
+        this.metrics = metrics;
+        this.tracker = tracker;
+        this.configSwitch = configSwitch;
+        this.modelInputSize = modelInputSize;
+        this.minimumConfidence = minimumConfidence;
+        this.warmUpPasses = warmUpPasses;
+        this.measuredPasses = measuredPasses;
+    }
+
+    /**
+     * @param nativeHeapBytes Allocated native heap, e.g. Debug::getNativeHeapAllocatedSize
+     * @return this
+     */
+    public CorpusBenchmark setNativeHeapBytes(final LongSupplier nativeHeapBytes) {
+        this.nativeHeapBytes = nativeHeapBytes;
+        return this;
+    }
+
+    /**
+     * Builds the matrix of all thread counts with all delegates.
+     * @param delegates "cpu", "xnnpack" or "nnapi"
+     */
+    public static List<InterpreterConfig> configMatrix(final int[] threads, final String[] delegates) {
+        final List<InterpreterConfig> configs = new ArrayList<>();
+        for (final String delegate : delegates) {
+            final String name = delegate.trim().toLowerCase(Locale.ENGLISH);
+            if (!name.equals("cpu") && !name.equals("xnnpack") && !name.equals("nnapi")) {
+                throw new IllegalArgumentException("Unknown delegate " + delegate);
+            }
+            for (final int numThreads : threads) {
+                configs.add(new InterpreterConfig(numThreads, name.equals("nnapi"), name.equals("xnnpack"), 1));
+            }
+        }
+        return configs;
+    }
+
+    /**
+     * Runs the corpus with every config, configs which can not be applied end up as failed results.
+     */
+    public List<Result> run(final FrameCorpus corpus, final List<InterpreterConfig> configs) throws InterruptedException {
+        final List<Result> results = new ArrayList<>(configs.size());
+        for (final InterpreterConfig config : configs) {
+            try {
+                configSwitch.apply(config);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Config " + config + " can not be applied", e);
+                results.add(new Result(config, e.toString()));
+                continue;
+            }
+            results.add(run(corpus, config));
+        }
+        return results;
+    }
+
+    private Result run(final FrameCorpus corpus, final InterpreterConfig config) {
+        for (int pass = 0; pass < warmUpPasses; pass++) {
+            for (int i = 0; i < corpus.size(); i++) {
+                process(corpus.get(i));
+            }
+        }
+        metrics.reset();
+        final Runtime runtime = Runtime.getRuntime();
+        long javaHeapPeak = 0;
+        long nativeHeapPeak = 0;
+        final long start = System.nanoTime();
+        for (int pass = 0; pass < measuredPasses; pass++) {
+            for (int i = 0; i < corpus.size(); i++) {
+                process(corpus.get(i));
+                javaHeapPeak = Math.max(javaHeapPeak, runtime.totalMemory() - runtime.freeMemory());
+                nativeHeapPeak = Math.max(nativeHeapPeak, nativeHeapBytes.getAsLong());
+            }
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        return new Result(config, corpus.size() * measuredPasses, seconds, metrics, javaHeapPeak, nativeHeapPeak);
+    }
+
+    /**
+     * Runs one frame like the camera path does for an upright frame with the cover crop.
+     */
+    private void process(final FrameCorpus.Frame frame) {
+        frame.planes(planes);
+        metrics.increment(StageMetrics.Counter.FRAMES);
+
+        final List<Recognition> results = detector.recognizeImage(planes, frame.width, frame.height, 0, false);
+
+        final long filterStart = System.nanoTime();
+        final Matrix frameToCrop = ImageUtils.getTransformationMatrix(
+                frame.width, frame.height, modelInputSize, modelInputSize, 0, false);
+        frameToCrop.invert(cropToFrame);
+        Recognition.mapConfident(results, minimumConfidence, cropToFrame, mapped);
+        metrics.record(Stage.FILTER, System.nanoTime() - filterStart);
+
+        final long trackStart = System.nanoTime();
+        tracker.setFrameConfiguration(frame.width, frame.height, 0, frame.height, false, "classes");
+        tracker.trackResults(mapped, frameNumber++);
+        metrics.record(Stage.TRACK, System.nanoTime() - trackStart);
+    }
+
+    /**
+     * @return One row per config with the interpreter config, frame rate, the mean, p50, p90 and
+     * p99 latency of every stage, the memory peaks and the failure, empty for measured configs
+     */
+    public static String toCsv(final List<Result> results) {
+        final StringBuilder csv = new StringBuilder();
+        csv.append("threads,nnapi,xnnpack,frames,seconds,fps");
+        for (final Stage stage : Stage.values()) {
+            for (final String column : CSV_STAGE_COLUMNS) {
+                csv.append(',').append(stage.name().toLowerCase(Locale.ENGLISH)).append('_').append(column);
+            }
+        }
+        csv.append(",java_heap_peak_bytes,native_heap_peak_bytes,failure\n");
+        for (final Result result : results) {
+            csv.append(String.format(Locale.ENGLISH, "%d,%b,%b,%d,%.3f,%.2f", result.config.numThreads,
+                    result.config.useNNAPI, result.config.useXNNPACK, result.frames, result.seconds, result.getFps()));
+            for (final double[] values : result.stageMs) {
+                for (final double value : values) {
+                    csv.append(String.format(Locale.ENGLISH, ",%.3f", value));
+                }
+            }
+            csv.append(',').append(result.javaHeapPeakBytes).append(',').append(result.nativeHeapPeakBytes).append(',');
+            if (result.isFailed()) {
+                // quoted, the reason may hold commas and quotes
+                csv.append('"').append(result.failure.replace("\"", "\"\"").replace('\n', ' ')).append('"');
+            }
+            csv.append('\n');
+        }
+        return csv.toString();
+    }
+
+    /**
+     * @return JSON array with one object per config, the stages as {@link StageMetrics#toJson()},
+     * failed configs with their failure instead of the measurements
+     */
+    public static String toJson(final List<Result> results) {
+        final StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < results.size(); i++) {
+            final Result result = results.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            if (result.isFailed()) {
+                json.append(String.format(Locale.ENGLISH, "{\"threads\":%d,\"nnapi\":%b,\"xnnpack\":%b,\"failure\":",
+                        result.config.numThreads, result.config.useNNAPI, result.config.useXNNPACK));
+                appendJsonString(json, result.failure);
+                json.append('}');
+                continue;
+            }
+            json.append(String.format(Locale.ENGLISH,
+                    "{\"threads\":%d,\"nnapi\":%b,\"xnnpack\":%b,\"frames\":%d,\"seconds\":%.3f,\"fps\":%.2f,"
+                            + "\"javaHeapPeakBytes\":%d,\"nativeHeapPeakBytes\":%d,\"metrics\":%s}",
+                    result.config.numThreads, result.config.useNNAPI, result.config.useXNNPACK, result.frames,
+                    result.seconds, result.getFps(), result.javaHeapPeakBytes, result.nativeHeapPeakBytes,
+                    result.metricsJson));
+        }
+        return json.append(']').toString();
+    }
+
+    private static void appendJsonString(final StringBuilder json, final String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format(Locale.ENGLISH, "\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,184 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import at.tuwien.ict.eml.odd.env.YuvPlanes;
+
+/**
+ * Recorded camera frames replayed by the {@link CorpusBenchmark}, kept in memory as NV21.
+ *
+ * <p>A corpus is a directory of raw YUV dumps named like {@code frame_640x480.nv21} or
+ * {@code frame_640x480.i420}, and of images which are converted to NV21 when they are loaded,
+ * so every frame takes the same YUV path as the camera frames.
+ */
+public final class FrameCorpus {
+    private static final Pattern RAW_NAME = Pattern.compile(".*_(\\d+)x(\\d+)\\.(nv21|i420)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Decodes an image file to a frame, e.g. with {@link #fromArgb}. The image formats depend on the platform.
+     */
+    public interface ImageDecoder {
+        /**
+         * @return The decoded image, or null if the file is no image
+         */
+        Frame decode(File file) throws IOException;
+    }
+
+    /**
+     * One frame in the NV21 layout, a full resolution Y plane followed by interleaved V and U.
+     */
+    public static final class Frame {
+        public final String name;
+        public final int width;
+        public final int height;
+        final byte[] nv21;
+
+        Frame(final String name, final int width, final int height, final byte[] nv21) {
+            if (width < 2 || height < 2 || width % 2 != 0 || height % 2 != 0) {
+                throw new IllegalArgumentException("Frame size must be even: " + width + "x" + height);
+            }
+            if (nv21.length < width * height * 3 / 2) {
+                throw new IllegalArgumentException("Frame " + name + " has " + nv21.length + " bytes, "
+                        + width * height * 3 / 2 + " needed");
+            }
+            this.name = name;
+            this.width = width;
+            this.height = height;
+            this.nv21 = nv21;
+        }
+
+        /**
+         * Points the planes to this frame like to a camera image with interleaved chroma.
+         * @return planes
+         */
+        public YuvPlanes planes(final YuvPlanes planes) {
+            final int lumaSize = width * height;
+            final ByteBuffer y = ByteBuffer.wrap(nv21, 0, lumaSize).slice();
+            final ByteBuffer v = ByteBuffer.wrap(nv21, lumaSize, lumaSize / 2).slice();
+            final ByteBuffer u = ByteBuffer.wrap(nv21, lumaSize + 1, lumaSize / 2 - 1).slice();
+            return planes.set(y, u, v, width, 1, width, 2, 0, 0, width, height);
+        }
+    }
+
+    private final List<Frame> frames;
+
+    public FrameCorpus(final List<Frame> frames) {
+        if (frames.isEmpty()) {
+            throw new IllegalArgumentException("Empty corpus");
+        }
+        this.frames = new ArrayList<>(frames);
+    }
+
+    /**
+     * Loads all frames of the directory in the order of their file names.
+     * @param decoder Decoder of the files which are no raw dumps
+     */
+    public static FrameCorpus load(final File directory, final ImageDecoder decoder) throws IOException {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("No corpus directory " + directory);
+        }
+        Arrays.sort(files);
+        final List<Frame> frames = new ArrayList<>();
+        for (final File file : files) {
+            if (!file.isFile()) {
+                continue;
+            }
+            final Frame frame = RAW_NAME.matcher(file.getName()).matches() ? readRaw(file) : decoder.decode(file);
+            if (frame != null) {
+                frames.add(frame);
+            }
+        }
+        if (frames.isEmpty()) {
+            throw new IOException("No frames in " + directory);
+        }
+        return new FrameCorpus(frames);
+    }
+
+    /**
+     * Reads a raw NV21 or I420 dump with the size in the file name.
+     */
+    public static Frame readRaw(final File file) throws IOException {
+        final Matcher matcher = RAW_NAME.matcher(file.getName());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("No raw frame name: " + file.getName());
+        }
+        final int width = Integer.parseInt(matcher.group(1));
+        final int height = Integer.parseInt(matcher.group(2));
+        final byte[] data = new byte[width * height * 3 / 2];
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.readFully(data);
+        }
+        final boolean i420 = matcher.group(3).toLowerCase(Locale.ENGLISH).equals("i420");
+        return new Frame(file.getName(), width, height, i420 ? i420ToNv21(data, width, height) : data);
+    }
+
+    static byte[] i420ToNv21(final byte[] i420, final int width, final int height) {
+        final int lumaSize = width * height;
+        final int chromaSize = lumaSize / 4;
+        final byte[] nv21 = new byte[lumaSize + 2 * chromaSize];
+        System.arraycopy(i420, 0, nv21, 0, lumaSize);
+        for (int i = 0; i < chromaSize; i++) {
+            nv21[lumaSize + 2 * i] = i420[lumaSize + chromaSize + i];
+            nv21[lumaSize + 2 * i + 1] = i420[lumaSize + i];
+        }
+        return nv21;
+    }
+
+    /**
+     * Converts ARGB pixels to an NV21 frame with the BT.601 video range coefficients of the camera,
+     * odd sizes lose their last row or column.
+     */
+    public static Frame fromArgb(final String name, final int[] argb, final int width, final int height) {
+        final int w = width & ~1;
+        final int h = height & ~1;
+        final byte[] nv21 = new byte[w * h * 3 / 2];
+        for (int row = 0; row < h; row++) {
+            for (int col = 0; col < w; col++) {
+                final int pixel = argb[row * width + col];
+                final int r = (pixel >> 16) & 0xff;
+                final int g = (pixel >> 8) & 0xff;
+                final int b = pixel & 0xff;
+                nv21[row * w + col] = (byte) (((66 * r + 129 * g + 25 * b + 128) >> 8) + 16);
+                if ((row & 1) == 0 && (col & 1) == 0) {
+                    final int chroma = w * h + (row / 2) * w + col;
+                    nv21[chroma] = (byte) (((112 * r - 94 * g - 18 * b + 128) >> 8) + 128);
+                    nv21[chroma + 1] = (byte) (((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128);
+                }
+            }
+        }
+        return new Frame(name, w, h, nv21);
+    }
+
+    public int size() {
+        return frames.size();
+    }
+
+    public Frame get(final int index) {
+        return frames.get(index);
+    }
+}
@@ -22,14 +22,14 @@ import android.graphics.Canvas;
 import android.util.AttributeSet;
 import android.view.View;
 
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * This custom view class provides a interface to register callbacks for drawing on its canvas
  */
 public class OverlayView extends View {
-    private final List<DrawCallback> callbacks = new LinkedList<>();
+    private final List<DrawCallback> callbacks = new CopyOnWriteArrayList<>();
 
     public OverlayView(final Context context, final AttributeSet attrs) {
         super(context, attrs);
@@ -44,12 +44,13 @@ public class OverlayView extends View {
     }
 
     /**
-     * When postInvalidate gets called onto this view, draw gets called, therefore all registered draw callbacks get called and draw onto this views canvas
+     * When postInvalidate gets called onto this view, draw gets called, therefore all registered draw callbacks get called and draw onto this views canvas.
+     * Does not lock, the callbacks hand their state to the UI thread themselves.
      * @param canvas Canvas onto draw
      */
     @SuppressLint("MissingSuperCall")
     @Override
-    public synchronized void draw(final Canvas canvas) {
+    public void draw(final Canvas canvas) {
         for (final DrawCallback callback : callbacks) {
             callback.drawCallback(canvas);
         }
@@ -0,0 +1,66 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+import at.tuwien.ict.eml.odd.env.YuvModelInputSampler;
+
+/**
+ * Pre-allocated input and output buffers for one inference of a TFLiteObjectDetection.
+ * Several slots allow to fill the input of the next frame while the current one is inferred.
+ * A slot with a batch size above 1 holds the inputs and outputs of several images for a batched inference.
+ */
+public class DetectionSlot {
+    final int batchSize;
+    // input and output buffers, run and output mapping of the detection core
+    final DetectionEngine engine;
+    // reused result objects, one pool per image of the batch
+    final RecognitionPool[] recognitionPools;
+    final RecognitionPool recognitionPool;
+    final YuvModelInputSampler yuvSampler;
+
+    DetectionSlot(
+            final InferenceBackend backend,
+            final int inputSize,
+            final boolean isQuantized,
+            final int numDetections,
+            final float mean,
+            final float std) {
+        this(backend, inputSize, isQuantized, numDetections, mean, std, 1, null);
+    }
+
+    /**
+     * @param backend Runs the inferences of the slot
+     * @param anchors Anchors of a raw SSD model, or null for a model with the TFLite_Detection_PostProcess op
+     */
+    DetectionSlot(
+            final InferenceBackend backend,
+            final int inputSize,
+            final boolean isQuantized,
+            final int numDetections,
+            final float mean,
+            final float std,
+            final int batchSize,
+            final SsdAnchorDecoder.Anchors anchors) {
+        engine = new DetectionEngine(backend, inputSize, isQuantized, numDetections, mean, std, batchSize, anchors);
+        this.batchSize = batchSize;
+        recognitionPools = new RecognitionPool[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            recognitionPools[i] = new RecognitionPool(numDetections);
+        }
+        recognitionPool = recognitionPools[0];
+        yuvSampler = new YuvModelInputSampler(inputSize, isQuantized, mean, std);
+    }
+}
@@ -17,16 +17,44 @@ package at.tuwien.ict.eml.odd.detection;
 
 import android.annotation.SuppressLint;
 import android.graphics.Bitmap;
+import android.graphics.Matrix;
 import android.graphics.RectF;
 
 import java.util.List;
 
+import at.tuwien.ict.eml.odd.env.YuvPlanes;
+
 /**
  * Generic interface for interacting with different recognition engines.
  */
 public interface Detector {
+    /**
+     * Runs the detection on the given bitmap.
+     * The returned list and its recognitions are owned by the detector and reused on the next
+     * call, copy them if they have to outlive the current frame.
+     */
     List<Recognition> recognizeImage(Bitmap bitmap);
 
+    /**
+     * Runs the detection directly on a YUV_420_888 camera frame. The visible area is cropped,
+     * rotated, scaled and normalized into the model input in a single pass, the parameters are the
+     * same as for ImageUtils.ConvertPreviewBitmapToModelInput.
+     * The returned list is reused like the one of {@link #recognizeImage(Bitmap)}.
+     */
+    List<Recognition> recognizeImage(
+            YuvPlanes frame,
+            int aspectDstWidth,
+            int aspectDstHeight,
+            int applyRotationToSrc,
+            boolean cropModeContain);
+
+    /**
+     * Runs the detection on several bitmaps of the model input size, as one batched inference if
+     * the model supports it. The returned lists are in the order of the bitmaps and reused like
+     * the one of {@link #recognizeImage(Bitmap)}, until the next call of this method.
+     */
+    List<List<Recognition>> recognizeImages(List<Bitmap> bitmaps);
+
     void enableStatLogging(final boolean debug);
 
     String getStatString();
@@ -38,29 +66,29 @@ public interface Detector {
     void setUseNNAPI(boolean isChecked);
 
     /**
-     * An immutable result returned by a Detector describing what was recognized.
+     * A result returned by a Detector describing what was recognized.
      */
     class Recognition {
         /**
          * A unique identifier for what has been recognized. Specific to the class, not the instance of
          * the object.
          */
-        private final String id;
+        private String id;
 
         /**
          * class index of recognition
          */
-        private final Integer classId;
+        private int classId;
 
         /**
          * Display name for the recognition.
          */
-        private final String title;
+        private String title;
 
         /**
          * A sortable score for how good the recognition is relative to others. Higher should be better.
          */
-        private final Float confidence;
+        private float confidence;
 
         /**
          * Optional location within the source image for the location of the recognized object.
@@ -69,9 +97,9 @@ public interface Detector {
 
         public Recognition(
                 final String id,
-                final Integer classId,
+                final int classId,
                 final String title,
-                final Float confidence,
+                final float confidence,
                 final RectF location) {
             this.id = id;
             this.classId = classId;
@@ -80,11 +108,42 @@ public interface Detector {
             this.location = location;
         }
 
+        /**
+         * Overwrites all values of a pooled recognition, the location is written into the
+         * existing RectF instance.
+         */
+        void set(
+                final String id,
+                final int classId,
+                final String title,
+                final float confidence,
+                final float left,
+                final float top,
+                final float right,
+                final float bottom) {
+            this.id = id;
+            this.classId = classId;
+            this.title = title;
+            this.confidence = confidence;
+            this.location.left = left;
+            this.location.top = top;
+            this.location.right = right;
+            this.location.bottom = bottom;
+        }
+
+        /**
+         * Overwrites all values of a pooled recognition with the ones of another recognition.
+         */
+        void set(final Recognition other) {
+            set(other.id, other.classId, other.title, other.confidence,
+                    other.location.left, other.location.top, other.location.right, other.location.bottom);
+        }
+
         public String getId() {
             return id;
         }
 
-        public Integer getClassId() {
+        public int getClassId() {
             return classId;
         }
 
@@ -92,7 +151,7 @@ public interface Detector {
             return title;
         }
 
-        public Float getConfidence() {
+        public float getConfidence() {
             return confidence;
         }
 
@@ -100,6 +159,56 @@ public interface Detector {
             return new RectF(location);
         }
 
+        public boolean hasLocation() {
+            return location != null;
+        }
+
+        // coordinates of the location without copying it into a new RectF
+        public float getLeft() {
+            return location.left;
+        }
+
+        public float getTop() {
+            return location.top;
+        }
+
+        public float getRight() {
+            return location.right;
+        }
+
+        public float getBottom() {
+            return location.bottom;
+        }
+
+        /**
+         * Maps the location in place, so the RectF of a pooled recognition is kept.
+         */
+        public void mapLocation(final Matrix matrix) {
+            if (location != null) {
+                matrix.mapRect(location);
+            }
+        }
+
+        /**
+         * Collects the recognitions with a location and at least the minimum confidence and maps
+         * their locations in place, e.g. from the model input to the screen.
+         * @param out Cleared and filled with the kept recognitions, reused across frames by the caller
+         */
+        public static void mapConfident(
+                final List<Recognition> results,
+                final float minimumConfidence,
+                final Matrix matrix,
+                final List<Recognition> out) {
+            out.clear();
+            for (int i = 0; i < results.size(); i++) {
+                final Recognition result = results.get(i);
+                if (result.location != null && result.confidence >= minimumConfidence) {
+                    matrix.mapRect(result.location);
+                    out.add(result);
+                }
+            }
+        }
+
         public void setLocation(RectF location) {
             this.location = location;
         }
@@ -115,17 +224,13 @@ public interface Detector {
                 resultString += "[" + id + "] ";
             }
 
-            if (classId != null) {
-                resultString += "(" + classId + ") ";
-            }
+            resultString += "(" + classId + ") ";
 
             if (title != null) {
                 resultString += title + " ";
             }
 
-            if (confidence != null) {
-                resultString += String.format("(%.1f%%) ", confidence * 100.0f);
-            }
+            resultString += String.format("(%.1f%%) ", confidence * 100.0f);
 
             if (location != null) {
                 resultString += location + " ";
@@ -0,0 +1,123 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Picks the interpreter config with the lowest median latency out of a list of candidates.
+ * The candidates are measured one after the other, every one with a number of warm-up runs which
+ * are discarded and a number of measured runs. Candidates which fail, e.g. because a delegate is
+ * not available on the device, are skipped.
+ */
+public class InterpreterAutotuner {
+    private static final int[] CANDIDATE_THREADS = {1, 2, 4, 8};
+
+    /**
+     * Runs inferences with a config, implemented by the detector.
+     */
+    public interface LatencyMeasurement {
+        /**
+         * @return Latencies of the measured runs in nanoseconds
+         * @throws RuntimeException If the config can not be used
+         */
+        long[] measure(InterpreterConfig config, int warmupRuns, int measuredRuns);
+    }
+
+    private final int warmupRuns;
+    private final int measuredRuns;
+
+    public InterpreterAutotuner(final int warmupRuns, final int measuredRuns) {
+        if (measuredRuns < 1) {
+            throw new IllegalArgumentException("At least one measured run needed");
+        }
+        this.warmupRuns = warmupRuns;
+        this.measuredRuns = measuredRuns;
+    }
+
+    /**
+     * @return The fastest candidate, or null if no candidate could be measured
+     */
+    public InterpreterConfig tune(final List<InterpreterConfig> candidates, final LatencyMeasurement measurement) {
+        InterpreterConfig best = null;
+        long bestMedian = Long.MAX_VALUE;
+        for (final InterpreterConfig candidate : candidates) {
+            final long median;
+            try {
+                median = median(measurement.measure(candidate, warmupRuns, measuredRuns));
+            } catch (RuntimeException e) {
+                continue;
+            }
+            if (median < bestMedian) {
+                bestMedian = median;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    static long median(final long[] latencies) {
+        if (latencies.length == 0) {
+            throw new IllegalArgumentException("No latencies measured");
+        }
+        final long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        final int mid = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2;
+    }
+
+    /**
+     * Thread counts up to the number of cores, each with and without XNNPACK, plus NNAPI.
+     * With NNAPI the threads only run the operations the accelerator does not support.
+     * @param cores Number of available cores
+     * @param poolSize Pool size of all candidates, it is not tuned
+     */
+    public static List<InterpreterConfig> defaultCandidates(final int cores, final int poolSize) {
+        final List<InterpreterConfig> candidates = new ArrayList<>();
+        for (final int threads : CANDIDATE_THREADS) {
+            if (threads > Math.max(1, cores)) {
+                break;
+            }
+            candidates.add(new InterpreterConfig(threads, false, true, poolSize));
+            candidates.add(new InterpreterConfig(threads, false, false, poolSize));
+        }
+        candidates.add(new InterpreterConfig(Math.min(4, Math.max(1, cores)), true, false, poolSize));
+        return candidates;
+    }
+
+    /**
+     * @return Hex SHA-256 of the remaining bytes of the model, the position of the buffer is not changed
+     */
+    public static String modelHash(final ByteBuffer model) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(model.duplicate());
+        final StringBuilder hex = new StringBuilder();
+        for (final byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,99 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+import org.tensorflow.lite.Interpreter;
+
+/**
+ * Immutable settings of the interpreters of a detector.
+ * Changing a setting creates a new config, so a config can be handed to a background
+ * rebuild while the settings are changed again.
+ */
+public final class InterpreterConfig {
+    public final int numThreads;
+    public final boolean useNNAPI;
+    public final boolean useXNNPACK;
+    public final int poolSize;
+
+    public InterpreterConfig(final int numThreads, final boolean useNNAPI, final boolean useXNNPACK, final int poolSize) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("At least one thread needed");
+        }
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("At least one interpreter needed");
+        }
+        this.numThreads = numThreads;
+        this.useNNAPI = useNNAPI;
+        this.useXNNPACK = useXNNPACK;
+        this.poolSize = poolSize;
+    }
+
+    public InterpreterConfig withNumThreads(final int numThreads) {
+        return new InterpreterConfig(numThreads, useNNAPI, useXNNPACK, poolSize);
+    }
+
+    public InterpreterConfig withUseNNAPI(final boolean useNNAPI) {
+        return new InterpreterConfig(numThreads, useNNAPI, useXNNPACK, poolSize);
+    }
+
+    public InterpreterConfig withUseXNNPACK(final boolean useXNNPACK) {
+        return new InterpreterConfig(numThreads, useNNAPI, useXNNPACK, poolSize);
+    }
+
+    public InterpreterConfig withPoolSize(final int poolSize) {
+        return new InterpreterConfig(numThreads, useNNAPI, useXNNPACK, poolSize);
+    }
+
+    /**
+     * @return New options for one interpreter of the pool
+     */
+    Interpreter.Options toOptions() {
+        final Interpreter.Options options = new Interpreter.Options();
+        options.setNumThreads(numThreads);
+        options.setUseNNAPI(useNNAPI);
+        options.setUseXNNPACK(useXNNPACK);
+        return options;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof InterpreterConfig)) {
+            return false;
+        }
+        final InterpreterConfig other = (InterpreterConfig) o;
+        return numThreads == other.numThreads
+                && useNNAPI == other.useNNAPI
+                && useXNNPACK == other.useXNNPACK
+                && poolSize == other.poolSize;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = numThreads;
+        result = 31 * result + (useNNAPI ? 1 : 0);
+        result = 31 * result + (useXNNPACK ? 1 : 0);
+        result = 31 * result + poolSize;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "threads=" + numThreads + ", nnapi=" + useNNAPI + ", xnnpack=" + useXNNPACK + ", pool=" + poolSize;
+    }
+}
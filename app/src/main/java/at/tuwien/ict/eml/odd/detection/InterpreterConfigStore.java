@@ -0,0 +1,57 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Persists autotuned interpreter configs in the shared preferences of the app.
+ * Only the tuned settings are stored, the pool size is left to the caller.
+ */
+public class InterpreterConfigStore {
+    private static final String PREFERENCES_NAME = "interpreter_autotune";
+    private final SharedPreferences preferences;
+
+    public InterpreterConfigStore(final Context context) {
+        preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @param key Model and device the config was tuned for
+     * @return The stored config with a pool size of 1, or null if the key was not tuned yet
+     */
+    public InterpreterConfig load(final String key) {
+        final String value = preferences.getString(key, null);
+        if (value == null) {
+            return null;
+        }
+        final String[] fields = value.split(";");
+        try {
+            return new InterpreterConfig(
+                    Integer.parseInt(fields[0]), Boolean.parseBoolean(fields[1]), Boolean.parseBoolean(fields[2]), 1);
+        } catch (RuntimeException e) {
+            // written by an incompatible version, tune again
+            return null;
+        }
+    }
+
+    public void save(final String key, final InterpreterConfig config) {
+        preferences.edit()
+                .putString(key, config.numThreads + ";" + config.useNNAPI + ";" + config.useXNNPACK)
+                .apply();
+    }
+}
@@ -0,0 +1,116 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Fixed set of interpreters created from the same model buffer.
+ * Every interpreter owns its tensors, so slots holding one of them can run their inference
+ * concurrently on different cores while the weights are mapped only once.
+ */
+class InterpreterPool {
+    private final Interpreter[] interpreters;
+    private final Interpreter[] idle;
+    private int idleCount;
+    private boolean closed;
+
+    /**
+     * @param model Memory-mapped model, shared and never modified by the interpreters
+     * @param options Options of every interpreter, the number of threads is per interpreter
+     * @param size Number of interpreters
+     */
+    InterpreterPool(final ByteBuffer model, final Interpreter.Options options, final int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("At least one interpreter needed");
+        }
+        interpreters = new Interpreter[size];
+        idle = new Interpreter[size];
+        try {
+            for (int i = 0; i < size; i++) {
+                interpreters[i] = new Interpreter(model, options);
+                idle[i] = interpreters[i];
+            }
+        } catch (RuntimeException e) {
+            for (final Interpreter interpreter : interpreters) {
+                if (interpreter != null) {
+                    interpreter.close();
+                }
+            }
+            throw e;
+        }
+        idleCount = size;
+    }
+
+    int size() {
+        return interpreters.length;
+    }
+
+    /**
+     * Runs every interpreter once, so the first real frame does not pay for the tensor allocation
+     * and the delegate preparation. Must be called before the pool is shared.
+     */
+    void warmUp(final Object[] inputs, final Map<Integer, Object> outputs) {
+        for (final Interpreter interpreter : interpreters) {
+            interpreter.runForMultipleInputsOutputs(inputs, outputs);
+        }
+    }
+
+    /**
+     * Waits until an interpreter is idle.
+     * @return The interpreter, or null if the pool got closed in the meantime
+     */
+    synchronized Interpreter acquire() throws InterruptedException {
+        while (idleCount == 0 && !closed) {
+            wait();
+        }
+        if (closed) {
+            return null;
+        }
+        return idle[--idleCount];
+    }
+
+    synchronized void release(final Interpreter interpreter) {
+        idle[idleCount++] = interpreter;
+        notifyAll();
+    }
+
+    /**
+     * Rejects further acquires, waits until the running inferences released their interpreter
+     * and closes all of them.
+     */
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+        boolean interrupted = false;
+        while (idleCount < interpreters.length) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        for (final Interpreter interpreter : interpreters) {
+            interpreter.close();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+import android.graphics.RectF;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import at.tuwien.ict.eml.odd.detection.Detector.Recognition;
+
+/**
+ * Fixed size arena of Recognitions which get overwritten on every frame.
+ * After construction filling the pool does not allocate any objects, so the detection
+ * results of a frame are only valid until the next call of fill.
+ */
+class RecognitionPool {
+    private final Recognition[] recognitions;
+    private final String[] ids;
+    private final ArrayList<Recognition> results;
+
+    /**
+     * @param capacity Maximum number of recognitions per frame
+     */
+    RecognitionPool(final int capacity) {
+        recognitions = new Recognition[capacity];
+        ids = new String[capacity];
+        results = new ArrayList<>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            ids[i] = Integer.toString(i);
+            recognitions[i] = new Recognition(ids[i], 0, null, 0.0f, new RectF());
+        }
+    }
+
+    /**
+     * Maps the detections of the {@link DetectionEngine} to the pooled recognitions.
+     * @param detections Detections with boxes in pixels, clamped to the capacity
+     * @param labels Labelmap of the model
+     * @return The reused result list
+     */
+    List<Recognition> fill(final Detections detections, final List<String> labels) {
+        results.clear();
+        final int n = Math.min(detections.size(), recognitions.length);
+        for (int i = 0; i < n; ++i) {
+            final int classId = detections.getClassId(i);
+            final Recognition recognition = recognitions[i];
+            recognition.set(
+                    ids[i],
+                    classId,
+                    labels.get(classId),
+                    detections.getScore(i),
+                    detections.getLeft(i),
+                    detections.getTop(i),
+                    detections.getRight(i),
+                    detections.getBottom(i));
+            results.add(recognition);
+        }
+        return results;
+    }
+
+    /**
+     * Copies recognitions of another pool, so they outlive the next fill of their pool.
+     * @return The reused result list
+     */
+    List<Recognition> copy(final List<Recognition> source) {
+        results.clear();
+        final int n = Math.min(source.size(), recognitions.length);
+        for (int i = 0; i < n; ++i) {
+            recognitions[i].set(source.get(i));
+            results.add(recognitions[i]);
+        }
+        return results;
+    }
+
+    int capacity() {
+        return recognitions.length;
+    }
+}
@@ -0,0 +1,51 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+import java.util.List;
+
+import at.tuwien.ict.eml.odd.detection.Detector.Recognition;
+import at.tuwien.ict.eml.odd.env.YuvPlanes;
+
+/**
+ * A detector whose work is split into a preprocessing and an inference stage operating on
+ * independent slots, so both stages can run concurrently on different frames.
+ * @param <S> Type of the slot holding the input and output buffers of one frame
+ */
+public interface StagedDetector<S> {
+    /**
+     * Allocates a new slot.
+     */
+    S newSlot();
+
+    /**
+     * Writes the visible area of the frame into the input of the slot.
+     * The parameters are the same as for {@link Detector#recognizeImage(YuvPlanes, int, int, int, boolean)}.
+     */
+    void preprocess(
+            S slot,
+            YuvPlanes frame,
+            int aspectDstWidth,
+            int aspectDstHeight,
+            int applyRotationToSrc,
+            boolean cropModeContain);
+
+    /**
+     * Runs the inference on the input of the slot.
+     * @return The recognitions, owned by the slot and valid until it is used again
+     */
+    List<Recognition> infer(S slot);
+}
@@ -18,8 +18,13 @@ package at.tuwien.ict.eml.odd.detection;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.RectF;
+import android.os.Build;
 import android.os.Trace;
+import android.util.Log;
+
+import at.tuwien.ict.eml.odd.env.YuvPlanes;
+import at.tuwien.ict.eml.odd.stats.StageMetrics;
+import at.tuwien.ict.eml.odd.stats.StageMetrics.Stage;
 
 import org.tensorflow.lite.Interpreter;
 import org.tensorflow.lite.support.metadata.MetadataExtractor;
@@ -27,16 +32,21 @@ import org.tensorflow.lite.support.metadata.MetadataExtractor;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-
-import static java.lang.Math.min;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Wrapper for frozen detection models trained using the Tensorflow Object Detection API: -
@@ -50,8 +60,12 @@ import static java.lang.Math.min;
  * https://github.com/tensorflow/models/blob/master/research/object_detection/g3doc/tf2_detection_zoo.md
  * -
  * https://github.com/tensorflow/models/blob/master/research/object_detection/g3doc/running_on_mobile_tensorflowlite.md#running-our-model-on-android
+ *
+ * <p>The input and output buffers, the inference and the output mapping are done by the
+ * {@link DetectionEngine} of every slot. This class fills the inputs from Bitmaps and YUV frames,
+ * runs the engines on a pool of interpreters and maps their detections to Recognitions.
  */
-public class TFLiteObjectDetection implements Detector {
+public class TFLiteObjectDetection implements Detector, StagedDetector<DetectionSlot> {
     private static final String TAG = "TFLiteObjectDetectionAPIModelWithInterpreter";
 
     // Only return this many results.
@@ -61,30 +75,66 @@ public class TFLiteObjectDetection implements Detector {
     private static final float IMAGE_STD = 127.5f;
     // Number of threads in the java app
     private static final int NUM_THREADS = 4;
+    // Runs per candidate config of the autotuner
+    private static final int AUTOTUNE_WARMUP_RUNS = 3;
+    private static final int AUTOTUNE_MEASURED_RUNS = 10;
+    // Dummy inferences per interpreter before the first frame
+    public static final int DEFAULT_WARM_UP_RUNS = 3;
+    // Interval of the stat logging
+    private static final long STAT_LOG_INTERVAL_NANOS = 5_000_000_000L;
     private boolean isModelQuantized;
     // Config values.
     private int inputSize;
     // Pre-allocated buffers.
     private final List<String> labels = new ArrayList<>();
     private int[] intValues;
-    // outputLocations: array of shape [Batchsize, NUM_DETECTIONS,4]
-    // contains the location of detected boxes
-    private float[][][] outputLocations;
-    // outputClasses: array of shape [Batchsize, NUM_DETECTIONS]
-    // contains the classes of detected boxes
-    private float[][] outputClasses;
-    // outputScores: array of shape [Batchsize, NUM_DETECTIONS]
-    // contains the scores of detected boxes
-    private float[][] outputScores;
-    // numDetections: array of shape [Batchsize]
-    // contains the number of detected boxes
-    private float[] numDetections;
-
-    private ByteBuffer imgData;
+    // raw pixels of opaque ARGB_8888 bitmaps for quantized models, allocated on first use
+    private ByteBuffer rgbaValues;
+    // input and output buffers of recognizeImage
+    private DetectionSlot defaultSlot;
+    // anchors of a raw SSD model decoded in Java, null for models with the postprocess op
+    private SsdAnchorDecoder.Anchors anchors;
+    // runs the inferences of the slots on the interpreter pool
+    private final InferenceBackend poolBackend = this::runOnPool;
+    private InputPreprocessor inputPreprocessor;
 
     private MappedByteBuffer tfLiteModel;
-    private Interpreter.Options tfLiteOptions;
-    private Interpreter tfLite;
+    // replaced as a whole when the config changes, a closed pool rejects new inferences
+    private volatile InterpreterPool interpreterPool;
+    // config of the current pool and the latest requested one, guarded by this
+    private InterpreterConfig activeConfig;
+    private InterpreterConfig requestedConfig;
+    private boolean closed;
+    // builds new pools off the inference threads, only touched by the rebuild thread
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "TFLiteObjectDetection-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private DetectionSlot warmUpSlot;
+    // System.nanoTime of the creation and of the end of the warm-up, 0 while warming up
+    private long createNanos;
+    private volatile long warmUpEndNanos;
+    private volatile long timeToFirstSteadyStateFrameNanos;
+
+    // latencies of the stages of the frames, the callers record their own stages in it as well
+    private final StageMetrics metrics = new StageMetrics();
+    private volatile boolean logStats;
+    private volatile long lastStatLogNanos;
+
+    // guards intValues, rgbaValues, the default slot, the input preprocessor and the batch state below
+    private final Object bitmapLock = new Object();
+    private final ArrayList<List<Recognition>> batchResults = new ArrayList<>();
+    // null until the first batch showed whether the model accepts a batch dimension above 1
+    private Boolean batchSupported;
+    private Interpreter batchInterpreter;
+    private InterpreterConfig batchInterpreterConfig;
+    private DetectionSlot batchSlot;
+    // fallback for models with a fixed batch size of 1
+    private final ArrayList<RecognitionPool> batchResultPools = new ArrayList<>();
+    private ExecutorService batchExecutor;
+    private ArrayBlockingQueue<DetectionSlot> batchSlots;
+    private int batchWorkers;
 
     private TFLiteObjectDetection() { }
 
@@ -102,162 +152,713 @@ public class TFLiteObjectDetection implements Detector {
      * @param inputSize     The size of image input
      * @param isQuantized   Boolean representing model is quantized or not
      */
-    public static Detector create(
+    public static TFLiteObjectDetection create(
             final Context context,
             final File model,
             final ArrayList<String> labelMap,
             final int inputSize,
             final boolean isQuantized)
             throws IOException {
+        return create(context, model, labelMap, inputSize, isQuantized, DEFAULT_WARM_UP_RUNS);
+    }
+
+    /**
+     * Initializes a native TensorFlow session for classifying images and warms it up in the background.
+     * The warm-up loads all pages of the mapped model and runs dummy inferences on every interpreter,
+     * so the lazy initialization of the delegates does not hit the first frames. Inferences requested
+     * meanwhile wait until the warm-up is finished.
+     *
+     * @param model         The model file
+     * @param inputSize     The size of image input
+     * @param isQuantized   Boolean representing model is quantized or not
+     * @param warmUpRuns    Number of dummy inferences per interpreter
+     */
+    public static TFLiteObjectDetection create(
+            final Context context,
+            final File model,
+            final ArrayList<String> labelMap,
+            final int inputSize,
+            final boolean isQuantized,
+            final int warmUpRuns)
+            throws IOException {
 
         final TFLiteObjectDetection d = new TFLiteObjectDetection();
+        d.createNanos = System.nanoTime();
         MappedByteBuffer modelFileBuffer = loadModelFile(model);
         MetadataExtractor metadata = new MetadataExtractor(modelFileBuffer);
         d.labels.addAll(labelMap);
         d.inputSize = inputSize;
+        d.anchors = readAnchors(metadata, labelMap.size());
+        if (d.anchors != null) {
+            Log.i(TAG, "Decoding the raw outputs of " + d.anchors.getCount() + " anchors");
+        }
 
+        final InterpreterPool pool;
         try {
-            Interpreter.Options options = new Interpreter.Options();
-            options.setNumThreads(NUM_THREADS);
-            options.setUseXNNPACK(true);
-            d.tfLite = new Interpreter(modelFileBuffer, options);
+            final InterpreterConfig config = new InterpreterConfig(NUM_THREADS, false, true, 1);
+            pool = new InterpreterPool(modelFileBuffer, config.toOptions(), config.poolSize);
             d.tfLiteModel = modelFileBuffer;
-            d.tfLiteOptions = options;
+            d.activeConfig = config;
+            d.requestedConfig = config;
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
 
         d.isModelQuantized = isQuantized;
         // Pre-allocate buffers.
-        int numBytesPerChannel;
-        if (isQuantized) {
-            numBytesPerChannel = 1; // Quantized
-        } else {
-            numBytesPerChannel = 4; // Floating point
-        }
-        d.imgData = ByteBuffer.allocateDirect(1 * d.inputSize * d.inputSize * 3 * numBytesPerChannel);
-        d.imgData.order(ByteOrder.nativeOrder());
+        d.defaultSlot = d.newSlot();
         d.intValues = new int[d.inputSize * d.inputSize];
-
-        d.outputLocations = new float[1][NUM_DETECTIONS][4];
-        d.outputClasses = new float[1][NUM_DETECTIONS];
-        d.outputScores = new float[1][NUM_DETECTIONS];
-        d.numDetections = new float[1];
+        d.inputPreprocessor = InputPreprocessor.create(d.inputSize, isQuantized, IMAGE_MEAN, IMAGE_STD);
+        // the pool is published by the warm-up
+        d.rebuildExecutor.execute(() -> d.warmUp(pool, warmUpRuns));
         return d;
     }
 
+    /**
+     * Reads the anchors of a raw SSD model from the associated file of its metadata.
+     * @param numLabels Size of the labelmap, a model with one score more has a background class
+     * @return The anchors, or null if the model has no anchors file and uses the postprocess op
+     */
+    private static SsdAnchorDecoder.Anchors readAnchors(final MetadataExtractor metadata, final int numLabels)
+            throws IOException {
+        final InputStream file;
+        try {
+            file = metadata.getAssociatedFile(SsdAnchorDecoder.ANCHORS_FILE);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            // no associated files or none with that name
+            return null;
+        }
+        if (file == null) {
+            return null;
+        }
+        if (metadata.getOutputTensorCount() != 2) {
+            file.close();
+            throw new IllegalArgumentException("Raw SSD models need two outputs, the boxes and the scores");
+        }
+        return SsdAnchorDecoder.Anchors.read(file, metadata.getOutputTensorShape(0),
+                metadata.getOutputTensorShape(1), numLabels);
+    }
+
     @Override
     public List<Recognition> recognizeImage(final Bitmap bitmap) {
         // Log this method so that it can be analyzed with systrace.
         Trace.beginSection("recognizeImage");
 
+        final List<Recognition> recognitions;
+        synchronized (bitmapLock) {
+            preprocessBitmap(bitmap, defaultSlot.engine.getInput(0));
+            recognitions = infer(defaultSlot);
+        }
+        Trace.endSection(); // "recognizeImage"
+        return recognitions;
+    }
+
+    private void preprocessBitmap(final Bitmap bitmap, final ByteBuffer dst) {
         Trace.beginSection("preprocessBitmap");
-        // Preprocess the image data from 0-255 int to normalized float based
-        // on the provided parameters.
-        bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
-
-        imgData.rewind();
-        for (int i = 0; i < inputSize; ++i) {
-            for (int j = 0; j < inputSize; ++j) {
-                int pixelValue = intValues[i * inputSize + j];
-                if (isModelQuantized) {
-                    // Quantized model
-                    imgData.put((byte) ((pixelValue >> 16) & 0xFF));
-                    imgData.put((byte) ((pixelValue >> 8) & 0xFF));
-                    imgData.put((byte) (pixelValue & 0xFF));
-                } else { // Float model
-                    imgData.putFloat((((pixelValue >> 16) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-                    imgData.putFloat((((pixelValue >> 8) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-                    imgData.putFloat(((pixelValue & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-                }
+        final long start = System.nanoTime();
+        if (inputPreprocessor instanceof UInt8InputPreprocessor
+                && bitmap.getConfig() == Bitmap.Config.ARGB_8888
+                && !bitmap.hasAlpha()
+                && bitmap.getWidth() == inputSize
+                && bitmap.getHeight() == inputSize) {
+            // uint8 fast path: the bitmap memory already holds RGBA bytes, only the alpha is dropped.
+            // Opaque bitmaps are not changed by the alpha premultiplication, so this equals getPixels.
+            if (rgbaValues == null) {
+                rgbaValues = ByteBuffer.allocate(inputSize * inputSize * 4);
             }
+            rgbaValues.rewind();
+            bitmap.copyPixelsToBuffer(rgbaValues);
+            rgbaValues.rewind();
+            ((UInt8InputPreprocessor) inputPreprocessor).processRgba(rgbaValues, dst);
+        } else {
+            // Preprocess the image data from 0-255 int to normalized float based
+            // on the provided parameters.
+            bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+
+            inputPreprocessor.process(intValues, dst);
         }
+        metrics.record(Stage.PREPROCESS, System.nanoTime() - start);
         Trace.endSection(); // preprocessBitmap
+    }
 
-        // Copy the input data into TensorFlow.
-        Trace.beginSection("feed");
-        outputLocations = new float[1][NUM_DETECTIONS][4];
-        outputClasses = new float[1][NUM_DETECTIONS];
-        outputScores = new float[1][NUM_DETECTIONS];
-        numDetections = new float[1];
-
-        Object[] inputArray = {imgData};
-        Map<Integer, Object> outputMap = new HashMap<>();
-        outputMap.put(0, outputLocations);
-        outputMap.put(1, outputClasses);
-        outputMap.put(2, outputScores);
-        outputMap.put(3, numDetections);
-        Trace.endSection();
+    /**
+     * Runs all bitmaps as one inference with a batch dimension of their count. Models with a fixed
+     * batch size of 1, like the ones with the TFLite_Detection_PostProcess op, fall back to single
+     * image inferences which are pipelined: the bitmaps are preprocessed on the calling thread while
+     * the previous ones are inferred on the interpreters of the pool.
+     */
+    @Override
+    public List<List<Recognition>> recognizeImages(final List<Bitmap> bitmaps) {
+        Trace.beginSection("recognizeImages");
+        try {
+            synchronized (bitmapLock) {
+                batchResults.clear();
+                if (bitmaps.size() > 1 && batchSupported != Boolean.FALSE && runBatched(bitmaps)) {
+                    return batchResults;
+                }
+                runPipelined(bitmaps);
+                return batchResults;
+            }
+        } finally {
+            Trace.endSection(); // "recognizeImages"
+        }
+    }
 
-        // Run the inference call.
-        Trace.beginSection("run");
-        tfLite.runForMultipleInputsOutputs(inputArray, outputMap);
-        Trace.endSection();
-
-        // Show the best detections.
-        // after scaling them back to the input size.
-        // You need to use the number of detections from the output and not the NUM_DETECTONS variable
-        // declared on top
-        // because on some models, they don't always output the same total number of detections
-        // For example, your model's NUM_DETECTIONS = 20, but sometimes it only outputs 16 predictions
-        // If you don't use the output's numDetections, you'll get nonsensical data
-        int numDetectionsOutput =
-                min(
-                        NUM_DETECTIONS,
-                        (int) numDetections[0]); // cast from float to integer, use min for safety
-
-        final ArrayList<Recognition> recognitions = new ArrayList<>(numDetectionsOutput);
-        for (int i = 0; i < numDetectionsOutput; ++i) {
-            final RectF detection =
-                    new RectF(
-                            outputLocations[0][i][1] * inputSize,
-                            outputLocations[0][i][0] * inputSize,
-                            outputLocations[0][i][3] * inputSize,
-                            outputLocations[0][i][2] * inputSize);
-
-            recognitions.add(
-                    new Recognition(
-                            "" + i, (int) outputClasses[0][i], labels.get((int) outputClasses[0][i]), outputScores[0][i], detection));
+    private boolean runBatched(final List<Bitmap> bitmaps) {
+        final int n = bitmaps.size();
+        final InterpreterConfig config = getInterpreterConfig();
+        try {
+            if (batchSlot == null || batchSlot.batchSize != n || !config.equals(batchInterpreterConfig)) {
+                closeBatchInterpreter();
+                batchInterpreter = new Interpreter(tfLiteModel, config.toOptions());
+                batchInterpreter.resizeInput(0, new int[]{n, inputSize, inputSize, 3});
+                batchSlot = new DetectionSlot(batchInterpreter::runForMultipleInputsOutputs,
+                        inputSize, isModelQuantized, NUM_DETECTIONS, IMAGE_MEAN, IMAGE_STD, n, anchors);
+                batchInterpreterConfig = config;
+            }
+        } catch (RuntimeException e) {
+            return disableBatching(e);
+        }
+        // errors of a bitmap say nothing about the batch support of the model, they are passed on
+        for (int i = 0; i < n; i++) {
+            preprocessBitmap(bitmaps.get(i), batchSlot.engine.getInput(i));
+        }
+        Trace.beginSection("runBatch");
+        try {
+            final long start = System.nanoTime();
+            batchSlot.engine.run();
+            metrics.record(Stage.RUN, System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            return disableBatching(e);
+        } finally {
+            Trace.endSection();
+        }
+        batchSupported = true;
+        for (int i = 0; i < n; i++) {
+            final long start = System.nanoTime();
+            batchResults.add(results(batchSlot, i));
+            metrics.record(Stage.DECODE, System.nanoTime() - start);
+        }
+        return true;
+    }
+
+    /**
+     * Falls back to single image inferences if the first batch failed in the interpreter.
+     * @return False if batching got disabled
+     * @throws RuntimeException The failure, if batches worked before
+     */
+    private boolean disableBatching(final RuntimeException e) {
+        // the outputs keep a batch size of 1 or an op rejects the resized input
+        if (batchSupported == null) {
+            Log.i(TAG, "Model does not support batched inputs, using single image inferences", e);
+            batchSupported = false;
+            closeBatchInterpreter();
+            return false;
+        }
+        throw e;
+    }
+
+    private void runPipelined(final List<Bitmap> bitmaps) {
+        final int n = bitmaps.size();
+        while (batchResultPools.size() < n) {
+            batchResultPools.add(new RecognitionPool(NUM_DETECTIONS));
+        }
+        final int workers = Math.max(1, getInterpreterConfig().poolSize);
+        if (batchExecutor == null || batchWorkers != workers) {
+            if (batchExecutor != null) {
+                batchExecutor.shutdown();
+            }
+            batchExecutor = Executors.newFixedThreadPool(workers, runnable -> {
+                final Thread thread = new Thread(runnable, "TFLiteObjectDetection-batch");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // one slot more than workers, so the next bitmap is preprocessed while all of them infer
+            batchSlots = new ArrayBlockingQueue<>(workers + 1);
+            for (int i = 0; i <= workers; i++) {
+                batchSlots.add(newSlot());
+            }
+            batchWorkers = workers;
+        }
+
+        for (int i = 0; i < n; i++) {
+            batchResults.add(null);
+        }
+        final CountDownLatch done = new CountDownLatch(n);
+        final AtomicReference<RuntimeException> error = new AtomicReference<>();
+        RuntimeException preprocessError = null;
+        boolean interrupted = false;
+        int submitted = 0;
+        try {
+            for (; submitted < n; submitted++) {
+                final DetectionSlot slot = batchSlots.take();
+                try {
+                    preprocessBitmap(bitmaps.get(submitted), slot.engine.getInput(0));
+                } catch (RuntimeException e) {
+                    batchSlots.offer(slot);
+                    preprocessError = e;
+                    break;
+                }
+                final int index = submitted;
+                batchExecutor.execute(() -> {
+                    try {
+                        // the slot is reused for a later bitmap, keep the results in the pool of the image
+                        batchResults.set(index, batchResultPools.get(index).copy(infer(slot)));
+                    } catch (RuntimeException e) {
+                        error.compareAndSet(null, e);
+                    } finally {
+                        batchSlots.offer(slot);
+                        done.countDown();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        // bitmaps which were never submitted
+        for (int i = submitted; i < n; i++) {
+            done.countDown();
+        }
+        // the submitted inferences write into the results and pools, so they have to finish before returning
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the batch");
+        }
+        if (preprocessError != null) {
+            throw preprocessError;
+        }
+        if (error.get() != null) {
+            throw error.get();
+        }
+    }
+
+    private void closeBatchInterpreter() {
+        if (batchInterpreter != null) {
+            batchInterpreter.close();
+            batchInterpreter = null;
+        }
+        batchSlot = null;
+        batchInterpreterConfig = null;
+    }
+
+    @Override
+    public List<Recognition> recognizeImage(
+            final YuvPlanes frame,
+            final int aspectDstWidth,
+            final int aspectDstHeight,
+            final int applyRotationToSrc,
+            final boolean cropModeContain) {
+        Trace.beginSection("recognizeImage");
+        final List<Recognition> recognitions;
+        // the default slot is shared with recognizeImage(Bitmap)
+        synchronized (bitmapLock) {
+            preprocess(defaultSlot, frame, aspectDstWidth, aspectDstHeight, applyRotationToSrc, cropModeContain);
+            recognitions = infer(defaultSlot);
         }
         Trace.endSection(); // "recognizeImage"
         return recognitions;
     }
 
     @Override
-    public void enableStatLogging(final boolean logStats) {
+    public DetectionSlot newSlot() {
+        return new DetectionSlot(poolBackend, inputSize, isModelQuantized, NUM_DETECTIONS, IMAGE_MEAN, IMAGE_STD, 1, anchors);
     }
 
     @Override
-    public String getStatString() {
-        return "";
+    public void preprocess(
+            final DetectionSlot slot,
+            final YuvPlanes frame,
+            final int aspectDstWidth,
+            final int aspectDstHeight,
+            final int applyRotationToSrc,
+            final boolean cropModeContain) {
+        // Crop, rotate, scale and normalize the frame straight into the input buffer.
+        Trace.beginSection("preprocessYuv");
+        final long start = System.nanoTime();
+        slot.yuvSampler.configure(frame.width, frame.height, aspectDstWidth, aspectDstHeight, applyRotationToSrc, cropModeContain);
+        slot.yuvSampler.sample(frame, slot.engine.getInput(0));
+        metrics.record(Stage.PREPROCESS, System.nanoTime() - start);
+        Trace.endSection(); // preprocessYuv
     }
 
+    /**
+     * Runs the interpreter on the filled input buffer of the slot and maps the outputs to recognitions.
+     * Slots running concurrently get different interpreters of the pool, if the pool is
+     * smaller than the number of concurrent calls they wait for a free interpreter.
+     */
     @Override
-    public void close() {
-        if (tfLite != null) {
-            tfLite.close();
-            tfLite = null;
+    public List<Recognition> infer(final DetectionSlot slot) {
+        // Run the inference call.
+        // The input array and the output map are allocated once per slot and
+        // the interpreter writes the results into the same output arrays every frame.
+        Trace.beginSection("run");
+        final long start = System.nanoTime();
+        try {
+            slot.engine.run();
+        } finally {
+            Trace.endSection();
         }
+        if (timeToFirstSteadyStateFrameNanos == 0) {
+            recordSteadyStateFrame(start);
+        }
+        final long decodeStart = System.nanoTime();
+        final List<Recognition> results = results(slot, 0);
+        metrics.record(Stage.DECODE, System.nanoTime() - decodeStart);
+        if (logStats && decodeStart - lastStatLogNanos >= STAT_LOG_INTERVAL_NANOS) {
+            lastStatLogNanos = decodeStart;
+            Log.i(TAG, getStatString());
+        }
+        return results;
     }
 
-    @Override
-    public void setNumThreads(int numThreads) {
-        if (tfLite != null) {
-            tfLiteOptions.setNumThreads(numThreads);
-            recreateInterpreter();
+    private List<Recognition> results(final DetectionSlot slot, final int batchIndex) {
+        // maps the outputs of the postprocess op or decodes the anchors of a raw SSD model
+        Trace.beginSection("decode");
+        try {
+            return slot.recognitionPools[batchIndex].fill(slot.engine.decode(batchIndex), labels);
+        } finally {
+            Trace.endSection();
         }
     }
 
+    /**
+     * Backend of the slots, runs the inference on a free interpreter of the current pool.
+     */
+    private void runOnPool(final Object[] inputs, final Map<Integer, Object> outputs) {
+        while (true) {
+            final InterpreterPool pool = interpreterPool;
+            if (pool == null) {
+                awaitWarmUp();
+                continue;
+            }
+            final Interpreter interpreter;
+            final long waitStart = System.nanoTime();
+            try {
+                interpreter = pool.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for an interpreter", e);
+            }
+            if (interpreter == null) {
+                // the pool got replaced while waiting, retry on the new one
+                continue;
+            }
+            final long runStart = System.nanoTime();
+            metrics.record(Stage.WAIT, runStart - waitStart);
+            try {
+                interpreter.runForMultipleInputsOutputs(inputs, outputs);
+                metrics.record(Stage.RUN, System.nanoTime() - runStart);
+                return;
+            } finally {
+                pool.release(interpreter);
+            }
+        }
+    }
+
+    private synchronized void awaitWarmUp() {
+        while (interpreterPool == null) {
+            if (closed) {
+                throw new IllegalStateException("Detector is closed");
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the warm-up", e);
+            }
+        }
+    }
+
+    private void warmUp(final InterpreterPool pool, final int runs) {
+        Trace.beginSection("warmUp");
+        try {
+            // fault in the pages of the model now instead of during the first inferences
+            tfLiteModel.load();
+            if (warmUpSlot == null) {
+                warmUpSlot = newSlot();
+            }
+            for (int i = 0; i < runs; i++) {
+                warmUpSlot.engine.run(pool::warmUp);
+            }
+        } catch (RuntimeException e) {
+            // the frames pay for the initialization instead
+            Log.w(TAG, "Warm-up failed", e);
+        } finally {
+            Trace.endSection();
+        }
+        synchronized (this) {
+            if (closed) {
+                pool.close();
+                return;
+            }
+            warmUpEndNanos = System.nanoTime();
+            interpreterPool = pool;
+            notifyAll();
+        }
+    }
+
+    private synchronized void recordSteadyStateFrame(final long inferenceStart) {
+        // the first frame which did not wait for or compete with the warm-up
+        if (timeToFirstSteadyStateFrameNanos != 0 || warmUpEndNanos == 0 || inferenceStart < warmUpEndNanos) {
+            return;
+        }
+        timeToFirstSteadyStateFrameNanos = System.nanoTime() - createNanos;
+        Log.i(TAG, String.format(Locale.ENGLISH, "Time to first steady-state frame: %.1f ms, warm-up: %.1f ms",
+                timeToFirstSteadyStateFrameNanos / 1e6, (warmUpEndNanos - createNanos) / 1e6));
+    }
+
+    /**
+     * @return True once the warm-up finished and the inferences run at their steady-state latency
+     */
+    public boolean isWarmedUp() {
+        return warmUpEndNanos != 0;
+    }
+
+    /**
+     * @return Milliseconds from the creation of the detector until the end of the first inference
+     * which started after the warm-up, or -1 if there was no such inference yet
+     */
+    public double getTimeToFirstSteadyStateFrameMs() {
+        final long nanos = timeToFirstSteadyStateFrameNanos;
+        return nanos == 0 ? -1 : nanos / 1e6;
+    }
+
+    /**
+     * Sets the number of interpreters which can run inferences of different slots in parallel.
+     * Every interpreter uses the number of threads set with {@link #setNumThreads}, so the
+     * detector occupies up to size * numThreads cores.
+     * @param size Number of interpreters, at least 1
+     */
+    public synchronized void setInterpreterPoolSize(final int size) {
+        setInterpreterConfig(requestedConfig.withPoolSize(size));
+    }
+
+    public int getInterpreterPoolSize() {
+        final InterpreterPool pool = interpreterPool;
+        return pool == null ? 0 : pool.size();
+    }
+
+    /**
+     * Requests new interpreters with the given config. The method returns immediately, the new
+     * interpreters are built and warmed up on a background thread and replace the current ones
+     * between two inferences. Until then the inferences keep running on the current interpreters.
+     * Requests arriving during a rebuild are merged, only the latest config gets built.
+     */
+    public synchronized void setInterpreterConfig(final InterpreterConfig config) {
+        if (closed) {
+            return;
+        }
+        requestedConfig = config;
+        rebuildExecutor.execute(this::rebuildInterpreters);
+    }
+
+    /**
+     * @return Config of the interpreters currently running the inferences
+     */
+    public synchronized InterpreterConfig getInterpreterConfig() {
+        return activeConfig;
+    }
+
+    /**
+     * Blocks until all config changes requested so far are applied or failed.
+     */
+    public void awaitInterpreterConfig() throws InterruptedException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+        }
+        try {
+            rebuildExecutor.submit(() -> { }).get();
+        } catch (RejectedExecutionException e) {
+            // closed in the meantime
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Switches to the fastest interpreter config of this model on this device. The config is
+     * loaded from the store, on the first call for a model it is measured on the background thread
+     * and saved. The measurement runs next to the ongoing inferences and slows them down meanwhile.
+     * The pool size is kept.
+     */
+    public synchronized void autotune(final InterpreterConfigStore store) {
+        if (closed) {
+            return;
+        }
+        rebuildExecutor.execute(() -> runAutotune(store));
+    }
+
+    private void runAutotune(final InterpreterConfigStore store) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+        }
+        final String key = InterpreterAutotuner.modelHash(tfLiteModel) + "@" + Build.FINGERPRINT;
+        InterpreterConfig tuned = store.load(key);
+        if (tuned == null) {
+            tuned = new InterpreterAutotuner(AUTOTUNE_WARMUP_RUNS, AUTOTUNE_MEASURED_RUNS).tune(
+                    InterpreterAutotuner.defaultCandidates(Runtime.getRuntime().availableProcessors(), 1),
+                    this::measureLatency);
+            if (tuned == null) {
+                Log.w(TAG, "Autotuning failed, no interpreter config could be measured");
+                return;
+            }
+            Log.i(TAG, "Autotuned interpreter config: " + tuned);
+            store.save(key, tuned);
+        }
+        synchronized (this) {
+            setInterpreterConfig(tuned.withPoolSize(requestedConfig.poolSize));
+        }
+    }
+
+    private long[] measureLatency(final InterpreterConfig config, final int warmupRuns, final int measuredRuns) {
+        if (warmUpSlot == null) {
+            warmUpSlot = newSlot();
+        }
+        final Interpreter interpreter = new Interpreter(tfLiteModel, config.toOptions());
+        final InferenceBackend backend = interpreter::runForMultipleInputsOutputs;
+        try {
+            for (int i = 0; i < warmupRuns; i++) {
+                warmUpSlot.engine.run(backend);
+            }
+            final long[] latencies = new long[measuredRuns];
+            for (int i = 0; i < measuredRuns; i++) {
+                final long start = System.nanoTime();
+                warmUpSlot.engine.run(backend);
+                latencies[i] = System.nanoTime() - start;
+            }
+            return latencies;
+        } finally {
+            interpreter.close();
+        }
+    }
+
+    private void rebuildInterpreters() {
+        final InterpreterConfig config;
+        synchronized (this) {
+            if (closed || requestedConfig.equals(activeConfig)) {
+                return;
+            }
+            config = requestedConfig;
+        }
+
+        if (warmUpSlot == null) {
+            warmUpSlot = newSlot();
+        }
+        InterpreterPool pool = null;
+        try {
+            pool = new InterpreterPool(tfLiteModel, config.toOptions(), config.poolSize);
+            warmUpSlot.engine.run(pool::warmUp);
+        } catch (RuntimeException e) {
+            // e.g. a delegate which is not supported by the device, keep the running interpreters
+            Log.w(TAG, "Could not create interpreters with " + config, e);
+            if (pool != null) {
+                pool.close();
+            }
+            synchronized (this) {
+                if (requestedConfig == config) {
+                    requestedConfig = activeConfig;
+                }
+            }
+            return;
+        }
+
+        final InterpreterPool old;
+        synchronized (this) {
+            if (closed) {
+                pool.close();
+                return;
+            }
+            old = interpreterPool;
+            interpreterPool = pool;
+            activeConfig = config;
+        }
+        // waits for the inferences still running on the old interpreters, on this thread instead of theirs
+        old.close();
+    }
+
+    /**
+     * Replaces the preprocessor which writes the bitmap pixels into the input buffer.
+     * @param preprocessor The new preprocessor, the previous one gets closed
+     */
+    public void setInputPreprocessor(final InputPreprocessor preprocessor) {
+        synchronized (bitmapLock) {
+            if (inputPreprocessor != null) {
+                inputPreprocessor.close();
+            }
+            inputPreprocessor = preprocessor;
+        }
+    }
+
+    /**
+     * Logs the {@link #getStatString() stats} every few seconds of inferences.
+     */
+    @Override
+    public void enableStatLogging(final boolean logStats) {
+        this.logStats = logStats;
+    }
+
+    /**
+     * @return JSON snapshot with the time to the first steady-state frame in ms, -1 before it, and
+     * the {@link StageMetrics#toJson() stage metrics}
+     */
     @Override
-    public void setUseNNAPI(boolean isChecked) {
-        if (tfLite != null) {
-            tfLiteOptions.setUseNNAPI(isChecked);
-            recreateInterpreter();
+    public String getStatString() {
+        return String.format(Locale.ENGLISH, "{\"timeToFirstSteadyStateMs\":%.1f,\"metrics\":%s}",
+                getTimeToFirstSteadyStateFrameMs(), metrics.toJson());
+    }
+
+    /**
+     * @return The stage metrics of the detector, the stages outside of it are recorded by the caller
+     */
+    public StageMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        // same lock order as the bitmap methods which query the config
+        synchronized (bitmapLock) {
+            closeBatchInterpreter();
+            if (batchExecutor != null) {
+                batchExecutor.shutdown();
+                batchExecutor = null;
+            }
+            synchronized (this) {
+                closed = true;
+                // wakes inferences waiting for the warm-up
+                notifyAll();
+                rebuildExecutor.shutdown();
+                if (interpreterPool != null) {
+                    final InterpreterPool pool = interpreterPool;
+                    interpreterPool = null;
+                    pool.close();
+                }
+                if (inputPreprocessor != null) {
+                    inputPreprocessor.close();
+                }
+            }
         }
     }
 
-    private void recreateInterpreter() {
-        tfLite.close();
-        tfLite = new Interpreter(tfLiteModel, tfLiteOptions);
+    @Override
+    public synchronized void setNumThreads(int numThreads) {
+        setInterpreterConfig(requestedConfig.withNumThreads(numThreads));
+    }
+
+    @Override
+    public synchronized void setUseNNAPI(boolean isChecked) {
+        setInterpreterConfig(requestedConfig.withUseNNAPI(isChecked));
     }
 }
@@ -0,0 +1,62 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+/**
+ * Square tiles covering a region with a minimum overlap between neighbours.
+ * The tiles are spread evenly, so the overlap along an axis is at least the requested one and
+ * the outermost tiles touch the borders of the region.
+ */
+class TileGrid {
+    final int tileSize;
+    // offsets of the tile columns and rows relative to the region
+    final int[] offsetsX;
+    final int[] offsetsY;
+
+    /**
+     * @param width Width of the region
+     * @param height Height of the region
+     * @param tilesPerShortSide Number of tiles along the shorter side of the region
+     * @param overlap Minimum overlap of neighbouring tiles as fraction of the tile size, in [0, 1)
+     */
+    TileGrid(final int width, final int height, final int tilesPerShortSide, final float overlap) {
+        if (tilesPerShortSide < 1) {
+            throw new IllegalArgumentException("At least one tile per side needed");
+        }
+        if (overlap < 0 || overlap >= 1) {
+            throw new IllegalArgumentException("Overlap has to be in [0, 1)");
+        }
+        final int shortSide = Math.min(width, height);
+        tileSize = Math.min(shortSide,
+                (int) Math.ceil(shortSide / (tilesPerShortSide - (tilesPerShortSide - 1) * overlap)));
+        final float stride = tileSize * (1 - overlap);
+        offsetsX = offsets(width, tileSize, stride);
+        offsetsY = offsets(height, tileSize, stride);
+    }
+
+    private static int[] offsets(final int length, final int tileSize, final float stride) {
+        final int count = length <= tileSize ? 1 : (int) Math.ceil((length - tileSize) / stride - 1e-4f) + 1;
+        final int[] offsets = new int[count];
+        for (int i = 1; i < count; i++) {
+            offsets[i] = Math.round(i * (length - tileSize) / (float) (count - 1));
+        }
+        return offsets;
+    }
+
+    int count() {
+        return offsetsX.length * offsetsY.length;
+    }
+}
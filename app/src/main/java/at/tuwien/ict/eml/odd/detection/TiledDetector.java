@@ -0,0 +1,213 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.os.Trace;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import at.tuwien.ict.eml.odd.detection.Detector.Recognition;
+
+/**
+ * Detects small objects in high resolution images. Instead of scaling the whole image down to
+ * the model input, it is split into overlapping tiles which are scaled to the model input one by one.
+ * The tiles run through {@link Detector#recognizeImages}, so they are inferred in parallel on the
+ * interpreter pool. The detections are mapped back to the image and duplicates of objects
+ * crossing a tile seam are merged.
+ *
+ * <p>A downscaled view of the whole region is detected as well, so objects larger than a tile
+ * are found completely.
+ */
+public class TiledDetector {
+    // suppression thresholds of the duplicate merge
+    private static final float IOU_THRESHOLD = 0.5f;
+    // a box cut by a seam is mostly contained in the box of the neighbouring tile
+    private static final float SEAM_CONTAINMENT_THRESHOLD = 0.7f;
+
+    private final Detector detector;
+    private final int inputSize;
+    private final int tilesPerShortSide;
+    private final float overlap;
+    private double lastTilesPerSecond;
+
+    /**
+     * @param detector Detector for the tiles
+     * @param inputSize Model input size the tiles are scaled to
+     * @param tilesPerShortSide Number of tiles along the shorter side of the region
+     * @param overlap Minimum overlap of neighbouring tiles as fraction of the tile size
+     */
+    public TiledDetector(final Detector detector, final int inputSize, final int tilesPerShortSide, final float overlap) {
+        this.detector = detector;
+        this.inputSize = inputSize;
+        this.tilesPerShortSide = tilesPerShortSide;
+        this.overlap = overlap;
+    }
+
+    /**
+     * Detects the objects in a region of the bitmap.
+     * @return New recognitions with locations in bitmap coordinates
+     */
+    public List<Recognition> recognizeRegion(
+            final Bitmap bitmap, final int regionLeft, final int regionTop, final int regionWidth, final int regionHeight) {
+        Trace.beginSection("recognizeTiles");
+        final long start = System.nanoTime();
+
+        final TileGrid grid = new TileGrid(regionWidth, regionHeight, tilesPerShortSide, overlap);
+        final int tiles = grid.count() + 1;
+        // left, top, scaleX, scaleY of every tile, the last one is the whole region
+        final float[] transforms = new float[tiles * 4];
+        final List<Bitmap> tileBitmaps = new ArrayList<>(tiles);
+        int tile = 0;
+        for (final int y : grid.offsetsY) {
+            for (final int x : grid.offsetsX) {
+                tileBitmaps.add(crop(bitmap, regionLeft + x, regionTop + y, grid.tileSize, grid.tileSize));
+                setTransform(transforms, tile++, regionLeft + x, regionTop + y, grid.tileSize, grid.tileSize);
+            }
+        }
+        tileBitmaps.add(crop(bitmap, regionLeft, regionTop, regionWidth, regionHeight));
+        setTransform(transforms, tile, regionLeft, regionTop, regionWidth, regionHeight);
+
+        final List<List<Recognition>> tileResults = detector.recognizeImages(tileBitmaps);
+
+        int count = 0;
+        for (final List<Recognition> results : tileResults) {
+            count += results.size();
+        }
+        final float[] boxes = new float[count * 4];
+        final float[] scores = new float[count];
+        final int[] classes = new int[count];
+        final int[] tileIndices = new int[count];
+        final Recognition[] sources = new Recognition[count];
+        int n = 0;
+        for (tile = 0; tile < tiles; tile++) {
+            final float left = transforms[tile * 4];
+            final float top = transforms[tile * 4 + 1];
+            final float scaleX = transforms[tile * 4 + 2];
+            final float scaleY = transforms[tile * 4 + 3];
+            for (final Recognition result : tileResults.get(tile)) {
+                final RectF location = result.getLocation();
+                boxes[n * 4] = left + location.left * scaleX;
+                boxes[n * 4 + 1] = top + location.top * scaleY;
+                boxes[n * 4 + 2] = left + location.right * scaleX;
+                boxes[n * 4 + 3] = top + location.bottom * scaleY;
+                scores[n] = result.getConfidence();
+                classes[n] = result.getClassId();
+                tileIndices[n] = tile;
+                sources[n] = result;
+                n++;
+            }
+        }
+        for (final Bitmap tileBitmap : tileBitmaps) {
+            tileBitmap.recycle();
+        }
+
+        final int[] kept = mergeDuplicates(boxes, scores, classes, tileIndices, count);
+        final List<Recognition> merged = new ArrayList<>(kept.length);
+        for (final int i : kept) {
+            merged.add(new Recognition(
+                    sources[i].getId(),
+                    classes[i],
+                    sources[i].getTitle(),
+                    scores[i],
+                    new RectF(boxes[i * 4], boxes[i * 4 + 1], boxes[i * 4 + 2], boxes[i * 4 + 3])));
+        }
+
+        final long elapsed = System.nanoTime() - start;
+        lastTilesPerSecond = tiles / (elapsed / 1e9);
+        Trace.endSection(); // "recognizeTiles"
+        return merged;
+    }
+
+    /**
+     * @return Tiles per second of the last call of recognizeRegion, including cropping and merging
+     */
+    public double getLastTilesPerSecond() {
+        return lastTilesPerSecond;
+    }
+
+    private Bitmap crop(final Bitmap bitmap, final int left, final int top, final int width, final int height) {
+        final Matrix scale = new Matrix();
+        scale.postScale(inputSize / (float) width, inputSize / (float) height);
+        return Bitmap.createBitmap(bitmap, left, top, width, height, scale, true);
+    }
+
+    /**
+     * Stores the mapping from the model input of a tile back to the bitmap.
+     */
+    private void setTransform(
+            final float[] transforms, final int tile, final int left, final int top, final int width, final int height) {
+        transforms[tile * 4] = left;
+        transforms[tile * 4 + 1] = top;
+        transforms[tile * 4 + 2] = width / (float) inputSize;
+        transforms[tile * 4 + 3] = height / (float) inputSize;
+    }
+
+    /**
+     * Greedy class-aware suppression of duplicates. A box is dropped if a higher scored box of the
+     * same class overlaps it with an IoU above the threshold, or if the boxes come from different
+     * tiles and most of the box lies inside the other one, like an object cut by a tile seam.
+     * @param boxes [left, top, right, bottom] per box
+     * @return Indices of the kept boxes, by descending score
+     */
+    static int[] mergeDuplicates(
+            final float[] boxes, final float[] scores, final int[] classes, final int[] tiles, final int count) {
+        final Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(scores[b], scores[a]));
+
+        final int[] kept = new int[count];
+        int keptCount = 0;
+        for (final int candidate : order) {
+            boolean duplicate = false;
+            for (int k = 0; k < keptCount && !duplicate; k++) {
+                final int other = kept[k];
+                if (classes[other] != classes[candidate]) {
+                    continue;
+                }
+                final float intersection = intersection(boxes, candidate, other);
+                if (intersection <= 0) {
+                    continue;
+                }
+                final float candidateArea = area(boxes, candidate);
+                final float union = candidateArea + area(boxes, other) - intersection;
+                duplicate = intersection > IOU_THRESHOLD * union
+                        || (tiles[other] != tiles[candidate]
+                        && intersection > SEAM_CONTAINMENT_THRESHOLD * candidateArea);
+            }
+            if (!duplicate) {
+                kept[keptCount++] = candidate;
+            }
+        }
+        return Arrays.copyOf(kept, keptCount);
+    }
+
+    private static float area(final float[] boxes, final int i) {
+        return Math.max(0, boxes[i * 4 + 2] - boxes[i * 4]) * Math.max(0, boxes[i * 4 + 3] - boxes[i * 4 + 1]);
+    }
+
+    private static float intersection(final float[] boxes, final int a, final int b) {
+        final float width = Math.min(boxes[a * 4 + 2], boxes[b * 4 + 2]) - Math.max(boxes[a * 4], boxes[b * 4]);
+        final float height = Math.min(boxes[a * 4 + 3], boxes[b * 4 + 3]) - Math.max(boxes[a * 4 + 1], boxes[b * 4 + 1]);
+        return width > 0 && height > 0 ? width * height : 0;
+    }
+}
@@ -30,6 +30,8 @@ import java.util.Vector;
 public class BorderedText {
   private final Paint interiorPaint;
   private final Paint exteriorPaint;
+  // reused for the background of the labels
+  private final Paint backgroundPaint = new Paint();
 
   private final float textSize;
   private final float overlap = 10.0f;
@@ -86,10 +88,10 @@ public class BorderedText {
 
     float width = exteriorPaint.measureText(text);
     float textSize = exteriorPaint.getTextSize();
-    Paint paint = new Paint(bgPaint);
-    paint.setStyle(Style.FILL);
+    backgroundPaint.set(bgPaint);
+    backgroundPaint.setStyle(Style.FILL);
     //paint.setAlpha(160);
-    canvas.drawRect(posX, (posY + (int) (textSize) + overlap), (posX + (int) (width) + 2*overlap), posY, paint);
+    canvas.drawRect(posX, (posY + (int) (textSize) + overlap), (posX + (int) (width) + 2*overlap), posY, backgroundPaint);
 
     canvas.drawText(text, posX + overlap, (posY + textSize), interiorPaint);
   }
@@ -20,9 +20,7 @@ import android.graphics.Color;
 import android.graphics.DashPathEffect;
 import android.graphics.Paint;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import at.tuwien.ict.eml.odd.stats.SlidingQuantiles;
 
 /**
  * Class for generating and drawing a boxplot onto a given canvas
@@ -36,7 +34,7 @@ public class Boxplot{
     private Paint medianTextPaint;
     private Paint connPaint;
 
-    private ArrayList<Integer> data;
+    private boolean hasData;
 
     private float median;
     private float firstQuart;
@@ -92,28 +90,20 @@ public class Boxplot{
     }
 
     /**
-     * Copy the data into the boxplot
-     * @param data Data to be processed
+     * Takes the quantiles of the samples for the boxplot
+     * @param data Samples to be plotted
      */
-    public final void setBoxplotData(ArrayList<Integer> data){
-        if(data != null){
-            this.data = (ArrayList<Integer>) data.clone();
-            this.processData();
+    public final void setBoxplotData(SlidingQuantiles data){
+        if(data != null && data.size() > 0){
+            minWhisker = data.min();
+            maxWhisker = data.max();
+            median = data.quantile(0.5);
+            firstQuart = data.quantile(0.25);
+            thirdQuart = data.quantile(0.75);
+            hasData = true;
         }
     }
 
-    /**
-     * Calculates all needed values for drawing the boxplot
-     */
-    private void processData(){
-        data.sort(Comparator.naturalOrder());
-        minWhisker = Collections.min(data);
-        maxWhisker = Collections.max(data);
-        median = median(data);
-        firstQuart = quartile(1, data);
-        thirdQuart = quartile(3, data);
-    }
-
     /**
      * Draw the boxplot onto canvas
      * @param canvas The canvas to draw on
@@ -129,7 +119,7 @@ public class Boxplot{
         final float medianBaseline = canvasSizeY;
 
         // message until the first drawing
-        if(data == null){
+        if(!hasData){
             canvas.drawText("Gathering data ...", canvasSizeX/2-axisPaint.measureText("Gathering data ...")/2, plotHeight/2, messagePaint);
             return;
         }
@@ -160,34 +150,4 @@ public class Boxplot{
         canvas.drawText(whiskerMaxText, canvasSizeX-axisPaint.measureText(whiskerMaxText), axisBaseline, axisPaint);
         canvas.drawText(medianText, canvas_median-axisPaint.measureText(medianText)/2, medianBaseline, medianTextPaint);
     }
-
-    /** 
-     * Calculates the median
-     */
-    private static Integer median(ArrayList<Integer> data){
-        Integer median;
-        // even
-        if (data.size() % 2 == 0)
-            median = data.get(data.size() / 2);
-        else // odd
-            median = data.get(data.size()/2);
-        return median;
-    }
-
-    /**
-     * Calculates the requested quartile
-     * @param quartileOrder The requested quartile
-     * @param data The data
-     * @return The boundary of the requested quartile
-     */
-    private static float quartile(Integer quartileOrder, ArrayList<Integer> data){
-        float index = (float) quartileOrder/4*(data.size()+1);
-        if (index == (int)index){
-            return data.get((int)index);
-        }else{
-            float test1 = (float)(data.get((int)index));
-            float test2 = (float)(data.get((int)(index) + 1));
-            return (int)((test1 + test2)/2);
-        }
-    }
-}
\ No newline at end of file
+}
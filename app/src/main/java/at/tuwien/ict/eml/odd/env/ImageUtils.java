@@ -105,25 +105,13 @@ public class ImageUtils {
             final int aspectDstHeight,
             final int applyRotationToSrc) {
 
-        final boolean transpose = (Math.abs(applyRotationToSrc) + 90) % 180 == 0;
-        float tmpSrcWidth = (transpose) ? srcHeight : srcWidth;
-        float tmpSrcHeight = (transpose) ? srcWidth : srcHeight;
-
-        int newWidth, newHeight;
-        float scaleWidth = (float) aspectDstWidth / tmpSrcWidth;
-        float scaleHeight = (float) aspectDstHeight / tmpSrcHeight;
-
-        if (scaleWidth >= scaleHeight) {
-            newHeight = (int) (tmpSrcWidth * (float) aspectDstHeight / (float) aspectDstWidth);
-            newWidth = (int) tmpSrcWidth;
-        } else {
-            newWidth = (int) (tmpSrcHeight * (float) aspectDstWidth / (float) aspectDstHeight);
-            newHeight = (int) tmpSrcHeight;
-        }
+        final int[] size = new int[2];
+        FrameTransform.getVisibleFrameSize(
+                srcWidth, srcHeight, aspectDstWidth, aspectDstHeight, applyRotationToSrc, size);
 
         ArrayList<Integer> resultList = new ArrayList<>();
-        resultList.add(newWidth);
-        resultList.add(newHeight);
+        resultList.add(size[0]);
+        resultList.add(size[1]);
         return resultList;
     }
 
@@ -150,37 +138,11 @@ public class ImageUtils {
             final int dstHeight,
             final int applyRotation,
             final boolean containDstAspect) {
+        final float[] values = new float[FrameTransform.VALUE_COUNT];
+        FrameTransform.getTransformation(
+                srcWidth, srcHeight, dstWidth, dstHeight, applyRotation, containDstAspect, values);
         final Matrix matrix = new Matrix();
-
-        matrix.postTranslate(-srcWidth / 2.0f, -srcHeight / 2.0f);
-        if (applyRotation != 0) {
-            // Rotate around origin.
-            matrix.postRotate(applyRotation);
-        }
-
-        // Account for the already applied rotation, if any, and then determine how
-        // much scaling is needed for each axis.
-        final boolean transpose = (Math.abs(applyRotation) + 90) % 180 == 0;
-
-        final int inWidth = transpose ? srcHeight : srcWidth;
-        final int inHeight = transpose ? srcWidth : srcHeight;
-
-        // Apply scaling if necessary.
-        if (inWidth != dstWidth || inHeight != dstHeight) {
-            final float scaleFactorX = dstWidth / (float) inWidth;
-            final float scaleFactorY = dstHeight / (float) inHeight;
-
-            if (containDstAspect) {
-                // Scale by minimum factor so that dst is filled completely while
-                // maintaining the aspect ratio. Some image may fall off the edge.
-                final float scaleFactor = Math.max(scaleFactorX, scaleFactorY);
-                matrix.postScale(scaleFactor, scaleFactor);
-            } else {
-                // Scale exactly to fill dst from src.
-                matrix.postScale(scaleFactorX, scaleFactorY);
-            }
-        }
-        matrix.postTranslate(dstWidth / 2.0f, dstHeight / 2.0f);
+        matrix.setValues(values);
         return matrix;
     }
 
@@ -0,0 +1,66 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.env;
+
+/**
+ * Fixed point BT.601 (video range) conversion of a single YUV sample to RGB.
+ * The coefficients are scaled by 1024, like ScriptIntrinsicYuvToRGB the result is clamped to [0, 255].
+ */
+public final class YuvColor {
+    // 1.164 * 1024
+    static final int Y_SCALE = 1192;
+    // 1.596 * 1024
+    static final int V_TO_R = 1634;
+    // 0.813 * 1024
+    static final int V_TO_G = 833;
+    // 0.391 * 1024
+    static final int U_TO_G = 400;
+    // 2.018 * 1024
+    static final int U_TO_B = 2066;
+    // 0.5 * 1024, rounds instead of truncating the result
+    private static final int ROUNDING = 512;
+    // 255 << 10
+    private static final int MAX_CHANNEL_VALUE = 261120;
+
+    private YuvColor() { }
+
+    /**
+     * Converts one YUV sample to a packed ARGB pixel with full alpha.
+     * @param y Luma value [0, 255]
+     * @param u Cb value [0, 255]
+     * @param v Cr value [0, 255]
+     * @return The ARGB pixel
+     */
+    public static int toArgb(int y, int u, int v) {
+        y -= 16;
+        u -= 128;
+        v -= 128;
+        if (y < 0) {
+            y = 0;
+        }
+
+        final int yScaled = Y_SCALE * y + ROUNDING;
+        int r = yScaled + V_TO_R * v;
+        int g = yScaled - V_TO_G * v - U_TO_G * u;
+        int b = yScaled + U_TO_B * u;
+
+        r = r > MAX_CHANNEL_VALUE ? MAX_CHANNEL_VALUE : (r < 0 ? 0 : r);
+        g = g > MAX_CHANNEL_VALUE ? MAX_CHANNEL_VALUE : (g < 0 ? 0 : g);
+        b = b > MAX_CHANNEL_VALUE ? MAX_CHANNEL_VALUE : (b < 0 ? 0 : b);
+
+        return 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+    }
+}
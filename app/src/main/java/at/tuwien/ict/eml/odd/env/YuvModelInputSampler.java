@@ -0,0 +1,262 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.env;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Fused crop, rotation, scaling, color conversion and normalization of a YUV_420_888 frame
+ * into the input buffer of a model.
+ *
+ * <p>Produces the same geometry as {@link ImageUtils#ConvertPreviewBitmapToModelInput} with
+ * scaleToDstSize enabled, but samples every model input pixel directly out of the YUV planes
+ * (nearest neighbour) instead of converting the whole frame to an ARGB Bitmap and creating a
+ * rotated and scaled copy of it.
+ *
+ * <p>The source position of every destination column and row is precomputed whenever the
+ * geometry or the plane strides change, so the per frame work is a table lookup, the fixed
+ * point color conversion and a bulk row copy.
+ */
+public class YuvModelInputSampler {
+    private final int dstSize;
+    private final boolean isQuantized;
+    private final float[] normalization = new float[256];
+
+    // current geometry
+    private int srcWidth = -1;
+    private int srcHeight = -1;
+    private int aspectDstWidth = -1;
+    private int aspectDstHeight = -1;
+    private int rotation = -1;
+    private boolean cropModeContain;
+    private final int[] visibleSize = new int[2];
+
+    // current plane layout
+    private int yRowStride = -1;
+    private int yPixelStride = -1;
+    private int uvRowStride = -1;
+    private int uvPixelStride = -1;
+    private int cropLeft = -1;
+    private int cropTop = -1;
+
+    // source x or y coordinate for every destination column and row
+    private final int[] colSource;
+    private final int[] rowSource;
+    // true when destination columns sample source rows, for 90 and 270 degree rotations
+    private boolean transpose;
+
+    // plane offsets for every destination column and row, y = row + col
+    private final int[] colY;
+    private final int[] rowY;
+    private final int[] colUV;
+    private final int[] rowUV;
+
+    // reused row buffers
+    private final float[] floatRow;
+    private final byte[] byteRow;
+    private ByteBuffer boundBuffer;
+    private FloatBuffer floatView;
+
+    /**
+     * @param dstSize Model input size in pixel.
+     * @param isQuantized True to write uint8 values, false to write normalized floats
+     * @param mean Mean which is subtracted from float values
+     * @param std Standard deviation float values are divided by
+     */
+    public YuvModelInputSampler(final int dstSize, final boolean isQuantized, final float mean, final float std) {
+        this.dstSize = dstSize;
+        this.isQuantized = isQuantized;
+        for (int i = 0; i < normalization.length; i++) {
+            normalization[i] = (i - mean) / std;
+        }
+        colSource = new int[dstSize];
+        rowSource = new int[dstSize];
+        colY = new int[dstSize];
+        rowY = new int[dstSize];
+        colUV = new int[dstSize];
+        rowUV = new int[dstSize];
+        floatRow = isQuantized ? null : new float[dstSize * 3];
+        byteRow = isQuantized ? new byte[dstSize * 3] : null;
+    }
+
+    /**
+     * Sets the geometry of the crop, the tables are only recalculated if a value changed.
+     * @param srcWidth Width of the camera frame.
+     * @param srcHeight Height of the camera frame.
+     * @param aspectDstWidth Width of the visible area.
+     * @param aspectDstHeight Height of the visible area.
+     * @param applyRotationToSrc Rotation of the camera frame in degree, a multiple of 90.
+     * @param cropModeContain When True, crop with a 1:1 aspect ratio, if not clinch the whole visible screen area to the dstSize.
+     */
+    public void configure(
+            final int srcWidth,
+            final int srcHeight,
+            final int aspectDstWidth,
+            final int aspectDstHeight,
+            final int applyRotationToSrc,
+            final boolean cropModeContain) {
+        final int rotation = ((applyRotationToSrc % 360) + 360) % 360;
+        if (srcWidth == this.srcWidth && srcHeight == this.srcHeight
+                && aspectDstWidth == this.aspectDstWidth && aspectDstHeight == this.aspectDstHeight
+                && rotation == this.rotation && cropModeContain == this.cropModeContain) {
+            return;
+        }
+        this.srcWidth = srcWidth;
+        this.srcHeight = srcHeight;
+        this.aspectDstWidth = aspectDstWidth;
+        this.aspectDstHeight = aspectDstHeight;
+        this.rotation = rotation;
+        this.cropModeContain = cropModeContain;
+
+        // same crop as ImageUtils.ConvertPreviewBitmapToModelInput, in the rotated frame
+        FrameTransform.getVisibleFrameSize(
+                srcWidth, srcHeight, aspectDstWidth, aspectDstHeight, rotation, visibleSize);
+        final int minSquare = Math.min(visibleSize[0], visibleSize[1]);
+        final int newWidth = cropModeContain ? minSquare : visibleSize[0];
+        final int newHeight = cropModeContain ? minSquare : visibleSize[1];
+
+        transpose = rotation == 90 || rotation == 270;
+        final int rotatedWidth = transpose ? srcHeight : srcWidth;
+        final int rotatedHeight = transpose ? srcWidth : srcHeight;
+        final int newX = Math.abs(newWidth - rotatedWidth) / 2;
+        final int newY = Math.abs(newHeight - rotatedHeight) / 2;
+
+        for (int d = 0; d < dstSize; d++) {
+            // pixel centers of the destination in the rotated frame
+            final int rx = Math.min(rotatedWidth - 1, newX + (int) ((d + 0.5f) * newWidth / dstSize));
+            final int ry = Math.min(rotatedHeight - 1, newY + (int) ((d + 0.5f) * newHeight / dstSize));
+            // undo the rotation, columns map to source x (or y when transposed), rows to the other axis
+            switch (rotation) {
+                case 90:
+                    colSource[d] = srcHeight - 1 - rx; // source y
+                    rowSource[d] = ry;                 // source x
+                    break;
+                case 180:
+                    colSource[d] = srcWidth - 1 - rx;  // source x
+                    rowSource[d] = srcHeight - 1 - ry; // source y
+                    break;
+                case 270:
+                    colSource[d] = rx;                 // source y
+                    rowSource[d] = srcWidth - 1 - ry;  // source x
+                    break;
+                default:
+                    colSource[d] = rx;                 // source x
+                    rowSource[d] = ry;                 // source y
+                    break;
+            }
+        }
+        // force the recalculation of the plane offsets
+        yRowStride = -1;
+    }
+
+    /**
+     * Recalculates the plane offset tables when the layout of the planes changed.
+     */
+    private void updateOffsets(final YuvPlanes planes) {
+        if (planes.yRowStride == yRowStride && planes.yPixelStride == yPixelStride
+                && planes.uvRowStride == uvRowStride && planes.uvPixelStride == uvPixelStride
+                && planes.cropLeft == cropLeft && planes.cropTop == cropTop) {
+            return;
+        }
+        yRowStride = planes.yRowStride;
+        yPixelStride = planes.yPixelStride;
+        uvRowStride = planes.uvRowStride;
+        uvPixelStride = planes.uvPixelStride;
+        cropLeft = planes.cropLeft;
+        cropTop = planes.cropTop;
+
+        for (int d = 0; d < dstSize; d++) {
+            if (transpose) {
+                final int sy = colSource[d] + cropTop;
+                final int sx = rowSource[d] + cropLeft;
+                colY[d] = sy * yRowStride;
+                colUV[d] = (sy >> 1) * uvRowStride;
+                rowY[d] = sx * yPixelStride;
+                rowUV[d] = (sx >> 1) * uvPixelStride;
+            } else {
+                final int sx = colSource[d] + cropLeft;
+                final int sy = rowSource[d] + cropTop;
+                colY[d] = sx * yPixelStride;
+                colUV[d] = (sx >> 1) * uvPixelStride;
+                rowY[d] = sy * yRowStride;
+                rowUV[d] = (sy >> 1) * uvRowStride;
+            }
+        }
+    }
+
+    /**
+     * Samples the configured crop out of the frame and writes it as RGB into the model input.
+     * The destination buffer is rewound afterwards.
+     * @param planes The YUV_420_888 frame, its size has to match the configured source size
+     * @param dst Direct input buffer of the model with native byte order
+     */
+    public void sample(final YuvPlanes planes, final ByteBuffer dst) {
+        if (planes.width != srcWidth || planes.height != srcHeight) {
+            throw new IllegalStateException("Sampler configured for " + srcWidth + "x" + srcHeight
+                    + " but got a " + planes.width + "x" + planes.height + " frame");
+        }
+        updateOffsets(planes);
+
+        final ByteBuffer yPlane = planes.y;
+        final ByteBuffer uPlane = planes.u;
+        final ByteBuffer vPlane = planes.v;
+
+        if (isQuantized) {
+            dst.rewind();
+            for (int dy = 0; dy < dstSize; dy++) {
+                final int yRow = rowY[dy];
+                final int uvRow = rowUV[dy];
+                for (int dx = 0, i = 0; dx < dstSize; dx++, i += 3) {
+                    final int uvIndex = uvRow + colUV[dx];
+                    final int argb = YuvColor.toArgb(
+                            yPlane.get(yRow + colY[dx]) & 0xFF,
+                            uPlane.get(uvIndex) & 0xFF,
+                            vPlane.get(uvIndex) & 0xFF);
+                    byteRow[i] = (byte) (argb >> 16);
+                    byteRow[i + 1] = (byte) (argb >> 8);
+                    byteRow[i + 2] = (byte) argb;
+                }
+                dst.put(byteRow);
+            }
+        } else {
+            if (dst != boundBuffer) {
+                final ByteBuffer base = dst.duplicate().order(dst.order());
+                base.rewind();
+                floatView = base.asFloatBuffer();
+                boundBuffer = dst;
+            }
+            final float[] lut = normalization;
+            floatView.rewind();
+            for (int dy = 0; dy < dstSize; dy++) {
+                final int yRow = rowY[dy];
+                final int uvRow = rowUV[dy];
+                for (int dx = 0, i = 0; dx < dstSize; dx++, i += 3) {
+                    final int uvIndex = uvRow + colUV[dx];
+                    final int argb = YuvColor.toArgb(
+                            yPlane.get(yRow + colY[dx]) & 0xFF,
+                            uPlane.get(uvIndex) & 0xFF,
+                            vPlane.get(uvIndex) & 0xFF);
+                    floatRow[i] = lut[(argb >> 16) & 0xFF];
+                    floatRow[i + 1] = lut[(argb >> 8) & 0xFF];
+                    floatRow[i + 2] = lut[argb & 0xFF];
+                }
+                floatView.put(floatRow);
+            }
+        }
+        dst.rewind();
+    }
+}
@@ -0,0 +1,91 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.env;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.media.Image;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Plain view onto the three planes of a YUV_420_888 frame.
+ * Decouples the pixel processing from android.media.Image, so it can be reused for every
+ * frame and filled from raw buffers in tests.
+ */
+public class YuvPlanes {
+    public ByteBuffer y;
+    public ByteBuffer u;
+    public ByteBuffer v;
+    public int yRowStride;
+    public int yPixelStride;
+    public int uvRowStride;
+    public int uvPixelStride;
+    // visible area of the frame inside the planes
+    public int cropLeft;
+    public int cropTop;
+    public int width;
+    public int height;
+
+    /**
+     * Points this instance to the planes of the given camera image.
+     * @param image Image in the YUV_420_888 format
+     * @return this
+     */
+    public YuvPlanes set(final Image image) {
+        if (image.getFormat() != ImageFormat.YUV_420_888) {
+            throw new IllegalArgumentException("Unsupported image format " + image.getFormat());
+        }
+        final Image.Plane[] planes = image.getPlanes();
+        final Rect crop = image.getCropRect();
+        return set(
+                planes[0].getBuffer(), planes[1].getBuffer(), planes[2].getBuffer(),
+                planes[0].getRowStride(), planes[0].getPixelStride(),
+                planes[1].getRowStride(), planes[1].getPixelStride(),
+                crop.left, crop.top, crop.width(), crop.height());
+    }
+
+    /**
+     * Points this instance to the given raw planes.
+     * U and V share the row and pixel stride, as guaranteed for YUV_420_888.
+     * @return this
+     */
+    public YuvPlanes set(
+            final ByteBuffer y,
+            final ByteBuffer u,
+            final ByteBuffer v,
+            final int yRowStride,
+            final int yPixelStride,
+            final int uvRowStride,
+            final int uvPixelStride,
+            final int cropLeft,
+            final int cropTop,
+            final int width,
+            final int height) {
+        this.y = y;
+        this.u = u;
+        this.v = v;
+        this.yRowStride = yRowStride;
+        this.yPixelStride = yPixelStride;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+        this.cropLeft = cropLeft;
+        this.cropTop = cropTop;
+        this.width = width;
+        this.height = height;
+        return this;
+    }
+}
@@ -0,0 +1,168 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.env;
+
+import android.graphics.Bitmap;
+import android.media.Image;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts YUV_420_888 frames to RGB without RenderScript.
+ *
+ * <p>The planes are read in place with their row and pixel strides, so neither an intermediate
+ * NV21 copy nor any per frame allocation is needed. The rows are converted in stripes on a
+ * worker pool with the fixed point BT.601 math of {@link YuvColor}. The result can be written
+ * into an ARGB int array, a RGBA direct ByteBuffer or a Bitmap.
+ */
+public class YuvToRgbConverter {
+    private final ParallelStripes stripes;
+    private final YuvPlanes planes = new YuvPlanes();
+    private int[] bitmapPixels;
+
+    // arguments of the running conversion, read by the stripe tasks
+    private YuvPlanes src;
+    private int[] intOutput;
+    private ByteBuffer byteOutput;
+
+    private final ParallelStripes.StripeTask intTask = this::convertRowsToInt;
+    private final ParallelStripes.StripeTask byteTask = this::convertRowsToBytes;
+
+    /**
+     * @param threads Number of threads used for a conversion, including the calling thread
+     */
+    public YuvToRgbConverter(final int threads) {
+        stripes = new ParallelStripes(threads, "YuvToRgbConverter");
+    }
+
+    /**
+     * Converts the visible area of the image into the bitmap.
+     * @param image Image in the YUV_420_888 format
+     * @param output ARGB_8888 bitmap with the size of the crop rect of the image
+     */
+    public synchronized void yuvToRgb(final Image image, final Bitmap output) {
+        planes.set(image);
+        final int pixelCount = planes.width * planes.height;
+        if (bitmapPixels == null || bitmapPixels.length != pixelCount) {
+            bitmapPixels = new int[pixelCount];
+        }
+        yuvToRgb(planes, bitmapPixels);
+        output.setPixels(bitmapPixels, 0, planes.width, 0, 0, planes.width, planes.height);
+    }
+
+    /**
+     * Converts the frame into row major ARGB pixels.
+     * @param frame The YUV_420_888 frame
+     * @param output Array with at least width * height elements
+     */
+    public synchronized void yuvToRgb(final YuvPlanes frame, final int[] output) {
+        if (output.length < frame.width * frame.height) {
+            throw new IllegalArgumentException("Output too small for a " + frame.width + "x" + frame.height + " frame");
+        }
+        src = frame;
+        intOutput = output;
+        try {
+            stripes.run(frame.height, intTask);
+        } finally {
+            src = null;
+            intOutput = null;
+        }
+    }
+
+    /**
+     * Converts the frame into RGBA bytes, the layout of an ARGB_8888 Bitmap in memory.
+     * The position of the output is not changed.
+     * @param frame The YUV_420_888 frame
+     * @param output Buffer with at least width * height * 4 bytes
+     */
+    public synchronized void yuvToRgb(final YuvPlanes frame, final ByteBuffer output) {
+        if (output.capacity() < frame.width * frame.height * 4) {
+            throw new IllegalArgumentException("Output too small for a " + frame.width + "x" + frame.height + " frame");
+        }
+        src = frame;
+        byteOutput = output;
+        try {
+            stripes.run(frame.height, byteTask);
+        } finally {
+            src = null;
+            byteOutput = null;
+        }
+    }
+
+    private void convertRowsToInt(final int stripe, final int rowStart, final int rowEnd) {
+        final YuvPlanes frame = src;
+        final int[] out = intOutput;
+        final ByteBuffer y = frame.y;
+        final ByteBuffer u = frame.u;
+        final ByteBuffer v = frame.v;
+        final int width = frame.width;
+        final int cropLeft = frame.cropLeft;
+        final int yPixelStride = frame.yPixelStride;
+        final int uvPixelStride = frame.uvPixelStride;
+        for (int row = rowStart; row < rowEnd; row++) {
+            final int sy = row + frame.cropTop;
+            final int yRow = sy * frame.yRowStride;
+            final int uvRow = (sy >> 1) * frame.uvRowStride;
+            int outIndex = row * width;
+            for (int col = 0; col < width; col++) {
+                final int sx = col + cropLeft;
+                final int uvIndex = uvRow + (sx >> 1) * uvPixelStride;
+                out[outIndex++] = YuvColor.toArgb(
+                        y.get(yRow + sx * yPixelStride) & 0xFF,
+                        u.get(uvIndex) & 0xFF,
+                        v.get(uvIndex) & 0xFF);
+            }
+        }
+    }
+
+    private void convertRowsToBytes(final int stripe, final int rowStart, final int rowEnd) {
+        final YuvPlanes frame = src;
+        final ByteBuffer out = byteOutput;
+        final ByteBuffer y = frame.y;
+        final ByteBuffer u = frame.u;
+        final ByteBuffer v = frame.v;
+        final int width = frame.width;
+        final int cropLeft = frame.cropLeft;
+        final int yPixelStride = frame.yPixelStride;
+        final int uvPixelStride = frame.uvPixelStride;
+        for (int row = rowStart; row < rowEnd; row++) {
+            final int sy = row + frame.cropTop;
+            final int yRow = sy * frame.yRowStride;
+            final int uvRow = (sy >> 1) * frame.uvRowStride;
+            int outIndex = row * width * 4;
+            for (int col = 0; col < width; col++) {
+                final int sx = col + cropLeft;
+                final int uvIndex = uvRow + (sx >> 1) * uvPixelStride;
+                final int argb = YuvColor.toArgb(
+                        y.get(yRow + sx * yPixelStride) & 0xFF,
+                        u.get(uvIndex) & 0xFF,
+                        v.get(uvIndex) & 0xFF);
+                out.put(outIndex, (byte) (argb >> 16));
+                out.put(outIndex + 1, (byte) (argb >> 8));
+                out.put(outIndex + 2, (byte) argb);
+                out.put(outIndex + 3, (byte) 0xFF);
+                outIndex += 4;
+            }
+        }
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void close() {
+        stripes.close();
+    }
+}
@@ -0,0 +1,510 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.pipeline;
+
+import android.util.Log;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import at.tuwien.ict.eml.odd.detection.Detector.Recognition;
+import at.tuwien.ict.eml.odd.detection.StagedDetector;
+import at.tuwien.ict.eml.odd.env.YuvPlanes;
+
+/**
+ * Runs the analysis of camera frames in three overlapping stages:
+ *
+ * <ol>
+ *     <li>preprocess: crops and converts the frame into the input of a free slot, on the thread calling {@link #submit}</li>
+ *     <li>inference: runs the detector on the slot, on its own thread</li>
+ *     <li>postprocess: hands the results to the {@link ResultListener} for filtering and tracking, on its own thread</li>
+ * </ol>
+ *
+ * <p>The stages exchange jobs through bounded queues and every job owns a slot with its own input
+ * and output buffers, so the preprocessing of frame N+1 overlaps the inference of frame N and the
+ * throughput approaches 1/max(stage) instead of 1/sum(stages). When no slot is free the
+ * {@link DropPolicy} decides which frame is skipped.
+ *
+ * <p>With more than one inference worker, e.g. for a detector backed by several interpreters,
+ * frames can finish their inference out of order. The postprocess stage restores the submit order
+ * before calling the listener, so the tracker always sees the frames in time order. Frames without
+ * inference are passed to the listener in the same order through {@link #skip()}.
+ *
+ * @param <S> Slot type of the detector
+ */
+public class AnalysisPipeline<S> {
+    /**
+     * Stages of the pipeline, used to query latencies and queue depths.
+     */
+    public enum Stage {
+        PREPROCESS,
+        INFERENCE,
+        POSTPROCESS
+    }
+
+    /**
+     * Decides what happens with a new frame when all slots are in use.
+     */
+    public enum DropPolicy {
+        /** Skip the new frame. */
+        DROP_NEWEST,
+        /** Skip the oldest frame still waiting for the inference and use its slot. */
+        DROP_OLDEST,
+        /** Block the submitting thread until a slot is free. */
+        BLOCK
+    }
+
+    /**
+     * Receives the results of a frame on the postprocess thread.
+     */
+    public interface ResultListener {
+        /**
+         * @param job The finished job, it and the results are reused after the method returns
+         * @param results Recognitions of the frame
+         */
+        void onResults(Job job, List<Recognition> results);
+
+        /**
+         * Receives frames without inference on the postprocess thread, after the results of the
+         * frame submitted before them.
+         * @param frames Number of consecutive frames without inference
+         */
+        default void onSkippedFrames(int frames) {
+        }
+    }
+
+    /**
+     * A frame travelling through the pipeline together with its geometry and stage timings.
+     */
+    public static class Job {
+        private final Object slot;
+        public long frameNumber;
+        public long timestamp;
+        public int aspectDstWidth;
+        public int aspectDstHeight;
+        public int rotation;
+        public boolean cropModeContain;
+        public long preprocessNanos;
+        public long inferenceNanos;
+        // System.nanoTime when the job was submitted and when it entered the current queue
+        long submitTime;
+        long enqueueTime;
+        // position in the inference order, consecutive unlike the frame number which counts dropped frames
+        long sequence;
+        // frames without inference after this one until the next submit, guarded by skipLock
+        int skippedFrames;
+        boolean failed;
+        List<Recognition> results;
+
+        Job(final Object slot) {
+            this.slot = slot;
+        }
+    }
+
+    private static final String TAG = "AnalysisPipeline";
+    private static final double LATENCY_SMOOTHING = 0.1;
+    // failed inferences are logged at most once per interval, a broken model would fail every frame
+    private static final long FAILURE_LOG_INTERVAL_NANOS = 5_000_000_000L;
+
+    private final StagedDetector<S> detector;
+    private final ResultListener listener;
+    private final DropPolicy dropPolicy;
+
+    private final ArrayBlockingQueue<Job> freeJobs;
+    private final ArrayBlockingQueue<Job> inferenceQueue;
+    private final ArrayBlockingQueue<Job> postprocessQueue;
+    private final Thread[] inferenceThreads;
+    private final Thread postprocessThread;
+    // guards taking a job together with assigning its sequence
+    private final Object inferenceTakeLock = new Object();
+    private long nextInferenceSequence;
+    // finished jobs waiting for their predecessors, only used by the postprocess thread
+    private final PriorityQueue<Job> reorderBuffer;
+    private long nextPostprocessSequence;
+    private volatile int reorderDepth;
+
+    private final AtomicLong submittedFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong failedFrames = new AtomicLong();
+    private final AtomicLong lastFailureLogNanos = new AtomicLong();
+    // exponentially smoothed latencies in nanoseconds, indexed by Stage.ordinal()
+    private final double[] stageLatency = new double[Stage.values().length];
+    private final double[] queueWait = new double[Stage.values().length];
+    private volatile double endToEndLatency;
+    private volatile boolean closed;
+
+    // orders the frames without inference with the jobs in flight
+    private final Object skipLock = new Object();
+    // the latest submitted job until it was postprocessed, guarded by skipLock
+    private Job lastSubmitted;
+    // skipped frames of dropped jobs, passed on after the next postprocessed job, guarded by skipLock
+    private int droppedSkippedFrames;
+
+    /**
+     * @param detector The detector, its slots are allocated here
+     * @param slots Number of frames in flight, at least 2 for double buffered inputs
+     * @param dropPolicy What to do with new frames when all slots are in use
+     * @param listener Receiver of the results
+     */
+    public AnalysisPipeline(
+            final StagedDetector<S> detector,
+            final int slots,
+            final DropPolicy dropPolicy,
+            final ResultListener listener) {
+        this(detector, slots, 1, dropPolicy, listener);
+    }
+
+    /**
+     * @param detector The detector, its slots are allocated here
+     * @param slots Number of frames in flight, at least inferenceWorkers + 1 to keep all workers busy
+     * @param inferenceWorkers Number of threads calling the inference concurrently
+     * @param dropPolicy What to do with new frames when all slots are in use
+     * @param listener Receiver of the results
+     */
+    public AnalysisPipeline(
+            final StagedDetector<S> detector,
+            final int slots,
+            final int inferenceWorkers,
+            final DropPolicy dropPolicy,
+            final ResultListener listener) {
+        if (slots < 1) {
+            throw new IllegalArgumentException("At least one slot needed");
+        }
+        if (inferenceWorkers < 1) {
+            throw new IllegalArgumentException("At least one inference worker needed");
+        }
+        this.detector = detector;
+        this.listener = listener;
+        this.dropPolicy = dropPolicy;
+
+        freeJobs = new ArrayBlockingQueue<>(slots);
+        inferenceQueue = new ArrayBlockingQueue<>(slots + 1);
+        postprocessQueue = new ArrayBlockingQueue<>(slots + 1);
+        for (int i = 0; i < slots; i++) {
+            freeJobs.add(new Job(detector.newSlot()));
+        }
+
+        reorderBuffer = new PriorityQueue<>(slots, (a, b) -> Long.compare(a.sequence, b.sequence));
+
+        inferenceThreads = new Thread[inferenceWorkers];
+        for (int i = 0; i < inferenceWorkers; i++) {
+            inferenceThreads[i] = new Thread(this::inferenceLoop, "AnalysisPipeline-inference-" + i);
+            inferenceThreads[i].setDaemon(true);
+        }
+        postprocessThread = new Thread(this::postprocessLoop, "AnalysisPipeline-postprocess");
+        postprocessThread.setDaemon(true);
+        for (final Thread thread : inferenceThreads) {
+            thread.start();
+        }
+        postprocessThread.start();
+    }
+
+    /**
+     * Preprocesses the frame on the calling thread and queues it for the inference.
+     * The frame is not accessed anymore after the method returns, so the camera image can be closed.
+     * @return False if the frame was dropped
+     */
+    public boolean submit(
+            final YuvPlanes frame,
+            final int aspectDstWidth,
+            final int aspectDstHeight,
+            final int rotation,
+            final boolean cropModeContain,
+            final long timestamp) {
+        if (closed) {
+            return false;
+        }
+        final long submitTime = System.nanoTime();
+        final long frameNumber = submittedFrames.getAndIncrement();
+        final Job job = acquireJob();
+        if (job == null) {
+            droppedFrames.incrementAndGet();
+            return false;
+        }
+
+        job.frameNumber = frameNumber;
+        job.timestamp = timestamp;
+        job.aspectDstWidth = aspectDstWidth;
+        job.aspectDstHeight = aspectDstHeight;
+        job.rotation = rotation;
+        job.cropModeContain = cropModeContain;
+        job.submitTime = submitTime;
+
+        final long start = System.nanoTime();
+        try {
+            detector.preprocess(slot(job), frame, aspectDstWidth, aspectDstHeight, rotation, cropModeContain);
+        } catch (RuntimeException e) {
+            freeJobs.offer(job);
+            throw e;
+        }
+        job.preprocessNanos = System.nanoTime() - start;
+        updateLatency(stageLatency, Stage.PREPROCESS, job.preprocessNanos);
+
+        job.enqueueTime = System.nanoTime();
+        synchronized (skipLock) {
+            lastSubmitted = job;
+        }
+        inferenceQueue.offer(job);
+        return true;
+    }
+
+    /**
+     * Records a frame without inference. It is passed to {@link ResultListener#onSkippedFrames} after
+     * the results of the frame submitted before it, so the tracker steps stay in frame order.
+     * @return True if no frame is in flight, then the caller handles the frame right away itself
+     */
+    public boolean skip() {
+        synchronized (skipLock) {
+            if (lastSubmitted == null) {
+                return true;
+            }
+            lastSubmitted.skippedFrames++;
+            return false;
+        }
+    }
+
+    private Job acquireJob() {
+        Job job = freeJobs.poll();
+        if (job != null) {
+            return job;
+        }
+        switch (dropPolicy) {
+            case DROP_OLDEST:
+                // recycle the slot of the oldest frame which did not reach the inference yet
+                job = inferenceQueue.poll();
+                if (job != null) {
+                    droppedFrames.incrementAndGet();
+                    synchronized (skipLock) {
+                        droppedSkippedFrames += job.skippedFrames;
+                        job.skippedFrames = 0;
+                        if (lastSubmitted == job) {
+                            lastSubmitted = null;
+                        }
+                    }
+                }
+                return job;
+            case BLOCK:
+                try {
+                    return freeJobs.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            case DROP_NEWEST:
+            default:
+                return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private S slot(final Job job) {
+        return (S) job.slot;
+    }
+
+    private void inferenceLoop() {
+        try {
+            while (true) {
+                final Job job;
+                synchronized (inferenceTakeLock) {
+                    job = inferenceQueue.take();
+                    job.sequence = nextInferenceSequence++;
+                }
+                final long start = System.nanoTime();
+                updateLatency(queueWait, Stage.INFERENCE, start - job.enqueueTime);
+                try {
+                    job.results = detector.infer(slot(job));
+                    job.failed = false;
+                    job.inferenceNanos = System.nanoTime() - start;
+                    updateLatency(stageLatency, Stage.INFERENCE, job.inferenceNanos);
+                } catch (RuntimeException e) {
+                    // still passed on, the postprocess stage waits for every sequence number
+                    job.results = null;
+                    job.failed = true;
+                    logFailure(job, e);
+                }
+                job.enqueueTime = System.nanoTime();
+                postprocessQueue.put(job);
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    private void logFailure(final Job job, final RuntimeException e) {
+        final long failures = failedFrames.incrementAndGet();
+        final long now = System.nanoTime();
+        final long last = lastFailureLogNanos.get();
+        if ((failures == 1 || now - last >= FAILURE_LOG_INTERVAL_NANOS)
+                && lastFailureLogNanos.compareAndSet(last, now)) {
+            Log.w(TAG, String.format(Locale.ENGLISH, "Inference of frame %d failed, %d failed frames so far",
+                    job.frameNumber, failures), e);
+        }
+    }
+
+    private void postprocessLoop() {
+        try {
+            while (true) {
+                reorderBuffer.add(postprocessQueue.take());
+                Job job;
+                while ((job = reorderBuffer.peek()) != null && job.sequence == nextPostprocessSequence) {
+                    reorderBuffer.poll();
+                    nextPostprocessSequence++;
+                    postprocess(job);
+                }
+                reorderDepth = reorderBuffer.size();
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    private void postprocess(final Job job) {
+        if (job.failed) {
+            freeJobs.offer(finishSkippedFrames(job));
+            return;
+        }
+        final long start = System.nanoTime();
+        updateLatency(queueWait, Stage.POSTPROCESS, start - job.enqueueTime);
+        try {
+            listener.onResults(job, job.results);
+        } finally {
+            final long end = System.nanoTime();
+            updateLatency(stageLatency, Stage.POSTPROCESS, end - start);
+            endToEndLatency = smooth(endToEndLatency, end - job.submitTime);
+            job.results = null;
+            freeJobs.offer(finishSkippedFrames(job));
+        }
+    }
+
+    /**
+     * Passes on the frames skipped after the job, once its results were applied. Frames skipped
+     * from now on are handled by their caller right away if no later job is in flight.
+     * @return The job, ready for reuse
+     */
+    private Job finishSkippedFrames(final Job job) {
+        final int frames;
+        synchronized (skipLock) {
+            frames = job.skippedFrames + droppedSkippedFrames;
+            job.skippedFrames = 0;
+            droppedSkippedFrames = 0;
+            if (lastSubmitted == job) {
+                lastSubmitted = null;
+            }
+        }
+        if (frames > 0) {
+            listener.onSkippedFrames(frames);
+        }
+        return job;
+    }
+
+    private static double smooth(final double average, final long sample) {
+        return average == 0 ? sample : average + LATENCY_SMOOTHING * (sample - average);
+    }
+
+    private synchronized void updateLatency(final double[] values, final Stage stage, final long nanos) {
+        values[stage.ordinal()] = smooth(values[stage.ordinal()], nanos);
+    }
+
+    /**
+     * @return Smoothed processing time of the stage in milliseconds
+     */
+    public synchronized double getStageLatencyMs(final Stage stage) {
+        return stageLatency[stage.ordinal()] / 1e6;
+    }
+
+    /**
+     * @return Smoothed time a job waits in front of the stage in milliseconds
+     */
+    public synchronized double getQueueWaitMs(final Stage stage) {
+        return queueWait[stage.ordinal()] / 1e6;
+    }
+
+    /**
+     * @return Number of jobs waiting in front of the stage, for the preprocess stage the free slots.
+     * Jobs waiting in the postprocess stage for an earlier frame are included.
+     */
+    public int getQueueDepth(final Stage stage) {
+        switch (stage) {
+            case INFERENCE:
+                return inferenceQueue.size();
+            case POSTPROCESS:
+                return postprocessQueue.size() + reorderDepth;
+            case PREPROCESS:
+            default:
+                return freeJobs.size();
+        }
+    }
+
+    /**
+     * @return Smoothed time from submit until the listener returned in milliseconds
+     */
+    public double getEndToEndLatencyMs() {
+        return endToEndLatency / 1e6;
+    }
+
+    public long getSubmittedFrames() {
+        return submittedFrames.get();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    /**
+     * @return Number of frames whose inference threw, they are not passed to the listener
+     */
+    public long getFailedFrames() {
+        return failedFrames.get();
+    }
+
+    /**
+     * Snapshot as a JSON object, with the smoothed end-to-end latency, the latency, queue wait and
+     * queue depth per stage and the frame counters, e.g.
+     * {"endToEndMs":31.2,"stages":{"preprocess":{"latencyMs":4.1,"queueWaitMs":0.0,"queueDepth":2},...},
+     * "counters":{"submitted":120,"dropped":3,"failed":0}}.
+     */
+    public String getStatString() {
+        final StringBuilder json = new StringBuilder(512);
+        json.append(String.format(Locale.ENGLISH, "{\"endToEndMs\":%.3f,\"stages\":{", getEndToEndLatencyMs()));
+        for (final Stage stage : Stage.values()) {
+            if (stage.ordinal() > 0) {
+                json.append(',');
+            }
+            json.append(String.format(Locale.ENGLISH,
+                    "\"%s\":{\"latencyMs\":%.3f,\"queueWaitMs\":%.3f,\"queueDepth\":%d}",
+                    stage.name().toLowerCase(Locale.ENGLISH), getStageLatencyMs(stage),
+                    getQueueWaitMs(stage), getQueueDepth(stage)));
+        }
+        json.append(String.format(Locale.ENGLISH,
+                "},\"counters\":{\"submitted\":%d,\"dropped\":%d,\"failed\":%d}}",
+                getSubmittedFrames(), getDroppedFrames(), getFailedFrames()));
+        return json.toString();
+    }
+
+    /**
+     * Stops the inference and postprocess threads, jobs in flight are discarded.
+     */
+    public void close() {
+        closed = true;
+        for (final Thread thread : inferenceThreads) {
+            thread.interrupt();
+        }
+        postprocessThread.interrupt();
+    }
+}
@@ -0,0 +1,131 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.pipeline;
+
+import java.nio.ByteBuffer;
+
+import at.tuwien.ict.eml.odd.env.YuvPlanes;
+
+/**
+ * Decides which camera frames get a full inference. Devices which cannot run the detector on
+ * every frame infer every interval-th frame only, the tracker propagates the boxes along their
+ * motion in the frames between, so the overlay refreshes at the camera rate.
+ *
+ * <p>In the adaptive mode a frame is also inferred as soon as the scene changed noticeably since
+ * the last inferred frame. The change is the mean absolute difference of a downscaled luma
+ * thumbnail, which costs a few hundred buffer reads per frame.
+ */
+public class DetectionScheduler {
+    // size of the luma thumbnail and samples averaged per thumbnail cell and axis
+    static final int THUMBNAIL_WIDTH = 32;
+    static final int THUMBNAIL_HEIGHT = 24;
+    private static final int SAMPLES_PER_CELL = 2;
+
+    private final int interval;
+    private final float motionThreshold;
+    private final int[] thumbnail = new int[THUMBNAIL_WIDTH * THUMBNAIL_HEIGHT];
+    private final int[] detectedThumbnail = new int[THUMBNAIL_WIDTH * THUMBNAIL_HEIGHT];
+    private int framesSinceDetection;
+    private boolean hasDetection;
+    private float lastMotion;
+
+    /**
+     * @param interval Every interval-th frame is inferred, 1 infers every frame
+     * @param motionThreshold Mean absolute luma difference to the last inferred frame, from 0 to 255,
+     *                        above which a frame is inferred before the interval is over,
+     *                        0 or less to infer at the fixed interval only
+     */
+    public DetectionScheduler(final int interval, final float motionThreshold) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("The interval must be at least 1");
+        }
+        this.interval = interval;
+        this.motionThreshold = motionThreshold;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return True if the frame should be inferred, otherwise the tracker only predicts it
+     */
+    public boolean shouldDetect(final YuvPlanes frame) {
+        final boolean adaptive = motionThreshold > 0;
+        if (interval == 1 && !adaptive) {
+            return true;
+        }
+        boolean detect = !hasDetection || ++framesSinceDetection >= interval;
+        if (adaptive) {
+            sampleThumbnail(frame, thumbnail);
+            lastMotion = hasDetection ? meanAbsoluteDifference(thumbnail, detectedThumbnail) : 0;
+            detect |= lastMotion > motionThreshold;
+        }
+        if (detect) {
+            hasDetection = true;
+            framesSinceDetection = 0;
+            if (adaptive) {
+                System.arraycopy(thumbnail, 0, detectedThumbnail, 0, thumbnail.length);
+            }
+        }
+        return detect;
+    }
+
+    /**
+     * @return Luma difference of the last frame to the last inferred one, 0 if not adaptive
+     */
+    public float getLastMotion() {
+        return lastMotion;
+    }
+
+    /**
+     * Forgets the last inferred frame, so the next frame is inferred.
+     */
+    public void reset() {
+        hasDetection = false;
+        framesSinceDetection = 0;
+        lastMotion = 0;
+    }
+
+    static void sampleThumbnail(final YuvPlanes frame, final int[] thumbnail) {
+        final ByteBuffer y = frame.y;
+        for (int ty = 0; ty < THUMBNAIL_HEIGHT; ty++) {
+            for (int tx = 0; tx < THUMBNAIL_WIDTH; tx++) {
+                int sum = 0;
+                for (int sy = 0; sy < SAMPLES_PER_CELL; sy++) {
+                    // sample points evenly spread inside the cell
+                    final int row = frame.cropTop
+                            + ((ty * SAMPLES_PER_CELL + sy) * 2 + 1) * frame.height / (2 * THUMBNAIL_HEIGHT * SAMPLES_PER_CELL);
+                    final int rowOffset = row * frame.yRowStride;
+                    for (int sx = 0; sx < SAMPLES_PER_CELL; sx++) {
+                        final int col = frame.cropLeft
+                                + ((tx * SAMPLES_PER_CELL + sx) * 2 + 1) * frame.width / (2 * THUMBNAIL_WIDTH * SAMPLES_PER_CELL);
+                        sum += y.get(rowOffset + col * frame.yPixelStride) & 0xFF;
+                    }
+                }
+                thumbnail[ty * THUMBNAIL_WIDTH + tx] = sum / (SAMPLES_PER_CELL * SAMPLES_PER_CELL);
+            }
+        }
+    }
+
+    private static float meanAbsoluteDifference(final int[] a, final int[] b) {
+        int sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += Math.abs(a[i] - b[i]);
+        }
+        return (float) sum / a.length;
+    }
+}
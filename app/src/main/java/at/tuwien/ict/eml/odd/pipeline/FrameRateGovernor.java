@@ -0,0 +1,234 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.pipeline;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Adapts the analysis workload to a frame budget and to the thermal state of the device, so the
+ * phone does not throttle itself and the measured latencies stay comparable over a session.
+ *
+ * <p>The budget is the time between two inferences, 1000 / fps for a target rate. Every window of
+ * inferences the 90th percentile latency and the camera frame rate are measured and the detection
+ * interval is set, so the inferences run at about the target rate but never more often than they
+ * finish. A lower interval is only applied if two windows in a row ask for it.
+ *
+ * <p>The thermal status, with the values of android.os.PowerManager.THERMAL_STATUS_*, lowers the
+ * number of interpreter threads and the camera analysis resolution and skips additional frames
+ * from the moderate status on.
+ *
+ * <p>Every change is returned as a {@link Decision} which the caller applies and logs.
+ */
+public class FrameRateGovernor {
+    // thermal status values of android.os.PowerManager
+    public static final int THERMAL_STATUS_NONE = 0;
+    public static final int THERMAL_STATUS_LIGHT = 1;
+    public static final int THERMAL_STATUS_MODERATE = 2;
+    public static final int THERMAL_STATUS_SEVERE = 3;
+    // percentile of the window latencies compared with the budget
+    private static final float LATENCY_PERCENTILE = 0.9f;
+
+    /**
+     * Immutable workload setting with the measurements which lead to it.
+     */
+    public static final class Decision {
+        public static final String CSV_HEADER =
+                "inferences,reason,latencyP90Ms,cameraFps,thermalStatus,detectionInterval,resolutionTier,numThreads";
+
+        public final long inferences;
+        public final String reason;
+        public final float latencyP90Ms;
+        public final float cameraFps;
+        public final int thermalStatus;
+        public final int detectionInterval;
+        // 0 is the full analysis resolution, every tier above is smaller
+        public final int resolutionTier;
+        public final int numThreads;
+
+        Decision(
+                final long inferences,
+                final String reason,
+                final float latencyP90Ms,
+                final float cameraFps,
+                final int thermalStatus,
+                final int detectionInterval,
+                final int resolutionTier,
+                final int numThreads) {
+            this.inferences = inferences;
+            this.reason = reason;
+            this.latencyP90Ms = latencyP90Ms;
+            this.cameraFps = cameraFps;
+            this.thermalStatus = thermalStatus;
+            this.detectionInterval = detectionInterval;
+            this.resolutionTier = resolutionTier;
+            this.numThreads = numThreads;
+        }
+
+        /**
+         * @return The decision as a line of {@link #CSV_HEADER}
+         */
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH, "%d,%s,%.1f,%.1f,%d,%d,%d,%d",
+                    inferences, reason, latencyP90Ms, cameraFps, thermalStatus, detectionInterval, resolutionTier, numThreads);
+        }
+    }
+
+    private final float frameBudgetMs;
+    private final int maxInterval;
+    private final int maxThreads;
+    private final int resolutionTiers;
+    // latencies of the current window
+    private final float[] latencies;
+    private final float[] sortedLatencies;
+    private int latencyCount;
+    // camera frames of the current window
+    private long firstFrameMs = -1;
+    private long lastFrameMs;
+    private int frames;
+    private long inferences;
+    private int thermalStatus = THERMAL_STATUS_NONE;
+    // interval required by the latency and the camera rate, before the thermal offset
+    private int latencyInterval = 1;
+    private int pendingLowerInterval;
+    private Decision current;
+
+    /**
+     * @param frameBudgetMs Time between two inferences to aim for, 1000 / fps
+     * @param maxInterval Maximum detection interval
+     * @param maxThreads Threads of the interpreters without thermal pressure
+     * @param resolutionTiers Number of analysis resolutions to choose from
+     * @param window Inferences per measurement window
+     */
+    public FrameRateGovernor(
+            final float frameBudgetMs,
+            final int maxInterval,
+            final int maxThreads,
+            final int resolutionTiers,
+            final int window) {
+        if (frameBudgetMs <= 0 || maxInterval < 1 || maxThreads < 1 || resolutionTiers < 1 || window < 1) {
+            throw new IllegalArgumentException("Invalid governor configuration");
+        }
+        this.frameBudgetMs = frameBudgetMs;
+        this.maxInterval = maxInterval;
+        this.maxThreads = maxThreads;
+        this.resolutionTiers = resolutionTiers;
+        latencies = new float[window];
+        sortedLatencies = new float[window];
+        current = new Decision(0, "start", 0, 0, thermalStatus, 1, 0, maxThreads);
+    }
+
+    public synchronized Decision getDecision() {
+        return current;
+    }
+
+    /**
+     * Counts a camera frame for the measured camera rate, inferred or not.
+     * @param timestampMs Monotonic arrival time of the frame
+     */
+    public synchronized void onFrame(final long timestampMs) {
+        if (firstFrameMs < 0) {
+            firstFrameMs = timestampMs;
+        } else {
+            frames++;
+        }
+        lastFrameMs = timestampMs;
+    }
+
+    /**
+     * Adds the latency of an inferred frame and reevaluates the interval at the end of a window.
+     * @return The new decision, or null if nothing changed
+     */
+    public synchronized Decision onInference(final float latencyMs) {
+        inferences++;
+        latencies[latencyCount++] = latencyMs;
+        if (latencyCount < latencies.length) {
+            return null;
+        }
+
+        System.arraycopy(latencies, 0, sortedLatencies, 0, latencyCount);
+        Arrays.sort(sortedLatencies, 0, latencyCount);
+        // nearest rank percentile
+        final float latencyP90 = sortedLatencies[Math.max(0, (int) Math.ceil(LATENCY_PERCENTILE * latencyCount) - 1)];
+        final float cameraFps = frames > 0 && lastFrameMs > firstFrameMs ? 1000.0f * frames / (lastFrameMs - firstFrameMs) : 0;
+        latencyCount = 0;
+        firstFrameMs = -1;
+        frames = 0;
+
+        // run at about the target rate, but only as often as an inference finishes before the next one is due
+        int interval = 1;
+        if (cameraFps > 0) {
+            interval = Math.max(
+                    Math.round(frameBudgetMs * cameraFps / 1000.0f),
+                    (int) Math.ceil(latencyP90 * cameraFps / 1000.0f - 1e-3f));
+        }
+        interval = clamp(interval, 1, maxInterval);
+        final String reason;
+        if (interval > latencyInterval) {
+            pendingLowerInterval = 0;
+            reason = latencyP90 > frameBudgetMs ? "over_budget" : "above_target_rate";
+        } else if (interval < latencyInterval && ++pendingLowerInterval >= 2) {
+            pendingLowerInterval = 0;
+            reason = "under_budget";
+        } else {
+            if (interval >= latencyInterval) {
+                pendingLowerInterval = 0;
+            }
+            return null;
+        }
+        latencyInterval = interval;
+        return decide(reason, latencyP90, cameraFps);
+    }
+
+    /**
+     * @param status Thermal status with the values of android.os.PowerManager.THERMAL_STATUS_*
+     * @return The new decision, or null if nothing changed
+     */
+    public synchronized Decision onThermalStatus(final int status) {
+        if (status == thermalStatus) {
+            return null;
+        }
+        thermalStatus = status;
+        return decide("thermal", current.latencyP90Ms, current.cameraFps);
+    }
+
+    private Decision decide(final String reason, final float latencyP90, final float cameraFps) {
+        // no reaction to a light status, every status above halves the threads,
+        // lowers the resolution and skips one more frame
+        final int pressure = Math.max(0, thermalStatus - THERMAL_STATUS_LIGHT);
+        final Decision decision = new Decision(
+                inferences,
+                reason,
+                latencyP90,
+                cameraFps,
+                thermalStatus,
+                clamp(latencyInterval + pressure, 1, maxInterval),
+                Math.min(resolutionTiers - 1, pressure),
+                Math.max(1, maxThreads >> Math.min(pressure, 30)));
+        if (decision.detectionInterval == current.detectionInterval
+                && decision.resolutionTier == current.resolutionTier
+                && decision.numThreads == current.numThreads) {
+            return null;
+        }
+        current = decision;
+        return decision;
+    }
+
+    private static int clamp(final int value, final int min, final int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,81 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.pipeline;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free hand-off of the latest state from one producer thread to one consumer thread.
+ *
+ * <p>Of the three buffers the producer owns one to write the next state into, the consumer owns
+ * one to read the latest published state from, and the third one holds the state published last.
+ * Publishing and acquiring only swap the ownership with one atomic exchange, so neither side ever
+ * waits for the other and the consumer never sees a buffer which is written concurrently.
+ * States published faster than they are consumed are skipped.
+ *
+ * <p>Several producer threads must serialize their calls of {@link #back()} and {@link #publish()}.
+ *
+ * @param <T> Mutable state which is overwritten in place
+ */
+public final class TripleBuffer<T> {
+    // the shared index carries a flag whether it was published after the last acquire
+    private static final int FRESH = 4;
+    private static final int INDEX_MASK = 3;
+
+    private final Object[] buffers;
+    private final AtomicInteger shared = new AtomicInteger(1);
+    // only touched by the producer
+    private int back = 2;
+    // only touched by the consumer
+    private int front = 0;
+
+    /**
+     * @param initial Buffer returned by {@link #acquire()} until the first publish
+     */
+    public TripleBuffer(final T initial, final T second, final T third) {
+        if (initial == second || initial == third || second == third) {
+            throw new IllegalArgumentException("Three distinct buffers needed");
+        }
+        buffers = new Object[]{initial, second, third};
+    }
+
+    /**
+     * @return The buffer to write the next state into, owned by the producer until {@link #publish()}
+     */
+    @SuppressWarnings("unchecked")
+    public T back() {
+        return (T) buffers[back];
+    }
+
+    /**
+     * Publishes the written back buffer and hands a new one to the producer. The new back buffer
+     * holds an older state, the producer has to overwrite all of it.
+     */
+    public void publish() {
+        back = shared.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * @return The latest published state, owned by the consumer until the next call
+     */
+    @SuppressWarnings("unchecked")
+    public T acquire() {
+        if ((shared.get() & FRESH) != 0) {
+            front = shared.getAndSet(front) & INDEX_MASK;
+        }
+        return (T) buffers[front];
+    }
+}
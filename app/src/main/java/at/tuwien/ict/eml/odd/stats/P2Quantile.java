@@ -0,0 +1,142 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.stats;
+
+/**
+ * Streaming estimate of one quantile with the P-square algorithm of Jain and Chlamtac, for unbounded
+ * runs where the samples can not be kept. Uses five markers, so its memory and the cost of a sample
+ * are constant. Exact until five samples are added.
+ */
+public final class P2Quantile {
+    private final double p;
+    // marker heights, actual positions and desired positions, 1-based positions
+    private final double[] heights = new double[5];
+    private final double[] positions = new double[5];
+    private final double[] desired = new double[5];
+    private final double[] increments = new double[5];
+    private long count;
+
+    /**
+     * @param p Quantile to estimate, between 0 and 1
+     */
+    public P2Quantile(final double p) {
+        if (!(p > 0 && p < 1)) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1: " + p);
+        }
+        this.p = p;
+        increments[0] = 0;
+        increments[1] = p / 2;
+        increments[2] = p;
+        increments[3] = (1 + p) / 2;
+        increments[4] = 1;
+    }
+
+    public void add(final double x) {
+        if (count < 5) {
+            // insertion sort of the first samples, they are the initial markers
+            int i = (int) count;
+            while (i > 0 && heights[i - 1] > x) {
+                heights[i] = heights[i - 1];
+                i--;
+            }
+            heights[i] = x;
+            count++;
+            if (count == 5) {
+                for (int j = 0; j < 5; j++) {
+                    positions[j] = j + 1;
+                    desired[j] = 1 + 4 * increments[j];
+                }
+            }
+            return;
+        }
+        count++;
+
+        // find the cell of the sample and extend the extreme markers
+        final int cell;
+        if (x < heights[0]) {
+            heights[0] = x;
+            cell = 0;
+        } else if (x >= heights[4]) {
+            heights[4] = x;
+            cell = 3;
+        } else {
+            int k = 0;
+            while (x >= heights[k + 1]) {
+                k++;
+            }
+            cell = k;
+        }
+        for (int i = cell + 1; i < 5; i++) {
+            positions[i]++;
+        }
+        for (int i = 0; i < 5; i++) {
+            desired[i] += increments[i];
+        }
+
+        // move the middle markers towards their desired positions
+        for (int i = 1; i < 4; i++) {
+            final double d = desired[i] - positions[i];
+            if ((d >= 1 && positions[i + 1] - positions[i] > 1) || (d <= -1 && positions[i - 1] - positions[i] < -1)) {
+                final int sign = d > 0 ? 1 : -1;
+                double height = parabolic(i, sign);
+                if (!(heights[i - 1] < height && height < heights[i + 1])) {
+                    height = linear(i, sign);
+                }
+                heights[i] = height;
+                positions[i] += sign;
+            }
+        }
+    }
+
+    private double parabolic(final int i, final int sign) {
+        final double n = positions[i];
+        final double nPrev = positions[i - 1];
+        final double nNext = positions[i + 1];
+        return heights[i] + sign / (nNext - nPrev) * (
+                (n - nPrev + sign) * (heights[i + 1] - heights[i]) / (nNext - n)
+                        + (nNext - n - sign) * (heights[i] - heights[i - 1]) / (n - nPrev));
+    }
+
+    private double linear(final int i, final int sign) {
+        return heights[i] + sign * (heights[i + sign] - heights[i]) / (positions[i + sign] - positions[i]);
+    }
+
+    /**
+     * @return The estimated quantile, the nearest-rank quantile while there are less than five samples
+     */
+    public double getQuantile() {
+        if (count == 0) {
+            throw new IllegalStateException("No samples");
+        }
+        if (count < 5) {
+            final int rank = Math.max(1, (int) Math.ceil(p * count));
+            return heights[rank - 1];
+        }
+        return heights[2];
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getP() {
+        return p;
+    }
+
+    public void clear() {
+        count = 0;
+    }
+}
@@ -0,0 +1,134 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.stats;
+
+import java.util.Arrays;
+
+/**
+ * Quantiles over the last samples of a stream of non-negative integers, like latencies in ms.
+ *
+ * <p>The samples are kept in a ring buffer and counted in a Fenwick tree over the value range, so
+ * adding a sample and querying a quantile both take O(log maxValue) and never allocate. Samples
+ * above the maximum value are counted as the maximum value.
+ */
+public final class SlidingQuantiles {
+    private final int[] samples;
+    private final int maxValue;
+    // Fenwick tree of the sample counts by value, 1-based
+    private final int[] counts;
+    private final int highestStep;
+    private int head;
+    private int size;
+    private long sum;
+
+    /**
+     * @param window Number of the latest samples the quantiles are computed over
+     * @param maxValue Largest value which is distinguished from the values above
+     */
+    public SlidingQuantiles(final int window, final int maxValue) {
+        if (window < 1 || maxValue < 0) {
+            throw new IllegalArgumentException("Invalid window " + window + " or max value " + maxValue);
+        }
+        this.samples = new int[window];
+        this.maxValue = maxValue;
+        this.counts = new int[maxValue + 2];
+        this.highestStep = Integer.highestOneBit(maxValue + 1);
+    }
+
+    /**
+     * Adds a sample and drops the oldest one if the window is full.
+     * @param value The sample, negative values are counted as 0
+     */
+    public void add(final int value) {
+        final int clamped = Math.max(0, Math.min(maxValue, value));
+        if (size == samples.length) {
+            final int oldest = samples[head];
+            update(oldest, -1);
+            sum -= oldest;
+        } else {
+            size++;
+        }
+        samples[head] = clamped;
+        head = head + 1 == samples.length ? 0 : head + 1;
+        update(clamped, 1);
+        sum += clamped;
+    }
+
+    private void update(final int value, final int delta) {
+        for (int i = value + 1; i < counts.length; i += i & -i) {
+            counts[i] += delta;
+        }
+    }
+
+    /**
+     * Nearest-rank quantile, the smallest sample with at least the fraction q of the samples
+     * being smaller or equal.
+     * @param q Fraction between 0 and 1, 0 gives the minimum and 1 the maximum
+     * @return The quantile of the samples in the window
+     */
+    public int quantile(final double q) {
+        if (size == 0) {
+            throw new IllegalStateException("No samples");
+        }
+        final int rank = Math.max(1, Math.min(size, (int) Math.ceil(q * size)));
+        // descend the tree to the largest position with less than rank samples up to it
+        int position = 0;
+        int remaining = rank;
+        for (int step = highestStep; step > 0; step >>= 1) {
+            final int next = position + step;
+            if (next < counts.length && counts[next] < remaining) {
+                position = next;
+                remaining -= counts[next];
+            }
+        }
+        // the next position holds the sample, positions are the values shifted by one
+        return position;
+    }
+
+    public int min() {
+        return quantile(0);
+    }
+
+    public int max() {
+        return quantile(1);
+    }
+
+    public double mean() {
+        if (size == 0) {
+            throw new IllegalStateException("No samples");
+        }
+        return (double) sum / size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int window() {
+        return samples.length;
+    }
+
+    public boolean isFull() {
+        return size == samples.length;
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        head = 0;
+        size = 0;
+        sum = 0;
+    }
+}
@@ -0,0 +1,137 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.stats;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms of the stages a camera frame passes and counters of the frames, shared by the
+ * detector and the activity feeding it. All methods may be called from any thread.
+ */
+public final class StageMetrics {
+    /**
+     * Stages of a frame in the order they run.
+     */
+    public enum Stage {
+        /**
+         * Converting the YUV frame to RGB while cropping, rotating, scaling and normalizing it into
+         * the model input in one pass.
+         */
+        PREPROCESS,
+        /** Waiting for a free interpreter of the pool. */
+        WAIT,
+        /** Running the interpreter, including copying the input and output tensors. */
+        RUN,
+        /** Mapping or decoding the outputs to recognitions. */
+        DECODE,
+        /** Filtering the recognitions by confidence and mapping them to the screen. */
+        FILTER,
+        /** Updating the tracker with the recognitions or predicting a frame without them. */
+        TRACK,
+        /** Drawing the tracked objects on the overlay. */
+        DRAW
+    }
+
+    /**
+     * Counted events of the frames.
+     */
+    public enum Counter {
+        /** Camera frames analyzed. */
+        FRAMES,
+        /** Frames the detection scheduler left to the tracker prediction. */
+        SKIPPED,
+        /** Frames dropped because the analysis pipeline was full. */
+        DROPPED
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final Counter[] COUNTERS = Counter.values();
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+    private final AtomicLongArray counters = new AtomicLongArray(COUNTERS.length);
+
+    public StageMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * @param stage The measured stage
+     * @param nanos Duration of the stage, from System.nanoTime differences
+     */
+    public void record(final Stage stage, final long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+    }
+
+    public void increment(final Counter counter) {
+        counters.incrementAndGet(counter.ordinal());
+    }
+
+    public LatencyHistogram getHistogram(final Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    public long getCount(final Counter counter) {
+        return counters.get(counter.ordinal());
+    }
+
+    public void reset() {
+        for (final LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        for (int i = 0; i < COUNTERS.length; i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    /**
+     * Snapshot as a JSON object, with count, mean, p50, p90, p99 and max per stage in ms and the
+     * counters, e.g. {"stages":{"run":{"count":12,"meanMs":20.1,...},...},"counters":{"frames":30,...}}.
+     * Stages without a recorded value are left out.
+     */
+    public String toJson() {
+        final StringBuilder json = new StringBuilder(1024);
+        json.append("{\"stages\":{");
+        boolean first = true;
+        for (final Stage stage : STAGES) {
+            final LatencyHistogram histogram = histograms[stage.ordinal()];
+            final long count = histogram.getCount();
+            if (count == 0) {
+                continue;
+            }
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append(String.format(Locale.ENGLISH,
+                    "\"%s\":{\"count\":%d,\"meanMs\":%.3f,\"p50Ms\":%.3f,\"p90Ms\":%.3f,\"p99Ms\":%.3f,\"maxMs\":%.3f}",
+                    stage.name().toLowerCase(Locale.ENGLISH), count, histogram.getMeanMs(),
+                    histogram.getQuantileMs(0.5), histogram.getQuantileMs(0.9), histogram.getQuantileMs(0.99),
+                    histogram.getMaxMs()));
+        }
+        json.append("},\"counters\":{");
+        for (final Counter counter : COUNTERS) {
+            if (counter.ordinal() > 0) {
+                json.append(',');
+            }
+            json.append('"').append(counter.name().toLowerCase(Locale.ENGLISH)).append("\":")
+                    .append(counters.get(counter.ordinal()));
+        }
+        return json.append("}}").toString();
+    }
+}
@@ -0,0 +1,102 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.tracking;
+
+import java.util.Arrays;
+
+/**
+ * Minimum cost assignment of the rows to the columns of a square cost matrix with the
+ * shortest augmenting path variant of the Hungarian method in O(n^3).
+ * The buffers are kept between calls, an instance is not thread-safe.
+ */
+final class HungarianAssignment {
+    private double[] rowPotential = new double[0];
+    private double[] colPotential = new double[0];
+    private double[] minSlack = new double[0];
+    private int[] colToRow = new int[0];
+    private int[] way = new int[0];
+    private boolean[] used = new boolean[0];
+
+    /**
+     * @param cost Row-major n x n cost matrix
+     * @param n Number of rows and columns
+     * @param rowToCol Receives the assigned column of every row
+     */
+    void solve(final double[] cost, final int n, final int[] rowToCol) {
+        ensureCapacity(n + 1);
+        // 1-based, column 0 is the virtual start of every augmenting path
+        Arrays.fill(rowPotential, 0, n + 1, 0);
+        Arrays.fill(colPotential, 0, n + 1, 0);
+        Arrays.fill(colToRow, 0, n + 1, 0);
+        for (int row = 1; row <= n; row++) {
+            colToRow[0] = row;
+            int col0 = 0;
+            Arrays.fill(minSlack, 0, n + 1, Double.POSITIVE_INFINITY);
+            Arrays.fill(used, 0, n + 1, false);
+            do {
+                used[col0] = true;
+                final int row0 = colToRow[col0];
+                final int costRow = (row0 - 1) * n - 1;
+                double delta = Double.POSITIVE_INFINITY;
+                int col1 = 0;
+                for (int col = 1; col <= n; col++) {
+                    if (used[col]) {
+                        continue;
+                    }
+                    final double slack = cost[costRow + col] - rowPotential[row0] - colPotential[col];
+                    if (slack < minSlack[col]) {
+                        minSlack[col] = slack;
+                        way[col] = col0;
+                    }
+                    if (minSlack[col] < delta) {
+                        delta = minSlack[col];
+                        col1 = col;
+                    }
+                }
+                for (int col = 0; col <= n; col++) {
+                    if (used[col]) {
+                        rowPotential[colToRow[col]] += delta;
+                        colPotential[col] -= delta;
+                    } else {
+                        minSlack[col] -= delta;
+                    }
+                }
+                col0 = col1;
+            } while (colToRow[col0] != 0);
+            // flip the matching along the augmenting path
+            do {
+                final int col1 = way[col0];
+                colToRow[col0] = colToRow[col1];
+                col0 = col1;
+            } while (col0 != 0);
+        }
+        for (int col = 1; col <= n; col++) {
+            rowToCol[colToRow[col] - 1] = col - 1;
+        }
+    }
+
+    private void ensureCapacity(final int size) {
+        if (used.length >= size) {
+            return;
+        }
+        rowPotential = new double[size];
+        colPotential = new double[size];
+        minSlack = new double[size];
+        colToRow = new int[size];
+        way = new int[size];
+        used = new boolean[size];
+    }
+}
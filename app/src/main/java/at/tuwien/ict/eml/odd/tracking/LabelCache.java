@@ -0,0 +1,61 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.tracking;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Label texts of the overlay by class and confidence rounded to a tenth of a percent. Every text
+ * is formatted once on its first use, afterwards looking it up does not allocate.
+ */
+final class LabelCache {
+    // confidence steps of the labels, tenths of a percent
+    static final int CONFIDENCE_STEPS = 1000;
+
+    private String[] titles = new String[0];
+    private String[][] labels = new String[0][];
+
+    /**
+     * @param classId Class of the track, the texts are cached per class
+     * @param title Title of the class, resets the cached texts of the class when it changes
+     * @param confidence Confidence of the track between 0 and 1
+     * @param showConfidence Whether the confidence is appended to the title
+     * @return The label text, like "person 87.5%" with the confidence
+     */
+    String get(final int classId, final String title, final float confidence, final boolean showConfidence) {
+        final String text = title == null ? "" : title;
+        if (!showConfidence) {
+            return text;
+        }
+        if (classId >= labels.length) {
+            final int capacity = Math.max(classId + 1, labels.length * 2);
+            titles = Arrays.copyOf(titles, capacity);
+            labels = Arrays.copyOf(labels, capacity);
+        }
+        if (labels[classId] == null || !text.equals(titles[classId])) {
+            titles[classId] = text;
+            labels[classId] = new String[CONFIDENCE_STEPS + 1];
+        }
+        final int step = Math.max(0, Math.min(CONFIDENCE_STEPS, Math.round(confidence * CONFIDENCE_STEPS)));
+        String label = labels[classId][step];
+        if (label == null) {
+            label = String.format(Locale.ENGLISH, "%s %.1f%%", text, step * 100.0f / CONFIDENCE_STEPS);
+            labels[classId][step] = label;
+        }
+        return label;
+    }
+}
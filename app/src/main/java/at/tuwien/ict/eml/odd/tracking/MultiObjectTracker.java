@@ -0,0 +1,490 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.tracking;
+
+import java.util.Arrays;
+
+/**
+ * Multi-object tracker which keeps the identity of detected objects across frames.
+ *
+ * <p>Every track has a constant velocity Kalman filter on the center, width and height of its box.
+ * The four coordinates are independent, so the filter is kept as four 2x2 filters of position and
+ * velocity. On every frame the tracks are predicted and matched to the detections of the same class
+ * by the IoU of the predicted boxes. The pairs above the IoU threshold are grouped into connected
+ * components and each component is assigned optimally with the Hungarian method, so hundreds of
+ * objects only cost a few tiny assignments instead of one large one.
+ *
+ * <p>A track is confirmed after minHits matched frames, an unconfirmed track dies on its first
+ * missed frame, a confirmed one after maxMisses missed frames in a row. Meanwhile it coasts along
+ * its predicted motion.
+ *
+ * <p>The tracks live in fixed slots which keep their index for the lifetime of a track, all state
+ * is kept in primitive arrays. An instance is not thread-safe.
+ */
+public class MultiObjectTracker {
+    // noise of the Kalman filter relative to the box height
+    private static final float POSITION_NOISE = 1.0f / 20;
+    private static final float VELOCITY_NOISE = 1.0f / 160;
+    private static final float MIN_BOX_SIZE = 1e-3f;
+    // cost of the pairs below the IoU threshold, never accepted as a match
+    private static final double NO_MATCH = 1e6;
+
+    private final float iouThreshold;
+    private final int minHits;
+    private final int maxMisses;
+    private boolean classAware = true;
+
+    // per slot track state
+    private final boolean[] alive;
+    private final boolean[] confirmed;
+    private final long[] ids;
+    private final int[] hits;
+    private final int[] misses;
+    private final int[] classIds;
+    private final float[] scores;
+    private final int[] matchedDetections;
+    // center x, center y, width, height followed by their velocities
+    private final float[] states;
+    // per coordinate the covariance of position and velocity as p00, p01, p11
+    private final float[] covariances;
+    private long nextId = 1;
+    private int frames;
+
+    // association buffers, grow with the number of detections
+    private final int[] trackSlots;
+    private int[] detectionTracks = new int[0];
+    private int[] parents = new int[0];
+    private int[] localIndices = new int[0];
+    private int[] edgeTracks = new int[0];
+    private int[] edgeDetections = new int[0];
+    private float[] edgeIous = new float[0];
+    private long[] edgeOrder = new long[0];
+    private int[] componentTracks = new int[0];
+    private int[] componentDetections = new int[0];
+    private double[] cost = new double[0];
+    private int[] assignment = new int[0];
+    private final HungarianAssignment hungarian = new HungarianAssignment();
+
+    /**
+     * @param capacity Maximum number of tracks, detections beyond do not start new tracks
+     * @param iouThreshold Minimum IoU of a predicted track box and a detection to match them
+     * @param minHits Matched frames until a track is confirmed
+     * @param maxMisses Missed frames in a row until a confirmed track is dropped
+     */
+    public MultiObjectTracker(final int capacity, final float iouThreshold, final int minHits, final int maxMisses) {
+        if (capacity < 1 || minHits < 1 || maxMisses < 0) {
+            throw new IllegalArgumentException("Invalid tracker configuration");
+        }
+        this.iouThreshold = iouThreshold;
+        this.minHits = minHits;
+        this.maxMisses = maxMisses;
+        alive = new boolean[capacity];
+        confirmed = new boolean[capacity];
+        ids = new long[capacity];
+        hits = new int[capacity];
+        misses = new int[capacity];
+        classIds = new int[capacity];
+        scores = new float[capacity];
+        matchedDetections = new int[capacity];
+        states = new float[capacity * 8];
+        covariances = new float[capacity * 12];
+        trackSlots = new int[capacity];
+    }
+
+    /**
+     * @param classAware If true tracks only match detections of their class
+     */
+    public MultiObjectTracker setClassAware(final boolean classAware) {
+        this.classAware = classAware;
+        return this;
+    }
+
+    /**
+     * Advances all tracks by one frame along their motion without detections,
+     * for frames which are not inferred.
+     */
+    public void predict() {
+        for (int slot = 0; slot < alive.length; slot++) {
+            if (alive[slot]) {
+                predict(slot);
+            }
+        }
+    }
+
+    /**
+     * Advances all tracks by one frame and corrects them with the detections of the frame.
+     * @param boxes [left, top, right, bottom] per detection
+     * @param scores Score per detection
+     * @param classes Class per detection
+     * @param count Number of detections
+     */
+    public void update(final float[] boxes, final float[] scores, final int[] classes, final int count) {
+        frames++;
+        predict();
+        associate(boxes, classes, count);
+
+        for (int slot = 0; slot < alive.length; slot++) {
+            if (!alive[slot] || matchedDetections[slot] >= 0) {
+                continue;
+            }
+            misses[slot]++;
+            if (!confirmed[slot] || misses[slot] > maxMisses) {
+                alive[slot] = false;
+            }
+        }
+        for (int d = 0; d < count; d++) {
+            final int slot = detectionTracks[d];
+            if (slot >= 0) {
+                correct(slot, boxes, d);
+                hits[slot]++;
+                misses[slot] = 0;
+                confirmed[slot] |= hits[slot] >= minHits;
+                classIds[slot] = classes[d];
+                this.scores[slot] = scores[d];
+            } else {
+                startTrack(boxes, scores[d], classes[d], d);
+            }
+        }
+    }
+
+    /**
+     * Drops all tracks.
+     */
+    public void clear() {
+        Arrays.fill(alive, false);
+        frames = 0;
+    }
+
+    public int capacity() {
+        return alive.length;
+    }
+
+    public boolean isAlive(final int slot) {
+        return alive[slot];
+    }
+
+    /**
+     * @return True if the track should be shown, confirmed tracks and during the first frames
+     * after the start or a clear all tracks, so a single update shows every detection
+     */
+    public boolean isVisible(final int slot) {
+        return alive[slot] && (confirmed[slot] || frames <= minHits);
+    }
+
+    /**
+     * @return Unique id of the track in the slot, stays the same for the lifetime of the track
+     */
+    public long getId(final int slot) {
+        return ids[slot];
+    }
+
+    public int getClassId(final int slot) {
+        return classIds[slot];
+    }
+
+    /**
+     * @return Score of the last detection matched to the track
+     */
+    public float getScore(final int slot) {
+        return scores[slot];
+    }
+
+    /**
+     * @return Index of the detection matched in the last update, or -1 if the track was missed
+     */
+    public int getMatchedDetection(final int slot) {
+        return matchedDetections[slot];
+    }
+
+    /**
+     * @return Missed frames in a row
+     */
+    public int getMisses(final int slot) {
+        return misses[slot];
+    }
+
+    /**
+     * Writes the current box estimate of the track.
+     * @param out Receives [left, top, right, bottom] at the offset
+     */
+    public void getBox(final int slot, final float[] out, final int offset) {
+        final int s = slot * 8;
+        final float halfWidth = states[s + 2] / 2;
+        final float halfHeight = states[s + 3] / 2;
+        out[offset] = states[s] - halfWidth;
+        out[offset + 1] = states[s + 1] - halfHeight;
+        out[offset + 2] = states[s] + halfWidth;
+        out[offset + 3] = states[s + 1] + halfHeight;
+    }
+
+    private void predict(final int slot) {
+        final int s = slot * 8;
+        final float height = states[s + 3];
+        final float q0 = square(POSITION_NOISE * height);
+        final float q1 = square(VELOCITY_NOISE * height);
+        for (int axis = 0; axis < 4; axis++) {
+            states[s + axis] += states[s + 4 + axis];
+            final int c = slot * 12 + axis * 3;
+            final float p00 = covariances[c];
+            final float p01 = covariances[c + 1];
+            final float p11 = covariances[c + 2];
+            covariances[c] = p00 + 2 * p01 + p11 + q0;
+            covariances[c + 1] = p01 + p11;
+            covariances[c + 2] = p11 + q1;
+        }
+        states[s + 2] = Math.max(MIN_BOX_SIZE, states[s + 2]);
+        states[s + 3] = Math.max(MIN_BOX_SIZE, states[s + 3]);
+    }
+
+    private void correct(final int slot, final float[] boxes, final int detection) {
+        final int s = slot * 8;
+        final int b = detection * 4;
+        final float r = square(POSITION_NOISE * states[s + 3]);
+        for (int axis = 0; axis < 4; axis++) {
+            final float measurement = measure(boxes, b, axis);
+            final int c = slot * 12 + axis * 3;
+            final float p00 = covariances[c];
+            final float p01 = covariances[c + 1];
+            final float innovation = 1 / (p00 + r);
+            final float gainPosition = p00 * innovation;
+            final float gainVelocity = p01 * innovation;
+            final float residual = measurement - states[s + axis];
+            states[s + axis] += gainPosition * residual;
+            states[s + 4 + axis] += gainVelocity * residual;
+            covariances[c] = (1 - gainPosition) * p00;
+            covariances[c + 1] = (1 - gainPosition) * p01;
+            covariances[c + 2] -= gainVelocity * p01;
+        }
+    }
+
+    private void startTrack(final float[] boxes, final float score, final int classId, final int detection) {
+        int slot = 0;
+        while (slot < alive.length && alive[slot]) {
+            slot++;
+        }
+        if (slot == alive.length) {
+            return;
+        }
+        alive[slot] = true;
+        ids[slot] = nextId++;
+        hits[slot] = 1;
+        misses[slot] = 0;
+        confirmed[slot] = minHits <= 1;
+        classIds[slot] = classId;
+        scores[slot] = score;
+        matchedDetections[slot] = detection;
+        final int s = slot * 8;
+        final int b = detection * 4;
+        for (int axis = 0; axis < 4; axis++) {
+            states[s + axis] = measure(boxes, b, axis);
+            states[s + 4 + axis] = 0;
+        }
+        states[s + 2] = Math.max(MIN_BOX_SIZE, states[s + 2]);
+        states[s + 3] = Math.max(MIN_BOX_SIZE, states[s + 3]);
+        final float height = states[s + 3];
+        for (int axis = 0; axis < 4; axis++) {
+            final int c = slot * 12 + axis * 3;
+            covariances[c] = square(2 * POSITION_NOISE * height);
+            covariances[c + 1] = 0;
+            covariances[c + 2] = square(10 * VELOCITY_NOISE * height);
+        }
+    }
+
+    // center x, center y, width or height of a [left, top, right, bottom] box
+    private static float measure(final float[] boxes, final int b, final int axis) {
+        switch (axis) {
+            case 0:
+                return (boxes[b] + boxes[b + 2]) / 2;
+            case 1:
+                return (boxes[b + 1] + boxes[b + 3]) / 2;
+            case 2:
+                return boxes[b + 2] - boxes[b];
+            default:
+                return boxes[b + 3] - boxes[b + 1];
+        }
+    }
+
+    private static float square(final float value) {
+        return value * value;
+    }
+
+    /**
+     * Fills detectionTracks with the slot matched to every detection or -1
+     * and matchedDetections with the detection matched to every slot or -1.
+     */
+    private void associate(final float[] boxes, final int[] classes, final int count) {
+        ensureDetectionCapacity(count);
+        Arrays.fill(detectionTracks, 0, count, -1);
+        Arrays.fill(matchedDetections, -1);
+        int numTracks = 0;
+        for (int slot = 0; slot < alive.length; slot++) {
+            if (alive[slot]) {
+                trackSlots[numTracks++] = slot;
+            }
+        }
+        if (numTracks == 0 || count == 0) {
+            return;
+        }
+
+        // candidate pairs, nodes 0..numTracks-1 are tracks, the following ones detections
+        final int nodes = numTracks + count;
+        for (int i = 0; i < nodes; i++) {
+            parents[i] = i;
+        }
+        int numEdges = 0;
+        for (int t = 0; t < numTracks; t++) {
+            final int slot = trackSlots[t];
+            final int s = slot * 8;
+            final float left = states[s] - states[s + 2] / 2;
+            final float top = states[s + 1] - states[s + 3] / 2;
+            final float right = left + states[s + 2];
+            final float bottom = top + states[s + 3];
+            final float area = states[s + 2] * states[s + 3];
+            for (int d = 0; d < count; d++) {
+                if (classAware && classes[d] != classIds[slot]) {
+                    continue;
+                }
+                final int b = d * 4;
+                final float width = Math.min(right, boxes[b + 2]) - Math.max(left, boxes[b]);
+                final float height = Math.min(bottom, boxes[b + 3]) - Math.max(top, boxes[b + 1]);
+                if (width <= 0 || height <= 0) {
+                    continue;
+                }
+                final float intersection = width * height;
+                final float detectionArea = (boxes[b + 2] - boxes[b]) * (boxes[b + 3] - boxes[b + 1]);
+                final float iou = intersection / (area + detectionArea - intersection);
+                if (iou < iouThreshold) {
+                    continue;
+                }
+                ensureEdgeCapacity(numEdges + 1);
+                edgeTracks[numEdges] = t;
+                edgeDetections[numEdges] = d;
+                edgeIous[numEdges] = iou;
+                numEdges++;
+                union(t, numTracks + d);
+            }
+        }
+
+        // group the pairs by their connected component
+        for (int e = 0; e < numEdges; e++) {
+            edgeOrder[e] = ((long) find(edgeTracks[e]) << 32) | e;
+        }
+        Arrays.sort(edgeOrder, 0, numEdges);
+        Arrays.fill(localIndices, 0, nodes, -1);
+        int start = 0;
+        while (start < numEdges) {
+            final long root = edgeOrder[start] >>> 32;
+            int end = start;
+            while (end < numEdges && edgeOrder[end] >>> 32 == root) {
+                end++;
+            }
+            assignComponent(start, end, numTracks);
+            start = end;
+        }
+    }
+
+    private void assignComponent(final int start, final int end, final int numTracks) {
+        if (end - start == 1) {
+            // a single pair, the common case of well separated objects
+            final int e = (int) edgeOrder[start];
+            match(trackSlots[edgeTracks[e]], edgeDetections[e]);
+            return;
+        }
+        int rows = 0;
+        int cols = 0;
+        for (int i = start; i < end; i++) {
+            final int e = (int) edgeOrder[i];
+            if (localIndices[edgeTracks[e]] < 0) {
+                componentTracks[rows] = edgeTracks[e];
+                localIndices[edgeTracks[e]] = rows++;
+            }
+            final int node = numTracks + edgeDetections[e];
+            if (localIndices[node] < 0) {
+                componentDetections[cols] = edgeDetections[e];
+                localIndices[node] = cols++;
+            }
+        }
+        // square matrix, the padding rows and columns only have pairs without a match
+        final int n = Math.max(rows, cols);
+        ensureCostCapacity(n);
+        Arrays.fill(cost, 0, n * n, NO_MATCH);
+        for (int i = start; i < end; i++) {
+            final int e = (int) edgeOrder[i];
+            final int row = localIndices[edgeTracks[e]];
+            final int col = localIndices[numTracks + edgeDetections[e]];
+            cost[row * n + col] = 1 - edgeIous[e];
+        }
+        hungarian.solve(cost, n, assignment);
+        for (int row = 0; row < rows; row++) {
+            final int col = assignment[row];
+            if (col < cols && cost[row * n + col] < NO_MATCH) {
+                match(trackSlots[componentTracks[row]], componentDetections[col]);
+            }
+        }
+    }
+
+    private void match(final int slot, final int detection) {
+        matchedDetections[slot] = detection;
+        detectionTracks[detection] = slot;
+    }
+
+    private int find(int node) {
+        while (parents[node] != node) {
+            parents[node] = parents[parents[node]];
+            node = parents[node];
+        }
+        return node;
+    }
+
+    private void union(final int a, final int b) {
+        final int rootA = find(a);
+        final int rootB = find(b);
+        if (rootA != rootB) {
+            parents[rootB] = rootA;
+        }
+    }
+
+    private void ensureDetectionCapacity(final int count) {
+        if (detectionTracks.length >= count) {
+            return;
+        }
+        detectionTracks = new int[count];
+        parents = new int[alive.length + count];
+        localIndices = new int[alive.length + count];
+        componentTracks = new int[alive.length];
+        componentDetections = new int[count];
+    }
+
+    private void ensureEdgeCapacity(final int edges) {
+        if (edgeTracks.length >= edges) {
+            return;
+        }
+        final int capacity = Math.max(edges, Math.max(64, edgeTracks.length * 2));
+        edgeTracks = Arrays.copyOf(edgeTracks, capacity);
+        edgeDetections = Arrays.copyOf(edgeDetections, capacity);
+        edgeIous = Arrays.copyOf(edgeIous, capacity);
+        edgeOrder = new long[capacity];
+    }
+
+    private void ensureCostCapacity(final int n) {
+        if (assignment.length < n) {
+            assignment = new int[n];
+        }
+        if (cost.length < n * n) {
+            cost = new double[n * n];
+        }
+    }
+}
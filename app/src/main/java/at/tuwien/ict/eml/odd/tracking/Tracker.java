@@ -19,40 +19,50 @@ package at.tuwien.ict.eml.odd.tracking;
 import android.content.Context;
 import android.graphics.BlendMode;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.DashPathEffect;
 import android.graphics.Matrix;
-import android.graphics.Paint;
-import android.graphics.Paint.Cap;
-import android.graphics.Paint.Join;
-import android.graphics.Paint.Style;
 import android.graphics.Rect;
-import android.graphics.RectF;
-import android.text.TextUtils;
-import android.util.Pair;
 import android.util.TypedValue;
 
 import at.tuwien.ict.eml.odd.env.ImageUtils;
-import at.tuwien.ict.eml.odd.env.BorderedText;
 import at.tuwien.ict.eml.odd.detection.Detector.Recognition;
+import at.tuwien.ict.eml.odd.pipeline.TripleBuffer;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Locale;
 
-/** A tracker that handles non-max suppression and matches existing objects to new detections. */
+/**
+ * A tracker that matches existing objects to new detections and draws them. The detections are
+ * associated with a {@link MultiObjectTracker}, so the boxes keep their identity across frames
+ * and a missed detection does not make them flicker.
+ *
+ * <p>The tracking methods may be called from any thread and are serialized among each other.
+ * Each of them publishes a {@link TrackerFrame} through a triple buffer, which {@link #draw}
+ * picks up without locking, so the UI thread never waits for the tracking and vice versa.
+ * Draw must only be called from one thread.
+ */
 public class Tracker {
   private static final float TEXT_SIZE_DIP = 18;
   private static final float MIN_SIZE = 16.0f;
-  private static final ArrayList<Integer> colors = new ArrayList<>();
-  final List<Pair<Float, RectF>> screenRects = new LinkedList<>();
-  private final List<TrackedRecognition> trackedObjects = new LinkedList<>();
-  private final Paint boxPaint = new Paint();
-  private final Paint framePaint = new Paint();
-  private float textSizePx;
-  private BorderedText borderedText;
+  // tracker configuration, the new tracks show after a few frames and the lost ones coast for a few
+  private static final int MAX_TRACKS = 256;
+  private static final float TRACK_IOU_THRESHOLD = 0.3f;
+  private static final int TRACK_MIN_HITS = 3;
+  private static final int TRACK_MAX_MISSES = 3;
+  private final MultiObjectTracker multiObjectTracker =
+      new MultiObjectTracker(MAX_TRACKS, TRACK_IOU_THRESHOLD, TRACK_MIN_HITS, TRACK_MAX_MISSES);
+  // titles of the tracks by slot of the multi object tracker
+  private final String[] trackTitles = new String[MAX_TRACKS];
+  // detections of the current frame passed to the multi object tracker
+  private float[] detectionBoxes = new float[0];
+  private float[] detectionScores = new float[0];
+  private int[] detectionClasses = new int[0];
+  private int[] detectionIndices = new int[0];
+  // hand-off of the tracking state to draw
+  private final TripleBuffer<TrackerFrame> frames = new TripleBuffer<>(
+      new TrackerFrame(MAX_TRACKS), new TrackerFrame(MAX_TRACKS), new TrackerFrame(MAX_TRACKS));
+  // only used by draw
+  private final TrackerRenderer renderer;
+  // state of the tracking methods, guarded by this
   private int frameWidth;
   private int frameHeight;
   private int cropBorderTop;
@@ -64,38 +74,20 @@ public class Tracker {
 
   public Tracker(final Context context, int classes) {
     isVisible = true;
-
-    // generate random colors
-    float[] hsv_value = new float[3];
-    hsv_value[1] = 1.0f;
-    hsv_value[2] = 0.7f;
-    for (int i=0; i<classes; i++){
-      hsv_value[0] = (360.0f/(classes-1)*i);
-      colors.add(Color.HSVToColor(hsv_value));
-    }
-    Collections.shuffle(colors);
-
-    boxPaint.setColor(Color.RED);
-    boxPaint.setStyle(Style.STROKE);
-    boxPaint.setStrokeWidth(12.0f);
-    boxPaint.setStrokeCap(Cap.ROUND);
-    boxPaint.setStrokeJoin(Join.ROUND);
-    boxPaint.setStrokeMiter(100);
-
-    framePaint.setColor(Color.parseColor("#000000"));
-    framePaint.setAlpha(180);
-    framePaint.setStyle(Style.FILL);
+    renderer = new TrackerRenderer(classes);
   }
 
   public synchronized void setTrackingVisible(boolean visible){
     if(!visible){
-      trackedObjects.clear();
+      multiObjectTracker.clear();
     }
     this.isVisible = visible;
+    publishFrame();
   }
 
   public synchronized void setCropBox(boolean cropBox) {
     this.showCropFrame = cropBox;
+    publishFrame();
   }
 
   public synchronized void setFrameConfiguration(
@@ -111,74 +103,58 @@ public class Tracker {
     this.cropBorderBottom = cropBorderBottom;
     this.showConfidence = showConfidence;
     this.boundingBoxColorMode = boundingBoxColorMode;
-    this.boxPaint.setStrokeWidth(frameWidth/70.0f);
-    textSizePx = frameWidth/25.0f;
-    this.borderedText = new BorderedText(textSizePx);
+    publishFrame();
   }
 
   public synchronized void trackResults(final List<Recognition> results, final long timestamp) {
     //logger.i("Processing %d results from %d", results.size(), timestamp);
     processResults(results);
+    publishFrame();
   }
 
   /**
-   * Draw all tracked objects on the canvas
-   * @param canvas The canvas to draw on
+   * Advances the tracked objects by one frame along their motion, for frames without inference.
    */
-  @SuppressWarnings("SuspiciousNameCombination")
-  public synchronized void draw(final Canvas canvas) {
-    // if crop mode true draw the 1x1 crop frame box on the preview canvas
-    if(showCropFrame){
-      RectF cropRect, cropRect_top, cropRect_bottom;
-      if(frameWidth < frameHeight){
-        cropRect_top = new RectF(
-                0,
-                0,
-                frameWidth,
-                cropBorderTop);
-        cropRect_bottom = new RectF(
-                0,
-                cropBorderBottom,
-                frameWidth,
-                frameHeight);
-      } else {
-        cropRect_top = new RectF(
-                0,
-                0,
-                cropBorderTop,
-                frameHeight);
-        cropRect_bottom = new RectF(
-                cropBorderBottom,
-                0,
-                frameWidth,
-                frameHeight);
-      }
-
-      canvas.drawRect(cropRect_top, framePaint);
-      canvas.drawRect(cropRect_bottom, framePaint);
-    }
-
-    if(!isVisible) {
-      return;
-    }
-    for (final TrackedRecognition recognition : trackedObjects) {
-      final RectF trackedPos = new RectF(recognition.location);
-
-      boxPaint.setColor(recognition.color);
-      boxPaint.setAlpha(200);
-
-      //float cornerSize = Math.min(trackedPos.width(), trackedPos.height()) / 15.0f;
-      //canvas.drawRoundRect(trackedPos, cornerSize, cornerSize, boxPaint);
-      canvas.drawRect(trackedPos, boxPaint);
+  public synchronized void predictFrame() {
+    multiObjectTracker.predict();
+    publishFrame();
+  }
 
-      String labelString = !TextUtils.isEmpty(recognition.title) ?
-              String.format("%s", recognition.title) : "";
-      if (showConfidence) {
-        labelString = String.format("%s%s", labelString, String.format(Locale.ENGLISH," %.1f%%", (100 * recognition.detectionConfidence)));
+  /**
+   * Copies the configuration and the visible tracks into the back buffer and publishes it for draw.
+   */
+  private void publishFrame() {
+    final TrackerFrame frame = frames.back();
+    frame.frameWidth = frameWidth;
+    frame.frameHeight = frameHeight;
+    frame.cropBorderTop = cropBorderTop;
+    frame.cropBorderBottom = cropBorderBottom;
+    frame.showConfidence = showConfidence;
+    frame.showCropFrame = showCropFrame;
+    frame.boundingBoxColorMode = boundingBoxColorMode;
+    frame.visible = isVisible;
+    int count = 0;
+    for (int slot = 0; isVisible && slot < multiObjectTracker.capacity(); slot++) {
+      if (!multiObjectTracker.isVisible(slot)) {
+        continue;
       }
-      borderedText.drawText(
-              canvas, trackedPos.left, trackedPos.top, labelString, boxPaint);
+      multiObjectTracker.getBox(slot, frame.boxes, count * 4);
+      frame.scores[count] = multiObjectTracker.getScore(slot);
+      frame.classIds[count] = multiObjectTracker.getClassId(slot);
+      frame.titles[count] = trackTitles[slot];
+      count++;
     }
+    frame.count = count;
+    frames.publish();
+  }
+
+  /**
+   * Draw all tracked objects on the canvas
+   * @param canvas The canvas to draw on
+   */
+  public void draw(final Canvas canvas) {
+    // the latest published frame, never written while it is drawn
+    renderer.draw(canvas, frames.acquire());
   }
 
   /**
@@ -186,48 +162,46 @@ public class Tracker {
    * @param results List of given Recognitions
    */
   private void processResults(final List<Recognition> results) {
-    final List<Pair<Float, Recognition>> rectsToTrack = new LinkedList<>();
-
-    screenRects.clear();
+    if (detectionScores.length < results.size()) {
+      detectionBoxes = new float[results.size() * 4];
+      detectionScores = new float[results.size()];
+      detectionClasses = new int[results.size()];
+      detectionIndices = new int[results.size()];
+    }
 
-    for (final Recognition result : results) {
-      if (result.getLocation() == null) {
+    int count = 0;
+    for (int i = 0; i < results.size(); i++) {
+      final Recognition result = results.get(i);
+      if (!result.hasLocation()) {
         continue;
       }
 
-      if (result.getLocation().width() < MIN_SIZE || result.getLocation().height() < MIN_SIZE) {
+      final float left = result.getLeft();
+      final float top = result.getTop();
+      final float right = result.getRight();
+      final float bottom = result.getBottom();
+      if (right - left < MIN_SIZE || bottom - top < MIN_SIZE) {
         continue;
       }
 
-      rectsToTrack.add(new Pair<>(result.getConfidence(), result));
+      detectionBoxes[count * 4] = left;
+      detectionBoxes[count * 4 + 1] = top;
+      detectionBoxes[count * 4 + 2] = right;
+      detectionBoxes[count * 4 + 3] = bottom;
+      detectionScores[count] = result.getConfidence();
+      detectionClasses[count] = result.getClassId();
+      detectionIndices[count] = i;
+      count++;
     }
 
-    trackedObjects.clear();
-    if (rectsToTrack.isEmpty()) {
-      return;
-    }
+    multiObjectTracker.update(detectionBoxes, detectionScores, detectionClasses, count);
 
-    for (final Pair<Float, Recognition> potential : rectsToTrack) {
-      final TrackedRecognition trackedRecognition = new TrackedRecognition();
-      trackedRecognition.detectionConfidence = potential.first;
-      trackedRecognition.location = new RectF(potential.second.getLocation());
-      trackedRecognition.title = potential.second.getTitle();
-
-      // link the recognized objects to colors
-      if(boundingBoxColorMode.equals("confidence")){
-        int colorIndex = (int)(trackedRecognition.detectionConfidence*20); //outputs 0 to 20
-        trackedRecognition.color = Color.parseColor("#" + String.format("%02X", Math.max(0, 255 - colorIndex * 12)) + String.format("%02X", Math.min(255, colorIndex * 12)) + "00");
-      } else {
-        trackedRecognition.color = colors.get(potential.second.getClassId());
+    // the coasting tracks keep the title of their last detection
+    for (int slot = 0; slot < multiObjectTracker.capacity(); slot++) {
+      final int detection = multiObjectTracker.getMatchedDetection(slot);
+      if (multiObjectTracker.isAlive(slot) && detection >= 0) {
+        trackTitles[slot] = results.get(detectionIndices[detection]).getTitle();
       }
-      trackedObjects.add(trackedRecognition);
     }
   }
-
-  private static class TrackedRecognition {
-    RectF location;
-    float detectionConfidence;
-    int color;
-    String title;
-  }
 }
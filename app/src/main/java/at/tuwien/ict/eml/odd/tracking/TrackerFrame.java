@@ -0,0 +1,46 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.tracking;
+
+/**
+ * Everything the overlay needs to draw one frame of the tracker, the frame configuration and the
+ * visible tracks. Handed from the tracking threads to the UI thread through a triple buffer, so
+ * an instance is only ever written or read by one thread at a time.
+ */
+final class TrackerFrame {
+    int frameWidth;
+    int frameHeight;
+    int cropBorderTop;
+    int cropBorderBottom;
+    boolean showConfidence;
+    boolean showCropFrame;
+    String boundingBoxColorMode;
+    boolean visible;
+
+    int count;
+    // [left, top, right, bottom] per track
+    final float[] boxes;
+    final float[] scores;
+    final int[] classIds;
+    final String[] titles;
+
+    TrackerFrame(final int capacity) {
+        boxes = new float[capacity * 4];
+        scores = new float[capacity];
+        classIds = new int[capacity];
+        titles = new String[capacity];
+    }
+}
@@ -0,0 +1,137 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.tracking;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Paint.Cap;
+import android.graphics.Paint.Join;
+import android.graphics.Paint.Style;
+import android.graphics.RectF;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import at.tuwien.ict.eml.odd.env.BorderedText;
+
+/**
+ * Draws a {@link TrackerFrame} onto the overlay canvas. The geometry, paints, colors and label
+ * texts are reused, so drawing does not allocate once the labels of the shown classes and
+ * confidences are cached. Must only be used from one thread.
+ */
+final class TrackerRenderer {
+    // colors of the confidence color mode, from red to green in steps of 5%
+    private static final int CONFIDENCE_COLOR_STEPS = 20;
+    private static final int[] CONFIDENCE_COLORS = new int[CONFIDENCE_COLOR_STEPS + 1];
+
+    static {
+        for (int i = 0; i <= CONFIDENCE_COLOR_STEPS; i++) {
+            CONFIDENCE_COLORS[i] = Color.rgb(Math.max(0, 255 - i * 12), Math.min(255, i * 12), 0);
+        }
+    }
+
+    private final int[] classColors;
+    private final LabelCache labels = new LabelCache();
+    private final Paint boxPaint = new Paint();
+    private final Paint framePaint = new Paint();
+    private final RectF trackedPos = new RectF();
+    private final RectF cropRectTop = new RectF();
+    private final RectF cropRectBottom = new RectF();
+    private BorderedText borderedText;
+    private int borderedTextFrameWidth;
+
+    /**
+     * @param classes Number of classes of the model, each gets a random color
+     */
+    TrackerRenderer(final int classes) {
+        // generate random colors
+        final List<Integer> colors = new ArrayList<>(classes);
+        final float[] hsv = new float[]{0.0f, 1.0f, 0.7f};
+        for (int i = 0; i < classes; i++) {
+            hsv[0] = (360.0f / (classes - 1) * i);
+            colors.add(Color.HSVToColor(hsv));
+        }
+        Collections.shuffle(colors);
+        classColors = new int[classes];
+        for (int i = 0; i < classes; i++) {
+            classColors[i] = colors.get(i);
+        }
+
+        boxPaint.setColor(Color.RED);
+        boxPaint.setStyle(Style.STROKE);
+        boxPaint.setStrokeWidth(12.0f);
+        boxPaint.setStrokeCap(Cap.ROUND);
+        boxPaint.setStrokeJoin(Join.ROUND);
+        boxPaint.setStrokeMiter(100);
+
+        framePaint.setColor(Color.BLACK);
+        framePaint.setAlpha(180);
+        framePaint.setStyle(Style.FILL);
+    }
+
+    /**
+     * Draws the crop frame and the tracks of the frame
+     * @param canvas The canvas to draw on
+     * @param frame The frame to draw, must not be written while it is drawn
+     */
+    @SuppressWarnings("SuspiciousNameCombination")
+    void draw(final Canvas canvas, final TrackerFrame frame) {
+        final int frameWidth = frame.frameWidth;
+        final int frameHeight = frame.frameHeight;
+
+        // if crop mode true draw the 1x1 crop frame box on the preview canvas
+        if (frame.showCropFrame) {
+            if (frameWidth < frameHeight) {
+                cropRectTop.set(0, 0, frameWidth, frame.cropBorderTop);
+                cropRectBottom.set(0, frame.cropBorderBottom, frameWidth, frameHeight);
+            } else {
+                cropRectTop.set(0, 0, frame.cropBorderTop, frameHeight);
+                cropRectBottom.set(frame.cropBorderBottom, 0, frameWidth, frameHeight);
+            }
+            canvas.drawRect(cropRectTop, framePaint);
+            canvas.drawRect(cropRectBottom, framePaint);
+        }
+
+        if (!frame.visible) {
+            return;
+        }
+        if (borderedText == null || borderedTextFrameWidth != frameWidth) {
+            borderedText = new BorderedText(frameWidth / 25.0f);
+            borderedTextFrameWidth = frameWidth;
+        }
+        boxPaint.setStrokeWidth(frameWidth / 70.0f);
+        final boolean confidenceColors = "confidence".equals(frame.boundingBoxColorMode);
+        for (int i = 0; i < frame.count; i++) {
+            trackedPos.set(frame.boxes[i * 4], frame.boxes[i * 4 + 1], frame.boxes[i * 4 + 2], frame.boxes[i * 4 + 3]);
+            final int classId = frame.classIds[i];
+            final float detectionConfidence = frame.scores[i];
+
+            boxPaint.setColor(confidenceColors ? confidenceColor(detectionConfidence) : classColors[classId]);
+            boxPaint.setAlpha(200);
+            canvas.drawRect(trackedPos, boxPaint);
+
+            final String label = labels.get(classId, frame.titles[i], detectionConfidence, frame.showConfidence);
+            borderedText.drawText(canvas, trackedPos.left, trackedPos.top, label, boxPaint);
+        }
+    }
+
+    static int confidenceColor(final float detectionConfidence) {
+        final int colorIndex = (int) (detectionConfidence * CONFIDENCE_COLOR_STEPS);
+        return CONFIDENCE_COLORS[Math.max(0, Math.min(CONFIDENCE_COLOR_STEPS, colorIndex))];
+    }
+}
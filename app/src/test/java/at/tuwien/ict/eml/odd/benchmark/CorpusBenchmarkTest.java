@@ -0,0 +1,175 @@
+package at.tuwien.ict.eml.odd.benchmark;
+
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import at.tuwien.ict.eml.odd.detection.Detector;
+import at.tuwien.ict.eml.odd.detection.InterpreterConfig;
+import at.tuwien.ict.eml.odd.env.YuvPlanes;
+import at.tuwien.ict.eml.odd.stats.StageMetrics;
+import at.tuwien.ict.eml.odd.tracking.Tracker;
+
+import static org.junit.Assert.*;
+
+public class CorpusBenchmarkTest {
+
+    /**
+     * Detector returning one recognition per frame and recording a run stage like the real one.
+     */
+    private static class FakeDetector implements Detector {
+        final StageMetrics metrics;
+        int frames;
+
+        FakeDetector(StageMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public List<Recognition> recognizeImage(YuvPlanes frame, int aspectDstWidth, int aspectDstHeight,
+                                                int applyRotationToSrc, boolean cropModeContain) {
+            frames++;
+            metrics.record(StageMetrics.Stage.RUN, 1_000_000);
+            List<Recognition> results = new ArrayList<>();
+            results.add(new Recognition("0", 0, "a", 0.9f, new RectF(10, 10, 50, 50)));
+            return results;
+        }
+
+        @Override
+        public List<Recognition> recognizeImage(Bitmap bitmap) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<List<Recognition>> recognizeImages(List<Bitmap> bitmaps) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void enableStatLogging(boolean debug) {
+        }
+
+        @Override
+        public String getStatString() {
+            return "";
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void setNumThreads(int numThreads) {
+        }
+
+        @Override
+        public void setUseNNAPI(boolean isChecked) {
+        }
+    }
+
+    private static FrameCorpus corpus(int frames) {
+        List<FrameCorpus.Frame> list = new ArrayList<>();
+        for (int i = 0; i < frames; i++) {
+            list.add(FrameCorpus.fromArgb("frame" + i, new int[64 * 48], 64, 48));
+        }
+        return new FrameCorpus(list);
+    }
+
+    @Test
+    public void configMatrix_combinesThreadsAndDelegates() {
+        List<InterpreterConfig> configs = CorpusBenchmark.configMatrix(new int[]{1, 4}, new String[]{"cpu", " NNAPI"});
+        assertEquals(4, configs.size());
+        assertEquals(new InterpreterConfig(1, false, false, 1), configs.get(0));
+        assertEquals(new InterpreterConfig(4, true, false, 1), configs.get(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void configMatrix_rejectsUnknownDelegate() {
+        CorpusBenchmark.configMatrix(new int[]{1}, new String[]{"gpu"});
+    }
+
+    @Test
+    public void run_measuresEveryAppliedConfigAndReportsTheFailed() throws InterruptedException {
+        StageMetrics metrics = new StageMetrics();
+        FakeDetector detector = new FakeDetector(metrics);
+        List<InterpreterConfig> applied = new ArrayList<>();
+        CorpusBenchmark benchmark = new CorpusBenchmark(detector, metrics, new Tracker(null, 1),
+                config -> {
+                    if (config.useNNAPI) {
+                        throw new IllegalStateException("not available");
+                    }
+                    applied.add(config);
+                }, 32, 0.5f, 1, 3);
+
+        List<InterpreterConfig> configs = Arrays.asList(
+                new InterpreterConfig(1, false, false, 1),
+                new InterpreterConfig(2, true, false, 1),
+                new InterpreterConfig(2, false, true, 1));
+        List<CorpusBenchmark.Result> results = benchmark.run(corpus(5), configs);
+
+        assertEquals(Arrays.asList(configs.get(0), configs.get(2)), applied);
+        assertEquals(3, results.size());
+        assertTrue(results.get(1).isFailed());
+        assertEquals(configs.get(1), results.get(1).config);
+        assertEquals("java.lang.IllegalStateException: not available", results.get(1).failure);
+        // one warm-up and three measured passes per applied config
+        assertEquals(2 * 4 * 5, detector.frames);
+        for (CorpusBenchmark.Result result : Arrays.asList(results.get(0), results.get(2))) {
+            assertFalse(result.isFailed());
+            assertEquals(15, result.frames);
+            assertTrue(result.getFps() > 0);
+            assertEquals(1.0, result.getMeanMs(StageMetrics.Stage.RUN), 1e-9);
+        }
+        // the metrics only hold the measured passes of the last config
+        assertEquals(15, metrics.getCount(StageMetrics.Counter.FRAMES));
+        assertEquals(15, metrics.getHistogram(StageMetrics.Stage.TRACK).getCount());
+    }
+
+    @Test
+    public void toCsv_oneRowPerResult() throws InterruptedException {
+        StageMetrics metrics = new StageMetrics();
+        CorpusBenchmark benchmark = new CorpusBenchmark(new FakeDetector(metrics), metrics, new Tracker(null, 1),
+                config -> { }, 32, 0.5f, 0, 1);
+        List<CorpusBenchmark.Result> results = benchmark.run(corpus(2),
+                Collections.singletonList(new InterpreterConfig(4, false, true, 1)));
+
+        String[] lines = CorpusBenchmark.toCsv(results).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("threads,nnapi,xnnpack,frames,seconds,fps,preprocess_mean_ms,"));
+        assertTrue(lines[0], lines[0].endsWith(",draw_p99_ms,java_heap_peak_bytes,native_heap_peak_bytes,failure"));
+        assertEquals(lines[0].split(",").length, lines[1].split(",", -1).length);
+        assertTrue(lines[1], lines[1].endsWith(","));
+        assertTrue(lines[1], lines[1].startsWith("4,false,true,2,"));
+
+        String json = CorpusBenchmark.toJson(results);
+        assertTrue(json, json.startsWith("[{\"threads\":4,\"nnapi\":false,\"xnnpack\":true,\"frames\":2,"));
+        assertTrue(json, json.contains("\"metrics\":{\"stages\":{\"run\":"));
+        assertTrue(json, json.endsWith("}}]"));
+    }
+
+    @Test
+    public void toCsv_failedConfigWithReason() throws InterruptedException {
+        StageMetrics metrics = new StageMetrics();
+        CorpusBenchmark benchmark = new CorpusBenchmark(new FakeDetector(metrics), metrics, new Tracker(null, 1),
+                config -> {
+                    throw new IllegalStateException("no \"nnapi\", sorry");
+                }, 32, 0.5f, 0, 1);
+        List<CorpusBenchmark.Result> results = benchmark.run(corpus(2),
+                Collections.singletonList(new InterpreterConfig(2, true, false, 1)));
+
+        String[] lines = CorpusBenchmark.toCsv(results).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[1], lines[1].startsWith("2,true,false,0,"));
+        assertTrue(lines[1], lines[1].endsWith(",0,0,\"java.lang.IllegalStateException: no \"\"nnapi\"\", sorry\""));
+
+        assertEquals("[{\"threads\":2,\"nnapi\":true,\"xnnpack\":false,"
+                        + "\"failure\":\"java.lang.IllegalStateException: no \\\"nnapi\\\", sorry\"}]",
+                CorpusBenchmark.toJson(results));
+    }
+}
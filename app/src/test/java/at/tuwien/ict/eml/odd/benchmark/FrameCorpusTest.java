@@ -0,0 +1,92 @@
+package at.tuwien.ict.eml.odd.benchmark;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import at.tuwien.ict.eml.odd.env.YuvColor;
+import at.tuwien.ict.eml.odd.env.YuvPlanes;
+
+import static org.junit.Assert.*;
+
+public class FrameCorpusTest {
+
+    private static int pixel(YuvPlanes planes, int x, int y) {
+        int luma = planes.y.get(y * planes.yRowStride + x * planes.yPixelStride) & 0xff;
+        int chroma = (y / 2) * planes.uvRowStride + (x / 2) * planes.uvPixelStride;
+        return YuvColor.toArgb(luma, planes.u.get(chroma) & 0xff, planes.v.get(chroma) & 0xff);
+    }
+
+    private static void assertColor(int expected, int actual) {
+        for (int shift = 0; shift < 24; shift += 8) {
+            assertEquals(Integer.toHexString(actual), (expected >> shift) & 0xff, (actual >> shift) & 0xff, 3);
+        }
+    }
+
+    private static File write(File dir, String name, byte[] data) throws IOException {
+        File file = new File(dir, name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+        return file;
+    }
+
+    @Test
+    public void fromArgb_roundTripsThroughYuvPlanes() {
+        int[] colors = {0xffff0000, 0xff00ff00, 0xff0000ff, 0xff808080, 0xffffffff, 0xff000000};
+        int width = colors.length * 2;
+        int height = 4;
+        int[] argb = new int[width * height];
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = colors[(i % width) / 2];
+        }
+        FrameCorpus.Frame frame = FrameCorpus.fromArgb("colors", argb, width, height);
+        YuvPlanes planes = frame.planes(new YuvPlanes());
+        assertEquals(width, planes.width);
+        assertEquals(height, planes.height);
+        for (int x = 0; x < width; x++) {
+            assertColor(colors[x / 2], pixel(planes, x, 3));
+        }
+    }
+
+    @Test
+    public void fromArgb_dropsOddRowAndColumn() {
+        FrameCorpus.Frame frame = FrameCorpus.fromArgb("odd", new int[5 * 3], 5, 3);
+        assertEquals(4, frame.width);
+        assertEquals(2, frame.height);
+    }
+
+    @Test
+    public void i420ToNv21_interleavesVAndU() {
+        byte[] i420 = {0, 1, 2, 3, 4, 5, 6, 7, /* u */ 10, 11, /* v */ 20, 21};
+        byte[] nv21 = FrameCorpus.i420ToNv21(i420, 4, 2);
+        assertArrayEquals(new byte[]{0, 1, 2, 3, 4, 5, 6, 7, 20, 10, 21, 11}, nv21);
+    }
+
+    @Test
+    public void load_readsRawDumpsInNameOrder() throws IOException {
+        File dir = Files.createTempDirectory("corpus").toFile();
+        byte[] nv21 = new byte[4 * 2 * 3 / 2];
+        Arrays.fill(nv21, (byte) 7);
+        write(dir, "b_4x2.nv21", nv21);
+        write(dir, "a_4x2.i420", nv21);
+        write(dir, "notes.txt", new byte[]{1});
+
+        FrameCorpus corpus = FrameCorpus.load(dir, file -> null);
+        assertEquals(2, corpus.size());
+        assertEquals("a_4x2.i420", corpus.get(0).name);
+        assertEquals("b_4x2.nv21", corpus.get(1).name);
+        assertEquals(4, corpus.get(1).width);
+        assertEquals(2, corpus.get(1).height);
+    }
+
+    @Test(expected = IOException.class)
+    public void readRaw_rejectsTruncatedDump() throws IOException {
+        File dir = Files.createTempDirectory("corpus").toFile();
+        FrameCorpus.readRaw(write(dir, "short_4x2.nv21", new byte[5]));
+    }
+}
@@ -0,0 +1,46 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DetectionSlotTest {
+    private static final int INPUT_SIZE = 4;
+    private static final int NUM_DETECTIONS = 10;
+    private static final InferenceBackend NO_BACKEND = (inputs, outputs) -> { };
+
+    @Test
+    public void batchSlot_hasPoolPerImage() {
+        DetectionSlot slot = new DetectionSlot(NO_BACKEND, INPUT_SIZE, true, NUM_DETECTIONS, 127.5f, 127.5f, 3, null);
+
+        assertEquals(3, slot.batchSize);
+        assertEquals(3, slot.engine.getBatchSize());
+        assertEquals(3, slot.recognitionPools.length);
+        assertEquals(INPUT_SIZE * INPUT_SIZE * 3, slot.engine.getInput(2).capacity());
+    }
+
+    @Test
+    public void singleSlot_isBatchOfOne() {
+        DetectionSlot slot = new DetectionSlot(NO_BACKEND, INPUT_SIZE, false, NUM_DETECTIONS, 127.5f, 127.5f);
+
+        assertEquals(1, slot.batchSize);
+        assertEquals(1, slot.engine.getBatchSize());
+        assertSame(slot.recognitionPool, slot.recognitionPools[0]);
+        assertEquals(INPUT_SIZE * INPUT_SIZE * 3 * 4, slot.engine.getInput(0).capacity());
+    }
+}
@@ -0,0 +1,94 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InterpreterAutotunerTest {
+    private static final InterpreterConfig ONE_THREAD = new InterpreterConfig(1, false, true, 1);
+    private static final InterpreterConfig FOUR_THREADS = new InterpreterConfig(4, false, true, 1);
+    private static final InterpreterConfig NNAPI = new InterpreterConfig(4, true, false, 1);
+
+    @Test
+    public void tune_picksLowestMedianNotLowestMean() {
+        InterpreterAutotuner tuner = new InterpreterAutotuner(2, 5);
+        InterpreterConfig best = tuner.tune(Arrays.asList(ONE_THREAD, FOUR_THREADS), (config, warmup, measured) -> {
+            assertEquals(2, warmup);
+            assertEquals(5, measured);
+            // four threads are faster except for one outlier which ruins the mean
+            return config == FOUR_THREADS
+                    ? new long[]{10, 10, 1000, 10, 10}
+                    : new long[]{20, 20, 20, 20, 20};
+        });
+        assertSame(FOUR_THREADS, best);
+    }
+
+    @Test
+    public void tune_skipsFailingCandidates() {
+        InterpreterAutotuner tuner = new InterpreterAutotuner(0, 1);
+        InterpreterConfig best = tuner.tune(Arrays.asList(NNAPI, ONE_THREAD), (config, warmup, measured) -> {
+            if (config.useNNAPI) {
+                throw new IllegalArgumentException("no NNAPI");
+            }
+            return new long[]{50};
+        });
+        assertSame(ONE_THREAD, best);
+    }
+
+    @Test
+    public void tune_returnsNullIfAllCandidatesFail() {
+        InterpreterAutotuner tuner = new InterpreterAutotuner(0, 1);
+        assertNull(tuner.tune(Arrays.asList(NNAPI), (config, warmup, measured) -> {
+            throw new IllegalStateException();
+        }));
+    }
+
+    @Test
+    public void median_oddAndEvenCounts() {
+        assertEquals(3, InterpreterAutotuner.median(new long[]{5, 1, 3}));
+        assertEquals(25, InterpreterAutotuner.median(new long[]{40, 10, 20, 30}));
+    }
+
+    @Test
+    public void defaultCandidates_limitedToCores() {
+        List<InterpreterConfig> candidates = InterpreterAutotuner.defaultCandidates(2, 3);
+        for (InterpreterConfig candidate : candidates) {
+            assertTrue(candidate.numThreads <= 2);
+            assertEquals(3, candidate.poolSize);
+        }
+        assertTrue(candidates.contains(new InterpreterConfig(2, false, true, 3)));
+        assertTrue(candidates.contains(new InterpreterConfig(2, false, false, 3)));
+        assertTrue(candidates.contains(new InterpreterConfig(2, true, false, 3)));
+        assertFalse(candidates.contains(new InterpreterConfig(4, false, true, 3)));
+    }
+
+    @Test
+    public void modelHash_dependsOnContentAndKeepsPosition() {
+        ByteBuffer model = ByteBuffer.wrap(new byte[]{1, 2, 3, 4});
+        String hash = InterpreterAutotuner.modelHash(model);
+
+        assertEquals(64, hash.length());
+        assertEquals(0, model.position());
+        assertEquals(hash, InterpreterAutotuner.modelHash(ByteBuffer.wrap(new byte[]{1, 2, 3, 4})));
+        assertNotEquals(hash, InterpreterAutotuner.modelHash(ByteBuffer.wrap(new byte[]{1, 2, 3, 5})));
+    }
+}
@@ -0,0 +1,53 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InterpreterConfigTest {
+    private final InterpreterConfig config = new InterpreterConfig(4, false, true, 1);
+
+    @Test
+    public void with_changesOnlyOneSetting() {
+        InterpreterConfig changed = config.withNumThreads(2).withPoolSize(3);
+
+        assertEquals(2, changed.numThreads);
+        assertEquals(3, changed.poolSize);
+        assertFalse(changed.useNNAPI);
+        assertTrue(changed.useXNNPACK);
+        // the original config is not modified
+        assertEquals(4, config.numThreads);
+        assertEquals(1, config.poolSize);
+    }
+
+    @Test
+    public void equals_comparesAllSettings() {
+        assertEquals(config, new InterpreterConfig(4, false, true, 1));
+        assertEquals(config.hashCode(), new InterpreterConfig(4, false, true, 1).hashCode());
+        assertEquals(config, config.withUseNNAPI(true).withUseNNAPI(false));
+        assertNotEquals(config, config.withUseNNAPI(true));
+        assertNotEquals(config, config.withUseXNNPACK(false));
+        assertNotEquals(config, config.withNumThreads(2));
+        assertNotEquals(config, config.withPoolSize(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsEmptyPool() {
+        config.withPoolSize(0);
+    }
+}
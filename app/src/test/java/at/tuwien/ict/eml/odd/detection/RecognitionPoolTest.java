@@ -0,0 +1,152 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RecognitionPoolTest {
+    private static final int NUM_DETECTIONS = 10;
+    private static final int INPUT_SIZE = 300;
+
+    private final float[][][] locations = new float[1][NUM_DETECTIONS][4];
+    private final float[][] classes = new float[1][NUM_DETECTIONS];
+    private final float[][] scores = new float[1][NUM_DETECTIONS];
+    private final List<String> labels = Arrays.asList("person", "bicycle", "car");
+    private final Detections detections = new Detections(NUM_DETECTIONS);
+
+    private void fakeInference(int frame) {
+        for (int i = 0; i < NUM_DETECTIONS; i++) {
+            locations[0][i][0] = 0.1f;
+            locations[0][i][1] = 0.2f;
+            locations[0][i][2] = 0.5f;
+            locations[0][i][3] = 0.6f;
+            classes[0][i] = (i + frame) % labels.size();
+            scores[0][i] = 1.0f / (i + 1);
+        }
+    }
+
+    // the outputs of the postprocess op like the DetectionEngine maps them
+    private List<Detector.Recognition> fill(RecognitionPool pool, int count) {
+        detections.setPostProcessOutputs(locations, classes, scores, 0, count, INPUT_SIZE);
+        return pool.fill(detections, labels);
+    }
+
+    @Test
+    public void fill_mapsOutputTensors() {
+        RecognitionPool pool = new RecognitionPool(NUM_DETECTIONS);
+        fakeInference(0);
+
+        List<Detector.Recognition> results = fill(pool, 3);
+
+        assertEquals(3, results.size());
+        Detector.Recognition second = results.get(1);
+        assertEquals("1", second.getId());
+        assertEquals(1, second.getClassId());
+        assertEquals("bicycle", second.getTitle());
+        assertEquals(0.5f, second.getConfidence(), 1e-6f);
+    }
+
+    @Test
+    public void fill_clampsToCapacity() {
+        RecognitionPool pool = new RecognitionPool(NUM_DETECTIONS);
+        fakeInference(0);
+
+        assertEquals(NUM_DETECTIONS, fill(pool, 100).size());
+    }
+
+    @Test
+    public void fill_reusesResultsAcrossFrames() {
+        RecognitionPool pool = new RecognitionPool(NUM_DETECTIONS);
+        fakeInference(0);
+        List<Detector.Recognition> first = fill(pool, NUM_DETECTIONS);
+        Detector.Recognition firstRecognition = first.get(0);
+
+        fakeInference(1);
+        List<Detector.Recognition> second = fill(pool, NUM_DETECTIONS);
+
+        assertSame(first, second);
+        assertSame(firstRecognition, second.get(0));
+        assertEquals("bicycle", second.get(0).getTitle());
+    }
+
+    @Test
+    public void fill_doesNotAllocateAfterWarmup() {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        RecognitionPool pool = new RecognitionPool(NUM_DETECTIONS);
+
+        // warm-up, lets the JIT settle
+        for (int frame = 0; frame < 20000; frame++) {
+            fakeInference(frame);
+            fill(pool, NUM_DETECTIONS);
+        }
+
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int frame = 0; frame < 1000; frame++) {
+            fakeInference(frame);
+            fill(pool, NUM_DETECTIONS);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        // leave some room for the measurement itself, a single frame with
+        // fresh recognitions would already exceed this
+        assertTrue("allocated " + allocated + " bytes in 1000 frames", allocated < 1024);
+    }
+
+    @Test
+    public void fill_readsImageOfBatch() {
+        float[][][] batchLocations = new float[2][NUM_DETECTIONS][4];
+        float[][] batchClasses = new float[2][NUM_DETECTIONS];
+        float[][] batchScores = new float[2][NUM_DETECTIONS];
+        batchClasses[1][0] = 2;
+        batchScores[1][0] = 0.75f;
+        batchLocations[1][0] = new float[]{0.1f, 0.2f, 0.3f, 0.4f};
+        RecognitionPool pool = new RecognitionPool(NUM_DETECTIONS);
+        detections.setPostProcessOutputs(batchLocations, batchClasses, batchScores, 1, 1, INPUT_SIZE);
+
+        List<Detector.Recognition> results = pool.fill(detections, labels);
+
+        assertEquals(1, results.size());
+        assertEquals("car", results.get(0).getTitle());
+        assertEquals(0.75f, results.get(0).getConfidence(), 1e-6f);
+        assertEquals(0.2f * INPUT_SIZE, results.get(0).getLeft(), 1e-4f);
+        assertEquals(0.3f * INPUT_SIZE, results.get(0).getBottom(), 1e-4f);
+    }
+
+    @Test
+    public void copy_outlivesNextFillOfSource() {
+        RecognitionPool source = new RecognitionPool(NUM_DETECTIONS);
+        RecognitionPool target = new RecognitionPool(NUM_DETECTIONS);
+        fakeInference(0);
+        List<Detector.Recognition> copied = target.copy(fill(source, 2));
+
+        fakeInference(1);
+        fill(source, 2);
+
+        assertEquals(2, copied.size());
+        assertEquals("person", copied.get(0).getTitle());
+        assertEquals("bicycle", copied.get(1).getTitle());
+        assertEquals(0.5f, copied.get(1).getConfidence(), 1e-6f);
+        assertEquals(0.2f * INPUT_SIZE, copied.get(0).getLeft(), 1e-4f);
+    }
+}
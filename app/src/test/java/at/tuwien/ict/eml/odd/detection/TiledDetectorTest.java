@@ -0,0 +1,81 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TiledDetectorTest {
+
+    @Test
+    public void tileGrid_coversRegionWithOverlap() {
+        TileGrid grid = new TileGrid(4000, 3000, 3, 0.2f);
+
+        // three tiles along the short side with 20% overlap
+        assertEquals(1154, grid.tileSize);
+        assertEquals(3, grid.offsetsY.length);
+        assertEquals(0, grid.offsetsY[0]);
+        assertEquals(3000 - grid.tileSize, grid.offsetsY[2]);
+        // the outermost tiles touch the borders, the neighbours overlap at least 20%
+        assertEquals(0, grid.offsetsX[0]);
+        assertEquals(4000 - grid.tileSize, grid.offsetsX[grid.offsetsX.length - 1]);
+        for (int i = 1; i < grid.offsetsX.length; i++) {
+            assertTrue(grid.offsetsX[i] - grid.offsetsX[i - 1] <= grid.tileSize * 0.8f + 1);
+        }
+        assertEquals(grid.offsetsX.length * 3, grid.count());
+    }
+
+    @Test
+    public void tileGrid_singleTileIsShortSide() {
+        TileGrid grid = new TileGrid(300, 200, 1, 0.2f);
+
+        assertEquals(200, grid.tileSize);
+        assertArrayEquals(new int[]{0}, grid.offsetsY);
+        assertArrayEquals(new int[]{0, 100}, grid.offsetsX);
+    }
+
+    @Test
+    public void mergeDuplicates_dropsOverlappingBoxOfSameClass() {
+        float[] boxes = {
+                0, 0, 100, 100,
+                5, 5, 105, 105,
+                5, 5, 105, 105};
+        float[] scores = {0.6f, 0.9f, 0.8f};
+        int[] classes = {1, 1, 2};
+        int[] tiles = {0, 0, 0};
+
+        int[] kept = TiledDetector.mergeDuplicates(boxes, scores, classes, tiles, 3);
+
+        // the best box of class 1 and the box of class 2 remain
+        assertArrayEquals(new int[]{1, 2}, kept);
+    }
+
+    @Test
+    public void mergeDuplicates_dropsBoxCutBySeamOfOtherTile() {
+        // a full object of the whole region view and its half in a tile, IoU is only 0.5
+        float[] boxes = {
+                100, 100, 300, 200,
+                100, 100, 200, 200,
+                100, 100, 200, 200};
+        float[] scores = {0.9f, 0.7f, 0.6f};
+        int[] classes = {0, 0, 0};
+
+        assertArrayEquals(new int[]{0}, TiledDetector.mergeDuplicates(boxes, scores, classes, new int[]{4, 1, 2}, 3));
+        // within the same tile a contained box is a separate object
+        assertArrayEquals(new int[]{0, 1}, TiledDetector.mergeDuplicates(boxes, scores, classes, new int[]{1, 1, 1}, 2));
+    }
+}
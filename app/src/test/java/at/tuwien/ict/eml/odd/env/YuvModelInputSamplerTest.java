@@ -0,0 +1,138 @@
+package at.tuwien.ict.eml.odd.env;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class YuvModelInputSamplerTest {
+    private static final int SRC_WIDTH = 640;
+    private static final int SRC_HEIGHT = 480;
+    private static final int DST_SIZE = 100;
+
+    // luma of the four quadrants of the source frame
+    private static final int TOP_LEFT = 30;
+    private static final int TOP_RIGHT = 80;
+    private static final int BOTTOM_LEFT = 130;
+    private static final int BOTTOM_RIGHT = 180;
+
+    /**
+     * Creates a gray frame whose quadrants have different luma values.
+     * The chroma planes are interleaved like on most devices (pixel stride 2).
+     */
+    static YuvPlanes quadrantFrame(int rowPadding) {
+        int yRowStride = SRC_WIDTH + rowPadding;
+        ByteBuffer y = ByteBuffer.allocateDirect(yRowStride * SRC_HEIGHT);
+        for (int row = 0; row < SRC_HEIGHT; row++) {
+            for (int col = 0; col < SRC_WIDTH; col++) {
+                int value;
+                if (row < SRC_HEIGHT / 2) {
+                    value = col < SRC_WIDTH / 2 ? TOP_LEFT : TOP_RIGHT;
+                } else {
+                    value = col < SRC_WIDTH / 2 ? BOTTOM_LEFT : BOTTOM_RIGHT;
+                }
+                y.put(row * yRowStride + col, (byte) value);
+            }
+        }
+        int uvRowStride = SRC_WIDTH + rowPadding;
+        ByteBuffer uv = ByteBuffer.allocateDirect(uvRowStride * SRC_HEIGHT / 2);
+        for (int i = 0; i < uv.capacity(); i++) {
+            uv.put(i, (byte) 128);
+        }
+        ByteBuffer u = uv.duplicate();
+        ByteBuffer v = uv.duplicate();
+        return new YuvPlanes().set(y, u, v, yRowStride, 1, uvRowStride, 2, 0, 0, SRC_WIDTH, SRC_HEIGHT);
+    }
+
+    private static int gray(int luma) {
+        return YuvColor.toArgb(luma, 128, 128) & 0xFF;
+    }
+
+    private static int sampleAt(ByteBuffer dst, int x, int y) {
+        return dst.get((y * DST_SIZE + x) * 3) & 0xFF;
+    }
+
+    private static ByteBuffer sample(int rotation, int aspectWidth, int aspectHeight, boolean contain, YuvPlanes frame) {
+        YuvModelInputSampler sampler = new YuvModelInputSampler(DST_SIZE, true, 127.5f, 127.5f);
+        ByteBuffer dst = ByteBuffer.allocateDirect(DST_SIZE * DST_SIZE * 3);
+        sampler.configure(SRC_WIDTH, SRC_HEIGHT, aspectWidth, aspectHeight, rotation, contain);
+        sampler.sample(frame, dst);
+        return dst;
+    }
+
+    private static void assertQuadrants(ByteBuffer dst, int topLeft, int topRight, int bottomLeft, int bottomRight) {
+        int low = DST_SIZE / 4;
+        int high = DST_SIZE * 3 / 4;
+        assertEquals("top left", gray(topLeft), sampleAt(dst, low, low));
+        assertEquals("top right", gray(topRight), sampleAt(dst, high, low));
+        assertEquals("bottom left", gray(bottomLeft), sampleAt(dst, low, high));
+        assertEquals("bottom right", gray(bottomRight), sampleAt(dst, high, high));
+    }
+
+    @Test
+    public void sample_noRotation() {
+        ByteBuffer dst = sample(0, SRC_WIDTH, SRC_HEIGHT, false, quadrantFrame(0));
+        assertQuadrants(dst, TOP_LEFT, TOP_RIGHT, BOTTOM_LEFT, BOTTOM_RIGHT);
+    }
+
+    @Test
+    public void sample_rotation90_isClockwise() {
+        ByteBuffer dst = sample(90, SRC_HEIGHT, SRC_WIDTH, false, quadrantFrame(0));
+        assertQuadrants(dst, BOTTOM_LEFT, TOP_LEFT, BOTTOM_RIGHT, TOP_RIGHT);
+    }
+
+    @Test
+    public void sample_rotation180() {
+        ByteBuffer dst = sample(180, SRC_WIDTH, SRC_HEIGHT, false, quadrantFrame(0));
+        assertQuadrants(dst, BOTTOM_RIGHT, BOTTOM_LEFT, TOP_RIGHT, TOP_LEFT);
+    }
+
+    @Test
+    public void sample_rotation270_isCounterClockwise() {
+        ByteBuffer dst = sample(270, SRC_HEIGHT, SRC_WIDTH, false, quadrantFrame(0));
+        assertQuadrants(dst, TOP_RIGHT, BOTTOM_RIGHT, TOP_LEFT, BOTTOM_LEFT);
+    }
+
+    @Test
+    public void sample_containCropsCenterSquare() {
+        // 1:1 crop of the 640x480 frame keeps the columns 80 to 560, the first
+        // destination column has to be sampled inside the left half
+        ByteBuffer dst = sample(0, SRC_WIDTH, SRC_HEIGHT, true, quadrantFrame(0));
+        assertQuadrants(dst, TOP_LEFT, TOP_RIGHT, BOTTOM_LEFT, BOTTOM_RIGHT);
+        assertEquals(gray(TOP_LEFT), sampleAt(dst, 0, 0));
+        assertEquals(gray(BOTTOM_RIGHT), sampleAt(dst, DST_SIZE - 1, DST_SIZE - 1));
+    }
+
+    @Test
+    public void sample_ignoresRowPadding() {
+        ByteBuffer tight = sample(90, SRC_HEIGHT, SRC_WIDTH, false, quadrantFrame(0));
+        ByteBuffer padded = sample(90, SRC_HEIGHT, SRC_WIDTH, false, quadrantFrame(64));
+        assertEquals(tight, padded);
+    }
+
+    @Test
+    public void sample_floatMatchesQuantized() {
+        YuvPlanes frame = quadrantFrame(0);
+        ByteBuffer quantized = sample(90, SRC_HEIGHT, SRC_WIDTH, true, frame);
+
+        YuvModelInputSampler sampler = new YuvModelInputSampler(DST_SIZE, false, 127.5f, 127.5f);
+        ByteBuffer floats = ByteBuffer.allocateDirect(DST_SIZE * DST_SIZE * 3 * 4).order(ByteOrder.nativeOrder());
+        sampler.configure(SRC_WIDTH, SRC_HEIGHT, SRC_HEIGHT, SRC_WIDTH, 90, true);
+        sampler.sample(frame, floats);
+
+        assertEquals(0, floats.position());
+        for (int i = 0; i < DST_SIZE * DST_SIZE * 3; i++) {
+            float expected = ((quantized.get(i) & 0xFF) - 127.5f) / 127.5f;
+            assertEquals(expected, floats.getFloat(i * 4), 1e-6f);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void sample_rejectsUnexpectedFrameSize() {
+        YuvModelInputSampler sampler = new YuvModelInputSampler(DST_SIZE, true, 127.5f, 127.5f);
+        sampler.configure(320, 240, 320, 240, 0, false);
+        sampler.sample(quadrantFrame(0), ByteBuffer.allocateDirect(DST_SIZE * DST_SIZE * 3));
+    }
+}
@@ -0,0 +1,147 @@
+package at.tuwien.ict.eml.odd.env;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class YuvToRgbConverterTest {
+
+    /**
+     * Creates a random frame with padded rows and interleaved chroma planes (pixel stride 2).
+     */
+    static YuvPlanes randomFrame(int width, int height, int rowPadding, long seed) {
+        Random random = new Random(seed);
+        int yRowStride = width + rowPadding;
+        ByteBuffer y = ByteBuffer.allocateDirect(yRowStride * height);
+        for (int i = 0; i < y.capacity(); i++) {
+            y.put(i, (byte) random.nextInt(256));
+        }
+        // interleaved V U V U ..., like NV21 exposed as YUV_420_888
+        int uvRowStride = (width + 1) / 2 * 2 + rowPadding;
+        ByteBuffer vu = ByteBuffer.allocateDirect(uvRowStride * ((height + 1) / 2) + 1);
+        for (int i = 0; i < vu.capacity(); i++) {
+            vu.put(i, (byte) random.nextInt(256));
+        }
+        ByteBuffer v = vu.duplicate();
+        vu.position(1);
+        ByteBuffer u = vu.slice();
+        return new YuvPlanes().set(y, u, v, yRowStride, 1, uvRowStride, 2, 0, 0, width, height);
+    }
+
+    /** Floating point BT.601 video range reference of a single pixel */
+    static int referenceArgb(int y, int u, int v) {
+        float luma = 1.164f * Math.max(0, y - 16);
+        int r = Math.round(luma + 1.596f * (v - 128));
+        int g = Math.round(luma - 0.813f * (v - 128) - 0.391f * (u - 128));
+        int b = Math.round(luma + 2.018f * (u - 128));
+        r = Math.max(0, Math.min(255, r));
+        g = Math.max(0, Math.min(255, g));
+        b = Math.max(0, Math.min(255, b));
+        return 0xff000000 | (r << 16) | (g << 8) | b;
+    }
+
+    static int[] referenceConversion(YuvPlanes frame) {
+        int[] out = new int[frame.width * frame.height];
+        for (int row = 0; row < frame.height; row++) {
+            for (int col = 0; col < frame.width; col++) {
+                int sy = row + frame.cropTop;
+                int sx = col + frame.cropLeft;
+                int uvIndex = (sy / 2) * frame.uvRowStride + (sx / 2) * frame.uvPixelStride;
+                out[row * frame.width + col] = referenceArgb(
+                        frame.y.get(sy * frame.yRowStride + sx * frame.yPixelStride) & 0xFF,
+                        frame.u.get(uvIndex) & 0xFF,
+                        frame.v.get(uvIndex) & 0xFF);
+            }
+        }
+        return out;
+    }
+
+    private static void assertClose(int[] expected, int[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            for (int shift = 0; shift <= 24; shift += 8) {
+                int e = (expected[i] >> shift) & 0xFF;
+                int a = (actual[i] >> shift) & 0xFF;
+                if (Math.abs(e - a) > 2) {
+                    fail("pixel " + i + " channel " + shift / 8 + " expected " + e + " got " + a);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void toArgb_knownColors() {
+        assertEquals(0xff000000, YuvColor.toArgb(16, 128, 128));
+        assertEquals(0xffffffff, YuvColor.toArgb(235, 128, 128));
+        assertEquals(0xff000000, YuvColor.toArgb(0, 128, 128));
+    }
+
+    @Test
+    public void yuvToRgb_intMatchesReference() {
+        YuvPlanes frame = randomFrame(64, 48, 16, 1);
+        int[] out = new int[64 * 48];
+        YuvToRgbConverter converter = new YuvToRgbConverter(1);
+
+        converter.yuvToRgb(frame, out);
+        converter.close();
+
+        assertClose(referenceConversion(frame), out);
+    }
+
+    @Test
+    public void yuvToRgb_oddSizeAndCrop() {
+        YuvPlanes frame = randomFrame(67, 45, 3, 2);
+        frame.cropLeft = 3;
+        frame.cropTop = 5;
+        frame.width = 60;
+        frame.height = 37;
+        int[] out = new int[60 * 37];
+        YuvToRgbConverter converter = new YuvToRgbConverter(1);
+
+        converter.yuvToRgb(frame, out);
+        converter.close();
+
+        assertClose(referenceConversion(frame), out);
+    }
+
+    @Test
+    public void yuvToRgb_threadsMatchSingleThread() {
+        YuvPlanes frame = randomFrame(640, 480, 64, 3);
+        int[] single = new int[640 * 480];
+        int[] multi = new int[640 * 480];
+        YuvToRgbConverter singleConverter = new YuvToRgbConverter(1);
+        YuvToRgbConverter multiConverter = new YuvToRgbConverter(4);
+
+        singleConverter.yuvToRgb(frame, single);
+        for (int i = 0; i < 3; i++) {
+            multiConverter.yuvToRgb(frame, multi);
+        }
+        singleConverter.close();
+        multiConverter.close();
+
+        assertArrayEquals(single, multi);
+    }
+
+    @Test
+    public void yuvToRgb_byteBufferIsRgba() {
+        YuvPlanes frame = randomFrame(32, 16, 0, 4);
+        int[] pixels = new int[32 * 16];
+        ByteBuffer bytes = ByteBuffer.allocateDirect(32 * 16 * 4);
+        YuvToRgbConverter converter = new YuvToRgbConverter(2);
+
+        converter.yuvToRgb(frame, pixels);
+        converter.yuvToRgb(frame, bytes);
+        converter.close();
+
+        assertEquals(0, bytes.position());
+        for (int i = 0; i < pixels.length; i++) {
+            assertEquals((pixels[i] >> 16) & 0xFF, bytes.get(i * 4) & 0xFF);
+            assertEquals((pixels[i] >> 8) & 0xFF, bytes.get(i * 4 + 1) & 0xFF);
+            assertEquals(pixels[i] & 0xFF, bytes.get(i * 4 + 2) & 0xFF);
+            assertEquals(0xFF, bytes.get(i * 4 + 3) & 0xFF);
+        }
+    }
+}
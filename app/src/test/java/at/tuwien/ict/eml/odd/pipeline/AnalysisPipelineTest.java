@@ -0,0 +1,309 @@
+package at.tuwien.ict.eml.odd.pipeline;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import at.tuwien.ict.eml.odd.detection.Detector.Recognition;
+import at.tuwien.ict.eml.odd.detection.StagedDetector;
+import at.tuwien.ict.eml.odd.env.YuvPlanes;
+
+import static org.junit.Assert.*;
+
+public class AnalysisPipelineTest {
+    private static final YuvPlanes FRAME = new YuvPlanes();
+
+    /** Detector whose inference of the first frame waits until it gets released */
+    private static class FakeDetector implements StagedDetector<int[]> {
+        final CountDownLatch releaseInference = new CountDownLatch(1);
+        final CountDownLatch inferenceStarted = new CountDownLatch(1);
+        volatile int preprocessCalls;
+
+        @Override
+        public int[] newSlot() {
+            return new int[1];
+        }
+
+        @Override
+        public void preprocess(int[] slot, YuvPlanes frame, int w, int h, int rotation, boolean contain) {
+            preprocessCalls++;
+            slot[0] = w;
+        }
+
+        @Override
+        public List<Recognition> infer(int[] slot) {
+            inferenceStarted.countDown();
+            try {
+                releaseInference.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Collections.emptyList();
+        }
+    }
+
+    /** Detector whose inference time decreases with the frame width, so later frames overtake earlier ones */
+    private static class OvertakingDetector implements StagedDetector<int[]> {
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        final int failingWidth;
+
+        OvertakingDetector(int failingWidth) {
+            this.failingWidth = failingWidth;
+        }
+
+        @Override
+        public int[] newSlot() {
+            return new int[1];
+        }
+
+        @Override
+        public void preprocess(int[] slot, YuvPlanes frame, int w, int h, int rotation, boolean contain) {
+            slot[0] = w;
+        }
+
+        @Override
+        public List<Recognition> infer(int[] slot) {
+            final int running = concurrent.incrementAndGet();
+            maxConcurrent.accumulateAndGet(running, Math::max);
+            try {
+                Thread.sleep(2 * (3 - slot[0] % 3));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                concurrent.decrementAndGet();
+            }
+            if (slot[0] == failingWidth) {
+                throw new IllegalStateException("inference failed");
+            }
+            return Collections.emptyList();
+        }
+    }
+
+    private static class RecordingListener implements AnalysisPipeline.ResultListener {
+        final List<Long> frames = new CopyOnWriteArrayList<>();
+        final List<Integer> widths = new CopyOnWriteArrayList<>();
+        // widths of the results and negative counts of the skipped frames in the order of the calls
+        final List<Integer> events = new CopyOnWriteArrayList<>();
+        final CountDownLatch done;
+
+        RecordingListener(int expectedFrames) {
+            this(expectedFrames, 0);
+        }
+
+        RecordingListener(int expectedFrames, int expectedSkipCalls) {
+            done = new CountDownLatch(expectedFrames + expectedSkipCalls);
+        }
+
+        @Override
+        public void onResults(AnalysisPipeline.Job job, List<Recognition> results) {
+            frames.add(job.frameNumber);
+            widths.add(job.aspectDstWidth);
+            events.add(job.aspectDstWidth);
+            done.countDown();
+        }
+
+        @Override
+        public void onSkippedFrames(int frames) {
+            events.add(-frames);
+            done.countDown();
+        }
+    }
+
+    private static boolean submit(AnalysisPipeline<int[]> pipeline, int width) {
+        return pipeline.submit(FRAME, width, 100, 0, false, 0);
+    }
+
+    @Test
+    public void block_deliversAllFramesInOrder() throws InterruptedException {
+        FakeDetector detector = new FakeDetector();
+        detector.releaseInference.countDown();
+        RecordingListener listener = new RecordingListener(50);
+        AnalysisPipeline<int[]> pipeline =
+                new AnalysisPipeline<>(detector, 2, AnalysisPipeline.DropPolicy.BLOCK, listener);
+
+        for (int i = 0; i < 50; i++) {
+            assertTrue(submit(pipeline, i));
+        }
+
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+        pipeline.close();
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, (long) listener.frames.get(i));
+            assertEquals(i, (int) listener.widths.get(i));
+        }
+        assertEquals(0, pipeline.getDroppedFrames());
+    }
+
+    @Test
+    public void preprocessOverlapsInference() throws InterruptedException {
+        FakeDetector detector = new FakeDetector();
+        RecordingListener listener = new RecordingListener(2);
+        AnalysisPipeline<int[]> pipeline =
+                new AnalysisPipeline<>(detector, 2, AnalysisPipeline.DropPolicy.DROP_NEWEST, listener);
+
+        assertTrue(submit(pipeline, 0));
+        assertTrue(detector.inferenceStarted.await(5, TimeUnit.SECONDS));
+        // the inference of frame 0 is still running, frame 1 gets preprocessed into the second slot
+        assertTrue(submit(pipeline, 1));
+        assertEquals(2, detector.preprocessCalls);
+        assertEquals(1, pipeline.getQueueDepth(AnalysisPipeline.Stage.INFERENCE));
+        assertTrue(pipeline.getStatString().contains("\"inference\":{\"latencyMs\":0.000,\"queueWaitMs\":"));
+        assertTrue(pipeline.getStatString().endsWith("\"queueDepth\":0}},\"counters\":{\"submitted\":2,\"dropped\":0,\"failed\":0}}"));
+
+        detector.releaseInference.countDown();
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+        pipeline.close();
+    }
+
+    @Test
+    public void dropNewest_skipsFrameWhenNoSlotIsFree() throws InterruptedException {
+        FakeDetector detector = new FakeDetector();
+        RecordingListener listener = new RecordingListener(1);
+        AnalysisPipeline<int[]> pipeline =
+                new AnalysisPipeline<>(detector, 1, AnalysisPipeline.DropPolicy.DROP_NEWEST, listener);
+
+        assertTrue(submit(pipeline, 0));
+        assertTrue(detector.inferenceStarted.await(5, TimeUnit.SECONDS));
+        assertFalse(submit(pipeline, 1));
+        assertEquals(1, pipeline.getDroppedFrames());
+
+        detector.releaseInference.countDown();
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+        pipeline.close();
+    }
+
+    @Test
+    public void dropOldest_replacesWaitingFrame() throws InterruptedException {
+        FakeDetector detector = new FakeDetector();
+        RecordingListener listener = new RecordingListener(2);
+        AnalysisPipeline<int[]> pipeline =
+                new AnalysisPipeline<>(detector, 2, AnalysisPipeline.DropPolicy.DROP_OLDEST, listener);
+
+        assertTrue(submit(pipeline, 0));
+        assertTrue(detector.inferenceStarted.await(5, TimeUnit.SECONDS));
+        assertTrue(submit(pipeline, 1));
+        // no slot free, frame 1 waits for the inference and gets replaced
+        assertTrue(submit(pipeline, 2));
+        assertEquals(1, pipeline.getDroppedFrames());
+
+        detector.releaseInference.countDown();
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+        pipeline.close();
+        assertEquals(0, (int) listener.widths.get(0));
+        assertEquals(2, (int) listener.widths.get(1));
+    }
+
+    @Test
+    public void parallelInference_deliversFramesInSubmitOrder() throws InterruptedException {
+        OvertakingDetector detector = new OvertakingDetector(-1);
+        RecordingListener listener = new RecordingListener(60);
+        AnalysisPipeline<int[]> pipeline =
+                new AnalysisPipeline<>(detector, 4, 3, AnalysisPipeline.DropPolicy.BLOCK, listener);
+
+        for (int i = 0; i < 60; i++) {
+            assertTrue(submit(pipeline, i));
+        }
+
+        assertTrue(listener.done.await(10, TimeUnit.SECONDS));
+        pipeline.close();
+        assertTrue(detector.maxConcurrent.get() > 1);
+        for (int i = 0; i < 60; i++) {
+            assertEquals(i, (int) listener.widths.get(i));
+        }
+    }
+
+    @Test
+    public void parallelInference_failedFrameDoesNotBlockLaterFrames() throws InterruptedException {
+        OvertakingDetector detector = new OvertakingDetector(5);
+        RecordingListener listener = new RecordingListener(19);
+        AnalysisPipeline<int[]> pipeline =
+                new AnalysisPipeline<>(detector, 4, 3, AnalysisPipeline.DropPolicy.BLOCK, listener);
+
+        for (int i = 0; i < 20; i++) {
+            assertTrue(submit(pipeline, i));
+        }
+
+        assertTrue(listener.done.await(10, TimeUnit.SECONDS));
+        pipeline.close();
+        assertEquals(19, listener.widths.size());
+        assertFalse(listener.widths.contains(5));
+        for (int i = 1; i < listener.widths.size(); i++) {
+            assertTrue(listener.widths.get(i - 1) < listener.widths.get(i));
+        }
+        assertEquals(1, pipeline.getFailedFrames());
+    }
+
+    @Test
+    public void skip_handledByCallerWhenNothingIsInFlight() throws InterruptedException {
+        FakeDetector detector = new FakeDetector();
+        detector.releaseInference.countDown();
+        RecordingListener listener = new RecordingListener(1);
+        AnalysisPipeline<int[]> pipeline =
+                new AnalysisPipeline<>(detector, 2, AnalysisPipeline.DropPolicy.BLOCK, listener);
+
+        assertTrue(pipeline.skip());
+        assertTrue(submit(pipeline, 1));
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+        pipeline.close();
+        assertTrue(pipeline.skip());
+        assertEquals(Collections.singletonList(1), listener.events);
+    }
+
+    @Test
+    public void skip_deliveredAfterResultsOfPreviousFrame() throws InterruptedException {
+        FakeDetector detector = new FakeDetector();
+        RecordingListener listener = new RecordingListener(2, 2);
+        AnalysisPipeline<int[]> pipeline =
+                new AnalysisPipeline<>(detector, 2, AnalysisPipeline.DropPolicy.BLOCK, listener);
+
+        assertTrue(submit(pipeline, 1));
+        assertTrue(detector.inferenceStarted.await(5, TimeUnit.SECONDS));
+        assertFalse(pipeline.skip());
+        assertFalse(pipeline.skip());
+        assertTrue(submit(pipeline, 2));
+        assertFalse(pipeline.skip());
+
+        detector.releaseInference.countDown();
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+        pipeline.close();
+        assertEquals(Arrays.asList(1, -2, 2, -1), listener.events);
+    }
+
+    @Test
+    public void skip_deliveredAfterFailedAndDroppedFrames() throws InterruptedException {
+        FakeDetector detector = new FakeDetector() {
+            @Override
+            public List<Recognition> infer(int[] slot) {
+                super.infer(slot);
+                if (slot[0] == 1) {
+                    throw new IllegalStateException("inference failed");
+                }
+                return Collections.emptyList();
+            }
+        };
+        RecordingListener listener = new RecordingListener(1, 2);
+        AnalysisPipeline<int[]> pipeline =
+                new AnalysisPipeline<>(detector, 2, AnalysisPipeline.DropPolicy.DROP_OLDEST, listener);
+
+        assertTrue(submit(pipeline, 1));
+        assertTrue(detector.inferenceStarted.await(5, TimeUnit.SECONDS));
+        assertFalse(pipeline.skip());
+        assertTrue(submit(pipeline, 2));
+        assertFalse(pipeline.skip());
+        // frame 2 waits for the inference and gets replaced, its skipped frame is kept
+        assertTrue(submit(pipeline, 3));
+        assertFalse(pipeline.skip());
+
+        detector.releaseInference.countDown();
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+        pipeline.close();
+        assertEquals(Arrays.asList(-2, 3, -1), listener.events);
+    }
+}
@@ -0,0 +1,92 @@
+package at.tuwien.ict.eml.odd.pipeline;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import at.tuwien.ict.eml.odd.env.YuvPlanes;
+
+import static org.junit.Assert.*;
+
+public class DetectionSchedulerTest {
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+
+    private static YuvPlanes frame(int luma) {
+        // row stride with padding like the camera planes
+        int rowStride = WIDTH + 16;
+        byte[] y = new byte[rowStride * HEIGHT];
+        Arrays.fill(y, (byte) luma);
+        ByteBuffer chroma = ByteBuffer.allocate(rowStride * HEIGHT / 2);
+        return new YuvPlanes().set(ByteBuffer.wrap(y), chroma, chroma, rowStride, 1, rowStride, 2, 0, 0, WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void shouldDetect_everyIntervalFrame() {
+        DetectionScheduler scheduler = new DetectionScheduler(3, 0);
+        YuvPlanes frame = frame(100);
+        StringBuilder pattern = new StringBuilder();
+        for (int i = 0; i < 9; i++) {
+            pattern.append(scheduler.shouldDetect(frame) ? 'D' : '-');
+        }
+        assertEquals("D--D--D--", pattern.toString());
+    }
+
+    @Test
+    public void shouldDetect_everyFrameWithIntervalOne() {
+        DetectionScheduler scheduler = new DetectionScheduler(1, 0);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(scheduler.shouldDetect(frame(100)));
+        }
+    }
+
+    @Test
+    public void shouldDetect_earlyOnMotion() {
+        DetectionScheduler scheduler = new DetectionScheduler(10, 8);
+        assertTrue(scheduler.shouldDetect(frame(100)));
+        // small changes stay below the threshold
+        assertFalse(scheduler.shouldDetect(frame(104)));
+        assertEquals(4, scheduler.getLastMotion(), 0);
+        assertFalse(scheduler.shouldDetect(frame(96)));
+        // a scene change is inferred immediately and becomes the new reference
+        assertTrue(scheduler.shouldDetect(frame(150)));
+        assertFalse(scheduler.shouldDetect(frame(150)));
+        assertEquals(0, scheduler.getLastMotion(), 0);
+    }
+
+    @Test
+    public void reset_detectsNextFrame() {
+        DetectionScheduler scheduler = new DetectionScheduler(5, 0);
+        assertTrue(scheduler.shouldDetect(frame(0)));
+        assertFalse(scheduler.shouldDetect(frame(0)));
+        scheduler.reset();
+        assertTrue(scheduler.shouldDetect(frame(0)));
+    }
+
+    @Test
+    public void sampleThumbnail_averagesCellsInsideCrop() {
+        YuvPlanes frame = frame(0);
+        // bright right half
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = WIDTH / 2; col < WIDTH; col++) {
+                frame.y.put(row * frame.yRowStride + col, (byte) 200);
+            }
+        }
+        int[] thumbnail = new int[DetectionScheduler.THUMBNAIL_WIDTH * DetectionScheduler.THUMBNAIL_HEIGHT];
+
+        DetectionScheduler.sampleThumbnail(frame, thumbnail);
+
+        for (int ty = 0; ty < DetectionScheduler.THUMBNAIL_HEIGHT; ty++) {
+            for (int tx = 0; tx < DetectionScheduler.THUMBNAIL_WIDTH; tx++) {
+                int expected = tx < DetectionScheduler.THUMBNAIL_WIDTH / 2 ? 0 : 200;
+                assertEquals(expected, thumbnail[ty * DetectionScheduler.THUMBNAIL_WIDTH + tx]);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsZeroInterval() {
+        new DetectionScheduler(0, 0);
+    }
+}
@@ -0,0 +1,117 @@
+package at.tuwien.ict.eml.odd.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameRateGovernorTest {
+    private static final int WINDOW = 10;
+
+    /**
+     * Feeds one window of camera frames at 30 fps and inferences with the given latency.
+     */
+    private static FrameRateGovernor.Decision window(FrameRateGovernor governor, long[] clockMs, float latencyMs) {
+        FrameRateGovernor.Decision decision = null;
+        for (int i = 0; i < WINDOW; i++) {
+            for (int frame = 0; frame < 3; frame++) {
+                clockMs[0] += 33;
+                governor.onFrame(clockMs[0]);
+            }
+            FrameRateGovernor.Decision next = governor.onInference(latencyMs);
+            if (next != null) {
+                decision = next;
+            }
+        }
+        return decision;
+    }
+
+    @Test
+    public void onInference_skipsFramesAboveTargetRate() {
+        // 10 fps target at a 30 fps camera, every third frame is enough
+        FrameRateGovernor governor = new FrameRateGovernor(100, 10, 4, 3, WINDOW);
+        long[] clock = {0};
+
+        FrameRateGovernor.Decision decision = window(governor, clock, 20);
+
+        assertNotNull(decision);
+        assertEquals("above_target_rate", decision.reason);
+        assertEquals(3, decision.detectionInterval);
+        assertEquals(30, decision.cameraFps, 1);
+        assertEquals(4, decision.numThreads);
+        assertEquals(0, decision.resolutionTier);
+    }
+
+    @Test
+    public void onInference_followsSlowInferences() {
+        FrameRateGovernor governor = new FrameRateGovernor(33, 10, 4, 3, WINDOW);
+        long[] clock = {0};
+
+        // an inference takes 5 frames, so only every fifth frame is inferred
+        FrameRateGovernor.Decision decision = window(governor, clock, 160);
+
+        assertEquals("over_budget", decision.reason);
+        assertEquals(5, decision.detectionInterval);
+        assertEquals(160, decision.latencyP90Ms, 0);
+    }
+
+    @Test
+    public void onInference_lowersIntervalAfterTwoWindows() {
+        FrameRateGovernor governor = new FrameRateGovernor(33, 10, 4, 3, WINDOW);
+        long[] clock = {0};
+        window(governor, clock, 160);
+
+        // the first fast window is not trusted yet
+        assertNull(window(governor, clock, 20));
+        FrameRateGovernor.Decision decision = window(governor, clock, 20);
+
+        assertEquals("under_budget", decision.reason);
+        assertEquals(1, decision.detectionInterval);
+    }
+
+    @Test
+    public void onInference_usesPercentileOfWindow() {
+        FrameRateGovernor governor = new FrameRateGovernor(33, 10, 4, 3, WINDOW);
+        long[] clock = {0};
+        FrameRateGovernor.Decision decision = null;
+        for (int i = 0; i < WINDOW; i++) {
+            clock[0] += 33;
+            governor.onFrame(clock[0]);
+            // a single outlier does not change the interval
+            FrameRateGovernor.Decision next = governor.onInference(i == 3 ? 500 : 20);
+            decision = next != null ? next : decision;
+        }
+
+        assertNull(decision);
+        assertEquals(1, governor.getDecision().detectionInterval);
+    }
+
+    @Test
+    public void onThermalStatus_reducesWorkload() {
+        FrameRateGovernor governor = new FrameRateGovernor(33, 10, 8, 3, WINDOW);
+
+        assertNull(governor.onThermalStatus(FrameRateGovernor.THERMAL_STATUS_LIGHT));
+        FrameRateGovernor.Decision moderate = governor.onThermalStatus(FrameRateGovernor.THERMAL_STATUS_MODERATE);
+        assertEquals("thermal", moderate.reason);
+        assertEquals(4, moderate.numThreads);
+        assertEquals(1, moderate.resolutionTier);
+        assertEquals(2, moderate.detectionInterval);
+
+        FrameRateGovernor.Decision severe = governor.onThermalStatus(6);
+        assertEquals(1, severe.numThreads);
+        assertEquals(2, severe.resolutionTier);
+        assertEquals(6, severe.detectionInterval);
+
+        FrameRateGovernor.Decision cooled = governor.onThermalStatus(FrameRateGovernor.THERMAL_STATUS_NONE);
+        assertEquals(8, cooled.numThreads);
+        assertEquals(0, cooled.resolutionTier);
+        assertEquals(1, cooled.detectionInterval);
+    }
+
+    @Test
+    public void decision_formatsCsvLine() {
+        FrameRateGovernor.Decision decision = new FrameRateGovernor.Decision(12, "thermal", 41.25f, 29.97f, 2, 3, 1, 2);
+
+        assertEquals("12,thermal,41.3,30.0,2,3,1,2", decision.toString());
+        assertEquals(FrameRateGovernor.Decision.CSV_HEADER.split(",").length, decision.toString().split(",").length);
+    }
+}
@@ -0,0 +1,92 @@
+package at.tuwien.ict.eml.odd.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TripleBufferTest {
+    private static final int STATE_SIZE = 64;
+
+    private static TripleBuffer<int[]> newBuffer() {
+        return new TripleBuffer<>(new int[STATE_SIZE], new int[STATE_SIZE], new int[STATE_SIZE]);
+    }
+
+    private static void fill(final int[] state, final int value) {
+        for (int i = 0; i < state.length; i++) {
+            state[i] = value;
+        }
+    }
+
+    @Test
+    public void acquire_returnsInitialBufferBeforePublish() {
+        final int[] initial = new int[1];
+        final TripleBuffer<int[]> buffer = new TripleBuffer<>(initial, new int[1], new int[1]);
+        assertSame(initial, buffer.acquire());
+        assertSame(initial, buffer.acquire());
+        assertNotSame(initial, buffer.back());
+    }
+
+    @Test
+    public void acquire_returnsLatestPublishedState() {
+        final TripleBuffer<int[]> buffer = newBuffer();
+        for (int value = 1; value <= 3; value++) {
+            fill(buffer.back(), value);
+            buffer.publish();
+        }
+        assertEquals(3, buffer.acquire()[0]);
+        // without a new publish the same state is returned again
+        assertEquals(3, buffer.acquire()[0]);
+
+        fill(buffer.back(), 4);
+        buffer.publish();
+        assertEquals(4, buffer.acquire()[0]);
+    }
+
+    @Test
+    public void back_neverAliasesAcquiredBuffer() {
+        final TripleBuffer<int[]> buffer = newBuffer();
+        for (int i = 0; i < 10; i++) {
+            final int[] front = buffer.acquire();
+            assertNotSame(front, buffer.back());
+            buffer.publish();
+            assertNotSame(front, buffer.back());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsSharedBuffers() {
+        final int[] shared = new int[1];
+        new TripleBuffer<>(shared, shared, new int[1]);
+    }
+
+    @Test
+    public void acquire_concurrentReadsAreNeverTorn() throws InterruptedException {
+        final TripleBuffer<int[]> buffer = newBuffer();
+        final int publishes = 200_000;
+        final Thread producer = new Thread(() -> {
+            for (int value = 1; value <= publishes; value++) {
+                fill(buffer.back(), value);
+                buffer.publish();
+            }
+        });
+        producer.start();
+
+        int last = 0;
+        int distinct = 0;
+        while (last < publishes) {
+            final int[] state = buffer.acquire();
+            final int value = state[0];
+            for (int i = 1; i < state.length; i++) {
+                assertEquals("Torn read of state " + value, value, state[i]);
+            }
+            assertTrue("State went back from " + last + " to " + value, value >= last);
+            if (value != last) {
+                distinct++;
+            }
+            last = value;
+        }
+        producer.join();
+        assertTrue(distinct > 0);
+        assertEquals(publishes, buffer.acquire()[0]);
+    }
+}
@@ -0,0 +1,54 @@
+package at.tuwien.ict.eml.odd.stats;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class P2QuantileTest {
+
+    @Test
+    public void getQuantile_exactForFewSamples() {
+        P2Quantile median = new P2Quantile(0.5);
+        median.add(30);
+        median.add(10);
+        median.add(20);
+        assertEquals(20, median.getQuantile(), 0);
+        assertEquals(3, median.getCount());
+    }
+
+    @Test
+    public void getQuantile_estimatesQuantilesOfLongRuns() {
+        Random random = new Random(0);
+        double[] values = new double[100000];
+        P2Quantile[] estimators = {new P2Quantile(0.5), new P2Quantile(0.9), new P2Quantile(0.99)};
+        for (int i = 0; i < values.length; i++) {
+            // skewed like latencies
+            values[i] = 15 + Math.exp(random.nextGaussian() * 0.5) * 10;
+            for (P2Quantile estimator : estimators) {
+                estimator.add(values[i]);
+            }
+        }
+        Arrays.sort(values);
+        for (P2Quantile estimator : estimators) {
+            double exact = values[(int) Math.ceil(estimator.getP() * values.length) - 1];
+            assertEquals("p " + estimator.getP(), exact, estimator.getQuantile(), exact * 0.02);
+        }
+    }
+
+    @Test
+    public void getQuantile_constantSamples() {
+        P2Quantile p90 = new P2Quantile(0.9);
+        for (int i = 0; i < 100; i++) {
+            p90.add(42);
+        }
+        assertEquals(42, p90.getQuantile(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsInvalidQuantile() {
+        new P2Quantile(1.0);
+    }
+}
@@ -0,0 +1,70 @@
+package at.tuwien.ict.eml.odd.stats;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SlidingQuantilesTest {
+
+    private static int referenceQuantile(int[] sorted, double q) {
+        int rank = Math.max(1, Math.min(sorted.length, (int) Math.ceil(q * sorted.length)));
+        return sorted[rank - 1];
+    }
+
+    @Test
+    public void quantile_matchesSortedWindow() {
+        int window = 250;
+        SlidingQuantiles quantiles = new SlidingQuantiles(window, 1000);
+        Random random = new Random(0);
+        int[] values = new int[5000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (int) Math.abs(20 + random.nextGaussian() * 30);
+            quantiles.add(values[i]);
+
+            int from = Math.max(0, i + 1 - window);
+            int[] sorted = Arrays.copyOfRange(values, from, i + 1);
+            Arrays.sort(sorted);
+            assertEquals(sorted.length, quantiles.size());
+            for (double q : new double[]{0, 0.25, 0.5, 0.9, 0.99, 1}) {
+                assertEquals("sample " + i + ", q " + q, referenceQuantile(sorted, q), quantiles.quantile(q));
+            }
+            assertEquals(Arrays.stream(sorted).average().getAsDouble(), quantiles.mean(), 1e-9);
+        }
+    }
+
+    @Test
+    public void add_clampsToValueRange() {
+        SlidingQuantiles quantiles = new SlidingQuantiles(4, 100);
+        quantiles.add(-5);
+        quantiles.add(500);
+        assertEquals(0, quantiles.min());
+        assertEquals(100, quantiles.max());
+    }
+
+    @Test
+    public void isFull_afterWindowSamples() {
+        SlidingQuantiles quantiles = new SlidingQuantiles(3, 10);
+        quantiles.add(1);
+        quantiles.add(2);
+        assertFalse(quantiles.isFull());
+        quantiles.add(3);
+        assertTrue(quantiles.isFull());
+        quantiles.add(9);
+        assertEquals(3, quantiles.size());
+        assertEquals(2, quantiles.min());
+
+        quantiles.clear();
+        assertEquals(0, quantiles.size());
+        quantiles.add(7);
+        assertEquals(7, quantiles.min());
+        assertEquals(7, quantiles.max());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void quantile_withoutSamplesThrows() {
+        new SlidingQuantiles(3, 10).quantile(0.5);
+    }
+}
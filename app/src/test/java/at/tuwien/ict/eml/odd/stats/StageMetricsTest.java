@@ -0,0 +1,41 @@
+package at.tuwien.ict.eml.odd.stats;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StageMetricsTest {
+
+    @Test
+    public void toJson_containsRecordedStagesAndCounters() {
+        StageMetrics metrics = new StageMetrics();
+        metrics.record(StageMetrics.Stage.RUN, 20_000_000);
+        metrics.record(StageMetrics.Stage.RUN, 30_000_000);
+        metrics.record(StageMetrics.Stage.DRAW, 500_000);
+        metrics.increment(StageMetrics.Counter.FRAMES);
+        metrics.increment(StageMetrics.Counter.FRAMES);
+        metrics.increment(StageMetrics.Counter.DROPPED);
+
+        String json = metrics.toJson();
+        assertTrue(json, json.startsWith("{\"stages\":{\"run\":{\"count\":2,\"meanMs\":25.000,"));
+        assertTrue(json, json.contains("\"maxMs\":30.000}"));
+        assertTrue(json, json.contains("\"draw\":{\"count\":1,"));
+        assertFalse(json, json.contains("\"preprocess\""));
+        assertTrue(json, json.endsWith("\"counters\":{\"frames\":2,\"skipped\":0,\"dropped\":1}}"));
+    }
+
+    @Test
+    public void toJson_emptyMetrics() {
+        assertEquals("{\"stages\":{},\"counters\":{\"frames\":0,\"skipped\":0,\"dropped\":0}}", new StageMetrics().toJson());
+    }
+
+    @Test
+    public void reset_clearsStagesAndCounters() {
+        StageMetrics metrics = new StageMetrics();
+        metrics.record(StageMetrics.Stage.TRACK, 1000);
+        metrics.increment(StageMetrics.Counter.SKIPPED);
+        metrics.reset();
+        assertEquals(0, metrics.getHistogram(StageMetrics.Stage.TRACK).getCount());
+        assertEquals(0, metrics.getCount(StageMetrics.Counter.SKIPPED));
+    }
+}
@@ -0,0 +1,42 @@
+package at.tuwien.ict.eml.odd.tracking;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LabelCacheTest {
+
+    @Test
+    public void get_formatsTitleAndConfidence() {
+        LabelCache labels = new LabelCache();
+        assertEquals("person 87.5%", labels.get(0, "person", 0.875f, true));
+        assertEquals("person 0.0%", labels.get(0, "person", -0.1f, true));
+        assertEquals("person 100.0%", labels.get(0, "person", 1.2f, true));
+        assertEquals(" 50.0%", labels.get(1, null, 0.5f, true));
+    }
+
+    @Test
+    public void get_withoutConfidenceReturnsTitle() {
+        LabelCache labels = new LabelCache();
+        String title = "dog";
+        assertSame(title, labels.get(3, title, 0.5f, false));
+        assertEquals("", labels.get(3, null, 0.5f, false));
+    }
+
+    @Test
+    public void get_reusesTextOfRoundedConfidence() {
+        LabelCache labels = new LabelCache();
+        String label = labels.get(5, "cat", 0.6231f, true);
+        assertEquals("cat 62.3%", label);
+        assertSame(label, labels.get(5, "cat", 0.6229f, true));
+        assertNotSame(label, labels.get(5, "cat", 0.6241f, true));
+    }
+
+    @Test
+    public void get_resetsTextsWhenTitleOfClassChanges() {
+        LabelCache labels = new LabelCache();
+        assertEquals("cat 10.0%", labels.get(2, "cat", 0.1f, true));
+        assertEquals("kitten 10.0%", labels.get(2, "kitten", 0.1f, true));
+        assertEquals("cat 10.0%", labels.get(2, "cat", 0.1f, true));
+    }
+}
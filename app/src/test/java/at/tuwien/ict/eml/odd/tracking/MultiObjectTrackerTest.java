@@ -0,0 +1,293 @@
+package at.tuwien.ict.eml.odd.tracking;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MultiObjectTrackerTest {
+
+    private static int findTrack(MultiObjectTracker tracker, long id) {
+        for (int slot = 0; slot < tracker.capacity(); slot++) {
+            if (tracker.isAlive(slot) && tracker.getId(slot) == id) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private static int countVisible(MultiObjectTracker tracker) {
+        int count = 0;
+        for (int slot = 0; slot < tracker.capacity(); slot++) {
+            if (tracker.isVisible(slot)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void setBox(float[] boxes, int index, float centerX, float centerY, float size) {
+        boxes[index * 4] = centerX - size / 2;
+        boxes[index * 4 + 1] = centerY - size / 2;
+        boxes[index * 4 + 2] = centerX + size / 2;
+        boxes[index * 4 + 3] = centerY + size / 2;
+    }
+
+    @Test
+    public void update_keepsIdentityOfMovingObjects() {
+        MultiObjectTracker tracker = new MultiObjectTracker(16, 0.3f, 3, 3);
+        float[] boxes = new float[8];
+        float[] scores = {0.9f, 0.8f};
+        int[] classes = {0, 0};
+        long[] ids = new long[2];
+
+        for (int frame = 0; frame < 60; frame++) {
+            // one object moves right, the other one down
+            setBox(boxes, 0, 100 + frame * 5, 100, 50);
+            setBox(boxes, 1, 400, 100 + frame * 4, 60);
+            tracker.update(boxes, scores, classes, 2);
+            for (int i = 0; i < 2; i++) {
+                int slot = -1;
+                for (int s = 0; s < tracker.capacity(); s++) {
+                    if (tracker.isAlive(s) && tracker.getMatchedDetection(s) == i) {
+                        slot = s;
+                    }
+                }
+                assertTrue(slot >= 0);
+                if (frame == 0) {
+                    ids[i] = tracker.getId(slot);
+                } else {
+                    assertEquals(ids[i], tracker.getId(slot));
+                }
+            }
+        }
+        assertNotEquals(ids[0], ids[1]);
+        assertEquals(2, countVisible(tracker));
+    }
+
+    @Test
+    public void update_coastsThroughMissedDetections() {
+        MultiObjectTracker tracker = new MultiObjectTracker(4, 0.3f, 2, 3);
+        float[] box = new float[4];
+        float[] scores = {0.9f};
+        int[] classes = {1};
+
+        for (int frame = 0; frame < 20; frame++) {
+            setBox(box, 0, 100 + frame * 10, 200, 80);
+            tracker.update(box, scores, classes, 1);
+        }
+        int slot = findTrack(tracker, 1);
+        long id = tracker.getId(slot);
+
+        // two missed frames, the box keeps moving with the learned velocity
+        tracker.update(box, scores, classes, 0);
+        tracker.update(box, scores, classes, 0);
+        assertTrue(tracker.isVisible(slot));
+        assertEquals(2, tracker.getMisses(slot));
+        float[] predicted = new float[4];
+        tracker.getBox(slot, predicted, 0);
+        assertEquals(100 + 21 * 10, (predicted[0] + predicted[2]) / 2, 3);
+
+        // the object shows up again where the motion predicted it
+        setBox(box, 0, 100 + 22 * 10, 200, 80);
+        tracker.update(box, scores, classes, 1);
+        assertEquals(id, tracker.getId(slot));
+        assertEquals(0, tracker.getMatchedDetection(slot));
+        assertEquals(0, tracker.getMisses(slot));
+    }
+
+    @Test
+    public void predict_propagatesBoxesBetweenDetections() {
+        MultiObjectTracker tracker = new MultiObjectTracker(4, 0.3f, 1, 0);
+        float[] box = new float[4];
+        float[] scores = {0.9f};
+        int[] classes = {0};
+        float[] predicted = new float[4];
+
+        // detections on every third frame only, no miss is counted in between
+        for (int frame = 0; frame < 60; frame++) {
+            if (frame % 3 == 0) {
+                setBox(box, 0, 100 + frame * 6, 300, 80);
+                tracker.update(box, scores, classes, 1);
+            } else {
+                tracker.predict();
+            }
+        }
+        int slot = findTrack(tracker, 1);
+        assertTrue(slot >= 0);
+        tracker.getBox(slot, predicted, 0);
+        assertEquals(100 + 59 * 6, (predicted[0] + predicted[2]) / 2, 3);
+        assertEquals(300, (predicted[1] + predicted[3]) / 2, 1);
+    }
+
+    @Test
+    public void update_dropsTrackAfterMaxMisses() {
+        MultiObjectTracker tracker = new MultiObjectTracker(4, 0.3f, 1, 2);
+        float[] box = new float[4];
+        setBox(box, 0, 50, 50, 20);
+        tracker.update(box, new float[]{0.5f}, new int[]{0}, 1);
+
+        tracker.update(box, null, null, 0);
+        tracker.update(box, null, null, 0);
+        assertEquals(1, countVisible(tracker));
+        tracker.update(box, null, null, 0);
+        assertEquals(0, countVisible(tracker));
+    }
+
+    @Test
+    public void update_dropsUnconfirmedTrackOnFirstMiss() {
+        MultiObjectTracker tracker = new MultiObjectTracker(4, 0.3f, 3, 3);
+        float[] boxes = new float[8];
+        float[] scores = {0.9f, 0.4f};
+        int[] classes = {0, 0};
+        setBox(boxes, 0, 50, 50, 20);
+        for (int frame = 0; frame < 5; frame++) {
+            tracker.update(boxes, scores, classes, 1);
+        }
+
+        // a single false positive is neither shown nor kept
+        setBox(boxes, 1, 300, 300, 20);
+        tracker.update(boxes, scores, classes, 2);
+        assertEquals(1, countVisible(tracker));
+        tracker.update(boxes, scores, classes, 1);
+        int alive = 0;
+        for (int slot = 0; slot < tracker.capacity(); slot++) {
+            alive += tracker.isAlive(slot) ? 1 : 0;
+        }
+        assertEquals(1, alive);
+    }
+
+    @Test
+    public void update_showsAllDetectionsOfTheFirstFrame() {
+        MultiObjectTracker tracker = new MultiObjectTracker(4, 0.3f, 3, 3);
+        float[] boxes = new float[8];
+        setBox(boxes, 0, 50, 50, 20);
+        setBox(boxes, 1, 150, 50, 20);
+
+        tracker.update(boxes, new float[]{0.9f, 0.8f}, new int[]{0, 1}, 2);
+
+        assertEquals(2, countVisible(tracker));
+    }
+
+    @Test
+    public void update_doesNotMatchOtherClass() {
+        MultiObjectTracker tracker = new MultiObjectTracker(4, 0.3f, 1, 0);
+        float[] box = new float[4];
+        setBox(box, 0, 50, 50, 20);
+        tracker.update(box, new float[]{0.9f}, new int[]{0}, 1);
+        long id = tracker.getId(findTrack(tracker, 1));
+
+        tracker.update(box, new float[]{0.9f}, new int[]{1}, 1);
+
+        assertEquals(-1, findTrack(tracker, id));
+        assertEquals(1, countVisible(tracker));
+    }
+
+    @Test
+    public void update_assignsOverlappingObjectsOptimally() {
+        MultiObjectTracker tracker = new MultiObjectTracker(4, 0.1f, 1, 3);
+        float[] boxes = {
+                0, 0, 100, 100,
+                60, 0, 160, 100};
+        float[] scores = {0.9f, 0.9f};
+        int[] classes = {0, 0};
+        tracker.update(boxes, scores, classes, 2);
+        long first = -1;
+        for (int slot = 0; slot < tracker.capacity(); slot++) {
+            if (tracker.isAlive(slot) && tracker.getMatchedDetection(slot) == 0) {
+                first = tracker.getId(slot);
+            }
+        }
+
+        // the first detection overlaps the second track most, a greedy match would lose the
+        // first track, the assignment keeps both
+        float[] moved = {
+                50, 0, 150, 100,
+                110, 0, 210, 100};
+        tracker.update(moved, scores, classes, 2);
+
+        int slot = findTrack(tracker, first);
+        assertEquals(0, tracker.getMatchedDetection(slot));
+    }
+
+    @Test
+    public void update_tracksHundredsOfObjects() {
+        final int objects = 300;
+        MultiObjectTracker tracker = new MultiObjectTracker(512, 0.3f, 3, 3);
+        Random random = new Random(3);
+        float[] velocities = new float[objects * 2];
+        float[] centers = new float[objects * 2];
+        for (int i = 0; i < objects; i++) {
+            // a grid of objects with random drift, spaced further apart than they move
+            centers[i * 2] = (i % 20) * 60;
+            centers[i * 2 + 1] = (i / 20) * 60;
+            velocities[i * 2] = random.nextFloat() * 4 - 2;
+            velocities[i * 2 + 1] = random.nextFloat() * 4 - 2;
+        }
+        float[] boxes = new float[objects * 4];
+        float[] scores = new float[objects];
+        int[] classes = new int[objects];
+        long[] ids = new long[objects];
+
+        for (int frame = 0; frame < 30; frame++) {
+            for (int i = 0; i < objects; i++) {
+                setBox(boxes, i, centers[i * 2] + velocities[i * 2] * frame, centers[i * 2 + 1] + velocities[i * 2 + 1] * frame, 30);
+                scores[i] = 0.9f;
+            }
+            tracker.update(boxes, scores, classes, objects);
+            for (int slot = 0; slot < tracker.capacity(); slot++) {
+                if (!tracker.isAlive(slot)) {
+                    continue;
+                }
+                int detection = tracker.getMatchedDetection(slot);
+                assertTrue(detection >= 0);
+                if (frame == 0) {
+                    ids[detection] = tracker.getId(slot);
+                } else {
+                    assertEquals(ids[detection], tracker.getId(slot));
+                }
+            }
+        }
+        assertEquals(objects, countVisible(tracker));
+    }
+
+    @Test
+    public void hungarian_matchesBruteForce() {
+        Random random = new Random(5);
+        HungarianAssignment hungarian = new HungarianAssignment();
+        for (int round = 0; round < 50; round++) {
+            int n = 1 + random.nextInt(6);
+            double[] cost = new double[n * n];
+            for (int i = 0; i < cost.length; i++) {
+                cost[i] = random.nextInt(20);
+            }
+            int[] assignment = new int[n];
+            hungarian.solve(cost, n, assignment);
+
+            boolean[] usedCols = new boolean[n];
+            double total = 0;
+            for (int row = 0; row < n; row++) {
+                assertFalse(usedCols[assignment[row]]);
+                usedCols[assignment[row]] = true;
+                total += cost[row * n + assignment[row]];
+            }
+            assertEquals(bruteForce(cost, n, 0, new boolean[n]), total, 1e-9);
+        }
+    }
+
+    private static double bruteForce(double[] cost, int n, int row, boolean[] usedCols) {
+        if (row == n) {
+            return 0;
+        }
+        double best = Double.POSITIVE_INFINITY;
+        for (int col = 0; col < n; col++) {
+            if (!usedCols[col]) {
+                usedCols[col] = true;
+                best = Math.min(best, cost[row * n + col] + bruteForce(cost, n, row + 1, usedCols));
+                usedCols[col] = false;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,139 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.tracking;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class TrackerRendererTest {
+    static final int WIDTH = 1080;
+    static final int HEIGHT = 1920;
+    static final int CLASSES = 10;
+
+    /**
+     * Canvas counting the drawn rectangles and texts.
+     */
+    static class CountingCanvas extends Canvas {
+        int rects;
+        int texts;
+
+        @Override
+        public void drawRect(RectF rect, Paint paint) {
+            rects++;
+        }
+
+        @Override
+        public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+            rects++;
+        }
+
+        @Override
+        public void drawText(String text, float x, float y, Paint paint) {
+            texts++;
+        }
+    }
+
+    static TrackerFrame randomFrame(Random random, int count) {
+        TrackerFrame frame = new TrackerFrame(count);
+        frame.frameWidth = WIDTH;
+        frame.frameHeight = HEIGHT;
+        frame.cropBorderTop = (HEIGHT - WIDTH) / 2;
+        frame.cropBorderBottom = (HEIGHT + WIDTH) / 2;
+        frame.showConfidence = true;
+        frame.showCropFrame = true;
+        frame.boundingBoxColorMode = "confidence";
+        frame.visible = true;
+        frame.count = count;
+        for (int i = 0; i < count; i++) {
+            float left = random.nextFloat() * WIDTH * 0.8f;
+            float top = random.nextFloat() * HEIGHT * 0.8f;
+            frame.boxes[i * 4] = left;
+            frame.boxes[i * 4 + 1] = top;
+            frame.boxes[i * 4 + 2] = left + WIDTH * 0.2f;
+            frame.boxes[i * 4 + 3] = top + HEIGHT * 0.2f;
+            frame.scores[i] = random.nextFloat();
+            frame.classIds[i] = random.nextInt(CLASSES);
+            frame.titles[i] = "class " + frame.classIds[i];
+        }
+        return frame;
+    }
+
+    /**
+     * @return Bytes allocated by the current thread so far, or -1 if the JVM does not count them
+     */
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)
+                || !((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            return -1;
+        }
+        return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    public void draw_drawsCropFrameAndEveryTrack() {
+        TrackerRenderer renderer = new TrackerRenderer(CLASSES);
+        TrackerFrame frame = randomFrame(new Random(0), 20);
+        CountingCanvas canvas = new CountingCanvas();
+        renderer.draw(canvas, frame);
+        // two crop rects, a box and a label background per track
+        assertEquals(2 + 20 * 2, canvas.rects);
+        assertEquals(20, canvas.texts);
+    }
+
+    @Test
+    public void draw_invisibleFrameOnlyDrawsCropFrame() {
+        TrackerRenderer renderer = new TrackerRenderer(CLASSES);
+        TrackerFrame frame = randomFrame(new Random(0), 20);
+        frame.visible = false;
+        CountingCanvas canvas = new CountingCanvas();
+        renderer.draw(canvas, frame);
+        assertEquals(2, canvas.rects);
+        assertEquals(0, canvas.texts);
+    }
+
+    @Test
+    public void draw_doesNotAllocateOnceLabelsAreCached() {
+        assumeTrue(allocatedBytes() >= 0);
+        TrackerRenderer renderer = new TrackerRenderer(CLASSES);
+        TrackerFrame frame = randomFrame(new Random(0), 100);
+        CountingCanvas canvas = new CountingCanvas();
+        for (int i = 0; i < 100; i++) {
+            renderer.draw(canvas, frame);
+        }
+        frame.boundingBoxColorMode = "class";
+        renderer.draw(canvas, frame);
+
+        // the reading of the counter itself may allocate, measure it without drawing as well
+        long start = allocatedBytes();
+        long overhead = allocatedBytes() - start;
+        start = allocatedBytes();
+        for (int i = 0; i < 100; i++) {
+            frame.boundingBoxColorMode = i % 2 == 0 ? "confidence" : "class";
+            renderer.draw(canvas, frame);
+        }
+        assertEquals(0, allocatedBytes() - start - overhead);
+    }
+}
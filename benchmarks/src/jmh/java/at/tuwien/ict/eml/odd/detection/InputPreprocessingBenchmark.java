@@ -0,0 +1,57 @@
+package at.tuwien.ict.eml.odd.detection;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+/**
+ * Preprocessing loop of TFLiteObjectDetection.recognizeImage, the ARGB pixels of the model input
+ * bitmap written into the input tensor by the InputPreprocessor implementations.
+ */
+@State(Scope.Benchmark)
+public class InputPreprocessingBenchmark {
+    @Param({"300", "640"})
+    public int inputSize;
+
+    @Param({"true", "false"})
+    public boolean quantized;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private int[] pixels;
+    private ByteBuffer input;
+    private InputPreprocessor preprocessor;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        pixels = new int[inputSize * inputSize];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        input = ByteBuffer.allocateDirect(inputSize * inputSize * 3 * (quantized ? 1 : 4));
+        input.order(ByteOrder.nativeOrder());
+        preprocessor = quantized
+                ? new UInt8InputPreprocessor(inputSize, parallelism)
+                : new Float32InputPreprocessor(inputSize, 127.5f, 127.5f, parallelism);
+    }
+
+    @TearDown
+    public void tearDown() {
+        preprocessor.close();
+    }
+
+    @Benchmark
+    public ByteBuffer process() {
+        preprocessor.process(pixels, input);
+        return input;
+    }
+}
@@ -0,0 +1,83 @@
+package at.tuwien.ict.eml.odd.detection;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+import at.tuwien.ict.eml.odd.env.FrameTransform;
+
+/**
+ * Filtering and mapping of the raw detector output: non-maximum suppression of the candidates,
+ * the confidence threshold and the mapping of the kept boxes from the model input to the
+ * visible screen area, the steps between the decoder and the tracker in CameraActivity.
+ */
+@State(Scope.Benchmark)
+public class ResultFilterBenchmark {
+    private static final int INPUT_SIZE = 300;
+    private static final int MAX_DETECTIONS = 100;
+    private static final float MIN_CONFIDENCE = 0.5f;
+
+    // 1917 are the anchors of SSD MobileNet at 300x300
+    @Param({"1917", "10000"})
+    public int candidates;
+
+    @Param({"GREEDY", "SOFT_GAUSSIAN"})
+    public NonMaxSuppression.Method method;
+
+    private float[] boxes;
+    private float[] scores;
+    private int[] classes;
+    private NonMaxSuppression nms;
+    private final int[] keep = new int[MAX_DETECTIONS];
+    private final float[] keptScores = new float[MAX_DETECTIONS];
+    private final float[] mappedBoxes = new float[MAX_DETECTIONS * 4];
+    private final float[] cropToScreen = new float[FrameTransform.VALUE_COUNT];
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        boxes = new float[candidates * 4];
+        scores = new float[candidates];
+        classes = new int[candidates];
+        for (int i = 0; i < candidates; i++) {
+            float width = 0.02f + random.nextFloat() * 0.3f;
+            float height = 0.02f + random.nextFloat() * 0.3f;
+            float left = random.nextFloat() * (1 - width);
+            float top = random.nextFloat() * (1 - height);
+            boxes[i * 4] = left;
+            boxes[i * 4 + 1] = top;
+            boxes[i * 4 + 2] = left + width;
+            boxes[i * 4 + 3] = top + height;
+            // most anchors are background with a low score
+            scores[i] = random.nextFloat() < 0.1f ? random.nextFloat() : random.nextFloat() * 0.1f;
+            classes[i] = random.nextInt(90);
+        }
+        nms = new NonMaxSuppression(0.5f, 0.05f, MAX_DETECTIONS).setMethod(method);
+
+        float[] screenToCrop = new float[FrameTransform.VALUE_COUNT];
+        FrameTransform.getTransformation(1080, 1920, INPUT_SIZE, INPUT_SIZE, 0, true, screenToCrop);
+        FrameTransform.invert(screenToCrop, cropToScreen);
+    }
+
+    @Benchmark
+    public int suppressAndMap() {
+        final int kept = nms.run(boxes, scores, classes, candidates, keep, keptScores);
+        int mapped = 0;
+        for (int i = 0; i < kept; i++) {
+            if (keptScores[i] < MIN_CONFIDENCE) {
+                continue;
+            }
+            final int box = keep[i] * 4;
+            for (int c = 0; c < 4; c++) {
+                mappedBoxes[mapped * 4 + c] = boxes[box + c] * INPUT_SIZE;
+            }
+            FrameTransform.mapRect(cropToScreen, mappedBoxes, mapped * 4);
+            mapped++;
+        }
+        return mapped;
+    }
+}
@@ -0,0 +1,57 @@
+package at.tuwien.ict.eml.odd.detection;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Quantized input of a bitmap, unpacked from ARGB ints like after Bitmap.getPixels compared to
+ * the alpha drop of the RGBA bytes of Bitmap.copyPixelsToBuffer.
+ */
+@State(Scope.Benchmark)
+public class UInt8RgbaBenchmark {
+    @Param({"300", "640"})
+    public int inputSize;
+
+    private int[] pixels;
+    private ByteBuffer rgba;
+    private ByteBuffer input;
+    private UInt8InputPreprocessor preprocessor;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        pixels = new int[inputSize * inputSize];
+        rgba = ByteBuffer.allocate(pixels.length * 4);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt() | 0xFF000000;
+            rgba.put((byte) (pixels[i] >> 16)).put((byte) (pixels[i] >> 8)).put((byte) pixels[i]).put((byte) 0xFF);
+        }
+        input = ByteBuffer.allocateDirect(inputSize * inputSize * 3);
+        preprocessor = new UInt8InputPreprocessor(inputSize, 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        preprocessor.close();
+    }
+
+    @Benchmark
+    public ByteBuffer unpackArgb() {
+        preprocessor.process(pixels, input);
+        return input;
+    }
+
+    @Benchmark
+    public ByteBuffer dropAlpha() {
+        rgba.rewind();
+        preprocessor.processRgba(rgba, input);
+        return input;
+    }
+}
@@ -0,0 +1,62 @@
+package at.tuwien.ict.eml.odd.env;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Transformation math of ImageUtils.getVisibleFrameSize and getTransformationMatrix, which
+ * delegate to FrameTransform, and the mapping of a frame of detection boxes.
+ */
+@State(Scope.Benchmark)
+public class FrameTransformBenchmark {
+    private static final int BOXES = 100;
+
+    private final int[] visibleSize = new int[2];
+    private final float[] values = new float[FrameTransform.VALUE_COUNT];
+    private final float[] inverse = new float[FrameTransform.VALUE_COUNT];
+    private final float[] sourceBoxes = new float[BOXES * 4];
+    private final float[] boxes = new float[BOXES * 4];
+    private int rotation;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        for (int i = 0; i < BOXES; i++) {
+            float left = random.nextFloat() * 250;
+            float top = random.nextFloat() * 250;
+            sourceBoxes[i * 4] = left;
+            sourceBoxes[i * 4 + 1] = top;
+            sourceBoxes[i * 4 + 2] = left + random.nextFloat() * 50;
+            sourceBoxes[i * 4 + 3] = top + random.nextFloat() * 50;
+        }
+        FrameTransform.getTransformation(1080, 1920, 300, 300, 0, true, values);
+        FrameTransform.invert(values, inverse);
+    }
+
+    @Benchmark
+    public int[] visibleFrameSize() {
+        rotation = (rotation + 90) % 360;
+        FrameTransform.getVisibleFrameSize(640, 480, 1080, 1920, rotation, visibleSize);
+        return visibleSize;
+    }
+
+    @Benchmark
+    public float[] transformation() {
+        rotation = (rotation + 90) % 360;
+        FrameTransform.getTransformation(640, 480, 300, 300, rotation, rotation % 180 == 0, values);
+        return values;
+    }
+
+    @Benchmark
+    public float[] mapRects() {
+        System.arraycopy(sourceBoxes, 0, boxes, 0, boxes.length);
+        for (int i = 0; i < BOXES; i++) {
+            FrameTransform.mapRect(inverse, boxes, i * 4);
+        }
+        return boxes;
+    }
+}
@@ -0,0 +1,84 @@
+package at.tuwien.ict.eml.odd.stats;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Per frame update of the inference boxplot, one new latency followed by the median, quartiles
+ * and whiskers of the window. Compares the SlidingQuantiles of the boxplot with the former
+ * copy and sort of the whole window as reference.
+ */
+@State(Scope.Benchmark)
+public class BoxplotStatisticsBenchmark {
+    private static final int SAMPLES = 4096;
+    private static final int MAX_LATENCY_MS = 10000;
+
+    @Param({"50", "500", "2000"})
+    public int window;
+
+    private int[] latencies;
+    private int next;
+    private SlidingQuantiles quantiles;
+    private ArrayList<Integer> values;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        latencies = new int[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            latencies[i] = 20 + (int) Math.abs(random.nextGaussian() * 15);
+        }
+        quantiles = new SlidingQuantiles(window, MAX_LATENCY_MS);
+        values = new ArrayList<>();
+        for (int i = 0; i < window; i++) {
+            quantiles.add(latencies[i % SAMPLES]);
+            values.add(latencies[i % SAMPLES]);
+        }
+    }
+
+    private int nextLatency() {
+        next = (next + 1) % SAMPLES;
+        return latencies[next];
+    }
+
+    @Benchmark
+    public void slidingQuantiles(Blackhole blackhole) {
+        quantiles.add(nextLatency());
+        blackhole.consume(quantiles.min());
+        blackhole.consume(quantiles.quantile(0.25));
+        blackhole.consume(quantiles.quantile(0.5));
+        blackhole.consume(quantiles.quantile(0.75));
+        blackhole.consume(quantiles.max());
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public void sortedCopyReference(Blackhole blackhole) {
+        values.add(nextLatency());
+        values.remove(0);
+        ArrayList<Integer> data = (ArrayList<Integer>) values.clone();
+        data.sort(Comparator.naturalOrder());
+        blackhole.consume(Collections.min(data));
+        blackhole.consume(quartile(1, data));
+        blackhole.consume(data.get(data.size() / 2));
+        blackhole.consume(quartile(3, data));
+        blackhole.consume(Collections.max(data));
+    }
+
+    private static float quartile(int quartileOrder, ArrayList<Integer> data) {
+        float index = (float) quartileOrder / 4 * (data.size() + 1);
+        if (index == (int) index) {
+            return data.get((int) index);
+        }
+        return (int) ((data.get((int) index) + data.get((int) index + 1)) / 2f);
+    }
+}
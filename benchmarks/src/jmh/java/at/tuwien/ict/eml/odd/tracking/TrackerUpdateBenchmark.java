@@ -0,0 +1,67 @@
+package at.tuwien.ict.eml.odd.tracking;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Association and Kalman update of Tracker.processResults, one detector frame of objects
+ * moving across the screen per invocation, with the configuration of the Tracker.
+ */
+@State(Scope.Benchmark)
+public class TrackerUpdateBenchmark {
+    private static final int MAX_TRACKS = 256;
+    private static final int FRAMES = 128;
+
+    @Param({"10", "100"})
+    public int objects;
+
+    private MultiObjectTracker tracker;
+    private float[][] frameBoxes;
+    private float[] scores;
+    private int[] classes;
+    private int frame;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        frameBoxes = new float[FRAMES][objects * 4];
+        scores = new float[objects];
+        classes = new int[objects];
+        for (int i = 0; i < objects; i++) {
+            float x = random.nextFloat() * 1000;
+            float y = random.nextFloat() * 1800;
+            float vx = random.nextFloat() * 10 - 5;
+            float vy = random.nextFloat() * 10 - 5;
+            float size = 40 + random.nextFloat() * 120;
+            scores[i] = 0.5f + random.nextFloat() * 0.5f;
+            classes[i] = random.nextInt(10);
+            for (int f = 0; f < FRAMES; f++) {
+                // bounce back so the objects stay in the frame when the sequence repeats
+                float t = f < FRAMES / 2 ? f : FRAMES - f;
+                float jitter = random.nextFloat() * 4 - 2;
+                float left = x + vx * t + jitter;
+                float top = y + vy * t + jitter;
+                frameBoxes[f][i * 4] = left;
+                frameBoxes[f][i * 4 + 1] = top;
+                frameBoxes[f][i * 4 + 2] = left + size;
+                frameBoxes[f][i * 4 + 3] = top + size;
+            }
+        }
+        tracker = new MultiObjectTracker(MAX_TRACKS, 0.3f, 3, 3);
+        for (int f = 0; f < FRAMES; f++) {
+            update();
+        }
+    }
+
+    @Benchmark
+    public MultiObjectTracker update() {
+        frame = (frame + 1) % FRAMES;
+        tracker.update(frameBoxes[frame], scores, classes, objects);
+        return tracker;
+    }
+}
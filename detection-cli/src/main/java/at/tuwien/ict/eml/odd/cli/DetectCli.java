@@ -0,0 +1,230 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.cli;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Command line tool which detects the objects of all images of a directory with the detection
+ * core of the app and writes one CSV line per detection.
+ * <pre>
+ * detection-cli --model model.tflite --labels labels.txt --input-size 300 [--quantized]
+ *     [--workers 8] [--threads 1] [--confidence 0.5] [--rotation 0] [--contain]
+ *     [--num-detections 10] [--output detections.csv] image-directory
+ * </pre>
+ */
+public class DetectCli {
+    private static final String USAGE = "usage: detection-cli --model <model.tflite> --labels <labels.txt> "
+            + "--input-size <pixels> [--quantized] [--workers <n>] [--threads <n>] [--confidence <score>] "
+            + "[--rotation <degree>] [--contain] [--num-detections <n>] [--output <file.csv>] <image directory>";
+
+    static final class Options {
+        File model;
+        File labels;
+        int inputSize;
+        boolean quantized;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int threads = 1;
+        float confidence = 0.5f;
+        int rotation;
+        boolean contain;
+        int numDetections = 10;
+        File output;
+        File images;
+
+        /**
+         * @throws IllegalArgumentException On missing or invalid arguments
+         */
+        static Options parse(final String[] args) {
+            final Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                final String arg = args[i];
+                switch (arg) {
+                    case "--quantized":
+                        options.quantized = true;
+                        break;
+                    case "--contain":
+                        options.contain = true;
+                        break;
+                    case "--model":
+                        options.model = new File(value(args, ++i, arg));
+                        break;
+                    case "--labels":
+                        options.labels = new File(value(args, ++i, arg));
+                        break;
+                    case "--output":
+                        options.output = new File(value(args, ++i, arg));
+                        break;
+                    case "--input-size":
+                        options.inputSize = intValue(args, ++i, arg);
+                        break;
+                    case "--workers":
+                        options.workers = intValue(args, ++i, arg);
+                        break;
+                    case "--threads":
+                        options.threads = intValue(args, ++i, arg);
+                        break;
+                    case "--rotation":
+                        options.rotation = intValue(args, ++i, arg);
+                        break;
+                    case "--num-detections":
+                        options.numDetections = intValue(args, ++i, arg);
+                        break;
+                    case "--confidence":
+                        try {
+                            options.confidence = Float.parseFloat(value(args, ++i, arg));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException(arg + " expects a number");
+                        }
+                        break;
+                    default:
+                        if (arg.startsWith("--") || options.images != null) {
+                            throw new IllegalArgumentException("Unexpected argument " + arg);
+                        }
+                        options.images = new File(arg);
+                        break;
+                }
+            }
+            if (options.model == null || options.labels == null || options.images == null) {
+                throw new IllegalArgumentException("Model, labels and image directory are required");
+            }
+            if (options.inputSize <= 0 || options.workers <= 0 || options.threads <= 0 || options.numDetections <= 0) {
+                throw new IllegalArgumentException("Input size, workers, threads and detections have to be positive");
+            }
+            if (options.rotation % 90 != 0) {
+                throw new IllegalArgumentException("Rotation has to be a multiple of 90");
+            }
+            return options;
+        }
+
+        static String value(final String[] args, final int i, final String name) {
+            if (i >= args.length) {
+                throw new IllegalArgumentException(name + " expects a value");
+            }
+            return args[i];
+        }
+
+        static int intValue(final String[] args, final int i, final String name) {
+            try {
+                return Integer.parseInt(value(args, i, name));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(name + " expects an integer");
+            }
+        }
+    }
+
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        final Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        final List<String> labels = readLabels(options.labels);
+        final List<File> images = DirectoryDetector.listImages(options.images);
+        final long start = System.nanoTime();
+        final List<DirectoryDetector.ImageResult> results;
+        try (DirectoryDetector detector = new DirectoryDetector(
+                () -> TfliteBackend.create(options.model, options.threads),
+                options.workers, options.inputSize, options.quantized, options.numDetections)) {
+            results = detector.detect(images, options.rotation, options.contain, options.confidence);
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        final OutputStream out = options.output != null ? new FileOutputStream(options.output) : System.out;
+        final Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        writeCsv(results, labels, writer);
+        writer.flush();
+        if (options.output != null) {
+            writer.close();
+        }
+
+        int detections = 0;
+        int failed = 0;
+        for (final DirectoryDetector.ImageResult result : results) {
+            detections += result.size();
+            if (result.error != null) {
+                failed++;
+                System.err.println(result.file + ": " + result.error);
+            }
+        }
+        System.err.println(String.format(Locale.ENGLISH,
+                "%d images, %d failed, %d detections in %.1f s (%.1f images/s, %d workers)",
+                results.size(), failed, detections, seconds, results.size() / seconds, options.workers));
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Writes one line per detection with the box in pixels of the rotated image.
+     */
+    static void writeCsv(final List<DirectoryDetector.ImageResult> results, final List<String> labels,
+                         final Writer out) {
+        final PrintWriter writer = new PrintWriter(out);
+        writer.println("image,width,height,latency_ms,class_id,label,score,left,top,right,bottom");
+        for (final DirectoryDetector.ImageResult result : results) {
+            for (int i = 0; i < result.size(); i++) {
+                final int classId = result.getClassId(i);
+                final String label = classId >= 0 && classId < labels.size() ? labels.get(classId) : "";
+                final float[] box = result.getBox(i);
+                writer.println(String.format(Locale.ENGLISH, "%s,%d,%d,%.3f,%d,%s,%.4f,%.1f,%.1f,%.1f,%.1f",
+                        csv(result.file.getName()), result.width, result.height, result.latencyNanos / 1e6,
+                        classId, csv(label), result.getScore(i), box[0], box[1], box[2], box[3]));
+            }
+        }
+        writer.flush();
+    }
+
+    static String csv(final String value) {
+        if (value.contains(",") || value.contains("\"")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    /**
+     * Reads a labelmap with one label per line.
+     */
+    static List<String> readLabels(final File file) throws IOException {
+        final List<String> labels = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                labels.add(line);
+            }
+        }
+        return labels;
+    }
+}
@@ -0,0 +1,357 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.cli;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.ImageIO;
+
+import at.tuwien.ict.eml.odd.detection.DetectionEngine;
+import at.tuwien.ict.eml.odd.detection.Detections;
+import at.tuwien.ict.eml.odd.detection.InferenceBackend;
+import at.tuwien.ict.eml.odd.env.ArgbImage;
+
+/**
+ * Detects the objects of the images of a directory in parallel. Every worker thread owns a
+ * DetectionEngine with its own backend, so the images are decoded, preprocessed and inferred
+ * concurrently on all cores.
+ */
+public class DirectoryDetector implements Closeable {
+    // same normalization of float models as the app
+    private static final float IMAGE_MEAN = 127.5f;
+    private static final float IMAGE_STD = 127.5f;
+    private static final String[] IMAGE_EXTENSIONS = {".jpg", ".jpeg", ".png", ".bmp", ".gif"};
+
+    /**
+     * Creates the inference backend of a worker, implemented by the caller.
+     */
+    public interface BackendFactory {
+        InferenceBackend create() throws IOException;
+    }
+
+    /**
+     * Receives the detections of streamed images, implemented by the caller. It is called
+     * concurrently from the worker threads in the order the images complete.
+     */
+    public interface ImageListener {
+        /**
+         * @param image The decoded image
+         * @param latencyNanos Time of the preprocessing, inference and postprocessing
+         * @param detections Detections in pixels of the rotated image, only valid during the call
+         */
+        void onDetections(File file, ArgbImage image, long latencyNanos, Detections detections);
+
+        /**
+         * @param error Reason why the image could not be processed
+         */
+        void onError(File file, String error);
+    }
+
+    /**
+     * Detections of one image, copied out of the engine.
+     */
+    public static final class ImageResult {
+        public final File file;
+        public final int width;
+        public final int height;
+        public final long latencyNanos;
+        // null if the image was processed, otherwise the reason why not
+        public final String error;
+        private final int[] classIds;
+        private final float[] scores;
+        private final float[] boxes;
+
+        private ImageResult(final File file, final int width, final int height, final long latencyNanos,
+                            final Detections detections) {
+            this.file = file;
+            this.width = width;
+            this.height = height;
+            this.latencyNanos = latencyNanos;
+            this.error = null;
+            final int count = detections.size();
+            classIds = new int[count];
+            scores = new float[count];
+            boxes = new float[count * 4];
+            for (int i = 0; i < count; i++) {
+                classIds[i] = detections.getClassId(i);
+                scores[i] = detections.getScore(i);
+                detections.getBox(i, boxes, i * 4);
+            }
+        }
+
+        private ImageResult(final File file, final String error) {
+            this.file = file;
+            this.width = 0;
+            this.height = 0;
+            this.latencyNanos = 0;
+            this.error = error;
+            classIds = new int[0];
+            scores = new float[0];
+            boxes = new float[0];
+        }
+
+        public int size() {
+            return classIds.length;
+        }
+
+        public int getClassId(final int i) {
+            return classIds[i];
+        }
+
+        public float getScore(final int i) {
+            return scores[i];
+        }
+
+        /**
+         * @return [left, top, right, bottom] in pixels of the rotated image
+         */
+        public float[] getBox(final int i) {
+            return Arrays.copyOfRange(boxes, i * 4, i * 4 + 4);
+        }
+    }
+
+    private final InferenceBackend[] backends;
+    private final DetectionEngine[] engines;
+    private final ArrayBlockingQueue<DetectionEngine> idleEngines;
+    private final ExecutorService executor;
+    private final int workers;
+
+    /**
+     * @param factory Creates the backend of every worker
+     * @param workers Number of images processed in parallel
+     * @param inputSize Input size of the model
+     * @param isQuantized True for uint8 models
+     * @param numDetections Number of detections in the outputs of the model
+     * @throws IOException If a backend can not be created
+     */
+    public DirectoryDetector(
+            final BackendFactory factory,
+            final int workers,
+            final int inputSize,
+            final boolean isQuantized,
+            final int numDetections) throws IOException {
+        if (workers < 1) {
+            throw new IllegalArgumentException("At least one worker needed");
+        }
+        this.workers = workers;
+        backends = new InferenceBackend[workers];
+        engines = new DetectionEngine[workers];
+        idleEngines = new ArrayBlockingQueue<>(workers);
+        try {
+            for (int i = 0; i < workers; i++) {
+                backends[i] = factory.create();
+                engines[i] = new DetectionEngine(backends[i], inputSize, isQuantized, numDetections, IMAGE_MEAN, IMAGE_STD);
+                idleEngines.add(engines[i]);
+            }
+        } catch (IOException | RuntimeException e) {
+            closeWorkers();
+            throw e;
+        }
+        executor = Executors.newFixedThreadPool(workers, runnable -> {
+            final Thread thread = new Thread(runnable, "DirectoryDetector");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return The image files of the directory by name
+     * @throws IOException If the directory can not be listed
+     */
+    public static List<File> listImages(final File directory) throws IOException {
+        final File[] files = directory.listFiles(file -> {
+            final String name = file.getName().toLowerCase(Locale.ENGLISH);
+            for (final String extension : IMAGE_EXTENSIONS) {
+                if (file.isFile() && name.endsWith(extension)) {
+                    return true;
+                }
+            }
+            return false;
+        });
+        if (files == null) {
+            throw new IOException("Can not list " + directory);
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    /**
+     * Decodes an image file into ARGB pixels.
+     * @throws IOException If the file can not be read or has an unsupported format
+     */
+    public static ArgbImage readImage(final File file) throws IOException {
+        final BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            throw new IOException("Unsupported image format");
+        }
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        return new ArgbImage(width, height, image.getRGB(0, 0, width, height, null, 0, width));
+    }
+
+    /**
+     * Detects the objects of all images, images which can not be read are reported in their result.
+     * @param images The image files
+     * @param applyRotationToSrc Rotation of the images in degree, a multiple of 90
+     * @param cropModeContain When True, only the center square of the images is detected
+     * @param minConfidence Detections below this score are dropped
+     * @return The results in the order of the images
+     */
+    public List<ImageResult> detect(
+            final List<File> images,
+            final int applyRotationToSrc,
+            final boolean cropModeContain,
+            final float minConfidence) throws InterruptedException {
+        final List<Future<ImageResult>> futures = new ArrayList<>(images.size());
+        for (final File image : images) {
+            futures.add(executor.submit(() -> detect(image, applyRotationToSrc, cropModeContain, minConfidence)));
+        }
+        final List<ImageResult> results = new ArrayList<>(images.size());
+        for (final Future<ImageResult> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Detection failed", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    private ImageResult detect(
+            final File file,
+            final int applyRotationToSrc,
+            final boolean cropModeContain,
+            final float minConfidence) throws InterruptedException {
+        final ImageResult[] result = new ImageResult[1];
+        detect(file, applyRotationToSrc, cropModeContain, minConfidence, new ImageListener() {
+            @Override
+            public void onDetections(final File file, final ArgbImage image, final long latencyNanos,
+                                     final Detections detections) {
+                result[0] = new ImageResult(file, image.getWidth(), image.getHeight(), latencyNanos, detections);
+            }
+
+            @Override
+            public void onError(final File file, final String error) {
+                result[0] = new ImageResult(file, error);
+            }
+        });
+        return result[0];
+    }
+
+    /**
+     * Streams the images through the workers without collecting their results. At most two
+     * images per worker are queued, so the images may come from a lazy iterator of any length.
+     * @param images The image files, consumed on the calling thread
+     * @param applyRotationToSrc Rotation of the images in degree, a multiple of 90
+     * @param cropModeContain When True, only the center square of the images is detected
+     * @param minConfidence Detections below this score are dropped
+     * @param listener Receives the detections of every image, returns when all were delivered
+     * @throws IllegalStateException If the detection or the listener failed
+     */
+    public void detect(
+            final Iterator<File> images,
+            final int applyRotationToSrc,
+            final boolean cropModeContain,
+            final float minConfidence,
+            final ImageListener listener) throws InterruptedException {
+        final int permits = 2 * workers;
+        final Semaphore pending = new Semaphore(permits);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        while (images.hasNext() && failure.get() == null) {
+            final File image = images.next();
+            pending.acquire();
+            executor.execute(() -> {
+                try {
+                    detect(image, applyRotationToSrc, cropModeContain, minConfidence, listener);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    pending.release();
+                }
+            });
+        }
+        // all permits are back once the last image was delivered
+        pending.acquire(permits);
+        pending.release(permits);
+        if (failure.get() != null) {
+            throw new IllegalStateException("Detection failed", failure.get());
+        }
+    }
+
+    private void detect(
+            final File file,
+            final int applyRotationToSrc,
+            final boolean cropModeContain,
+            final float minConfidence,
+            final ImageListener listener) throws InterruptedException {
+        final ArgbImage image;
+        try {
+            image = readImage(file);
+        } catch (IOException e) {
+            listener.onError(file, e.getMessage());
+            return;
+        }
+        // every worker thread takes its own engine, so this never waits
+        final DetectionEngine engine = idleEngines.take();
+        try {
+            final long start = System.nanoTime();
+            final Detections detections = engine.detect(image, applyRotationToSrc, cropModeContain);
+            detections.retainMinScore(minConfidence);
+            final long latency = System.nanoTime() - start;
+            listener.onDetections(file, image, latency, detections);
+        } finally {
+            idleEngines.add(engine);
+        }
+    }
+
+    private void closeWorkers() {
+        for (final DetectionEngine engine : engines) {
+            if (engine != null) {
+                engine.close();
+            }
+        }
+        for (final InferenceBackend backend : backends) {
+            if (backend instanceof Closeable) {
+                try {
+                    ((Closeable) backend).close();
+                } catch (IOException ignored) {
+                    // nothing left to release
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        closeWorkers();
+    }
+}
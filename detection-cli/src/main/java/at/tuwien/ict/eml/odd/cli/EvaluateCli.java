@@ -0,0 +1,295 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.cli;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import at.tuwien.ict.eml.odd.detection.Detections;
+import at.tuwien.ict.eml.odd.env.ArgbImage;
+import at.tuwien.ict.eml.odd.evaluation.MeanAveragePrecision;
+import at.tuwien.ict.eml.odd.stats.LatencyHistogram;
+
+/**
+ * Command line tool which streams a labeled dataset through one or more models and reports the
+ * COCO style mAP and the per class AP together with the throughput, so float and quantized
+ * variants of a model can be compared in one run. The ground truth is read from Pascal VOC
+ * annotations next to the images, images without one are skipped.
+ * <pre>
+ * detection-eval --model float.tflite --quantized-model uint8.tflite --labels labels.txt
+ *     --input-size 300 [--workers 8] [--threads 1] [--num-detections 10] [--output report.csv]
+ *     dataset-directory
+ * </pre>
+ */
+public class EvaluateCli {
+    private static final String USAGE = "usage: detection-eval (--model <float.tflite> | --quantized-model <uint8.tflite>)... "
+            + "--labels <labels.txt> --input-size <pixels> [--workers <n>] [--threads <n>] [--num-detections <n>] "
+            + "[--output <report.csv>] <dataset directory>";
+
+    static final class Options {
+        final List<File> models = new ArrayList<>();
+        final List<Boolean> quantized = new ArrayList<>();
+        File labels;
+        int inputSize;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int threads = 1;
+        int numDetections = 10;
+        File output;
+        File dataset;
+
+        /**
+         * @throws IllegalArgumentException On missing or invalid arguments
+         */
+        static Options parse(final String[] args) {
+            final Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                final String arg = args[i];
+                switch (arg) {
+                    case "--model":
+                    case "--quantized-model":
+                        options.models.add(new File(DetectCli.Options.value(args, ++i, arg)));
+                        options.quantized.add(arg.equals("--quantized-model"));
+                        break;
+                    case "--labels":
+                        options.labels = new File(DetectCli.Options.value(args, ++i, arg));
+                        break;
+                    case "--output":
+                        options.output = new File(DetectCli.Options.value(args, ++i, arg));
+                        break;
+                    case "--input-size":
+                        options.inputSize = DetectCli.Options.intValue(args, ++i, arg);
+                        break;
+                    case "--workers":
+                        options.workers = DetectCli.Options.intValue(args, ++i, arg);
+                        break;
+                    case "--threads":
+                        options.threads = DetectCli.Options.intValue(args, ++i, arg);
+                        break;
+                    case "--num-detections":
+                        options.numDetections = DetectCli.Options.intValue(args, ++i, arg);
+                        break;
+                    default:
+                        if (arg.startsWith("--") || options.dataset != null) {
+                            throw new IllegalArgumentException("Unexpected argument " + arg);
+                        }
+                        options.dataset = new File(arg);
+                        break;
+                }
+            }
+            if (options.models.isEmpty() || options.labels == null || options.dataset == null) {
+                throw new IllegalArgumentException("At least one model, labels and dataset directory are required");
+            }
+            if (options.inputSize <= 0 || options.workers <= 0 || options.threads <= 0 || options.numDetections <= 0) {
+                throw new IllegalArgumentException("Input size, workers, threads and detections have to be positive");
+            }
+            return options;
+        }
+    }
+
+    /**
+     * Accuracy and speed of one model on the dataset.
+     */
+    static final class Evaluation {
+        final String model;
+        final boolean quantized;
+        final MeanAveragePrecision precision;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong failed = new AtomicLong();
+        double seconds;
+
+        Evaluation(final String model, final boolean quantized, final int numClasses) {
+            this.model = model;
+            this.quantized = quantized;
+            precision = new MeanAveragePrecision(numClasses);
+        }
+
+        double getImagesPerSecond() {
+            return seconds > 0 ? precision.getImageCount() / seconds : 0;
+        }
+    }
+
+    /**
+     * @return The images of the dataset which have an annotation
+     * @throws IOException If the directory can not be listed
+     */
+    static List<File> listAnnotatedImages(final File dataset) throws IOException {
+        final List<File> images = new ArrayList<>();
+        for (final File image : DirectoryDetector.listImages(dataset)) {
+            if (VocAnnotation.annotationFile(image).isFile()) {
+                images.add(image);
+            }
+        }
+        return images;
+    }
+
+    /**
+     * Streams the images through the detector, every image is scored against its annotation on the
+     * worker thread as soon as it is detected. Images which can not be read or annotated are
+     * reported to stderr and counted as failed.
+     * @param evaluation Receives the matches and latencies
+     */
+    static void evaluate(
+            final DirectoryDetector detector,
+            final List<File> images,
+            final Map<String, Integer> labelIds,
+            final Evaluation evaluation) throws InterruptedException {
+        final long start = System.nanoTime();
+        detector.detect(images.iterator(), 0, false, 0.0f, new DirectoryDetector.ImageListener() {
+            @Override
+            public void onDetections(final File file, final ArgbImage image, final long latencyNanos,
+                                     final Detections detections) {
+                final VocAnnotation annotation;
+                try {
+                    annotation = VocAnnotation.read(VocAnnotation.annotationFile(file), labelIds);
+                } catch (IOException e) {
+                    onError(file, e.getMessage());
+                    return;
+                }
+                evaluation.precision.addImage(annotation.boxes, annotation.classIds, annotation.difficult,
+                        annotation.count, detections);
+                evaluation.latency.record(latencyNanos);
+            }
+
+            @Override
+            public void onError(final File file, final String error) {
+                evaluation.failed.incrementAndGet();
+                System.err.println(file + ": " + error);
+            }
+        });
+        evaluation.seconds = (System.nanoTime() - start) / 1e9;
+    }
+
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        final Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        final List<String> labels = DetectCli.readLabels(options.labels);
+        final Map<String, Integer> labelIds = new HashMap<>();
+        for (int i = 0; i < labels.size(); i++) {
+            labelIds.putIfAbsent(labels.get(i), i);
+        }
+        final List<File> images = listAnnotatedImages(options.dataset);
+        if (images.isEmpty()) {
+            System.err.println("No annotated images in " + options.dataset);
+            System.exit(1);
+            return;
+        }
+
+        final List<Evaluation> evaluations = new ArrayList<>();
+        for (int i = 0; i < options.models.size(); i++) {
+            final File model = options.models.get(i);
+            final boolean quantized = options.quantized.get(i);
+            final Evaluation evaluation = new Evaluation(model.getName(), quantized, labels.size());
+            try (DirectoryDetector detector = new DirectoryDetector(
+                    () -> TfliteBackend.create(model, options.threads),
+                    options.workers, options.inputSize, quantized, options.numDetections)) {
+                evaluate(detector, images, labelIds, evaluation);
+            }
+            evaluations.add(evaluation);
+            System.err.println(summary(evaluation));
+        }
+
+        final OutputStream out = options.output != null ? new FileOutputStream(options.output) : System.out;
+        final Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        writeReport(evaluations, labels, writer);
+        writer.flush();
+        if (options.output != null) {
+            writer.close();
+        }
+        for (final Evaluation evaluation : evaluations) {
+            if (evaluation.failed.get() > 0) {
+                System.exit(1);
+            }
+        }
+    }
+
+    static String summary(final Evaluation evaluation) {
+        final MeanAveragePrecision precision = evaluation.precision;
+        return String.format(Locale.ENGLISH,
+                "%s%s: mAP %.3f, mAP@0.5 %.3f, mAP@0.75 %.3f, %d images, %d failed, %.1f images/s, "
+                        + "latency mean %.1f ms p50 %.1f ms p90 %.1f ms",
+                evaluation.model, evaluation.quantized ? " (quantized)" : "",
+                precision.getMeanAveragePrecision(),
+                precision.getMeanAveragePrecision(precision.getThresholdIndex(0.5f)),
+                precision.getMeanAveragePrecision(precision.getThresholdIndex(0.75f)),
+                precision.getImageCount(), evaluation.failed.get(), evaluation.getImagesPerSecond(),
+                evaluation.latency.getMeanMs(), evaluation.latency.getQuantileMs(0.5),
+                evaluation.latency.getQuantileMs(0.9));
+    }
+
+    /**
+     * Writes one line per model with the mean over all classes, labeled "all", followed by one line
+     * per class with ground truth. APs of classes without ground truth are left empty.
+     */
+    static void writeReport(final List<Evaluation> evaluations, final List<String> labels, final Writer out) {
+        final PrintWriter writer = new PrintWriter(out);
+        writer.println("model,quantized,class_id,label,ground_truth,ap,ap50,ap75,"
+                + "images,failed,images_per_s,latency_mean_ms,latency_p50_ms,latency_p90_ms,latency_p99_ms");
+        for (final Evaluation evaluation : evaluations) {
+            final MeanAveragePrecision precision = evaluation.precision;
+            final int iou50 = precision.getThresholdIndex(0.5f);
+            final int iou75 = precision.getThresholdIndex(0.75f);
+            final String speed = String.format(Locale.ENGLISH, "%d,%d,%.2f,%.3f,%.3f,%.3f,%.3f",
+                    precision.getImageCount(), evaluation.failed.get(), evaluation.getImagesPerSecond(),
+                    evaluation.latency.getMeanMs(), evaluation.latency.getQuantileMs(0.5),
+                    evaluation.latency.getQuantileMs(0.9), evaluation.latency.getQuantileMs(0.99));
+            long groundTruths = 0;
+            for (int c = 0; c < precision.getNumClasses(); c++) {
+                groundTruths += precision.getGroundTruthCount(c);
+            }
+            writer.println(String.format(Locale.ENGLISH, "%s,%b,,all,%d,%s,%s,%s,%s",
+                    DetectCli.csv(evaluation.model), evaluation.quantized, groundTruths,
+                    ap(precision.getMeanAveragePrecision()),
+                    ap(precision.getMeanAveragePrecision(iou50)),
+                    ap(precision.getMeanAveragePrecision(iou75)), speed));
+            for (int c = 0; c < precision.getNumClasses(); c++) {
+                if (precision.getGroundTruthCount(c) == 0) {
+                    continue;
+                }
+                writer.println(String.format(Locale.ENGLISH, "%s,%b,%d,%s,%d,%s,%s,%s,%s",
+                        DetectCli.csv(evaluation.model), evaluation.quantized, c, DetectCli.csv(labels.get(c)),
+                        precision.getGroundTruthCount(c),
+                        ap(precision.getAveragePrecision(c)),
+                        ap(precision.getAveragePrecision(c, iou50)),
+                        ap(precision.getAveragePrecision(c, iou75)), speed));
+            }
+        }
+        writer.flush();
+    }
+
+    private static String ap(final double value) {
+        return Double.isNaN(value) ? "" : String.format(Locale.ENGLISH, "%.4f", value);
+    }
+}
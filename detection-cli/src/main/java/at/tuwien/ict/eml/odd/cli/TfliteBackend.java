@@ -0,0 +1,97 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.cli;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import at.tuwien.ict.eml.odd.detection.InferenceBackend;
+
+/**
+ * Inference on the TFLite Java Interpreter of a desktop build.
+ *
+ * <p>The TFLite Java API is only published as Android library, so the interpreter is not a compile
+ * time dependency. It is looked up on the class path at runtime, which holds the
+ * libtensorflowlite_java.jar built for the host, see the README.
+ */
+final class TfliteBackend implements InferenceBackend, Closeable {
+    private static final String INTERPRETER_CLASS = "org.tensorflow.lite.Interpreter";
+
+    private final Object interpreter;
+    private final Method runMethod;
+    private final Method closeMethod;
+
+    private TfliteBackend(final Object interpreter, final Method runMethod, final Method closeMethod) {
+        this.interpreter = interpreter;
+        this.runMethod = runMethod;
+        this.closeMethod = closeMethod;
+    }
+
+    /**
+     * Creates an interpreter for the model.
+     * @param model The .tflite model file
+     * @param numThreads Number of threads of the interpreter
+     * @throws IOException If the model can not be loaded
+     * @throws IllegalStateException If the TFLite Java API is not on the class path
+     */
+    static TfliteBackend create(final File model, final int numThreads) throws IOException {
+        try {
+            final Class<?> interpreterClass = Class.forName(INTERPRETER_CLASS);
+            final Class<?> optionsClass = Class.forName(INTERPRETER_CLASS + "$Options");
+            final Object options = optionsClass.getConstructor().newInstance();
+            optionsClass.getMethod("setNumThreads", int.class).invoke(options, numThreads);
+            final Object interpreter = interpreterClass.getConstructor(File.class, optionsClass)
+                    .newInstance(model, options);
+            return new TfliteBackend(interpreter,
+                    interpreterClass.getMethod("runForMultipleInputsOutputs", Object[].class, Map.class),
+                    interpreterClass.getMethod("close"));
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(INTERPRETER_CLASS + " not found, add the TFLite Java API "
+                    + "of a desktop build to the class path", e);
+        } catch (InvocationTargetException e) {
+            throw new IOException("Failed to load the model " + model, e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unsupported TFLite Java API", e);
+        }
+    }
+
+    @Override
+    public void run(final Object[] inputs, final Map<Integer, Object> outputs) {
+        try {
+            runMethod.invoke(interpreter, inputs, outputs);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Inference failed", e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Unsupported TFLite Java API", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            closeMethod.invoke(interpreter);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to close the interpreter", e);
+        }
+    }
+}
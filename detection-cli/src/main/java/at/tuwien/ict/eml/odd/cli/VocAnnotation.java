@@ -0,0 +1,114 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.cli;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * Ground truth of one image in the Pascal VOC format written by labelImg, which is stored next to
+ * the image with the same name and the extension xml.
+ */
+final class VocAnnotation {
+    final int count;
+    // [left, top, right, bottom] in pixels per object
+    final float[] boxes;
+    final int[] classIds;
+    final boolean[] difficult;
+
+    private VocAnnotation(final int count) {
+        this.count = count;
+        boxes = new float[count * 4];
+        classIds = new int[count];
+        difficult = new boolean[count];
+    }
+
+    /**
+     * @return The annotation file of an image, which may not exist
+     */
+    static File annotationFile(final File image) {
+        final String name = image.getName();
+        final int extension = name.lastIndexOf('.');
+        return new File(image.getParentFile(), (extension > 0 ? name.substring(0, extension) : name) + ".xml");
+    }
+
+    /**
+     * @param file Annotation file
+     * @param labelIds Class ids of the label names
+     * @throws IOException If the file can not be parsed or contains a label which is not in the labelmap
+     */
+    static VocAnnotation read(final File file, final Map<String, Integer> labelIds) throws IOException {
+        final Document document;
+        try {
+            final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            // annotations never need a doctype, so external entities can not be resolved
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            final DocumentBuilder builder = factory.newDocumentBuilder();
+            document = builder.parse(file);
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Can not parse " + file + ": " + e.getMessage(), e);
+        }
+
+        final NodeList objects = document.getDocumentElement().getElementsByTagName("object");
+        final VocAnnotation annotation = new VocAnnotation(objects.getLength());
+        for (int i = 0; i < annotation.count; i++) {
+            final Element object = (Element) objects.item(i);
+            final String name = text(file, object, "name");
+            final Integer classId = labelIds.get(name);
+            if (classId == null) {
+                throw new IOException("Label " + name + " of " + file + " is not in the labelmap");
+            }
+            annotation.classIds[i] = classId;
+            annotation.difficult[i] = object.getElementsByTagName("difficult").getLength() > 0
+                    && "1".equals(text(file, object, "difficult"));
+            final Element box = (Element) object.getElementsByTagName("bndbox").item(0);
+            if (box == null) {
+                throw new IOException("Object " + name + " of " + file + " has no bndbox");
+            }
+            annotation.boxes[i * 4] = number(file, box, "xmin");
+            annotation.boxes[i * 4 + 1] = number(file, box, "ymin");
+            annotation.boxes[i * 4 + 2] = number(file, box, "xmax");
+            annotation.boxes[i * 4 + 3] = number(file, box, "ymax");
+        }
+        return annotation;
+    }
+
+    private static String text(final File file, final Element parent, final String tag) throws IOException {
+        final NodeList nodes = parent.getElementsByTagName(tag);
+        if (nodes.getLength() == 0) {
+            throw new IOException("Missing " + tag + " in " + file);
+        }
+        return nodes.item(0).getTextContent().trim();
+    }
+
+    private static float number(final File file, final Element parent, final String tag) throws IOException {
+        try {
+            return Float.parseFloat(text(file, parent, tag));
+        } catch (NumberFormatException e) {
+            throw new IOException(tag + " of " + file + " is not a number");
+        }
+    }
+}
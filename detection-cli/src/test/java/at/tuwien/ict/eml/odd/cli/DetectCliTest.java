@@ -0,0 +1,47 @@
+package at.tuwien.ict.eml.odd.cli;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class DetectCliTest {
+
+    @Test
+    public void parse_readsAllOptions() {
+        DetectCli.Options options = DetectCli.Options.parse(new String[]{
+                "--model", "m.tflite", "--labels", "l.txt", "--input-size", "320", "--quantized",
+                "--workers", "3", "--threads", "2", "--confidence", "0.3", "--rotation", "90",
+                "--contain", "--num-detections", "20", "--output", "out.csv", "images"});
+
+        assertEquals(new File("m.tflite"), options.model);
+        assertEquals(new File("l.txt"), options.labels);
+        assertEquals(320, options.inputSize);
+        assertTrue(options.quantized);
+        assertEquals(3, options.workers);
+        assertEquals(2, options.threads);
+        assertEquals(0.3f, options.confidence, 0.0f);
+        assertEquals(90, options.rotation);
+        assertTrue(options.contain);
+        assertEquals(20, options.numDetections);
+        assertEquals(new File("out.csv"), options.output);
+        assertEquals(new File("images"), options.images);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_missingDirectory_throws() {
+        DetectCli.Options.parse(new String[]{"--model", "m.tflite", "--labels", "l.txt", "--input-size", "300"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_missingValue_throws() {
+        DetectCli.Options.parse(new String[]{"images", "--model"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_invalidNumber_throws() {
+        DetectCli.Options.parse(new String[]{
+                "--model", "m.tflite", "--labels", "l.txt", "--input-size", "large", "images"});
+    }
+}
@@ -0,0 +1,211 @@
+package at.tuwien.ict.eml.odd.cli;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import at.tuwien.ict.eml.odd.detection.Detections;
+import at.tuwien.ict.eml.odd.detection.InferenceBackend;
+import at.tuwien.ict.eml.odd.env.ArgbImage;
+
+import static org.junit.Assert.*;
+
+public class DirectoryDetectorTest {
+    private static final int INPUT_SIZE = 64;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Reports a detection of the center quarter with the red value of the first pixel as score
+     * and a second one with a low score.
+     */
+    private static class FakeBackend implements InferenceBackend, Closeable {
+        static final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        boolean closed;
+
+        @Override
+        public void run(Object[] inputs, Map<Integer, Object> outputs) {
+            threads.add(Thread.currentThread());
+            int red = ((ByteBuffer) inputs[0]).get(0) & 0xFF;
+            float[][][] locations = (float[][][]) outputs.get(0);
+            locations[0][0] = new float[]{0.25f, 0.25f, 0.75f, 0.75f};
+            locations[0][1] = new float[]{0.0f, 0.0f, 0.1f, 0.1f};
+            ((float[][]) outputs.get(1))[0][0] = 2;
+            ((float[][]) outputs.get(2))[0][0] = red / 255f;
+            ((float[][]) outputs.get(2))[0][1] = 0.01f;
+            ((float[]) outputs.get(3))[0] = 2;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private File writeImage(String name, int width, int height, int red) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, red << 16);
+            }
+        }
+        File file = new File(folder.getRoot(), name);
+        assertTrue(ImageIO.write(image, "png", file));
+        return file;
+    }
+
+    @Test
+    public void listImages_filtersAndSortsByName() throws IOException {
+        writeImage("b.png", 8, 8, 0);
+        writeImage("a.PNG", 8, 8, 0);
+        Files.write(new File(folder.getRoot(), "notes.txt").toPath(), "x".getBytes(StandardCharsets.UTF_8));
+        assertTrue(folder.newFolder("c.png").isDirectory());
+
+        List<File> images = DirectoryDetector.listImages(folder.getRoot());
+
+        assertEquals(2, images.size());
+        assertEquals("a.PNG", images.get(0).getName());
+        assertEquals("b.png", images.get(1).getName());
+    }
+
+    @Test
+    public void detect_processesImagesInParallelInOrder() throws Exception {
+        File[] files = new File[24];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = writeImage(String.format("img%02d.png", i), 80 + i * 8, 60 + i * 4, 100 + i * 5);
+        }
+        FakeBackend.threads.clear();
+
+        List<DirectoryDetector.ImageResult> results;
+        try (DirectoryDetector detector = new DirectoryDetector(FakeBackend::new, 4, INPUT_SIZE, true, 10)) {
+            results = detector.detect(Arrays.asList(files), 0, false, 0.1f);
+        }
+
+        assertEquals(files.length, results.size());
+        for (int i = 0; i < files.length; i++) {
+            DirectoryDetector.ImageResult result = results.get(i);
+            int width = 80 + i * 8;
+            int height = 60 + i * 4;
+            assertSame(files[i], result.file);
+            assertNull(result.error);
+            assertEquals(width, result.width);
+            assertEquals(height, result.height);
+            // the low score detection is filtered
+            assertEquals(1, result.size());
+            assertEquals(2, result.getClassId(0));
+            assertEquals((100 + i * 5) / 255f, result.getScore(0), 1e-6f);
+            assertArrayEquals(new float[]{width * 0.25f, height * 0.25f, width * 0.75f, height * 0.75f},
+                    result.getBox(0), 0.01f);
+        }
+        assertTrue(FakeBackend.threads.size() <= 4);
+    }
+
+    @Test
+    public void detect_reportsUnreadableImages() throws Exception {
+        File broken = new File(folder.getRoot(), "broken.jpg");
+        Files.write(broken.toPath(), "no image".getBytes(StandardCharsets.UTF_8));
+        File image = writeImage("image.png", 32, 32, 200);
+
+        List<DirectoryDetector.ImageResult> results;
+        try (DirectoryDetector detector = new DirectoryDetector(FakeBackend::new, 2, INPUT_SIZE, true, 10)) {
+            results = detector.detect(Arrays.asList(broken, image), 0, true, 0.5f);
+        }
+
+        assertNotNull(results.get(0).error);
+        assertEquals(0, results.get(0).size());
+        assertNull(results.get(1).error);
+        assertEquals(1, results.get(1).size());
+    }
+
+    @Test
+    public void detect_streamsWithBoundedQueue() throws Exception {
+        File image = writeImage("image.png", 32, 32, 200);
+        int total = 40;
+        AtomicInteger issued = new AtomicInteger();
+        AtomicInteger delivered = new AtomicInteger();
+        AtomicInteger maxPending = new AtomicInteger();
+        Iterator<File> images = new Iterator<File>() {
+            @Override
+            public boolean hasNext() {
+                return issued.get() < total;
+            }
+
+            @Override
+            public File next() {
+                int pending = issued.incrementAndGet() - delivered.get();
+                maxPending.accumulateAndGet(pending, Math::max);
+                return image;
+            }
+        };
+
+        try (DirectoryDetector detector = new DirectoryDetector(FakeBackend::new, 2, INPUT_SIZE, true, 10)) {
+            detector.detect(images, 0, false, 0.1f, new DirectoryDetector.ImageListener() {
+                @Override
+                public void onDetections(File file, ArgbImage argb, long latencyNanos, Detections detections) {
+                    assertEquals(32, argb.getWidth());
+                    assertEquals(1, detections.size());
+                    delivered.incrementAndGet();
+                }
+
+                @Override
+                public void onError(File file, String error) {
+                    fail(error);
+                }
+            });
+        }
+
+        assertEquals(total, delivered.get());
+        // two queued images per worker and the one waiting for a free slot
+        assertTrue(maxPending.get() <= 5);
+    }
+
+    @Test
+    public void detect_rethrowsListenerFailure() throws Exception {
+        File image = writeImage("image.png", 32, 32, 200);
+        try (DirectoryDetector detector = new DirectoryDetector(FakeBackend::new, 2, INPUT_SIZE, true, 10)) {
+            detector.detect(Arrays.asList(image, image, image).iterator(), 0, false, 0.1f,
+                    new DirectoryDetector.ImageListener() {
+                        @Override
+                        public void onDetections(File file, ArgbImage argb, long latencyNanos, Detections detections) {
+                            throw new IllegalStateException("listener");
+                        }
+
+                        @Override
+                        public void onError(File file, String error) {
+                        }
+                    });
+            fail("Expected the failure of the listener");
+        } catch (IllegalStateException e) {
+            assertEquals("listener", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void close_closesBackends() throws Exception {
+        FakeBackend[] backends = new FakeBackend[2];
+        int[] created = new int[1];
+        DirectoryDetector detector = new DirectoryDetector(() -> backends[created[0]++] = new FakeBackend(),
+                2, INPUT_SIZE, false, 10);
+        detector.close();
+        assertTrue(backends[0].closed);
+        assertTrue(backends[1].closed);
+    }
+}
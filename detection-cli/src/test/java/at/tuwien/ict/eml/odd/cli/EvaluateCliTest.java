@@ -0,0 +1,119 @@
+package at.tuwien.ict.eml.odd.cli;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import at.tuwien.ict.eml.odd.detection.InferenceBackend;
+
+import static org.junit.Assert.*;
+
+public class EvaluateCliTest {
+    private static final int INPUT_SIZE = 64;
+    private static final List<String> LABELS = Arrays.asList("cpu", "gpu");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Always detects a cpu in the center quarter of the image.
+     */
+    private static final InferenceBackend CENTER_CPU = (inputs, outputs) -> {
+        ((float[][][]) outputs.get(0))[0][0] = new float[]{0.25f, 0.25f, 0.75f, 0.75f};
+        ((float[][]) outputs.get(1))[0][0] = 0;
+        ((float[][]) outputs.get(2))[0][0] = 0.9f;
+        ((float[]) outputs.get(3))[0] = 1;
+    };
+
+    private File writeImage(String name, String label) throws IOException {
+        File file = new File(folder.getRoot(), name + ".png");
+        assertTrue(ImageIO.write(new BufferedImage(80, 40, BufferedImage.TYPE_INT_RGB), "png", file));
+        if (label != null) {
+            String xml = "<annotation><object><name>" + label + "</name><difficult>0</difficult>"
+                    + "<bndbox><xmin>20</xmin><ymin>10</ymin><xmax>60</xmax><ymax>30</ymax></bndbox>"
+                    + "</object></annotation>";
+            Files.write(new File(folder.getRoot(), name + ".xml").toPath(), xml.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+
+    @Test
+    public void parse_readsModelsInOrder() {
+        EvaluateCli.Options options = EvaluateCli.Options.parse(new String[]{
+                "--model", "f.tflite", "--quantized-model", "q.tflite", "--labels", "l.txt",
+                "--input-size", "300", "--workers", "2", "--threads", "3", "--num-detections", "20",
+                "--output", "report.csv", "dataset"});
+
+        assertEquals(Arrays.asList(new File("f.tflite"), new File("q.tflite")), options.models);
+        assertEquals(Arrays.asList(false, true), options.quantized);
+        assertEquals(new File("l.txt"), options.labels);
+        assertEquals(300, options.inputSize);
+        assertEquals(2, options.workers);
+        assertEquals(3, options.threads);
+        assertEquals(20, options.numDetections);
+        assertEquals(new File("report.csv"), options.output);
+        assertEquals(new File("dataset"), options.dataset);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_requiresModel() {
+        EvaluateCli.Options.parse(new String[]{"--labels", "l.txt", "--input-size", "300", "dataset"});
+    }
+
+    @Test
+    public void listAnnotatedImages_skipsImagesWithoutAnnotation() throws IOException {
+        writeImage("a", "cpu");
+        writeImage("b", null);
+
+        List<File> images = EvaluateCli.listAnnotatedImages(folder.getRoot());
+
+        assertEquals(1, images.size());
+        assertEquals("a.png", images.get(0).getName());
+    }
+
+    @Test
+    public void evaluate_scoresDetectionsAgainstAnnotations() throws Exception {
+        List<File> images = Arrays.asList(writeImage("cpu", "cpu"), writeImage("gpu", "gpu"),
+                writeImage("broken", "npu"));
+        Map<String, Integer> labelIds = new HashMap<>();
+        labelIds.put("cpu", 0);
+        labelIds.put("gpu", 1);
+        EvaluateCli.Evaluation evaluation = new EvaluateCli.Evaluation("model.tflite", true, LABELS.size());
+
+        try (DirectoryDetector detector = new DirectoryDetector(() -> CENTER_CPU, 2, INPUT_SIZE, true, 10)) {
+            EvaluateCli.evaluate(detector, images, labelIds, evaluation);
+        }
+
+        assertEquals(2, evaluation.precision.getImageCount());
+        assertEquals(1, evaluation.failed.get());
+        assertEquals(2, evaluation.latency.getCount());
+        // one hit and one false positive with the same score for the cpu, the gpu is missed
+        assertEquals(0.5, evaluation.precision.getAveragePrecision(0), 1e-9);
+        assertEquals(0.0, evaluation.precision.getAveragePrecision(1), 0.0);
+        assertEquals(0.25, evaluation.precision.getMeanAveragePrecision(), 1e-9);
+        assertTrue(evaluation.seconds > 0);
+
+        StringWriter out = new StringWriter();
+        EvaluateCli.writeReport(Arrays.asList(evaluation), LABELS, out);
+        String[] lines = out.toString().split("\\R");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("model,quantized,class_id,label,ground_truth,ap,ap50,ap75,images,failed,"));
+        assertTrue(lines[1].startsWith("model.tflite,true,,all,2,0.2500,0.2500,0.2500,2,1,"));
+        assertTrue(lines[2].startsWith("model.tflite,true,0,cpu,1,0.5000,0.5000,0.5000,2,1,"));
+        assertTrue(lines[3].startsWith("model.tflite,true,1,gpu,1,0.0000,0.0000,0.0000,2,1,"));
+        assertTrue(EvaluateCli.summary(evaluation).startsWith("model.tflite (quantized): mAP 0.250"));
+    }
+}
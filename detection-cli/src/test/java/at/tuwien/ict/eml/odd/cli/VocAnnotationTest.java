@@ -0,0 +1,77 @@
+package at.tuwien.ict.eml.odd.cli;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class VocAnnotationTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Map<String, Integer> labelIds() {
+        Map<String, Integer> labelIds = new HashMap<>();
+        labelIds.put("cpu", 1);
+        labelIds.put("person", 4);
+        return labelIds;
+    }
+
+    private File write(String name, String xml) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void annotationFile_replacesExtension() {
+        assertEquals(new File("data", "img.01.xml"), VocAnnotation.annotationFile(new File("data", "img.01.jpg")));
+        assertEquals(new File("data", "img.xml"), VocAnnotation.annotationFile(new File("data", "img")));
+    }
+
+    @Test
+    public void read_parsesObjects() throws IOException {
+        File file = write("a.xml", "<annotation><filename>a.jpg</filename>"
+                + "<size><width>640</width><height>480</height><depth>3</depth></size>"
+                + "<object><name>person</name><difficult>0</difficult>"
+                + "<bndbox><xmin>10</xmin><ymin>20</ymin><xmax>110</xmax><ymax>220.5</ymax></bndbox></object>"
+                + "<object><name>cpu</name><difficult>1</difficult>"
+                + "<bndbox><xmin>1</xmin><ymin>2</ymin><xmax>3</xmax><ymax>4</ymax></bndbox></object>"
+                + "<object><name> cpu </name>"
+                + "<bndbox><xmin>5</xmin><ymin>6</ymin><xmax>7</xmax><ymax>8</ymax></bndbox></object>"
+                + "</annotation>");
+
+        VocAnnotation annotation = VocAnnotation.read(file, labelIds());
+
+        assertEquals(3, annotation.count);
+        assertArrayEquals(new int[]{4, 1, 1}, annotation.classIds);
+        assertArrayEquals(new boolean[]{false, true, false}, annotation.difficult);
+        assertArrayEquals(new float[]{10, 20, 110, 220.5f, 1, 2, 3, 4, 5, 6, 7, 8}, annotation.boxes, 0.0f);
+    }
+
+    @Test
+    public void read_acceptsImagesWithoutObjects() throws IOException {
+        assertEquals(0, VocAnnotation.read(write("empty.xml", "<annotation/>"), labelIds()).count);
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsUnknownLabel() throws IOException {
+        VocAnnotation.read(write("b.xml", "<annotation><object><name>gpu</name>"
+                + "<bndbox><xmin>1</xmin><ymin>2</ymin><xmax>3</xmax><ymax>4</ymax></bndbox></object></annotation>"),
+                labelIds());
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsDoctype() throws IOException {
+        VocAnnotation.read(write("c.xml", "<?xml version=\"1.0\"?><!DOCTYPE annotation ["
+                + "<!ENTITY x SYSTEM \"file:///etc/passwd\">]><annotation><object><name>&x;</name>"
+                + "</object></annotation>"), labelIds());
+    }
+}
@@ -0,0 +1,257 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+
+import at.tuwien.ict.eml.odd.env.ArgbImage;
+import at.tuwien.ict.eml.odd.env.ArgbModelInputSampler;
+import at.tuwien.ict.eml.odd.env.FrameTransform;
+
+/**
+ * Android independent detection of SSD models, either with the TFLite_Detection_PostProcess op or
+ * with raw outputs which are decoded with their anchors: the crop, preprocessing and output
+ * mapping of TFLiteObjectDetection on raw ARGB pixels.
+ *
+ * <p>Callers with their own image format fill the {@link #getInput(int) input} themselves,
+ * {@link #run() run} the model and {@link #decode(int) decode} the detections of every image.
+ * With a batch size above 1 the inputs and outputs hold several images for one batched inference.
+ *
+ * <p>The buffers are allocated once, the returned detections are only valid until the next call.
+ * An engine is not thread-safe, use one engine per thread.
+ */
+public class DetectionEngine implements Closeable {
+    // candidates of raw SSD models below the score are dropped before the suppression
+    private static final float RAW_SCORE_THRESHOLD = 0.1f;
+    // overlap above which a candidate is suppressed, the default of the Object Detection API SSD configs
+    private static final float RAW_IOU_THRESHOLD = 0.6f;
+
+    private final InferenceBackend backend;
+    private final int inputSize;
+    private final boolean isQuantized;
+    private final float mean;
+    private final float std;
+    private final ByteBuffer imgData;
+    // views of imgData with the input of every image of the batch
+    private final ByteBuffer[] imageData;
+    private final Object[] inputArray;
+    private final Map<Integer, Object> outputMap = new HashMap<>();
+    // outputs of shape [batch, numDetections, 4], [batch, numDetections], [batch, numDetections] and [batch],
+    // null for raw SSD models
+    private final float[][][] outputLocations;
+    private final float[][] outputClasses;
+    private final float[][] outputScores;
+    private final float[] numDetections;
+    // raw outputs of shape [batch, anchors, 4] and [batch, anchors, numScores], null otherwise
+    private final float[][][] rawBoxEncodings;
+    private final float[][][] rawClassLogits;
+    private final SsdAnchorDecoder decoder;
+    // detections of every image of the batch
+    private final Detections[] detections;
+    // only allocated by the ARGB methods
+    private InputPreprocessor preprocessor;
+    private ArgbModelInputSampler sampler;
+    private int[] inputPixels;
+    private final float[] imageToInput = new float[FrameTransform.VALUE_COUNT];
+    private final float[] inputToImage = new float[FrameTransform.VALUE_COUNT];
+
+    /**
+     * Engine for single images of a model with the TFLite_Detection_PostProcess op.
+     * @see #DetectionEngine(InferenceBackend, int, boolean, int, float, float, int, SsdAnchorDecoder.Anchors)
+     */
+    public DetectionEngine(
+            final InferenceBackend backend,
+            final int inputSize,
+            final boolean isQuantized,
+            final int numDetections,
+            final float mean,
+            final float std) {
+        this(backend, inputSize, isQuantized, numDetections, mean, std, 1, null);
+    }
+
+    /**
+     * @param backend Runs the model
+     * @param inputSize Input size of the model
+     * @param isQuantized True for uint8 models, otherwise the input gets normalized to float
+     * @param numDetections Number of detections in the outputs of the model
+     * @param mean Mean which is subtracted from the float input
+     * @param std Standard deviation the float input is divided by
+     * @param batchSize Number of images per inference
+     * @param anchors Anchors of a raw SSD model, or null for a model with the TFLite_Detection_PostProcess op
+     */
+    public DetectionEngine(
+            final InferenceBackend backend,
+            final int inputSize,
+            final boolean isQuantized,
+            final int numDetections,
+            final float mean,
+            final float std,
+            final int batchSize,
+            final SsdAnchorDecoder.Anchors anchors) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("At least one image per batch needed");
+        }
+        this.backend = backend;
+        this.inputSize = inputSize;
+        this.isQuantized = isQuantized;
+        this.mean = mean;
+        this.std = std;
+        final int bytesPerImage = inputSize * inputSize * 3 * (isQuantized ? 1 : 4);
+        imgData = ByteBuffer.allocateDirect(bytesPerImage * batchSize);
+        imgData.order(ByteOrder.nativeOrder());
+        imageData = new ByteBuffer[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            final ByteBuffer view = imgData.duplicate();
+            view.position(i * bytesPerImage);
+            view.limit((i + 1) * bytesPerImage);
+            imageData[i] = view.slice().order(ByteOrder.nativeOrder());
+        }
+        inputArray = new Object[]{imgData};
+
+        if (anchors == null) {
+            outputLocations = new float[batchSize][numDetections][4];
+            outputClasses = new float[batchSize][numDetections];
+            outputScores = new float[batchSize][numDetections];
+            this.numDetections = new float[batchSize];
+            rawBoxEncodings = null;
+            rawClassLogits = null;
+            decoder = null;
+            outputMap.put(0, outputLocations);
+            outputMap.put(1, outputClasses);
+            outputMap.put(2, outputScores);
+            outputMap.put(3, this.numDetections);
+        } else {
+            outputLocations = null;
+            outputClasses = null;
+            outputScores = null;
+            this.numDetections = null;
+            rawBoxEncodings = new float[batchSize][anchors.count][4];
+            rawClassLogits = new float[batchSize][anchors.count][anchors.numScores];
+            decoder = new SsdAnchorDecoder(anchors, RAW_SCORE_THRESHOLD, RAW_IOU_THRESHOLD, numDetections);
+            outputMap.put(anchors.boxesOutputIndex, rawBoxEncodings);
+            outputMap.put(anchors.scoresOutputIndex, rawClassLogits);
+        }
+        detections = new Detections[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            detections[i] = new Detections(numDetections);
+        }
+    }
+
+    /**
+     * Detects the objects of a whole image.
+     * @param image The image
+     * @param applyRotationToSrc Rotation of the image in degree, a multiple of 90
+     * @param cropModeContain When True, only the center square is detected, otherwise the whole image is scaled to the input
+     * @return The detections with boxes in pixels of the rotated image
+     */
+    public Detections detect(final ArgbImage image, final int applyRotationToSrc, final boolean cropModeContain) {
+        final boolean transpose = applyRotationToSrc % 180 != 0;
+        final int visibleWidth = transpose ? image.getHeight() : image.getWidth();
+        final int visibleHeight = transpose ? image.getWidth() : image.getHeight();
+        if (sampler == null) {
+            sampler = new ArgbModelInputSampler(inputSize);
+            inputPixels = new int[inputSize * inputSize];
+        }
+        sampler.configure(image.getWidth(), image.getHeight(), visibleWidth, visibleHeight,
+                applyRotationToSrc, cropModeContain);
+        sampler.sample(image, inputPixels);
+        final Detections detections = detectInput(inputPixels);
+
+        // map the boxes back from the model input, like the crop to screen mapping of the camera frames
+        FrameTransform.getTransformation(visibleWidth, visibleHeight, inputSize, inputSize, 0,
+                cropModeContain, imageToInput);
+        if (FrameTransform.invert(imageToInput, inputToImage)) {
+            detections.transform(inputToImage);
+        }
+        return detections;
+    }
+
+    /**
+     * Detects the objects of an image which already has the input size of the model, as the first
+     * image of the batch.
+     * @param argbPixels Row major ARGB pixels of the inputSize x inputSize image
+     * @return The detections with boxes in pixels of the model input
+     */
+    public Detections detectInput(final int[] argbPixels) {
+        if (preprocessor == null) {
+            preprocessor = InputPreprocessor.create(inputSize, isQuantized, mean, std);
+        }
+        preprocessor.process(argbPixels, imageData[0]);
+        run();
+        return decode(0);
+    }
+
+    /**
+     * @param image Index of the image in the batch
+     * @return Input buffer of the image, the callers write the preprocessed pixels into it
+     */
+    public ByteBuffer getInput(final int image) {
+        return imageData[image];
+    }
+
+    /**
+     * Runs the model on the filled inputs of all images.
+     */
+    public void run() {
+        run(backend);
+    }
+
+    /**
+     * Runs the inputs and outputs of this engine on another backend, e.g. to warm up interpreters.
+     */
+    public void run(final InferenceBackend backend) {
+        backend.run(inputArray, outputMap);
+    }
+
+    /**
+     * Maps the outputs of an image of the last run, or decodes them with the anchors of a raw SSD model.
+     * @param image Index of the image in the batch
+     * @return The detections with boxes in pixels of the model input
+     */
+    public Detections decode(final int image) {
+        final Detections result = detections[image];
+        if (decoder != null) {
+            decoder.decode(rawBoxEncodings[image], rawClassLogits[image], inputSize, result);
+        } else {
+            // the model reports how many of its detections are valid, it may be less than numDetections
+            result.setPostProcessOutputs(outputLocations, outputClasses, outputScores, image,
+                    (int) numDetections[image], inputSize);
+        }
+        return result;
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public int getBatchSize() {
+        return imageData.length;
+    }
+
+    /**
+     * Releases the preprocessor threads, the backend is closed by its owner.
+     */
+    @Override
+    public void close() {
+        if (preprocessor != null) {
+            preprocessor.close();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+import at.tuwien.ict.eml.odd.env.FrameTransform;
+
+/**
+ * Fixed capacity list of detections as primitive arrays, the Android independent counterpart of a
+ * list of Recognitions. Boxes are stored as [left, top, right, bottom] per detection.
+ * After construction no method allocates, so an instance is reused for every image.
+ */
+public final class Detections {
+    private final float[] boxes;
+    private final float[] scores;
+    private final int[] classIds;
+    private int count;
+
+    /**
+     * @param capacity Maximum number of detections
+     */
+    public Detections(final int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        boxes = new float[capacity * 4];
+        scores = new float[capacity];
+        classIds = new int[capacity];
+    }
+
+    public int capacity() {
+        return scores.length;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Appends a detection.
+     * @throws IllegalStateException If the capacity is exhausted
+     */
+    public void add(final int classId, final float score,
+                    final float left, final float top, final float right, final float bottom) {
+        if (count == scores.length) {
+            throw new IllegalStateException("Capacity of " + scores.length + " detections exhausted");
+        }
+        set(count++, classId, score, left, top, right, bottom);
+    }
+
+    private void set(final int i, final int classId, final float score,
+                     final float left, final float top, final float right, final float bottom) {
+        classIds[i] = classId;
+        scores[i] = score;
+        boxes[i * 4] = left;
+        boxes[i * 4 + 1] = top;
+        boxes[i * 4 + 2] = right;
+        boxes[i * 4 + 3] = bottom;
+    }
+
+    /**
+     * Replaces the detections with the outputs of one image of a TFLite_Detection_PostProcess model.
+     * @param locations Output locations of shape [batch, capacity, 4] with normalized [top, left, bottom, right]
+     * @param classes Output classes of shape [batch, capacity]
+     * @param scores Output scores of shape [batch, capacity]
+     * @param batchIndex Index of the image in the batch
+     * @param count Number of valid detections, clamped to the capacity
+     * @param scale Scale factor of the normalized locations, the model input size
+     */
+    public void setPostProcessOutputs(
+            final float[][][] locations,
+            final float[][] classes,
+            final float[][] scores,
+            final int batchIndex,
+            final int count,
+            final float scale) {
+        final int n = Math.max(0, Math.min(count, this.scores.length));
+        for (int i = 0; i < n; ++i) {
+            final float[] box = locations[batchIndex][i];
+            set(i, (int) classes[batchIndex][i], scores[batchIndex][i],
+                    box[1] * scale, box[0] * scale, box[3] * scale, box[2] * scale);
+        }
+        this.count = n;
+    }
+
+    /**
+     * Removes the detections with a score below the threshold, the order of the others is kept.
+     */
+    public void retainMinScore(final float minScore) {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (scores[i] >= minScore) {
+                if (kept != i) {
+                    set(kept, classIds[i], scores[i],
+                            boxes[i * 4], boxes[i * 4 + 1], boxes[i * 4 + 2], boxes[i * 4 + 3]);
+                }
+                kept++;
+            }
+        }
+        count = kept;
+    }
+
+    /**
+     * Maps all boxes with an affine transformation of {@link FrameTransform}.
+     */
+    public void transform(final float[] values) {
+        for (int i = 0; i < count; i++) {
+            FrameTransform.mapRect(values, boxes, i * 4);
+        }
+    }
+
+    public int getClassId(final int i) {
+        return classIds[checkIndex(i)];
+    }
+
+    public float getScore(final int i) {
+        return scores[checkIndex(i)];
+    }
+
+    public float getLeft(final int i) {
+        return boxes[checkIndex(i) * 4];
+    }
+
+    public float getTop(final int i) {
+        return boxes[checkIndex(i) * 4 + 1];
+    }
+
+    public float getRight(final int i) {
+        return boxes[checkIndex(i) * 4 + 2];
+    }
+
+    public float getBottom(final int i) {
+        return boxes[checkIndex(i) * 4 + 3];
+    }
+
+    /**
+     * Copies the box of a detection.
+     * @param out Receives [left, top, right, bottom] starting at the offset
+     */
+    public void getBox(final int i, final float[] out, final int offset) {
+        System.arraycopy(boxes, checkIndex(i) * 4, out, offset, 4);
+    }
+
+    private int checkIndex(final int i) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("Index " + i + " of " + count + " detections");
+        }
+        return i;
+    }
+}
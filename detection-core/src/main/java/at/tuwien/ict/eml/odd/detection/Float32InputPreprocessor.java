@@ -0,0 +1,68 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Preprocessor for float models. The normalization (value - mean) / std of all 256 possible
+ * channel values is precomputed, each row is unpacked into a float array and bulk copied
+ * into a FloatBuffer view of the input buffer.
+ */
+public class Float32InputPreprocessor extends RowParallelInputPreprocessor {
+    private final float[] normalization = new float[256];
+    private final FloatBuffer[] views;
+    private final float[][] rowBuffers;
+
+    public Float32InputPreprocessor(final int inputSize, final float mean, final float std, final int parallelism) {
+        super(inputSize, parallelism);
+        for (int i = 0; i < normalization.length; i++) {
+            normalization[i] = (i - mean) / std;
+        }
+        views = new FloatBuffer[stripes];
+        rowBuffers = new float[stripes][inputSize * 3];
+    }
+
+    @Override
+    protected void bind(final ByteBuffer dst) {
+        // the float view starts at the current position, so create it from a rewound duplicate
+        final ByteBuffer base = dst.duplicate().order(dst.order());
+        base.rewind();
+        for (int s = 0; s < stripes; s++) {
+            // every view has its own position
+            views[s] = base.asFloatBuffer();
+        }
+    }
+
+    @Override
+    protected void fillRows(final int stripe, final int rowStart, final int rowEnd, final int[] argbPixels) {
+        final FloatBuffer view = views[stripe];
+        final float[] row = rowBuffers[stripe];
+        final float[] lut = normalization;
+        view.position(rowStart * inputSize * 3);
+        for (int y = rowStart; y < rowEnd; ++y) {
+            int pixelIndex = y * inputSize;
+            for (int x = 0, i = 0; x < inputSize; ++x, i += 3) {
+                final int pixelValue = argbPixels[pixelIndex++];
+                row[i] = lut[(pixelValue >> 16) & 0xFF];
+                row[i + 1] = lut[(pixelValue >> 8) & 0xFF];
+                row[i + 2] = lut[pixelValue & 0xFF];
+            }
+            view.put(row);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+import java.util.Map;
+
+/**
+ * Runs the inference of a model, implemented by the caller on top of the TFLite Java Interpreter.
+ * The signature matches Interpreter#runForMultipleInputsOutputs, so an interpreter is passed as
+ * method reference.
+ */
+public interface InferenceBackend {
+    /**
+     * @param inputs Input buffers of the model
+     * @param outputs Output arrays of the model by output index, overwritten by the inference
+     */
+    void run(Object[] inputs, Map<Integer, Object> outputs);
+}
@@ -0,0 +1,58 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts the ARGB pixels of a square model input image into the input tensor of the model.
+ */
+public interface InputPreprocessor {
+    // inputs with at least this many pixels are filled in parallel row stripes
+    int PARALLEL_MIN_PIXELS = 512 * 512;
+    // maximum number of row stripes for the parallel fill
+    int MAX_PARALLELISM = 4;
+
+    /**
+     * Writes the pixels into the input buffer of the model, the buffer is rewound afterwards.
+     * @param argbPixels Row major ARGB pixels of the inputSize x inputSize image
+     * @param dst Direct input buffer of the model
+     */
+    void process(int[] argbPixels, ByteBuffer dst);
+
+    /**
+     * Releases the worker threads of the preprocessor.
+     */
+    void close();
+
+    /**
+     * Creates the default preprocessor for the given model configuration.
+     * @param inputSize Input size of the model
+     * @param isQuantized True for uint8 models, otherwise the input gets normalized to float
+     * @param mean Mean which is subtracted from the float input
+     * @param std Standard deviation the float input is divided by
+     */
+    static InputPreprocessor create(final int inputSize, final boolean isQuantized, final float mean, final float std) {
+        int parallelism = 1;
+        if (inputSize * inputSize >= PARALLEL_MIN_PIXELS) {
+            parallelism = Math.max(1, Math.min(MAX_PARALLELISM, Runtime.getRuntime().availableProcessors() / 2));
+        }
+        if (isQuantized) {
+            return new UInt8InputPreprocessor(inputSize, parallelism);
+        }
+        return new Float32InputPreprocessor(inputSize, mean, std, parallelism);
+    }
+}
@@ -0,0 +1,406 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+import java.util.Arrays;
+
+/**
+ * Non-maximum suppression on primitive box and score arrays, for the raw outputs of models
+ * without the TFLite_Detection_PostProcess op.
+ *
+ * <p>Boxes are stored as [left, top, right, bottom] in one float array. The candidates above the
+ * score threshold are bucketed into a uniform grid with roughly the mean box size as cell size,
+ * so a kept box is only compared with the candidates in the cells it covers instead of all of them.
+ * Greedy NMS visits the candidates in descending score order, soft-NMS repeatedly picks the
+ * highest decayed score out of an indexed max-heap.
+ *
+ * <p>All working memory is kept between calls and only grows, an instance is not thread-safe.
+ */
+public class NonMaxSuppression {
+    public enum Method {
+        /** Drops every box overlapping a kept box of the same class by more than the IoU threshold. */
+        GREEDY,
+        /** Scales the scores of overlapping boxes by 1 - IoU if the IoU is above the threshold. */
+        SOFT_LINEAR,
+        /** Scales the scores of all overlapping boxes by exp(-IoU^2 / sigma). */
+        SOFT_GAUSSIAN
+    }
+
+    // upper bound of the grid cells per axis, limits the cells a large box is entered into
+    private static final int MAX_GRID_SIZE = 64;
+
+    private final float iouThreshold;
+    private final float scoreThreshold;
+    private final int maxDetections;
+    private Method method = Method.GREEDY;
+    private boolean classAware = true;
+    private float sigma = 0.5f;
+
+    // per candidate: box index, area, current score and state
+    private int[] candidates = new int[0];
+    private float[] areas = new float[0];
+    private float[] currentScores = new float[0];
+    private boolean[] removed = new boolean[0];
+    private int[] visited = new int[0];
+    // score order of the greedy method as (score bits << 32 | candidate)
+    private long[] order = new long[0];
+    // indexed max-heap of the soft methods
+    private int[] heap = new int[0];
+    private int[] heapPosition = new int[0];
+    private int heapSize;
+    // grid cells as linked lists of candidates
+    private int[] cellHead = new int[0];
+    private int[] entryNext = new int[0];
+    private int[] entryCandidate = new int[0];
+    private int gridWidth;
+    private int gridHeight;
+    private float gridLeft;
+    private float gridTop;
+    private float cellWidth;
+    private float cellHeight;
+
+    /**
+     * @param iouThreshold Overlap above which a box is suppressed or its score decayed
+     * @param scoreThreshold Boxes below the score, also after a decay, are dropped
+     * @param maxDetections Maximum number of kept boxes
+     */
+    public NonMaxSuppression(final float iouThreshold, final float scoreThreshold, final int maxDetections) {
+        this.iouThreshold = iouThreshold;
+        this.scoreThreshold = scoreThreshold;
+        this.maxDetections = maxDetections;
+    }
+
+    public NonMaxSuppression setMethod(final Method method) {
+        this.method = method;
+        return this;
+    }
+
+    /**
+     * @param classAware If true only boxes of the same class suppress each other
+     */
+    public NonMaxSuppression setClassAware(final boolean classAware) {
+        this.classAware = classAware;
+        return this;
+    }
+
+    /**
+     * @param sigma Width of the gaussian decay of {@link Method#SOFT_GAUSSIAN}
+     */
+    public NonMaxSuppression setSigma(final float sigma) {
+        this.sigma = sigma;
+        return this;
+    }
+
+    /**
+     * Runs the suppression.
+     * @param boxes [left, top, right, bottom] per box
+     * @param scores Score per box
+     * @param classes Class per box, may be null for class-agnostic suppression
+     * @param count Number of boxes
+     * @param keep Receives the indices of the kept boxes by descending score, at least maxDetections long
+     * @param keptScores Receives the scores of the kept boxes, decayed for soft-NMS, may be null
+     * @return Number of kept boxes
+     */
+    public int run(
+            final float[] boxes,
+            final float[] scores,
+            final int[] classes,
+            final int count,
+            final int[] keep,
+            final float[] keptScores) {
+        final int n = collectCandidates(boxes, scores, count);
+        if (n == 0) {
+            return 0;
+        }
+        buildGrid(boxes, n);
+        final boolean perClass = classAware && classes != null;
+        return method == Method.GREEDY
+                ? greedy(boxes, classes, perClass, n, keep, keptScores)
+                : soft(boxes, classes, perClass, n, keep, keptScores);
+    }
+
+    private int collectCandidates(final float[] boxes, final float[] scores, final int count) {
+        ensureCandidateCapacity(count);
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            final float score = scores[i];
+            if (score < scoreThreshold || !(score > 0)) {
+                continue;
+            }
+            candidates[n] = i;
+            currentScores[n] = score;
+            areas[n] = Math.max(0, boxes[i * 4 + 2] - boxes[i * 4]) * Math.max(0, boxes[i * 4 + 3] - boxes[i * 4 + 1]);
+            removed[n] = false;
+            visited[n] = -1;
+            n++;
+        }
+        return n;
+    }
+
+    private int greedy(
+            final float[] boxes,
+            final int[] classes,
+            final boolean perClass,
+            final int n,
+            final int[] keep,
+            final float[] keptScores) {
+        // positive float bits sort like the floats, the candidate index breaks ties in input order
+        for (int c = 0; c < n; c++) {
+            order[c] = ((long) Float.floatToIntBits(currentScores[c]) << 32) | (Integer.MAX_VALUE - c);
+        }
+        Arrays.sort(order, 0, n);
+
+        int kept = 0;
+        for (int o = n - 1; o >= 0 && kept < maxDetections; o--) {
+            final int c = Integer.MAX_VALUE - (int) order[o];
+            if (removed[c]) {
+                continue;
+            }
+            removed[c] = true;
+            keep[kept] = candidates[c];
+            if (keptScores != null) {
+                keptScores[kept] = currentScores[c];
+            }
+            kept++;
+            suppressNeighbours(boxes, classes, perClass, c, kept);
+        }
+        return kept;
+    }
+
+    private int soft(
+            final float[] boxes,
+            final int[] classes,
+            final boolean perClass,
+            final int n,
+            final int[] keep,
+            final float[] keptScores) {
+        heapSize = n;
+        for (int c = 0; c < n; c++) {
+            heap[c] = c;
+            heapPosition[c] = c;
+        }
+        for (int i = n / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+
+        int kept = 0;
+        while (heapSize > 0 && kept < maxDetections) {
+            final int c = popMax();
+            if (currentScores[c] < scoreThreshold) {
+                // every remaining score is lower
+                break;
+            }
+            removed[c] = true;
+            keep[kept] = candidates[c];
+            if (keptScores != null) {
+                keptScores[kept] = currentScores[c];
+            }
+            kept++;
+            suppressNeighbours(boxes, classes, perClass, c, kept);
+        }
+        return kept;
+    }
+
+    /**
+     * Suppresses or decays the remaining candidates overlapping the kept candidate.
+     * @param stamp Unique per kept candidate, marks neighbours found in several cells
+     */
+    private void suppressNeighbours(
+            final float[] boxes, final int[] classes, final boolean perClass, final int kept, final int stamp) {
+        final int box = candidates[kept];
+        final float left = boxes[box * 4];
+        final float top = boxes[box * 4 + 1];
+        final float right = boxes[box * 4 + 2];
+        final float bottom = boxes[box * 4 + 3];
+        final int keptClass = perClass ? classes[box] : 0;
+
+        final int cellLeft = cellX(left);
+        final int cellRight = cellX(right);
+        final int cellTop = cellY(top);
+        final int cellBottom = cellY(bottom);
+        for (int cy = cellTop; cy <= cellBottom; cy++) {
+            for (int cx = cellLeft; cx <= cellRight; cx++) {
+                for (int e = cellHead[cy * gridWidth + cx]; e >= 0; e = entryNext[e]) {
+                    final int other = entryCandidate[e];
+                    if (removed[other] || visited[other] == stamp) {
+                        continue;
+                    }
+                    visited[other] = stamp;
+                    final int otherBox = candidates[other];
+                    if (perClass && classes[otherBox] != keptClass) {
+                        continue;
+                    }
+                    final float width = Math.min(right, boxes[otherBox * 4 + 2]) - Math.max(left, boxes[otherBox * 4]);
+                    final float height = Math.min(bottom, boxes[otherBox * 4 + 3]) - Math.max(top, boxes[otherBox * 4 + 1]);
+                    if (width <= 0 || height <= 0) {
+                        continue;
+                    }
+                    final float intersection = width * height;
+                    final float iou = intersection / (areas[kept] + areas[other] - intersection);
+                    decay(other, iou);
+                }
+            }
+        }
+    }
+
+    private void decay(final int candidate, final float iou) {
+        switch (method) {
+            case GREEDY:
+                if (iou > iouThreshold) {
+                    removed[candidate] = true;
+                }
+                return;
+            case SOFT_LINEAR:
+                if (iou > iouThreshold) {
+                    currentScores[candidate] *= 1 - iou;
+                    siftDown(heapPosition[candidate]);
+                }
+                return;
+            case SOFT_GAUSSIAN:
+            default:
+                currentScores[candidate] *= (float) Math.exp(-(iou * iou) / sigma);
+                siftDown(heapPosition[candidate]);
+        }
+    }
+
+    private void buildGrid(final float[] boxes, final int n) {
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        double sumWidth = 0;
+        double sumHeight = 0;
+        for (int c = 0; c < n; c++) {
+            final int box = candidates[c];
+            minX = Math.min(minX, boxes[box * 4]);
+            minY = Math.min(minY, boxes[box * 4 + 1]);
+            maxX = Math.max(maxX, boxes[box * 4 + 2]);
+            maxY = Math.max(maxY, boxes[box * 4 + 3]);
+            sumWidth += Math.max(0, boxes[box * 4 + 2] - boxes[box * 4]);
+            sumHeight += Math.max(0, boxes[box * 4 + 3] - boxes[box * 4 + 1]);
+        }
+        final float extentX = Math.max(maxX - minX, 1e-6f);
+        final float extentY = Math.max(maxY - minY, 1e-6f);
+        gridWidth = gridSize(extentX, (float) (sumWidth / n));
+        gridHeight = gridSize(extentY, (float) (sumHeight / n));
+        gridLeft = minX;
+        gridTop = minY;
+        cellWidth = extentX / gridWidth;
+        cellHeight = extentY / gridHeight;
+
+        final int cells = gridWidth * gridHeight;
+        if (cellHead.length < cells) {
+            cellHead = new int[cells];
+        }
+        Arrays.fill(cellHead, 0, cells, -1);
+
+        int entries = 0;
+        for (int c = n - 1; c >= 0; c--) {
+            final int box = candidates[c];
+            final int cellLeft = cellX(boxes[box * 4]);
+            final int cellRight = cellX(boxes[box * 4 + 2]);
+            final int cellTop = cellY(boxes[box * 4 + 1]);
+            final int cellBottom = cellY(boxes[box * 4 + 3]);
+            ensureEntryCapacity(entries + (cellRight - cellLeft + 1) * (cellBottom - cellTop + 1));
+            for (int cy = cellTop; cy <= cellBottom; cy++) {
+                for (int cx = cellLeft; cx <= cellRight; cx++) {
+                    final int cell = cy * gridWidth + cx;
+                    entryCandidate[entries] = c;
+                    entryNext[entries] = cellHead[cell];
+                    cellHead[cell] = entries++;
+                }
+            }
+        }
+    }
+
+    private static int gridSize(final float extent, final float meanSize) {
+        if (!(meanSize > 0)) {
+            return 1;
+        }
+        return Math.max(1, Math.min(MAX_GRID_SIZE, (int) (extent / meanSize)));
+    }
+
+    private int cellX(final float x) {
+        return Math.max(0, Math.min(gridWidth - 1, (int) ((x - gridLeft) / cellWidth)));
+    }
+
+    private int cellY(final float y) {
+        return Math.max(0, Math.min(gridHeight - 1, (int) ((y - gridTop) / cellHeight)));
+    }
+
+    private int popMax() {
+        final int max = heap[0];
+        heapSize--;
+        if (heapSize > 0) {
+            heap[0] = heap[heapSize];
+            heapPosition[heap[0]] = 0;
+            siftDown(0);
+        }
+        return max;
+    }
+
+    // scores only decrease, so an updated entry only moves down
+    private void siftDown(int position) {
+        final int candidate = heap[position];
+        final float score = currentScores[candidate];
+        while (true) {
+            final int left = 2 * position + 1;
+            if (left >= heapSize) {
+                break;
+            }
+            int child = left;
+            if (left + 1 < heapSize && higher(heap[left + 1], heap[left])) {
+                child = left + 1;
+            }
+            if (!higher(heap[child], candidate)) {
+                break;
+            }
+            heap[position] = heap[child];
+            heapPosition[heap[position]] = position;
+            position = child;
+        }
+        heap[position] = candidate;
+        heapPosition[candidate] = position;
+    }
+
+    // higher score first, the earlier candidate on ties like the greedy order
+    private boolean higher(final int a, final int b) {
+        return currentScores[a] > currentScores[b] || (currentScores[a] == currentScores[b] && a < b);
+    }
+
+    private void ensureCandidateCapacity(final int count) {
+        if (candidates.length >= count) {
+            return;
+        }
+        candidates = new int[count];
+        areas = new float[count];
+        currentScores = new float[count];
+        removed = new boolean[count];
+        visited = new int[count];
+        order = new long[count];
+        heap = new int[count];
+        heapPosition = new int[count];
+    }
+
+    private void ensureEntryCapacity(final int entries) {
+        if (entryNext.length >= entries) {
+            return;
+        }
+        final int capacity = Math.max(entries, entryNext.length * 2);
+        entryNext = Arrays.copyOf(entryNext, capacity);
+        entryCandidate = Arrays.copyOf(entryCandidate, capacity);
+    }
+}
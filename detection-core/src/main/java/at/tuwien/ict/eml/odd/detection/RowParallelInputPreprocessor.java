@@ -0,0 +1,75 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+import java.nio.ByteBuffer;
+
+import at.tuwien.ict.eml.odd.env.ParallelStripes;
+
+/**
+ * Base class for preprocessors which fill the input buffer row by row.
+ * With a parallelism greater than one the rows are split into stripes which are filled
+ * on a small worker pool, otherwise everything runs on the calling thread.
+ */
+abstract class RowParallelInputPreprocessor implements InputPreprocessor {
+    protected final int inputSize;
+    protected final int stripes;
+
+    private final ParallelStripes parallelStripes;
+    private final ParallelStripes.StripeTask stripeTask = this::fillStripe;
+    private ByteBuffer boundBuffer;
+    private int[] currentPixels;
+
+    RowParallelInputPreprocessor(final int inputSize, final int parallelism) {
+        this.inputSize = inputSize;
+        this.stripes = Math.max(1, Math.min(parallelism, inputSize));
+        parallelStripes = new ParallelStripes(stripes, "InputPreprocessor");
+    }
+
+    @Override
+    public final void process(final int[] argbPixels, final ByteBuffer dst) {
+        if (dst != boundBuffer) {
+            bind(dst);
+            boundBuffer = dst;
+        }
+        currentPixels = argbPixels;
+        try {
+            parallelStripes.run(inputSize, stripeTask);
+        } finally {
+            currentPixels = null;
+        }
+        dst.rewind();
+    }
+
+    private void fillStripe(final int stripe, final int rowStart, final int rowEnd) {
+        fillRows(stripe, rowStart, rowEnd, currentPixels);
+    }
+
+    @Override
+    public void close() {
+        parallelStripes.close();
+    }
+
+    /**
+     * Called when a new destination buffer is used, creates the per stripe views onto it.
+     */
+    protected abstract void bind(ByteBuffer dst);
+
+    /**
+     * Fills the rows [rowStart, rowEnd) of the input buffer using the view of the given stripe.
+     */
+    protected abstract void fillRows(int stripe, int rowStart, int rowEnd, int[] argbPixels);
+}
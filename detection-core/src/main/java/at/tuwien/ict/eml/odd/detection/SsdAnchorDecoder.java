@@ -0,0 +1,256 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Decodes the raw outputs of SSD models exported without the TFLite_Detection_PostProcess op,
+ * the box encodings relative to the anchors and the class logits of every anchor.
+ *
+ * <p>Per anchor only the class with the highest logit is considered. The logit is compared with the
+ * inverse sigmoid of the score threshold, so the sigmoid and the box decoding only run for the few
+ * anchors above it. The candidates are suppressed with a class-aware greedy {@link NonMaxSuppression}.
+ *
+ * <p>Every {@link DetectionEngine} has its own decoder, the buffers are reused for every image.
+ */
+public final class SsdAnchorDecoder {
+    /** Name of the associated file in the model metadata with the anchors. */
+    public static final String ANCHORS_FILE = "anchors.txt";
+
+    /**
+     * Anchors and output layout of a raw SSD model, shared by the decoders of all engines.
+     */
+    public static final class Anchors {
+        // [y_center, x_center, height, width] per anchor, normalized to the input size
+        final float[] anchors;
+        final int count;
+        // box coder scales of the Tensorflow Object Detection API
+        final float yScale;
+        final float xScale;
+        final float heightScale;
+        final float widthScale;
+        final int boxesOutputIndex;
+        final int scoresOutputIndex;
+        // number of values per anchor in the scores output
+        final int numScores;
+        // index of the first label in the scores, 1 if the model has a background class
+        final int labelOffset;
+
+        Anchors(
+                final float[] anchors,
+                final float[] scales,
+                final int boxesOutputIndex,
+                final int scoresOutputIndex,
+                final int numScores,
+                final int labelOffset) {
+            if (anchors.length % 4 != 0 || anchors.length == 0) {
+                throw new IllegalArgumentException("Anchors need four values each");
+            }
+            if (numScores <= labelOffset) {
+                throw new IllegalArgumentException("No class scores besides the background");
+            }
+            this.anchors = anchors;
+            this.count = anchors.length / 4;
+            this.yScale = scales[0];
+            this.xScale = scales[1];
+            this.heightScale = scales[2];
+            this.widthScale = scales[3];
+            this.boxesOutputIndex = boxesOutputIndex;
+            this.scoresOutputIndex = scoresOutputIndex;
+            this.numScores = numScores;
+            this.labelOffset = labelOffset;
+        }
+
+        /**
+         * Reads the anchors of a raw SSD model from the associated file {@value #ANCHORS_FILE} of
+         * its metadata. The file holds one anchor per line as "y_center x_center height width",
+         * separated by whitespace or commas. An optional line "scales y x height width" overrides
+         * the box coder scales 10, 10, 5, 5 of the Tensorflow Object Detection API.
+         * @param file Content of the anchors file, it gets closed
+         * @param firstOutputShape Shape of the first output tensor of the model
+         * @param secondOutputShape Shape of the second output tensor of the model
+         * @param numLabels Size of the labelmap, a model with one score more has a background class
+         */
+        public static Anchors read(
+                final InputStream file,
+                final int[] firstOutputShape,
+                final int[] secondOutputShape,
+                final int numLabels) throws IOException {
+            final float[] scales = {10.0f, 10.0f, 5.0f, 5.0f};
+            final float[] anchors;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(file, StandardCharsets.UTF_8))) {
+                anchors = parse(reader, scales);
+            }
+
+            // the boxes have four values per anchor, the scores one per class
+            final int boxesIndex = firstOutputShape[firstOutputShape.length - 1] == 4 ? 0 : 1;
+            final int[] boxesShape = boxesIndex == 0 ? firstOutputShape : secondOutputShape;
+            final int[] scoresShape = boxesIndex == 0 ? secondOutputShape : firstOutputShape;
+            if (boxesShape[boxesShape.length - 1] != 4
+                    || boxesShape[boxesShape.length - 2] * 4 != anchors.length
+                    || scoresShape[scoresShape.length - 2] * 4 != anchors.length) {
+                throw new IllegalArgumentException("Outputs " + Arrays.toString(boxesShape) + " and "
+                        + Arrays.toString(scoresShape) + " do not match " + anchors.length / 4 + " anchors");
+            }
+            final int numScores = scoresShape[scoresShape.length - 1];
+            return new Anchors(anchors, scales, boxesIndex, 1 - boxesIndex, numScores, numScores > numLabels ? 1 : 0);
+        }
+
+        static float[] parse(final BufferedReader reader, final float[] scales) throws IOException {
+            float[] anchors = new float[4 * 1024];
+            int n = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                final String[] values = line.split("[\\s,]+");
+                final boolean isScales = values[0].equals("scales");
+                final int first = isScales ? 1 : 0;
+                if (values.length - first != 4) {
+                    throw new IllegalArgumentException("Invalid anchor line: " + line);
+                }
+                if (isScales) {
+                    for (int i = 0; i < 4; i++) {
+                        scales[i] = Float.parseFloat(values[i + 1]);
+                    }
+                    continue;
+                }
+                if (n + 4 > anchors.length) {
+                    anchors = Arrays.copyOf(anchors, anchors.length * 2);
+                }
+                for (int i = 0; i < 4; i++) {
+                    anchors[n++] = Float.parseFloat(values[i]);
+                }
+            }
+            return Arrays.copyOf(anchors, n);
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    private final Anchors anchors;
+    private final float logitThreshold;
+    private final NonMaxSuppression nms;
+    // decoded candidates as [left, top, right, bottom], normalized
+    private final float[] boxes;
+    private final float[] scores;
+    private final int[] classes;
+    private final int[] keep;
+    private final float[] keptScores;
+
+    /**
+     * @param scoreThreshold Minimum sigmoid score of a candidate
+     * @param iouThreshold Overlap above which a candidate of the same class is suppressed
+     * @param maxDetections Maximum number of results
+     */
+    SsdAnchorDecoder(
+            final Anchors anchors,
+            final float scoreThreshold,
+            final float iouThreshold,
+            final int maxDetections) {
+        if (scoreThreshold <= 0 || scoreThreshold >= 1) {
+            throw new IllegalArgumentException("Score threshold must be between 0 and 1");
+        }
+        this.anchors = anchors;
+        // sigmoid(x) >= t  <=>  x >= log(t / (1 - t))
+        this.logitThreshold = (float) Math.log(scoreThreshold / (1 - scoreThreshold));
+        this.nms = new NonMaxSuppression(iouThreshold, scoreThreshold, maxDetections);
+        boxes = new float[anchors.count * 4];
+        scores = new float[anchors.count];
+        classes = new int[anchors.count];
+        keep = new int[maxDetections];
+        keptScores = new float[maxDetections];
+    }
+
+    /**
+     * Decodes the outputs of one image and replaces the detections with the kept candidates.
+     * @param boxEncodings Output of shape [anchors, 4] with [ty, tx, th, tw] per anchor
+     * @param classLogits Output of shape [anchors, numScores]
+     * @param scale Scale factor of the normalized boxes, the model input size
+     * @param detections Receives the detections, clamped to its capacity
+     */
+    void decode(
+            final float[][] boxEncodings,
+            final float[][] classLogits,
+            final float scale,
+            final Detections detections) {
+        final int count = decodeCandidates(boxEncodings, classLogits);
+        final int kept = Math.min(nms.run(boxes, scores, classes, count, keep, keptScores), detections.capacity());
+        detections.clear();
+        for (int i = 0; i < kept; i++) {
+            final int box = keep[i] * 4;
+            detections.add(classes[keep[i]], keptScores[i],
+                    boxes[box] * scale, boxes[box + 1] * scale, boxes[box + 2] * scale, boxes[box + 3] * scale);
+        }
+    }
+
+    /**
+     * @return Decoded candidates as normalized [left, top, right, bottom], valid until the next decode
+     */
+    float[] getCandidateBoxes() {
+        return boxes;
+    }
+
+    /**
+     * @return Number of candidates above the score threshold in the candidate buffers
+     */
+    int decodeCandidates(final float[][] boxEncodings, final float[][] classLogits) {
+        final float[] a = anchors.anchors;
+        final int firstLabel = anchors.labelOffset;
+        final int numScores = anchors.numScores;
+        int n = 0;
+        for (int i = 0; i < anchors.count; i++) {
+            final float[] logits = classLogits[i];
+            int best = firstLabel;
+            float bestLogit = logits[firstLabel];
+            for (int c = firstLabel + 1; c < numScores; c++) {
+                if (logits[c] > bestLogit) {
+                    bestLogit = logits[c];
+                    best = c;
+                }
+            }
+            if (bestLogit < logitThreshold) {
+                continue;
+            }
+
+            final float[] encoding = boxEncodings[i];
+            final float anchorHeight = a[i * 4 + 2];
+            final float anchorWidth = a[i * 4 + 3];
+            final float yCenter = encoding[0] / anchors.yScale * anchorHeight + a[i * 4];
+            final float xCenter = encoding[1] / anchors.xScale * anchorWidth + a[i * 4 + 1];
+            final float halfHeight = 0.5f * (float) Math.exp(encoding[2] / anchors.heightScale) * anchorHeight;
+            final float halfWidth = 0.5f * (float) Math.exp(encoding[3] / anchors.widthScale) * anchorWidth;
+            boxes[n * 4] = xCenter - halfWidth;
+            boxes[n * 4 + 1] = yCenter - halfHeight;
+            boxes[n * 4 + 2] = xCenter + halfWidth;
+            boxes[n * 4 + 3] = yCenter + halfHeight;
+            scores[n] = (float) (1 / (1 + Math.exp(-bestLogit)));
+            classes[n] = best - firstLabel;
+            n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,89 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.detection;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Preprocessor for quantized models. Each row is unpacked into a RGB byte array and bulk
+ * copied into the input buffer. Pixels which are already bytes in RGBA order skip the unpacking
+ * with {@link #processRgba(ByteBuffer, ByteBuffer)}.
+ */
+public class UInt8InputPreprocessor extends RowParallelInputPreprocessor {
+    private final ByteBuffer[] views;
+    private final byte[][] rowBuffers;
+    // rows of processRgba, which runs on the calling thread
+    private final byte[] rgbaRow;
+    private final byte[] rgbRow;
+
+    public UInt8InputPreprocessor(final int inputSize, final int parallelism) {
+        super(inputSize, parallelism);
+        views = new ByteBuffer[stripes];
+        rowBuffers = new byte[stripes][inputSize * 3];
+        rgbaRow = new byte[inputSize * 4];
+        rgbRow = new byte[inputSize * 3];
+    }
+
+    /**
+     * Drops the alpha channel of row major RGBA bytes, the memory layout of an ARGB_8888 bitmap,
+     * and writes the RGB bytes into the input buffer. The result is byte-exact the same as
+     * {@link #process(int[], ByteBuffer)} of the same pixels.
+     * @param rgba RGBA bytes of the inputSize x inputSize image from its position on, which get consumed
+     * @param dst Direct input buffer of the model, the buffer is rewound afterwards
+     * @throws IllegalArgumentException If rgba holds less than one image
+     */
+    public void processRgba(final ByteBuffer rgba, final ByteBuffer dst) {
+        if (rgba.remaining() < inputSize * rgbaRow.length) {
+            throw new IllegalArgumentException("RGBA buffer holds " + rgba.remaining() + " bytes, expected "
+                    + inputSize * rgbaRow.length);
+        }
+        dst.rewind();
+        for (int y = 0; y < inputSize; ++y) {
+            rgba.get(rgbaRow);
+            for (int i = 0, j = 0; i < rgbRow.length; i += 3, j += 4) {
+                rgbRow[i] = rgbaRow[j];
+                rgbRow[i + 1] = rgbaRow[j + 1];
+                rgbRow[i + 2] = rgbaRow[j + 2];
+            }
+            dst.put(rgbRow);
+        }
+        dst.rewind();
+    }
+
+    @Override
+    protected void bind(final ByteBuffer dst) {
+        for (int s = 0; s < stripes; s++) {
+            views[s] = dst.duplicate();
+        }
+    }
+
+    @Override
+    protected void fillRows(final int stripe, final int rowStart, final int rowEnd, final int[] argbPixels) {
+        final ByteBuffer view = views[stripe];
+        final byte[] row = rowBuffers[stripe];
+        view.position(rowStart * inputSize * 3);
+        for (int y = rowStart; y < rowEnd; ++y) {
+            int pixelIndex = y * inputSize;
+            for (int x = 0, i = 0; x < inputSize; ++x, i += 3) {
+                final int pixelValue = argbPixels[pixelIndex++];
+                row[i] = (byte) (pixelValue >> 16);
+                row[i + 1] = (byte) (pixelValue >> 8);
+                row[i + 2] = (byte) pixelValue;
+            }
+            view.put(row);
+        }
+    }
+}
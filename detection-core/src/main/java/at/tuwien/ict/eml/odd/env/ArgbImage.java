@@ -0,0 +1,75 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.env;
+
+/**
+ * Raw image as row major ARGB_8888 pixels, the Android independent counterpart of a Bitmap.
+ */
+public final class ArgbImage {
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+
+    /**
+     * Allocates a black image.
+     */
+    public ArgbImage(final int width, final int height) {
+        this(width, height, new int[checkedSize(width, height)]);
+    }
+
+    /**
+     * Wraps existing pixels without copying them.
+     * @param pixels Row major ARGB pixels, at least width * height long
+     */
+    public ArgbImage(final int width, final int height, final int[] pixels) {
+        if (pixels.length < checkedSize(width, height)) {
+            throw new IllegalArgumentException("Expected " + width + "x" + height + " pixels but got " + pixels.length);
+        }
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+
+    private static int checkedSize(final int width, final int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        }
+        return Math.multiplyExact(width, height);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return The backing pixels, changes are visible in the image
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    public int getPixel(final int x, final int y) {
+        return pixels[y * width + x];
+    }
+
+    public void setPixel(final int x, final int y, final int argb) {
+        pixels[y * width + x] = argb;
+    }
+}
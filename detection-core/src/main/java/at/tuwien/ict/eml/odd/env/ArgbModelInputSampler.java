@@ -0,0 +1,148 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.env;
+
+/**
+ * Crop, rotation and scaling of an ARGB image into the square model input image.
+ *
+ * <p>Produces the same geometry and the same nearest neighbour sampling as the YuvModelInputSampler
+ * of the camera frames, so images captured by the app are detected on the same model input
+ * on the device and off the device.
+ *
+ * <p>The source index of every destination column and row is precomputed whenever the geometry
+ * changes, so the per image work is a table lookup per pixel.
+ */
+public class ArgbModelInputSampler {
+    private final int dstSize;
+    private final int[] visibleSize = new int[2];
+
+    // current geometry
+    private int srcWidth = -1;
+    private int srcHeight = -1;
+    private int aspectDstWidth = -1;
+    private int aspectDstHeight = -1;
+    private int rotation = -1;
+    private boolean cropModeContain;
+
+    // pixel index offsets of every destination column and row, index = row + col
+    private final int[] colOffset;
+    private final int[] rowOffset;
+
+    /**
+     * @param dstSize Model input size in pixel.
+     */
+    public ArgbModelInputSampler(final int dstSize) {
+        if (dstSize <= 0) {
+            throw new IllegalArgumentException("Invalid model input size " + dstSize);
+        }
+        this.dstSize = dstSize;
+        colOffset = new int[dstSize];
+        rowOffset = new int[dstSize];
+    }
+
+    /**
+     * Sets the geometry of the crop, the tables are only recalculated if a value changed.
+     * @param srcWidth Width of the source image.
+     * @param srcHeight Height of the source image.
+     * @param aspectDstWidth Width of the visible area.
+     * @param aspectDstHeight Height of the visible area.
+     * @param applyRotationToSrc Rotation of the source image in degree, a multiple of 90.
+     * @param cropModeContain When True, crop with a 1:1 aspect ratio, if not clinch the whole visible area to the dstSize.
+     */
+    public void configure(
+            final int srcWidth,
+            final int srcHeight,
+            final int aspectDstWidth,
+            final int aspectDstHeight,
+            final int applyRotationToSrc,
+            final boolean cropModeContain) {
+        if (applyRotationToSrc % 90 != 0) {
+            throw new IllegalArgumentException("Rotation has to be a multiple of 90 but is " + applyRotationToSrc);
+        }
+        final int rotation = ((applyRotationToSrc % 360) + 360) % 360;
+        if (srcWidth == this.srcWidth && srcHeight == this.srcHeight
+                && aspectDstWidth == this.aspectDstWidth && aspectDstHeight == this.aspectDstHeight
+                && rotation == this.rotation && cropModeContain == this.cropModeContain) {
+            return;
+        }
+        this.srcWidth = srcWidth;
+        this.srcHeight = srcHeight;
+        this.aspectDstWidth = aspectDstWidth;
+        this.aspectDstHeight = aspectDstHeight;
+        this.rotation = rotation;
+        this.cropModeContain = cropModeContain;
+
+        FrameTransform.getVisibleFrameSize(
+                srcWidth, srcHeight, aspectDstWidth, aspectDstHeight, rotation, visibleSize);
+        final int minSquare = Math.min(visibleSize[0], visibleSize[1]);
+        final int newWidth = cropModeContain ? minSquare : visibleSize[0];
+        final int newHeight = cropModeContain ? minSquare : visibleSize[1];
+
+        final boolean transpose = rotation == 90 || rotation == 270;
+        final int rotatedWidth = transpose ? srcHeight : srcWidth;
+        final int rotatedHeight = transpose ? srcWidth : srcHeight;
+        final int newX = Math.abs(newWidth - rotatedWidth) / 2;
+        final int newY = Math.abs(newHeight - rotatedHeight) / 2;
+
+        for (int d = 0; d < dstSize; d++) {
+            // pixel centers of the destination in the rotated frame
+            final int rx = Math.min(rotatedWidth - 1, newX + (int) ((d + 0.5f) * newWidth / dstSize));
+            final int ry = Math.min(rotatedHeight - 1, newY + (int) ((d + 0.5f) * newHeight / dstSize));
+            // undo the rotation, columns map to source x (or y when transposed), rows to the other axis
+            switch (rotation) {
+                case 90:
+                    colOffset[d] = (srcHeight - 1 - rx) * srcWidth;
+                    rowOffset[d] = ry;
+                    break;
+                case 180:
+                    colOffset[d] = srcWidth - 1 - rx;
+                    rowOffset[d] = (srcHeight - 1 - ry) * srcWidth;
+                    break;
+                case 270:
+                    colOffset[d] = rx * srcWidth;
+                    rowOffset[d] = srcWidth - 1 - ry;
+                    break;
+                default:
+                    colOffset[d] = rx;
+                    rowOffset[d] = ry * srcWidth;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Samples the configured crop out of the image.
+     * @param src The image, its size has to match the configured source size
+     * @param dst Receives the row major ARGB pixels of the dstSize x dstSize model input image
+     */
+    public void sample(final ArgbImage src, final int[] dst) {
+        if (src.getWidth() != srcWidth || src.getHeight() != srcHeight) {
+            throw new IllegalStateException("Sampler configured for " + srcWidth + "x" + srcHeight
+                    + " but got a " + src.getWidth() + "x" + src.getHeight() + " image");
+        }
+        final int[] pixels = src.getPixels();
+        for (int dy = 0, i = 0; dy < dstSize; dy++) {
+            final int row = rowOffset[dy];
+            for (int dx = 0; dx < dstSize; dx++, i++) {
+                dst[i] = pixels[row + colOffset[dx]];
+            }
+        }
+    }
+
+    public int getDstSize() {
+        return dstSize;
+    }
+}
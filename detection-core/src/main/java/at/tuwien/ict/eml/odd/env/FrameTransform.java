@@ -0,0 +1,187 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.env;
+
+/**
+ * Android independent geometry of the crop between camera frame, visible screen area and model input.
+ *
+ * <p>Transformations are affine 3x3 matrices stored row major in the value order of
+ * android.graphics.Matrix#getValues, so they can be handed to a Matrix with setValues.
+ */
+public final class FrameTransform {
+    public static final int SCALE_X = 0;
+    public static final int SKEW_X = 1;
+    public static final int TRANS_X = 2;
+    public static final int SKEW_Y = 3;
+    public static final int SCALE_Y = 4;
+    public static final int TRANS_Y = 5;
+    public static final int VALUE_COUNT = 9;
+
+    // same tolerance as the sine and cosine snapping of android.graphics.Matrix
+    private static final float NEARLY_ZERO = 1.0f / (1 << 12);
+
+    private FrameTransform() {
+    }
+
+    /**
+     * Calculates the part of the visible screen area of an image with size relative to the source image.
+     * @param srcWidth Width of the source image.
+     * @param srcHeight Height of the source image.
+     * @param aspectDstWidth Width of the screen.
+     * @param aspectDstHeight Height of the screen.
+     * @param applyRotationToSrc Rotation information of the src image.
+     * @param out Receives the visible width and height, at least 2 long
+     */
+    public static void getVisibleFrameSize(
+            final int srcWidth,
+            final int srcHeight,
+            final int aspectDstWidth,
+            final int aspectDstHeight,
+            final int applyRotationToSrc,
+            final int[] out) {
+        final boolean transpose = (Math.abs(applyRotationToSrc) + 90) % 180 == 0;
+        final float tmpSrcWidth = transpose ? srcHeight : srcWidth;
+        final float tmpSrcHeight = transpose ? srcWidth : srcHeight;
+
+        final float scaleWidth = (float) aspectDstWidth / tmpSrcWidth;
+        final float scaleHeight = (float) aspectDstHeight / tmpSrcHeight;
+
+        if (scaleWidth >= scaleHeight) {
+            out[0] = (int) tmpSrcWidth;
+            out[1] = (int) (tmpSrcWidth * (float) aspectDstHeight / (float) aspectDstWidth);
+        } else {
+            out[0] = (int) (tmpSrcHeight * (float) aspectDstWidth / (float) aspectDstHeight);
+            out[1] = (int) tmpSrcHeight;
+        }
+    }
+
+    /**
+     * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+     * Modifications Copyright 2021 CDL EML, TU Wien, Austria
+     *
+     * Calculates the transformation of an image with [srcWidth x srcHeight] and the rotation
+     * applyRotation to [dstWidth x dstHeight], see ImageUtils.getTransformationMatrix.
+     * @param containDstAspect When True, crop with a 1:1 aspect ratio, if not clinch the image
+     * @param out Receives the 9 matrix values
+     */
+    public static void getTransformation(
+            final int srcWidth,
+            final int srcHeight,
+            final int dstWidth,
+            final int dstHeight,
+            final int applyRotation,
+            final boolean containDstAspect,
+            final float[] out) {
+        float cos = 1.0f;
+        float sin = 0.0f;
+        if (applyRotation != 0) {
+            final double radians = Math.toRadians(applyRotation);
+            cos = snapToZero((float) Math.cos(radians));
+            sin = snapToZero((float) Math.sin(radians));
+        }
+
+        final boolean transpose = (Math.abs(applyRotation) + 90) % 180 == 0;
+        final int inWidth = transpose ? srcHeight : srcWidth;
+        final int inHeight = transpose ? srcWidth : srcHeight;
+
+        // Apply scaling if necessary.
+        float scaleX = 1.0f;
+        float scaleY = 1.0f;
+        if (inWidth != dstWidth || inHeight != dstHeight) {
+            scaleX = dstWidth / (float) inWidth;
+            scaleY = dstHeight / (float) inHeight;
+            if (containDstAspect) {
+                // Scale by minimum factor so that dst is filled completely while
+                // maintaining the aspect ratio. Some image may fall off the edge.
+                scaleX = scaleY = Math.max(scaleX, scaleY);
+            }
+        }
+
+        // translate the source center to the origin, rotate, scale and translate to the destination center
+        final float centerX = -srcWidth / 2.0f;
+        final float centerY = -srcHeight / 2.0f;
+        out[SCALE_X] = scaleX * cos;
+        out[SKEW_X] = -scaleX * sin;
+        out[TRANS_X] = scaleX * (cos * centerX - sin * centerY) + dstWidth / 2.0f;
+        out[SKEW_Y] = scaleY * sin;
+        out[SCALE_Y] = scaleY * cos;
+        out[TRANS_Y] = scaleY * (sin * centerX + cos * centerY) + dstHeight / 2.0f;
+        out[6] = 0.0f;
+        out[7] = 0.0f;
+        out[8] = 1.0f;
+    }
+
+    /**
+     * Inverts an affine transformation.
+     * @param values The 9 matrix values
+     * @param out Receives the inverted values, may be the same array as values
+     * @return False if the transformation is not invertible, out is unchanged then
+     */
+    public static boolean invert(final float[] values, final float[] out) {
+        final float a = values[SCALE_X];
+        final float b = values[SKEW_X];
+        final float c = values[TRANS_X];
+        final float d = values[SKEW_Y];
+        final float e = values[SCALE_Y];
+        final float f = values[TRANS_Y];
+        final float determinant = a * e - b * d;
+        if (determinant == 0.0f || Float.isNaN(determinant)) {
+            return false;
+        }
+        final float inverse = 1.0f / determinant;
+        out[SCALE_X] = e * inverse;
+        out[SKEW_X] = -b * inverse;
+        out[TRANS_X] = (b * f - c * e) * inverse;
+        out[SKEW_Y] = -d * inverse;
+        out[SCALE_Y] = a * inverse;
+        out[TRANS_Y] = (c * d - a * f) * inverse;
+        out[6] = 0.0f;
+        out[7] = 0.0f;
+        out[8] = 1.0f;
+        return true;
+    }
+
+    /**
+     * Maps a box in place to the bounding box of its transformed corners, like Matrix.mapRect.
+     * @param values The 9 matrix values of an affine transformation
+     * @param boxes Sorted [left, top, right, bottom] per box
+     * @param offset Index of the left coordinate of the box
+     */
+    public static void mapRect(final float[] values, final float[] boxes, final int offset) {
+        final float left = boxes[offset];
+        final float top = boxes[offset + 1];
+        final float right = boxes[offset + 2];
+        final float bottom = boxes[offset + 3];
+        final float scaleX = values[SCALE_X];
+        final float skewX = values[SKEW_X];
+        final float skewY = values[SKEW_Y];
+        final float scaleY = values[SCALE_Y];
+
+        // the extent of an affine map only depends on the signs of the linear part
+        final float x0 = scaleX * (scaleX >= 0 ? left : right) + skewX * (skewX >= 0 ? top : bottom);
+        final float x1 = scaleX * (scaleX >= 0 ? right : left) + skewX * (skewX >= 0 ? bottom : top);
+        final float y0 = skewY * (skewY >= 0 ? left : right) + scaleY * (scaleY >= 0 ? top : bottom);
+        final float y1 = skewY * (skewY >= 0 ? right : left) + scaleY * (scaleY >= 0 ? bottom : top);
+        boxes[offset] = x0 + values[TRANS_X];
+        boxes[offset + 1] = y0 + values[TRANS_Y];
+        boxes[offset + 2] = x1 + values[TRANS_X];
+        boxes[offset + 3] = y1 + values[TRANS_Y];
+    }
+
+    private static float snapToZero(final float value) {
+        return Math.abs(value) <= NEARLY_ZERO ? 0.0f : value;
+    }
+}
@@ -0,0 +1,136 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.env;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Splits a row range into stripes and processes them on persistent worker threads.
+ * The last stripe runs on the calling thread, {@link #run} returns when all stripes are done.
+ * Running a job does not allocate, the workers are woken up through semaphores.
+ * Not thread safe, only one job can run at a time.
+ */
+public class ParallelStripes {
+    /**
+     * Work of a single stripe.
+     */
+    public interface StripeTask {
+        /**
+         * @param stripe Index of the stripe [0, stripes)
+         * @param rowStart First row of the stripe
+         * @param rowEnd Row after the last row of the stripe
+         */
+        void run(int stripe, int rowStart, int rowEnd);
+    }
+
+    private final int stripes;
+    private final Thread[] workers;
+    private final Semaphore[] start;
+    private final Semaphore done = new Semaphore(0);
+
+    private volatile StripeTask task;
+    private volatile int rows;
+    private volatile Throwable failure;
+    private volatile boolean closed;
+
+    /**
+     * @param stripes Number of stripes, stripes - 1 worker threads get started
+     * @param name Name of the worker threads
+     */
+    public ParallelStripes(final int stripes, final String name) {
+        this.stripes = Math.max(1, stripes);
+        workers = new Thread[this.stripes - 1];
+        start = new Semaphore[this.stripes - 1];
+        for (int i = 0; i < workers.length; i++) {
+            final int stripe = i;
+            start[i] = new Semaphore(0);
+            workers[i] = new Thread(() -> workerLoop(stripe), name + "-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    public int getStripes() {
+        return stripes;
+    }
+
+    /**
+     * Processes the rows [0, rows) in stripes and blocks until all of them are finished.
+     * @param rows Number of rows
+     * @param task Work of a stripe
+     */
+    public void run(final int rows, final StripeTask task) {
+        if (closed) {
+            throw new IllegalStateException("ParallelStripes already closed");
+        }
+        if (workers.length == 0) {
+            task.run(0, 0, rows);
+            return;
+        }
+        this.rows = rows;
+        this.task = task;
+        this.failure = null;
+        for (Semaphore s : start) {
+            s.release();
+        }
+        try {
+            runStripe(stripes - 1);
+        } finally {
+            done.acquireUninterruptibly(workers.length);
+            this.task = null;
+        }
+        final Throwable workerFailure = failure;
+        if (workerFailure != null) {
+            throw new RuntimeException(workerFailure);
+        }
+    }
+
+    private void runStripe(final int stripe) {
+        final int rowStart = (int) ((long) rows * stripe / stripes);
+        final int rowEnd = (int) ((long) rows * (stripe + 1) / stripes);
+        task.run(stripe, rowStart, rowEnd);
+    }
+
+    private void workerLoop(final int stripe) {
+        while (true) {
+            try {
+                start[stripe].acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (closed) {
+                return;
+            }
+            try {
+                runStripe(stripe);
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                done.release();
+            }
+        }
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void close() {
+        closed = true;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/* Copyright 2021 CDL EML, TU Wien, Austria
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package at.tuwien.ict.eml.odd.evaluation;
+
+import at.tuwien.ict.eml.odd.detection.Detections;
+
+/**
+ * COCO style mean average precision which is accumulated image by image. The detections of an
+ * image are matched to its ground truth right away and only counted into per class score
+ * histograms, so the memory does not grow with the size of the dataset and no detections are kept.
+ * Detections are ranked by their score bin instead of their exact score, which changes the AP by
+ * less than the bin width. Adding images is thread safe.
+ */
+public class MeanAveragePrecision {
+    /** IoU thresholds 0.50:0.05:0.95 of the COCO metric. */
+    public static final float[] COCO_IOU_THRESHOLDS =
+            {0.50f, 0.55f, 0.60f, 0.65f, 0.70f, 0.75f, 0.80f, 0.85f, 0.90f, 0.95f};
+    public static final int DEFAULT_SCORE_BINS = 1000;
+    // precision is interpolated at the recalls 0:0.01:1 like in the COCO api
+    private static final int RECALL_POINTS = 101;
+
+    private final int numClasses;
+    private final float[] iouThresholds;
+    private final int scoreBins;
+    // [class][threshold][score bin], allocated when a class shows up first
+    private final long[][][] truePositives;
+    private final long[][][] falsePositives;
+    // ground truth per class which is not marked as difficult
+    private final long[] groundTruths;
+    private long images;
+
+    // scratch of addImage, grown on demand
+    private int[] order = new int[0];
+    private boolean[] matched = new boolean[0];
+    private final float[] box = new float[4];
+
+    /**
+     * Evaluates at the COCO IoU thresholds with {@link #DEFAULT_SCORE_BINS} score bins.
+     * @param numClasses Number of labels of the model
+     */
+    public MeanAveragePrecision(final int numClasses) {
+        this(numClasses, COCO_IOU_THRESHOLDS, DEFAULT_SCORE_BINS);
+    }
+
+    /**
+     * @param numClasses Number of labels of the model
+     * @param iouThresholds Minimum IoU of a detection with its ground truth to be a true positive
+     * @param scoreBins Number of bins the scores in [0, 1] are ranked by
+     */
+    public MeanAveragePrecision(final int numClasses, final float[] iouThresholds, final int scoreBins) {
+        if (numClasses <= 0 || iouThresholds.length == 0 || scoreBins <= 0) {
+            throw new IllegalArgumentException("Classes, thresholds and score bins are required");
+        }
+        this.numClasses = numClasses;
+        this.iouThresholds = iouThresholds.clone();
+        this.scoreBins = scoreBins;
+        truePositives = new long[numClasses][][];
+        falsePositives = new long[numClasses][][];
+        groundTruths = new long[numClasses];
+    }
+
+    static float iou(final float[] a, final int aOffset, final float[] b, final int bOffset) {
+        final float width = Math.min(a[aOffset + 2], b[bOffset + 2]) - Math.max(a[aOffset], b[bOffset]);
+        final float height = Math.min(a[aOffset + 3], b[bOffset + 3]) - Math.max(a[aOffset + 1], b[bOffset + 1]);
+        if (width <= 0 || height <= 0) {
+            return 0;
+        }
+        final float intersection = width * height;
+        final float union = (a[aOffset + 2] - a[aOffset]) * (a[aOffset + 3] - a[aOffset + 1])
+                + (b[bOffset + 2] - b[bOffset]) * (b[bOffset + 3] - b[bOffset + 1]) - intersection;
+        return union > 0 ? intersection / union : 0;
+    }
+
+    private int scoreBin(final float score) {
+        return Math.max(0, Math.min(scoreBins - 1, (int) (score * scoreBins)));
+    }
+
+    private void checkClass(final int classId) {
+        if (classId < 0 || classId >= numClasses) {
+            throw new IllegalArgumentException("Class " + classId + " is not in the labelmap");
+        }
+    }
+
+    private void allocate(final int classId) {
+        if (truePositives[classId] == null) {
+            truePositives[classId] = new long[iouThresholds.length][scoreBins];
+            falsePositives[classId] = new long[iouThresholds.length][scoreBins];
+        }
+    }
+
+    /**
+     * Matches the detections of one image to its ground truth and counts them. At every IoU
+     * threshold the detections are matched greedily by descending score to the unmatched ground
+     * truth of their class with the highest IoU. Detections matched to difficult ground truth are
+     * neither counted as true nor false positive.
+     * @param boxes Ground truth boxes with [left, top, right, bottom] in the coordinates of the detections
+     * @param classIds Classes of the ground truth
+     * @param difficult Difficult flags of the ground truth, or null if there are none
+     * @param count Number of ground truth objects
+     * @param detections Detections of the image
+     */
+    public synchronized void addImage(
+            final float[] boxes,
+            final int[] classIds,
+            final boolean[] difficult,
+            final int count,
+            final Detections detections) {
+        for (int g = 0; g < count; g++) {
+            checkClass(classIds[g]);
+        }
+        final int n = detections.size();
+        for (int d = 0; d < n; d++) {
+            checkClass(detections.getClassId(d));
+        }
+        if (order.length < n) {
+            order = new int[n];
+        }
+        if (matched.length < count) {
+            matched = new boolean[count];
+        }
+
+        // detections by descending score, insertion sort keeps equal scores in their order
+        for (int d = 0; d < n; d++) {
+            int j = d;
+            while (j > 0 && detections.getScore(order[j - 1]) < detections.getScore(d)) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = d;
+        }
+
+        for (int t = 0; t < iouThresholds.length; t++) {
+            final float threshold = iouThresholds[t];
+            for (int g = 0; g < count; g++) {
+                matched[g] = false;
+            }
+            for (int i = 0; i < n; i++) {
+                final int d = order[i];
+                final int classId = detections.getClassId(d);
+                detections.getBox(d, box, 0);
+                // ground truth which is not difficult is preferred, like crowds in the COCO api
+                int best = match(box, classId, boxes, classIds, difficult, count, threshold, false);
+                if (best < 0 && difficult != null) {
+                    best = match(box, classId, boxes, classIds, difficult, count, threshold, true);
+                }
+                allocate(classId);
+                final int bin = scoreBin(detections.getScore(d));
+                if (best < 0) {
+                    falsePositives[classId][t][bin]++;
+                } else {
+                    matched[best] = true;
+                    if (difficult == null || !difficult[best]) {
+                        truePositives[classId][t][bin]++;
+                    }
+                }
+            }
+        }
+
+        for (int g = 0; g < count; g++) {
+            if (difficult == null || !difficult[g]) {
+                groundTruths[classIds[g]]++;
+            }
+        }
+        images++;
+    }
+
+    private int match(
+            final float[] box,
+            final int classId,
+            final float[] boxes,
+            final int[] classIds,
+            final boolean[] difficult,
+            final int count,
+            final float threshold,
+            final boolean matchDifficult) {
+        int best = -1;
+        float bestIou = threshold;
+        for (int g = 0; g < count; g++) {
+            if (matched[g] || classIds[g] != classId || (difficult != null && difficult[g] != matchDifficult)) {
+                continue;
+            }
+            final float iou = iou(box, 0, boxes, g * 4);
+            if (iou >= bestIou) {
+                bestIou = iou;
+                best = g;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return The 101 point interpolated AP of the class at one IoU threshold, NaN if the class has
+     * no ground truth
+     */
+    public synchronized double getAveragePrecision(final int classId, final int thresholdIndex) {
+        checkClass(classId);
+        final long positives = groundTruths[classId];
+        if (positives == 0) {
+            return Double.NaN;
+        }
+        if (truePositives[classId] == null) {
+            return 0;
+        }
+        final long[] tp = truePositives[classId][thresholdIndex];
+        final long[] fp = falsePositives[classId][thresholdIndex];
+
+        // one point of the precision recall curve per non empty bin, from the highest score down
+        final double[] recall = new double[scoreBins];
+        final double[] precision = new double[scoreBins];
+        int points = 0;
+        long cumulativeTp = 0;
+        long cumulativeFp = 0;
+        for (int bin = scoreBins - 1; bin >= 0; bin--) {
+            if (tp[bin] == 0 && fp[bin] == 0) {
+                continue;
+            }
+            cumulativeTp += tp[bin];
+            cumulativeFp += fp[bin];
+            recall[points] = (double) cumulativeTp / positives;
+            precision[points] = (double) cumulativeTp / (cumulativeTp + cumulativeFp);
+            points++;
+        }
+        // precision envelope, the best precision at this or any higher recall
+        for (int i = points - 2; i >= 0; i--) {
+            precision[i] = Math.max(precision[i], precision[i + 1]);
+        }
+
+        double sum = 0;
+        int point = 0;
+        for (int r = 0; r < RECALL_POINTS; r++) {
+            final double recallThreshold = (double) r / (RECALL_POINTS - 1);
+            while (point < points && recall[point] < recallThreshold) {
+                point++;
+            }
+            if (point == points) {
+                break;
+            }
+            sum += precision[point];
+        }
+        return sum / RECALL_POINTS;
+    }
+
+    /**
+     * @return The AP of the class averaged over all IoU thresholds, NaN if it has no ground truth
+     */
+    public synchronized double getAveragePrecision(final int classId) {
+        double sum = 0;
+        for (int t = 0; t < iouThresholds.length; t++) {
+            sum += getAveragePrecision(classId, t);
+        }
+        return sum / iouThresholds.length;
+    }
+
+    /**
+     * @return The mean AP at one IoU threshold over the classes with ground truth, NaN if there is none
+     */
+    public synchronized double getMeanAveragePrecision(final int thresholdIndex) {
+        double sum = 0;
+        int classes = 0;
+        for (int c = 0; c < numClasses; c++) {
+            if (groundTruths[c] > 0) {
+                sum += getAveragePrecision(c, thresholdIndex);
+                classes++;
+            }
+        }
+        return classes > 0 ? sum / classes : Double.NaN;
+    }
+
+    /**
+     * @return The mean AP over all IoU thresholds and the classes with ground truth, the COCO mAP
+     * for the default thresholds
+     */
+    public synchronized double getMeanAveragePrecision() {
+        double sum = 0;
+        for (int t = 0; t < iouThresholds.length; t++) {
+            sum += getMeanAveragePrecision(t);
+        }
+        return sum / iouThresholds.length;
+    }
+
+    /**
+     * @return The index of an IoU threshold, for example of 0.5 or 0.75
+     * @throws IllegalArgumentException If the threshold is not evaluated
+     */
+    public int getThresholdIndex(final float iouThreshold) {
+        for (int t = 0; t < iouThresholds.length; t++) {
+            if (Math.abs(iouThresholds[t] - iouThreshold) < 1e-6f) {
+                return t;
+            }
+        }
+        throw new IllegalArgumentException("IoU threshold " + iouThreshold + " is not evaluated");
+    }
+
+    public synchronized long getGroundTruthCount(final int classId) {
+        checkClass(classId);
+        return groundTruths[classId];
+    }
+
+    public synchronized long getImageCount() {
+        return images;
+    }
+
+    public int getNumClasses() {
+        return numClasses;
+    }
+}
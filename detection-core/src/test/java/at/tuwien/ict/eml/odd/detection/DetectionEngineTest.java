@@ -0,0 +1,203 @@
+package at.tuwien.ict.eml.odd.detection;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+import at.tuwien.ict.eml.odd.env.ArgbImage;
+
+import static org.junit.Assert.*;
+
+public class DetectionEngineTest {
+    private static final int INPUT_SIZE = 100;
+    private static final int NUM_DETECTIONS = 10;
+
+    /**
+     * Reports one detection of class 5 in the center quarter of the input, with the first
+     * input byte as score, and remembers the inputs it got.
+     */
+    private static class FakeBackend implements InferenceBackend {
+        int runs;
+        int firstInputByte;
+
+        @Override
+        public void run(Object[] inputs, Map<Integer, Object> outputs) {
+            runs++;
+            ByteBuffer input = (ByteBuffer) inputs[0];
+            firstInputByte = input.get(0) & 0xFF;
+            float[][][] locations = (float[][][]) outputs.get(0);
+            float[][] classes = (float[][]) outputs.get(1);
+            float[][] scores = (float[][]) outputs.get(2);
+            float[] count = (float[]) outputs.get(3);
+            assertEquals(NUM_DETECTIONS, scores[0].length);
+            locations[0][0] = new float[]{0.25f, 0.25f, 0.75f, 0.75f};
+            classes[0][0] = 5;
+            scores[0][0] = firstInputByte / 255f;
+            count[0] = 1;
+        }
+    }
+
+    private static ArgbImage filledImage(int width, int height, int argb) {
+        ArgbImage image = new ArgbImage(width, height);
+        Arrays.fill(image.getPixels(), argb);
+        return image;
+    }
+
+    @Test
+    public void detectInput_preprocessesAndDecodes() {
+        FakeBackend backend = new FakeBackend();
+        DetectionEngine engine = new DetectionEngine(backend, INPUT_SIZE, true, NUM_DETECTIONS, 127.5f, 127.5f);
+        int[] pixels = new int[INPUT_SIZE * INPUT_SIZE];
+        Arrays.fill(pixels, 0xFF330000);
+
+        Detections detections = engine.detectInput(pixels);
+        engine.close();
+
+        assertEquals(1, backend.runs);
+        // the red channel of the first pixel is the first input byte of a uint8 model
+        assertEquals(0x33, backend.firstInputByte);
+        assertEquals(1, detections.size());
+        assertEquals(5, detections.getClassId(0));
+        assertEquals(0x33 / 255f, detections.getScore(0), 1e-6f);
+        assertEquals(25, detections.getLeft(0), 1e-3f);
+        assertEquals(75, detections.getBottom(0), 1e-3f);
+    }
+
+    @Test
+    public void detect_mapsBoxesToImage() {
+        DetectionEngine engine = new DetectionEngine(new FakeBackend(), INPUT_SIZE, true, NUM_DETECTIONS, 127.5f, 127.5f);
+        Detections detections = engine.detect(filledImage(640, 480, 0xFFFFFFFF), 0, false);
+
+        // the whole image is scaled to the input, the center quarter maps to the center quarter
+        assertEquals(1, detections.size());
+        assertEquals(160, detections.getLeft(0), 0.01f);
+        assertEquals(120, detections.getTop(0), 0.01f);
+        assertEquals(480, detections.getRight(0), 0.01f);
+        assertEquals(360, detections.getBottom(0), 0.01f);
+        engine.close();
+    }
+
+    @Test
+    public void detect_contain_mapsBoxesToCenterSquare() {
+        DetectionEngine engine = new DetectionEngine(new FakeBackend(), INPUT_SIZE, true, NUM_DETECTIONS, 127.5f, 127.5f);
+        Detections detections = engine.detect(filledImage(640, 480, 0xFFFFFFFF), 0, true);
+
+        // the center square spans the columns 80 to 560
+        assertEquals(200, detections.getLeft(0), 0.01f);
+        assertEquals(120, detections.getTop(0), 0.01f);
+        assertEquals(440, detections.getRight(0), 0.01f);
+        assertEquals(360, detections.getBottom(0), 0.01f);
+        engine.close();
+    }
+
+    @Test
+    public void detect_rotation_mapsBoxesToRotatedImage() {
+        DetectionEngine engine = new DetectionEngine(new FakeBackend(), INPUT_SIZE, true, NUM_DETECTIONS, 127.5f, 127.5f);
+        Detections detections = engine.detect(filledImage(640, 480, 0xFFFFFFFF), 90, false);
+
+        // the rotated image is 480x640
+        assertEquals(120, detections.getLeft(0), 0.01f);
+        assertEquals(160, detections.getTop(0), 0.01f);
+        assertEquals(360, detections.getRight(0), 0.01f);
+        assertEquals(480, detections.getBottom(0), 0.01f);
+        engine.close();
+    }
+
+    @Test
+    public void batch_inputViewsCoverConsecutiveImages() {
+        int inputSize = 4;
+        DetectionEngine engine = new DetectionEngine(new FakeBackend(), inputSize, true, NUM_DETECTIONS,
+                127.5f, 127.5f, 3, null);
+        int bytesPerImage = inputSize * inputSize * 3;
+
+        assertEquals(3, engine.getBatchSize());
+        for (int image = 0; image < 3; image++) {
+            ByteBuffer view = engine.getInput(image);
+            assertEquals(bytesPerImage, view.capacity());
+            view.put(0, (byte) (image + 1));
+        }
+        engine.run((inputs, outputs) -> {
+            ByteBuffer input = (ByteBuffer) inputs[0];
+            assertEquals(3 * bytesPerImage, input.capacity());
+            assertEquals(1, input.get(0));
+            assertEquals(2, input.get(bytesPerImage));
+            assertEquals(3, input.get(2 * bytesPerImage));
+            assertEquals(3, ((float[]) outputs.get(3)).length);
+        });
+        engine.close();
+    }
+
+    @Test
+    public void floatBatch_preprocessesEveryImageIntoItsView() {
+        int inputSize = 4;
+        DetectionEngine engine = new DetectionEngine(new FakeBackend(), inputSize, false, NUM_DETECTIONS,
+                127.5f, 127.5f, 2, null);
+        InputPreprocessor preprocessor = InputPreprocessor.create(inputSize, false, 127.5f, 127.5f);
+        int[] white = new int[inputSize * inputSize];
+        Arrays.fill(white, 0xFFFFFFFF);
+        int[] black = new int[inputSize * inputSize];
+        Arrays.fill(black, 0xFF000000);
+
+        preprocessor.process(white, engine.getInput(0));
+        preprocessor.process(black, engine.getInput(1));
+        preprocessor.close();
+
+        int floatsPerImage = inputSize * inputSize * 3;
+        engine.run((inputs, outputs) -> {
+            ByteBuffer input = (ByteBuffer) inputs[0];
+            assertEquals(1.0f, input.getFloat(0), 1e-6f);
+            assertEquals(1.0f, input.getFloat((floatsPerImage - 1) * 4), 1e-6f);
+            assertEquals(-1.0f, input.getFloat(floatsPerImage * 4), 1e-6f);
+            assertEquals(-1.0f, input.getFloat((2 * floatsPerImage - 1) * 4), 1e-6f);
+        });
+        engine.close();
+    }
+
+    @Test
+    public void decode_readsImageOfBatch() {
+        DetectionEngine engine = new DetectionEngine((inputs, outputs) -> {
+            ((float[][][]) outputs.get(0))[1][0] = new float[]{0.1f, 0.2f, 0.3f, 0.4f};
+            ((float[][]) outputs.get(1))[1][0] = 2;
+            ((float[][]) outputs.get(2))[1][0] = 0.75f;
+            ((float[]) outputs.get(3))[1] = 1;
+        }, INPUT_SIZE, true, NUM_DETECTIONS, 127.5f, 127.5f, 2, null);
+
+        engine.run();
+
+        assertEquals(0, engine.decode(0).size());
+        Detections second = engine.decode(1);
+        assertEquals(1, second.size());
+        assertEquals(2, second.getClassId(0));
+        assertEquals(0.75f, second.getScore(0), 1e-6f);
+        assertEquals(20, second.getLeft(0), 1e-4f);
+        assertEquals(30, second.getBottom(0), 1e-4f);
+        engine.close();
+    }
+
+    @Test
+    public void decode_rawOutputsWithAnchors() {
+        // one anchor in the center with a background and two classes, scores in the first output
+        SsdAnchorDecoder.Anchors anchors = new SsdAnchorDecoder.Anchors(
+                new float[]{0.5f, 0.5f, 0.2f, 0.4f}, new float[]{10, 10, 5, 5}, 1, 0, 3, 1);
+        DetectionEngine engine = new DetectionEngine((inputs, outputs) -> {
+            assertEquals(2, outputs.size());
+            ((float[][][]) outputs.get(0))[0][0] = new float[]{5, -5, 3};
+            ((float[][][]) outputs.get(1))[0][0] = new float[]{0, 0, 0, 0};
+        }, INPUT_SIZE, true, NUM_DETECTIONS, 127.5f, 127.5f, 1, anchors);
+
+        engine.run();
+        Detections detections = engine.decode(0);
+
+        // the anchor box itself, with the sigmoid of the car logit
+        assertEquals(1, detections.size());
+        assertEquals(1, detections.getClassId(0));
+        assertEquals((float) (1 / (1 + Math.exp(-3))), detections.getScore(0), 1e-5f);
+        assertEquals(30, detections.getLeft(0), 1e-3f);
+        assertEquals(40, detections.getTop(0), 1e-3f);
+        assertEquals(70, detections.getRight(0), 1e-3f);
+        assertEquals(60, detections.getBottom(0), 1e-3f);
+        engine.close();
+    }
+}
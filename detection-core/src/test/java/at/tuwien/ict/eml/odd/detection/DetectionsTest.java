@@ -0,0 +1,85 @@
+package at.tuwien.ict.eml.odd.detection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DetectionsTest {
+    private static final float INPUT_SIZE = 300;
+
+    private static void assertBox(Detections detections, int i, float left, float top, float right, float bottom) {
+        float[] box = new float[4];
+        detections.getBox(i, box, 0);
+        assertArrayEquals(new float[]{left, top, right, bottom}, box, 1e-3f);
+    }
+
+    @Test
+    public void setPostProcessOutputs_scalesAndReordersBoxes() {
+        float[][][] locations = {{{0.1f, 0.2f, 0.3f, 0.4f}, {0.5f, 0.5f, 1.0f, 1.0f}, {0, 0, 0, 0}}};
+        float[][] classes = {{3, 7, 0}};
+        float[][] scores = {{0.9f, 0.6f, 0.0f}};
+        Detections detections = new Detections(3);
+
+        detections.setPostProcessOutputs(locations, classes, scores, 0, 2, INPUT_SIZE);
+
+        assertEquals(2, detections.size());
+        assertEquals(3, detections.getClassId(0));
+        assertEquals(0.9f, detections.getScore(0), 0.0f);
+        assertBox(detections, 0, 60, 30, 120, 90);
+        assertEquals(7, detections.getClassId(1));
+        assertBox(detections, 1, 150, 150, 300, 300);
+    }
+
+    @Test
+    public void setPostProcessOutputs_clampsCount() {
+        float[][][] locations = new float[2][4][4];
+        float[][] classes = new float[2][4];
+        float[][] scores = new float[2][4];
+        Detections detections = new Detections(3);
+
+        detections.setPostProcessOutputs(locations, classes, scores, 1, 100, INPUT_SIZE);
+        assertEquals(3, detections.size());
+        detections.setPostProcessOutputs(locations, classes, scores, 1, -1, INPUT_SIZE);
+        assertEquals(0, detections.size());
+    }
+
+    @Test
+    public void retainMinScore_keepsOrder() {
+        Detections detections = new Detections(4);
+        detections.add(0, 0.9f, 0, 0, 1, 1);
+        detections.add(1, 0.2f, 1, 1, 2, 2);
+        detections.add(2, 0.5f, 2, 2, 3, 3);
+        detections.add(3, 0.4f, 3, 3, 4, 4);
+
+        detections.retainMinScore(0.5f);
+
+        assertEquals(2, detections.size());
+        assertEquals(0, detections.getClassId(0));
+        assertEquals(2, detections.getClassId(1));
+        assertBox(detections, 1, 2, 2, 3, 3);
+    }
+
+    @Test
+    public void transform_mapsBoxes() {
+        Detections detections = new Detections(1);
+        detections.add(0, 1.0f, 10, 20, 30, 40);
+
+        detections.transform(new float[]{2, 0, 5, 0, 3, -5, 0, 0, 1});
+
+        assertBox(detections, 0, 25, 55, 65, 115);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void add_beyondCapacity_throws() {
+        Detections detections = new Detections(1);
+        detections.add(0, 1.0f, 0, 0, 1, 1);
+        detections.add(0, 1.0f, 0, 0, 1, 1);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getScore_beyondSize_throws() {
+        Detections detections = new Detections(2);
+        detections.add(0, 1.0f, 0, 0, 1, 1);
+        detections.getScore(1);
+    }
+}
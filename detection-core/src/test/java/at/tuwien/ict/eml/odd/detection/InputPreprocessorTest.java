@@ -0,0 +1,158 @@
+package at.tuwien.ict.eml.odd.detection;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class InputPreprocessorTest {
+    private static final float IMAGE_MEAN = 127.5f;
+    private static final float IMAGE_STD = 127.5f;
+
+    /** The per pixel loop previously used in TFLiteObjectDetection.recognizeImage */
+    static void referenceFill(int[] intValues, int inputSize, boolean isModelQuantized, ByteBuffer imgData) {
+        imgData.rewind();
+        for (int i = 0; i < inputSize; ++i) {
+            for (int j = 0; j < inputSize; ++j) {
+                int pixelValue = intValues[i * inputSize + j];
+                if (isModelQuantized) {
+                    imgData.put((byte) ((pixelValue >> 16) & 0xFF));
+                    imgData.put((byte) ((pixelValue >> 8) & 0xFF));
+                    imgData.put((byte) (pixelValue & 0xFF));
+                } else {
+                    imgData.putFloat((((pixelValue >> 16) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
+                    imgData.putFloat((((pixelValue >> 8) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
+                    imgData.putFloat(((pixelValue & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
+                }
+            }
+        }
+    }
+
+    static int[] randomPixels(int inputSize) {
+        Random random = new Random(42);
+        int[] pixels = new int[inputSize * inputSize];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return pixels;
+    }
+
+    static ByteBuffer inputBuffer(int inputSize, int bytesPerChannel) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(inputSize * inputSize * 3 * bytesPerChannel);
+        buffer.order(ByteOrder.nativeOrder());
+        return buffer;
+    }
+
+    private static byte[] contents(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.capacity()];
+        ByteBuffer copy = buffer.duplicate();
+        copy.rewind();
+        copy.get(bytes);
+        return bytes;
+    }
+
+    private void assertMatchesReference(int inputSize, boolean quantized, InputPreprocessor preprocessor) {
+        int bytesPerChannel = quantized ? 1 : 4;
+        int[] pixels = randomPixels(inputSize);
+        ByteBuffer expected = inputBuffer(inputSize, bytesPerChannel);
+        ByteBuffer actual = inputBuffer(inputSize, bytesPerChannel);
+
+        referenceFill(pixels, inputSize, quantized, expected);
+        preprocessor.process(pixels, actual);
+        preprocessor.close();
+
+        assertEquals(0, actual.position());
+        assertArrayEquals(contents(expected), contents(actual));
+    }
+
+    @Test
+    public void uint8_matchesReference() {
+        assertMatchesReference(300, true, new UInt8InputPreprocessor(300, 1));
+    }
+
+    @Test
+    public void uint8_parallel_matchesReference() {
+        assertMatchesReference(301, true, new UInt8InputPreprocessor(301, 3));
+    }
+
+    @Test
+    public void float32_matchesReference() {
+        assertMatchesReference(320, false, new Float32InputPreprocessor(320, IMAGE_MEAN, IMAGE_STD, 1));
+    }
+
+    @Test
+    public void float32_parallel_matchesReference() {
+        assertMatchesReference(321, false, new Float32InputPreprocessor(321, IMAGE_MEAN, IMAGE_STD, 4));
+    }
+
+    /** Opaque pixels in the byte order of Bitmap.copyPixelsToBuffer of an ARGB_8888 bitmap */
+    static ByteBuffer rgbaBytes(int[] argbPixels) {
+        ByteBuffer rgba = ByteBuffer.allocate(argbPixels.length * 4);
+        for (int pixel : argbPixels) {
+            rgba.put((byte) (pixel >> 16)).put((byte) (pixel >> 8)).put((byte) pixel).put((byte) 0xFF);
+        }
+        rgba.rewind();
+        return rgba;
+    }
+
+    @Test
+    public void uint8_processRgba_matchesProcess() {
+        int inputSize = 301;
+        int[] pixels = randomPixels(inputSize);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] |= 0xFF000000;
+        }
+        UInt8InputPreprocessor preprocessor = new UInt8InputPreprocessor(inputSize, 3);
+        ByteBuffer expected = inputBuffer(inputSize, 1);
+        ByteBuffer actual = inputBuffer(inputSize, 1);
+
+        preprocessor.process(pixels, expected);
+        ByteBuffer rgba = rgbaBytes(pixels);
+        preprocessor.processRgba(rgba, actual);
+        preprocessor.close();
+
+        assertEquals(0, actual.position());
+        assertEquals(0, rgba.remaining());
+        assertArrayEquals(contents(expected), contents(actual));
+    }
+
+    @Test
+    public void uint8_processRgba_startsAtPosition() {
+        int inputSize = 16;
+        int[] pixels = randomPixels(inputSize);
+        ByteBuffer expected = inputBuffer(inputSize, 1);
+        referenceFill(pixels, inputSize, true, expected);
+        ByteBuffer rgba = ByteBuffer.allocate(8 + pixels.length * 4);
+        rgba.position(8);
+        rgba.put(rgbaBytes(pixels));
+        rgba.position(8);
+        ByteBuffer actual = inputBuffer(inputSize, 1);
+
+        new UInt8InputPreprocessor(inputSize, 1).processRgba(rgba, actual);
+
+        assertArrayEquals(contents(expected), contents(actual));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void uint8_processRgba_rejectsShortBuffer() {
+        new UInt8InputPreprocessor(16, 1).processRgba(ByteBuffer.allocate(16 * 16 * 4 - 1), inputBuffer(16, 1));
+    }
+
+    @Test
+    public void process_rebindsOnNewBuffer() {
+        int inputSize = 64;
+        int[] pixels = randomPixels(inputSize);
+        InputPreprocessor preprocessor = new Float32InputPreprocessor(inputSize, IMAGE_MEAN, IMAGE_STD, 1);
+        ByteBuffer expected = inputBuffer(inputSize, 4);
+        referenceFill(pixels, inputSize, false, expected);
+
+        preprocessor.process(pixels, inputBuffer(inputSize, 4));
+        ByteBuffer second = inputBuffer(inputSize, 4);
+        preprocessor.process(pixels, second);
+
+        assertArrayEquals(contents(expected), contents(second));
+    }
+}
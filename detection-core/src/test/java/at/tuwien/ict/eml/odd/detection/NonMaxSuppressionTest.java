@@ -0,0 +1,250 @@
+package at.tuwien.ict.eml.odd.detection;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NonMaxSuppressionTest {
+
+    @Test
+    public void greedy_dropsOverlappingBoxOfSameClass() {
+        float[] boxes = {
+                0, 0, 100, 100,
+                5, 5, 105, 105,
+                5, 5, 105, 105,
+                200, 200, 250, 250};
+        float[] scores = {0.6f, 0.9f, 0.8f, 0.7f};
+        int[] classes = {1, 1, 2, 1};
+        int[] keep = new int[4];
+        float[] keptScores = new float[4];
+
+        int kept = new NonMaxSuppression(0.5f, 0.1f, 4).run(boxes, scores, classes, 4, keep, keptScores);
+
+        assertEquals(3, kept);
+        assertArrayEquals(new int[]{1, 2, 3}, java.util.Arrays.copyOf(keep, kept));
+        assertArrayEquals(new float[]{0.9f, 0.8f, 0.7f}, java.util.Arrays.copyOf(keptScores, kept), 0);
+    }
+
+    @Test
+    public void greedy_classAgnosticIgnoresClasses() {
+        float[] boxes = {
+                0, 0, 100, 100,
+                5, 5, 105, 105};
+        float[] scores = {0.6f, 0.9f};
+        int[] classes = {1, 2};
+        int[] keep = new int[2];
+
+        int kept = new NonMaxSuppression(0.5f, 0.1f, 2)
+                .setClassAware(false)
+                .run(boxes, scores, classes, 2, keep, null);
+
+        assertEquals(1, kept);
+        assertEquals(1, keep[0]);
+    }
+
+    @Test
+    public void run_appliesScoreThresholdAndMaxDetections() {
+        float[] boxes = {
+                0, 0, 10, 10,
+                20, 20, 30, 30,
+                40, 40, 50, 50,
+                60, 60, 70, 70};
+        float[] scores = {0.05f, 0.5f, 0.7f, 0.6f};
+        int[] keep = new int[2];
+
+        int kept = new NonMaxSuppression(0.5f, 0.1f, 2).run(boxes, scores, null, 4, keep, null);
+
+        assertEquals(2, kept);
+        assertArrayEquals(new int[]{2, 3}, keep);
+        assertEquals(0, new NonMaxSuppression(0.5f, 0.1f, 2).run(boxes, scores, null, 0, keep, null));
+    }
+
+    @Test
+    public void softLinear_decaysOverlappingScore() {
+        // IoU of the boxes is 50 / 150
+        float[] boxes = {
+                0, 0, 100, 100,
+                50, 0, 150, 100};
+        float[] scores = {0.9f, 0.8f};
+        int[] keep = new int[2];
+        float[] keptScores = new float[2];
+
+        int kept = new NonMaxSuppression(0.3f, 0.1f, 2)
+                .setMethod(NonMaxSuppression.Method.SOFT_LINEAR)
+                .run(boxes, scores, null, 2, keep, keptScores);
+
+        assertEquals(2, kept);
+        assertArrayEquals(new int[]{0, 1}, keep);
+        assertEquals(0.8f * (1 - 1 / 3f), keptScores[1], 1e-5f);
+    }
+
+    @Test
+    public void softGaussian_dropsBoxDecayedBelowThreshold() {
+        float[] boxes = {
+                0, 0, 100, 100,
+                1, 1, 101, 101,
+                300, 300, 400, 400};
+        float[] scores = {0.9f, 0.85f, 0.2f};
+        int[] keep = new int[3];
+        float[] keptScores = new float[3];
+
+        int kept = new NonMaxSuppression(0.5f, 0.3f, 3)
+                .setMethod(NonMaxSuppression.Method.SOFT_GAUSSIAN)
+                .setSigma(0.1f)
+                .run(boxes, scores, null, 3, keep, keptScores);
+
+        assertEquals(1, kept);
+        assertEquals(0, keep[0]);
+    }
+
+    @Test
+    public void greedy_matchesBruteForceReference() {
+        Random random = new Random(12);
+        for (boolean classAware : new boolean[]{true, false}) {
+            for (int round = 0; round < 20; round++) {
+                int count = 50 + random.nextInt(2000);
+                float[] boxes = randomBoxes(random, count);
+                float[] scores = randomScores(random, count);
+                int[] classes = randomClasses(random, count, 5);
+                int[] keep = new int[100];
+                float[] keptScores = new float[100];
+                int[] expected = new int[100];
+                float[] expectedScores = new float[100];
+
+                int kept = new NonMaxSuppression(0.45f, 0.2f, 100)
+                        .setClassAware(classAware)
+                        .run(boxes, scores, classes, count, keep, keptScores);
+                int expectedKept = referenceNms(boxes, scores, classAware ? classes : null, count,
+                        NonMaxSuppression.Method.GREEDY, 0.45f, 0.2f, 0.5f, 100, expected, expectedScores);
+
+                assertEquals(expectedKept, kept);
+                for (int i = 0; i < kept; i++) {
+                    assertEquals(expected[i], keep[i]);
+                    assertEquals(expectedScores[i], keptScores[i], 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void soft_matchesBruteForceReference() {
+        Random random = new Random(34);
+        for (NonMaxSuppression.Method method : new NonMaxSuppression.Method[]{
+                NonMaxSuppression.Method.SOFT_LINEAR, NonMaxSuppression.Method.SOFT_GAUSSIAN}) {
+            // reuses the instance, the buffers only grow
+            NonMaxSuppression nms = new NonMaxSuppression(0.3f, 0.25f, 50)
+                    .setMethod(method)
+                    .setSigma(0.5f);
+            for (int round = 0; round < 20; round++) {
+                int count = 10 + random.nextInt(500);
+                float[] boxes = randomBoxes(random, count);
+                float[] scores = randomScores(random, count);
+                int[] classes = randomClasses(random, count, 3);
+                int[] keep = new int[50];
+                float[] keptScores = new float[50];
+                int[] expected = new int[50];
+                float[] expectedScores = new float[50];
+
+                int kept = nms.run(boxes, scores, classes, count, keep, keptScores);
+                int expectedKept = referenceNms(boxes, scores, classes, count,
+                        method, 0.3f, 0.25f, 0.5f, 50, expected, expectedScores);
+
+                assertEquals(expectedKept, kept);
+                for (int i = 0; i < kept; i++) {
+                    assertEquals(expected[i], keep[i]);
+                    assertEquals(expectedScores[i], keptScores[i], 1e-6f);
+                }
+            }
+        }
+    }
+
+    static float[] randomBoxes(Random random, int count) {
+        float[] boxes = new float[count * 4];
+        for (int i = 0; i < count; i++) {
+            // clusters of similar boxes like the anchors of a detector
+            float size = 10 + random.nextFloat() * 80;
+            float left = random.nextInt(20) * 50 + random.nextFloat() * 10;
+            float top = random.nextInt(20) * 50 + random.nextFloat() * 10;
+            boxes[i * 4] = left;
+            boxes[i * 4 + 1] = top;
+            boxes[i * 4 + 2] = left + size * (0.5f + random.nextFloat());
+            boxes[i * 4 + 3] = top + size * (0.5f + random.nextFloat());
+        }
+        return boxes;
+    }
+
+    static float[] randomScores(Random random, int count) {
+        float[] scores = new float[count];
+        for (int i = 0; i < count; i++) {
+            scores[i] = random.nextFloat();
+        }
+        return scores;
+    }
+
+    static int[] randomClasses(Random random, int count, int numClasses) {
+        int[] classes = new int[count];
+        for (int i = 0; i < count; i++) {
+            classes[i] = random.nextInt(numClasses);
+        }
+        return classes;
+    }
+
+    /**
+     * Quadratic NMS which compares every remaining box with the kept one.
+     */
+    static int referenceNms(
+            float[] boxes, float[] scores, int[] classes, int count, NonMaxSuppression.Method method,
+            float iouThreshold, float scoreThreshold, float sigma, int maxDetections,
+            int[] keep, float[] keptScores) {
+        float[] current = scores.clone();
+        boolean[] done = new boolean[count];
+        int kept = 0;
+        while (kept < maxDetections) {
+            int best = -1;
+            for (int i = 0; i < count; i++) {
+                if (!done[i] && current[i] >= scoreThreshold && (best < 0 || current[i] > current[best])) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            done[best] = true;
+            keep[kept] = best;
+            keptScores[kept++] = current[best];
+            for (int i = 0; i < count; i++) {
+                if (done[i] || (classes != null && classes[i] != classes[best])) {
+                    continue;
+                }
+                float iou = iou(boxes, best, i);
+                if (iou <= 0) {
+                    continue;
+                }
+                if (method == NonMaxSuppression.Method.GREEDY) {
+                    done[i] = iou > iouThreshold;
+                } else if (method == NonMaxSuppression.Method.SOFT_LINEAR) {
+                    if (iou > iouThreshold) {
+                        current[i] *= 1 - iou;
+                    }
+                } else {
+                    current[i] *= (float) Math.exp(-(iou * iou) / sigma);
+                }
+            }
+        }
+        return kept;
+    }
+
+    private static float iou(float[] boxes, int a, int b) {
+        float width = Math.min(boxes[a * 4 + 2], boxes[b * 4 + 2]) - Math.max(boxes[a * 4], boxes[b * 4]);
+        float height = Math.min(boxes[a * 4 + 3], boxes[b * 4 + 3]) - Math.max(boxes[a * 4 + 1], boxes[b * 4 + 1]);
+        if (width <= 0 || height <= 0) {
+            return 0;
+        }
+        float intersection = width * height;
+        float areaA = (boxes[a * 4 + 2] - boxes[a * 4]) * (boxes[a * 4 + 3] - boxes[a * 4 + 1]);
+        float areaB = (boxes[b * 4 + 2] - boxes[b * 4]) * (boxes[b * 4 + 3] - boxes[b * 4 + 1]);
+        return intersection / (areaA + areaB - intersection);
+    }
+}
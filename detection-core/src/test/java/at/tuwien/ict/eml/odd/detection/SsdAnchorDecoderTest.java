@@ -0,0 +1,121 @@
+package at.tuwien.ict.eml.odd.detection;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SsdAnchorDecoderTest {
+    private static final float[] DEFAULT_SCALES = {10, 10, 5, 5};
+
+    private static float logit(float score) {
+        return (float) Math.log(score / (1 - score));
+    }
+
+    @Test
+    public void parse_readsAnchorsAndScales() throws IOException {
+        float[] scales = DEFAULT_SCALES.clone();
+        float[] anchors = SsdAnchorDecoder.Anchors.parse(new BufferedReader(new StringReader(
+                "# y x h w\n"
+                        + "scales 8, 8, 4, 4\n"
+                        + "0.5 0.5 0.2 0.1\n"
+                        + "\n"
+                        + "0.25,0.75,0.5,0.5\n")), scales);
+
+        assertArrayEquals(new float[]{0.5f, 0.5f, 0.2f, 0.1f, 0.25f, 0.75f, 0.5f, 0.5f}, anchors, 0);
+        assertArrayEquals(new float[]{8, 8, 4, 4}, scales, 0);
+    }
+
+    @Test
+    public void read_findsBoxesOutputAndBackground() throws IOException {
+        byte[] file = "0.5 0.5 0.2 0.1\n0.25 0.75 0.5 0.5\n".getBytes(StandardCharsets.UTF_8);
+
+        // scores first, with a background class besides the two labels
+        SsdAnchorDecoder.Anchors anchors = SsdAnchorDecoder.Anchors.read(
+                new ByteArrayInputStream(file), new int[]{1, 2, 3}, new int[]{1, 2, 4}, 2);
+
+        assertEquals(2, anchors.getCount());
+        assertEquals(1, anchors.boxesOutputIndex);
+        assertEquals(0, anchors.scoresOutputIndex);
+        assertEquals(3, anchors.numScores);
+        assertEquals(1, anchors.labelOffset);
+        assertEquals(10, anchors.yScale, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void read_rejectsOutputsOfOtherAnchorCount() throws IOException {
+        byte[] file = "0.5 0.5 0.2 0.1\n".getBytes(StandardCharsets.UTF_8);
+        SsdAnchorDecoder.Anchors.read(new ByteArrayInputStream(file), new int[]{1, 2, 4}, new int[]{1, 2, 3}, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_rejectsIncompleteAnchor() throws IOException {
+        SsdAnchorDecoder.Anchors.parse(new BufferedReader(new StringReader("0.5 0.5 0.2\n")), DEFAULT_SCALES.clone());
+    }
+
+    @Test
+    public void decode_appliesBoxCoderAndSigmoid() {
+        // background, person, car
+        SsdAnchorDecoder.Anchors anchors = new SsdAnchorDecoder.Anchors(
+                new float[]{0.5f, 0.5f, 0.2f, 0.4f}, DEFAULT_SCALES, 0, 1, 3, 1);
+        SsdAnchorDecoder decoder = new SsdAnchorDecoder(anchors, 0.3f, 0.5f, 10);
+        // center moved by a tenth of the anchor, size scaled by e
+        float[][] boxes = {{1, 1, 5, 5}};
+        float[][] logits = {{5, logit(0.4f), logit(0.8f)}};
+
+        float yCenter = 0.5f + 0.1f * 0.2f;
+        float xCenter = 0.5f + 0.1f * 0.4f;
+        float height = (float) Math.E * 0.2f;
+        float width = (float) Math.E * 0.4f;
+        float[] expected = {xCenter - width / 2, yCenter - height / 2, xCenter + width / 2, yCenter + height / 2};
+
+        assertEquals(1, decoder.decodeCandidates(boxes, logits));
+        assertArrayEquals(expected, Arrays.copyOf(decoder.getCandidateBoxes(), 4), 1e-5f);
+
+        Detections results = new Detections(10);
+        decoder.decode(boxes, logits, 100, results);
+
+        assertEquals(1, results.size());
+        // the car, the labels start after the background
+        assertEquals(1, results.getClassId(0));
+        assertEquals(0.8f, results.getScore(0), 1e-5f);
+        assertEquals(expected[0] * 100, results.getLeft(0), 1e-3f);
+        assertEquals(expected[1] * 100, results.getTop(0), 1e-3f);
+        assertEquals(expected[2] * 100, results.getRight(0), 1e-3f);
+        assertEquals(expected[3] * 100, results.getBottom(0), 1e-3f);
+    }
+
+    @Test
+    public void decode_dropsLowScoresAndSuppressesOverlaps() {
+        // two identical anchors and a distant one, no background class
+        SsdAnchorDecoder.Anchors anchors = new SsdAnchorDecoder.Anchors(new float[]{
+                0.2f, 0.2f, 0.2f, 0.2f,
+                0.2f, 0.2f, 0.2f, 0.2f,
+                0.8f, 0.8f, 0.2f, 0.2f}, DEFAULT_SCALES, 1, 0, 2, 0);
+        SsdAnchorDecoder decoder = new SsdAnchorDecoder(anchors, 0.5f, 0.5f, 10);
+        float[][] boxes = new float[3][4];
+        float[][] logits = {
+                {logit(0.9f), logit(0.1f)},
+                {logit(0.7f), logit(0.1f)},
+                {logit(0.2f), logit(0.45f)}};
+
+        Detections results = new Detections(10);
+        decoder.decode(boxes, logits, 1, results);
+
+        assertEquals(1, results.size());
+        assertEquals(0.9f, results.getScore(0), 1e-5f);
+        assertEquals(0, results.getClassId(0));
+        assertEquals(0.1f, results.getLeft(0), 1e-5f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void anchors_rejectBackgroundOnlyScores() {
+        new SsdAnchorDecoder.Anchors(new float[]{0.5f, 0.5f, 0.1f, 0.1f}, DEFAULT_SCALES, 0, 1, 1, 1);
+    }
+}
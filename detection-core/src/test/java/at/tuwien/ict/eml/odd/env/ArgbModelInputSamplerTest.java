@@ -0,0 +1,108 @@
+package at.tuwien.ict.eml.odd.env;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ArgbModelInputSamplerTest {
+    private static final int SRC_WIDTH = 640;
+    private static final int SRC_HEIGHT = 480;
+    private static final int DST_SIZE = 100;
+
+    // colors of the four quadrants of the source image
+    private static final int TOP_LEFT = 0xFF100000;
+    private static final int TOP_RIGHT = 0xFF002000;
+    private static final int BOTTOM_LEFT = 0xFF000030;
+    private static final int BOTTOM_RIGHT = 0xFF404040;
+
+    static ArgbImage quadrantImage() {
+        ArgbImage image = new ArgbImage(SRC_WIDTH, SRC_HEIGHT);
+        for (int y = 0; y < SRC_HEIGHT; y++) {
+            for (int x = 0; x < SRC_WIDTH; x++) {
+                int color;
+                if (y < SRC_HEIGHT / 2) {
+                    color = x < SRC_WIDTH / 2 ? TOP_LEFT : TOP_RIGHT;
+                } else {
+                    color = x < SRC_WIDTH / 2 ? BOTTOM_LEFT : BOTTOM_RIGHT;
+                }
+                image.setPixel(x, y, color);
+            }
+        }
+        return image;
+    }
+
+    private static int[] sample(int rotation, int aspectWidth, int aspectHeight, boolean contain, ArgbImage image) {
+        ArgbModelInputSampler sampler = new ArgbModelInputSampler(DST_SIZE);
+        int[] dst = new int[DST_SIZE * DST_SIZE];
+        sampler.configure(image.getWidth(), image.getHeight(), aspectWidth, aspectHeight, rotation, contain);
+        sampler.sample(image, dst);
+        return dst;
+    }
+
+    private static void assertQuadrants(int[] dst, int topLeft, int topRight, int bottomLeft, int bottomRight) {
+        int low = DST_SIZE / 4;
+        int high = DST_SIZE * 3 / 4;
+        assertEquals("top left", topLeft, dst[low * DST_SIZE + low]);
+        assertEquals("top right", topRight, dst[low * DST_SIZE + high]);
+        assertEquals("bottom left", bottomLeft, dst[high * DST_SIZE + low]);
+        assertEquals("bottom right", bottomRight, dst[high * DST_SIZE + high]);
+    }
+
+    @Test
+    public void sample_noRotation() {
+        int[] dst = sample(0, SRC_WIDTH, SRC_HEIGHT, false, quadrantImage());
+        assertQuadrants(dst, TOP_LEFT, TOP_RIGHT, BOTTOM_LEFT, BOTTOM_RIGHT);
+    }
+
+    @Test
+    public void sample_rotation90_isClockwise() {
+        int[] dst = sample(90, SRC_HEIGHT, SRC_WIDTH, false, quadrantImage());
+        assertQuadrants(dst, BOTTOM_LEFT, TOP_LEFT, BOTTOM_RIGHT, TOP_RIGHT);
+    }
+
+    @Test
+    public void sample_rotation180() {
+        int[] dst = sample(180, SRC_WIDTH, SRC_HEIGHT, false, quadrantImage());
+        assertQuadrants(dst, BOTTOM_RIGHT, BOTTOM_LEFT, TOP_RIGHT, TOP_LEFT);
+    }
+
+    @Test
+    public void sample_rotation270_isCounterClockwise() {
+        int[] dst = sample(-90, SRC_HEIGHT, SRC_WIDTH, false, quadrantImage());
+        assertQuadrants(dst, TOP_RIGHT, BOTTOM_RIGHT, TOP_LEFT, BOTTOM_LEFT);
+    }
+
+    @Test
+    public void sample_containCropsCenterSquare() {
+        // the 1:1 crop keeps the columns 80 to 560, a marker left of it must not be sampled
+        ArgbImage image = quadrantImage();
+        for (int y = 0; y < SRC_HEIGHT; y++) {
+            for (int x = 0; x < 80; x++) {
+                image.setPixel(x, y, 0xFFFFFFFF);
+            }
+        }
+        int[] dst = sample(0, SRC_WIDTH, SRC_HEIGHT, true, image);
+        assertQuadrants(dst, TOP_LEFT, TOP_RIGHT, BOTTOM_LEFT, BOTTOM_RIGHT);
+        assertEquals(TOP_LEFT, dst[0]);
+        assertEquals(BOTTOM_RIGHT, dst[DST_SIZE * DST_SIZE - 1]);
+    }
+
+    @Test
+    public void sample_visibleAreaCropsImage() {
+        // a square visible area of the landscape image shows the center square like contain
+        ArgbImage image = quadrantImage();
+        assertArrayEquals(sample(0, SRC_WIDTH, SRC_HEIGHT, true, image), sample(0, 500, 500, false, image));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void sample_rejectsUnexpectedImageSize() {
+        ArgbModelInputSampler sampler = new ArgbModelInputSampler(DST_SIZE);
+        sampler.configure(320, 240, 320, 240, 0, false);
+        sampler.sample(quadrantImage(), new int[DST_SIZE * DST_SIZE]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void configure_rejectsOddRotation() {
+        new ArgbModelInputSampler(DST_SIZE).configure(SRC_WIDTH, SRC_HEIGHT, SRC_WIDTH, SRC_HEIGHT, 45, false);
+    }
+}
@@ -0,0 +1,102 @@
+package at.tuwien.ict.eml.odd.env;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FrameTransformTest {
+    private static final float EPSILON = 1e-3f;
+
+    private static float[] transformation(int srcWidth, int srcHeight, int dstWidth, int dstHeight,
+                                          int rotation, boolean contain) {
+        float[] values = new float[FrameTransform.VALUE_COUNT];
+        FrameTransform.getTransformation(srcWidth, srcHeight, dstWidth, dstHeight, rotation, contain, values);
+        return values;
+    }
+
+    private static float[] map(float[] values, float x, float y) {
+        return new float[]{
+                values[0] * x + values[1] * y + values[2],
+                values[3] * x + values[4] * y + values[5]};
+    }
+
+    @Test
+    public void getVisibleFrameSize_portraitScreen_cropsWidth() {
+        int[] size = new int[2];
+        FrameTransform.getVisibleFrameSize(640, 480, 1080, 1920, 90, size);
+        assertArrayEquals(new int[]{360, 640}, size);
+    }
+
+    @Test
+    public void getVisibleFrameSize_wideScreen_cropsHeight() {
+        int[] size = new int[2];
+        FrameTransform.getVisibleFrameSize(640, 480, 1920, 1080, 0, size);
+        assertArrayEquals(new int[]{640, 360}, size);
+    }
+
+    @Test
+    public void getTransformation_sameSize_isIdentity() {
+        assertArrayEquals(new float[]{1, 0, 0, 0, 1, 0, 0, 0, 1},
+                transformation(300, 300, 300, 300, 0, false), 0.0f);
+    }
+
+    @Test
+    public void getTransformation_rotation90_mapsCorners() {
+        float[] values = transformation(640, 480, 480, 640, 90, false);
+        assertArrayEquals(new float[]{480, 0}, map(values, 0, 0), EPSILON);
+        assertArrayEquals(new float[]{0, 640}, map(values, 640, 480), EPSILON);
+    }
+
+    @Test
+    public void getTransformation_contain_keepsAspect() {
+        float[] values = transformation(640, 480, 300, 300, 0, true);
+        assertEquals(values[FrameTransform.SCALE_X], values[FrameTransform.SCALE_Y], 0.0f);
+        assertEquals(300f / 480f, values[FrameTransform.SCALE_X], EPSILON);
+        // the centers map onto each other
+        assertArrayEquals(new float[]{150, 150}, map(values, 320, 240), EPSILON);
+    }
+
+    @Test
+    public void invert_roundTrip_isIdentity() {
+        float[] values = transformation(640, 480, 300, 300, 270, false);
+        float[] inverse = new float[FrameTransform.VALUE_COUNT];
+        assertTrue(FrameTransform.invert(values, inverse));
+        float[] point = map(inverse, map(values, 17, 42)[0], map(values, 17, 42)[1]);
+        assertArrayEquals(new float[]{17, 42}, point, EPSILON);
+    }
+
+    @Test
+    public void invert_singular_returnsFalse() {
+        float[] values = {0, 0, 1, 0, 0, 1, 0, 0, 1};
+        float[] out = new float[FrameTransform.VALUE_COUNT];
+        assertFalse(FrameTransform.invert(values, out));
+        assertArrayEquals(new float[FrameTransform.VALUE_COUNT], out, 0.0f);
+    }
+
+    @Test
+    public void mapRect_randomTransformations_boundsMappedCorners() {
+        Random random = new Random(0);
+        int[] rotations = {0, 90, 180, 270, -90, 45};
+        for (int i = 0; i < 100; i++) {
+            float[] values = transformation(100 + random.nextInt(1000), 100 + random.nextInt(1000),
+                    100 + random.nextInt(1000), 100 + random.nextInt(1000),
+                    rotations[random.nextInt(rotations.length)], random.nextBoolean());
+            float left = random.nextFloat() * 100;
+            float top = random.nextFloat() * 100;
+            float[] box = {left, top, left + random.nextFloat() * 100, top + random.nextFloat() * 100};
+
+            float[] expected = {Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+            for (float[] corner : new float[][]{{box[0], box[1]}, {box[2], box[1]}, {box[0], box[3]}, {box[2], box[3]}}) {
+                float[] mapped = map(values, corner[0], corner[1]);
+                expected[0] = Math.min(expected[0], mapped[0]);
+                expected[1] = Math.min(expected[1], mapped[1]);
+                expected[2] = Math.max(expected[2], mapped[0]);
+                expected[3] = Math.max(expected[3], mapped[1]);
+            }
+            FrameTransform.mapRect(values, box, 0);
+            assertArrayEquals(expected, box, EPSILON);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package at.tuwien.ict.eml.odd.evaluation;
+
+import org.junit.Test;
+
+import at.tuwien.ict.eml.odd.detection.Detections;
+
+import static org.junit.Assert.*;
+
+public class MeanAveragePrecisionTest {
+    private static final float[] BOX = {0, 0, 10, 10};
+
+    private static Detections detections(Object... classScoreBox) {
+        Detections detections = new Detections(classScoreBox.length / 3);
+        for (int i = 0; i < classScoreBox.length; i += 3) {
+            float[] box = (float[]) classScoreBox[i + 2];
+            detections.add((Integer) classScoreBox[i], (Float) classScoreBox[i + 1], box[0], box[1], box[2], box[3]);
+        }
+        return detections;
+    }
+
+    @Test
+    public void iou_overlapAndDisjoint() {
+        assertEquals(1.0f, MeanAveragePrecision.iou(BOX, 0, BOX, 0), 1e-6f);
+        assertEquals(0.6f, MeanAveragePrecision.iou(BOX, 0, new float[]{0, 0, 10, 6}, 0), 1e-6f);
+        assertEquals(0.0f, MeanAveragePrecision.iou(BOX, 0, new float[]{10, 0, 20, 10}, 0), 0.0f);
+    }
+
+    @Test
+    public void addImage_perfectDetectionsGiveOne() {
+        MeanAveragePrecision map = new MeanAveragePrecision(3);
+        map.addImage(new float[]{0, 0, 10, 10, 20, 20, 40, 40}, new int[]{0, 2}, null, 2,
+                detections(0, 0.9f, BOX, 2, 0.8f, new float[]{20, 20, 40, 40}));
+
+        assertEquals(1.0, map.getMeanAveragePrecision(), 1e-9);
+        assertEquals(1.0, map.getAveragePrecision(0), 1e-9);
+        assertTrue(Double.isNaN(map.getAveragePrecision(1)));
+        assertEquals(1, map.getImageCount());
+    }
+
+    @Test
+    public void addImage_missedGroundTruthGivesZero() {
+        MeanAveragePrecision map = new MeanAveragePrecision(2);
+        map.addImage(BOX, new int[]{1}, null, 1, detections());
+
+        assertEquals(0.0, map.getAveragePrecision(1), 0.0);
+        assertEquals(0.0, map.getMeanAveragePrecision(), 0.0);
+        assertEquals(1, map.getGroundTruthCount(1));
+    }
+
+    @Test
+    public void addImage_higherScoredFalsePositiveHalvesPrecision() {
+        MeanAveragePrecision map = new MeanAveragePrecision(1);
+        map.addImage(BOX, new int[]{0}, null, 1,
+                detections(0, 0.9f, new float[]{50, 50, 60, 60}, 0, 0.8f, BOX));
+
+        assertEquals(0.5, map.getAveragePrecision(0), 1e-9);
+    }
+
+    @Test
+    public void addImage_duplicateIsFalsePositive() {
+        MeanAveragePrecision map = new MeanAveragePrecision(1);
+        map.addImage(BOX, new int[]{0}, null, 1, detections(0, 0.9f, BOX, 0, 0.8f, BOX));
+
+        // the duplicate only lowers the precision after full recall was reached
+        assertEquals(1.0, map.getAveragePrecision(0), 1e-9);
+        map.addImage(BOX, new int[]{0}, null, 1, detections());
+        // recall 0.5 at precision 1 and recall 1 is never reached
+        assertEquals(51.0 / 101, map.getAveragePrecision(0), 1e-9);
+    }
+
+    @Test
+    public void addImage_iouThresholdsCountSeparately() {
+        MeanAveragePrecision map = new MeanAveragePrecision(1);
+        map.addImage(BOX, new int[]{0}, null, 1, detections(0, 0.9f, new float[]{0, 0, 10, 6}));
+
+        assertEquals(1.0, map.getAveragePrecision(0, map.getThresholdIndex(0.5f)), 0.0);
+        assertEquals(1.0, map.getAveragePrecision(0, map.getThresholdIndex(0.6f)), 0.0);
+        assertEquals(0.0, map.getAveragePrecision(0, map.getThresholdIndex(0.75f)), 0.0);
+        assertEquals(0.3, map.getMeanAveragePrecision(), 1e-9);
+    }
+
+    @Test
+    public void addImage_matchesAcrossImagesByScore() {
+        MeanAveragePrecision map = new MeanAveragePrecision(1, new float[]{0.5f}, 100);
+        map.addImage(BOX, new int[]{0}, null, 1, detections(0, 0.3f, BOX));
+        map.addImage(new float[0], new int[0], null, 0, detections(0, 0.9f, BOX));
+
+        // false positive at 0.9 before the true positive at 0.3
+        assertEquals(0.5, map.getAveragePrecision(0), 1e-9);
+    }
+
+    @Test
+    public void addImage_difficultGroundTruthIsIgnored() {
+        MeanAveragePrecision map = new MeanAveragePrecision(1);
+        map.addImage(new float[]{0, 0, 10, 10, 20, 20, 30, 30}, new int[]{0, 0}, new boolean[]{false, true}, 2,
+                detections(0, 0.9f, new float[]{20, 20, 30, 30}, 0, 0.8f, BOX));
+
+        assertEquals(1, map.getGroundTruthCount(0));
+        assertEquals(1.0, map.getAveragePrecision(0), 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addImage_rejectsUnknownClass() {
+        new MeanAveragePrecision(2).addImage(BOX, new int[]{0}, null, 1, detections(5, 0.9f, BOX));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getThresholdIndex_rejectsUnevaluatedThreshold() {
+        new MeanAveragePrecision(1).getThresholdIndex(0.42f);
+    }
+}
@@ -0,0 +1,65 @@
+package at.tuwien.ict.eml.odd.stats;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucket_upperBoundContainsValue() {
+        for (long nanos : new long[]{0, 1, 15, 16, 17, 31, 32, 1000, 999_999, 1_000_000, 123_456_789L, 1L << 39}) {
+            int bucket = LatencyHistogram.bucket(nanos);
+            assertTrue(nanos + " above its bucket", nanos <= LatencyHistogram.bucketUpperBound(bucket));
+            if (bucket > 0) {
+                assertTrue(nanos + " in a too high bucket", nanos > LatencyHistogram.bucketUpperBound(bucket - 1));
+            }
+        }
+    }
+
+    @Test
+    public void getQuantileMs_withinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(0);
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) (20_000_000 * Math.exp(random.nextGaussian() * 0.4));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double q : new double[]{0.5, 0.9, 0.99}) {
+            double exact = values[(int) Math.ceil(q * values.length) - 1] / 1e6;
+            double quantile = histogram.getQuantileMs(q);
+            assertTrue("q " + q, quantile >= exact && quantile <= exact * (1 + 1.0 / 16));
+        }
+        assertEquals(values[values.length - 1] / 1e6, histogram.getMaxMs(), 1e-9);
+        assertEquals(Arrays.stream(values).average().getAsDouble() / 1e6, histogram.getMeanMs(), 1e-6);
+    }
+
+    @Test
+    public void record_countsConcurrentValues() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final long offset = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    histogram.record(1000 + offset);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, histogram.getCount());
+        assertEquals(1003 / 1e6, histogram.getMaxMs(), 1e-12);
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getQuantileMs(0.5), 0);
+    }
+}